@@ -23,6 +23,6 @@ package com.feedzai.commons.tracing.util;
  */
 public enum Engines {
 
-    JAEGER, NOOP, LOGGER
+    JAEGER, NOOP, LOGGER, METRICS
 
 }
@@ -20,32 +20,62 @@ import com.feedzai.commons.tracing.api.Promise;
 import com.feedzai.commons.tracing.api.TraceContext;
 import com.feedzai.commons.tracing.engine.JaegerTracingEngine;
 import com.feedzai.commons.tracing.engine.LoggingTracingEngine;
+import com.feedzai.commons.tracing.engine.MetricsTracingEngine;
 import com.feedzai.commons.tracing.engine.NoopTracingEngine;
+import com.feedzai.commons.tracing.engine.OperationRules;
+import com.feedzai.commons.tracing.engine.SpanAggregation;
 import com.feedzai.commons.tracing.engine.TracingEngine;
 import com.feedzai.commons.tracing.engine.configuration.JaegerConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MetricsConfiguration;
 import com.feedzai.commons.tracing.util.configuration.TracingConfiguration;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.annotations.VisibleForTesting;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 
 /**
  * Tracer decorator that periodically realoads the configuration, allowing for configuration changes on the fly.
  *
+ * <p>The engine in use is kept in a volatile field, so delegating a call costs a single read. The configuration is
+ * checked on a daemon thread shared by every instance, and when it has changed a new engine is built on that thread
+ * and swapped in. Threads that trace never call the configuration supplier nor build engines. The scheduled check only
+ * holds a weak reference to this object, so it stops by itself once this tracer is no longer used, or when {@link
+ * #close()} is called.
+ *
+ * <p>The engine that is replaced keeps working for a drain period: calls for an eventId, an open object or an active
+ * span that only the replaced engine knows about are still delegated to it, so traces that were in flight during the
+ * change are finished by the engine that started them. At the end of the drain period the replaced engine is closed in
+ * the background if it is {@link AutoCloseable}, which for {@link JaegerTracingEngine} flushes the spans buffered by
+ * its reporter and releases its sender. If the configuration changes again during the drain period, the engine that
+ * was draining is closed right away.
+ *
+ * <p>Only the first Jaeger engine built in the process is registered in {@link io.opentracing.util.GlobalTracer},
+ * so after a rebuild the global tracer is the closed tracer of a replaced engine. The engines never read it: contexts
+ * are injected and extracted with the tracer of the engine in use.
+ *
+ * <p>When only the sampling rate, the cache limits, the finished trace purge or the operation rules of a Jaeger
+ * engine change, the engine in use is reconfigured in place instead, so the tracer, its reporter and the traces in
+ * flight are kept.
+ *
  * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
  */
-public class LazyConfigTracer implements TracingEngine {
+public class LazyConfigTracer implements TracingEngine, AutoCloseable {
 
 
     /**
@@ -54,14 +84,39 @@ public class LazyConfigTracer implements TracingEngine {
     private static final Logger logger = LoggerFactory.getLogger(LoggingTracingEngine.class.getName());
 
     /**
-     * The last tracing engine in use.
+     * The default interval between configuration checks.
+     */
+    public static final Duration DEFAULT_RELOAD_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * The default period during which a replaced engine keeps finishing the traces it started.
+     */
+    public static final Duration DEFAULT_DRAIN_PERIOD = Duration.ofMinutes(1);
+
+    /**
+     * The scheduler shared by the instances of this class to check their configuration.
+     */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    /**
+     * The tracing engine in use.
+     */
+    private volatile TracingEngine engine;
+
+    /**
+     * The configuration of the engine in use.
+     */
+    private volatile TracingConfiguration configuration;
+
+    /**
+     * The engine replaced by the last configuration change, while it is draining, or {@code null}.
      */
-    private volatile TracingEngine oldEngine;
+    private volatile TracingEngine drainingEngine;
 
     /**
-     * The last configuration in use.
+     * The period during which a replaced engine keeps finishing the traces it started, in nanoseconds.
      */
-    private volatile TracingConfiguration oldConfiguration;
+    private final long drainNanos;
 
     /**
      * The supplier that reloads the configuration file.
@@ -69,59 +124,246 @@ public class LazyConfigTracer implements TracingEngine {
     private final Supplier<TracingConfiguration> tracingConfigurationSupplier;
 
     /**
-     * The cached tracing engine to be used for tracing.
+     * Builds the engine described by a configuration.
+     */
+    private final Function<TracingConfiguration, TracingEngine> engineFactory;
+
+    /**
+     * The scheduled configuration check.
      */
-    private final Cache<String, TracingEngine> engine;
+    private final ScheduledFuture<?> scheduledReload;
 
     /**
-     * The constructor used to build an instance of LazyConfigTracer.
+     * The constructor used to build an instance of LazyConfigTracer that checks the configuration every minute.
      *
      * @param configurationSupplier The supplier that returns the TracingConfiguration loaded by this class.
      */
     public LazyConfigTracer(final Supplier<TracingConfiguration> configurationSupplier) {
-        engine = CacheBuilder.newBuilder().maximumSize(1).expireAfterWrite(1, TimeUnit.MINUTES).build();
+        this(configurationSupplier, DEFAULT_RELOAD_INTERVAL);
+    }
+
+    /**
+     * The constructor used to build an instance of LazyConfigTracer with the default drain period.
+     *
+     * @param configurationSupplier The supplier that returns the TracingConfiguration loaded by this class.
+     * @param reloadInterval        The interval between configuration checks.
+     */
+    public LazyConfigTracer(final Supplier<TracingConfiguration> configurationSupplier,
+                            final Duration reloadInterval) {
+        this(configurationSupplier, reloadInterval, DEFAULT_DRAIN_PERIOD);
+    }
+
+    /**
+     * The constructor used to build an instance of LazyConfigTracer. The configuration is loaded and the first engine
+     * is built by the calling thread.
+     *
+     * @param configurationSupplier The supplier that returns the TracingConfiguration loaded by this class.
+     * @param reloadInterval        The interval between configuration checks.
+     * @param drainPeriod           The period during which a replaced engine keeps finishing the traces it started.
+     */
+    public LazyConfigTracer(final Supplier<TracingConfiguration> configurationSupplier,
+                            final Duration reloadInterval, final Duration drainPeriod) {
+        this(configurationSupplier, reloadInterval, drainPeriod, LazyConfigTracer::createEngine);
+    }
+
+    /**
+     * The constructor used to build an instance of LazyConfigTracer with a custom way of building its engines.
+     *
+     * @param configurationSupplier The supplier that returns the TracingConfiguration loaded by this class.
+     * @param reloadInterval        The interval between configuration checks.
+     * @param drainPeriod           The period during which a replaced engine keeps finishing the traces it started.
+     * @param engineFactory         Builds the engine described by a configuration.
+     */
+    @VisibleForTesting
+    LazyConfigTracer(final Supplier<TracingConfiguration> configurationSupplier, final Duration reloadInterval,
+                     final Duration drainPeriod, final Function<TracingConfiguration, TracingEngine> engineFactory) {
+        if (reloadInterval.isNegative() || reloadInterval.isZero()) {
+            throw new IllegalArgumentException("The reload interval must be positive: " + reloadInterval);
+        }
+        if (drainPeriod.isNegative()) {
+            throw new IllegalArgumentException("The drain period must not be negative: " + drainPeriod);
+        }
         this.tracingConfigurationSupplier = configurationSupplier;
-        oldEngine = getEngine();
-        oldConfiguration = configurationSupplier.get();
+        this.drainNanos = drainPeriod.toNanos();
+        this.engineFactory = engineFactory;
+        final TracingConfiguration config = configurationSupplier.get();
+        TracingEngine initial;
+        try {
+            initial = engineFactory.apply(config);
+        } catch (final RuntimeException e) {
+            logger.warn("Could not start the tracer with configuration {}, defaulting to Noop", config, e);
+            initial = new NoopTracingEngine();
+        }
+        this.configuration = config;
+        this.engine = initial;
+        logger.debug("Starting tracer with {} engine", config.activeEngine);
+
+        final long interval = reloadInterval.toNanos();
+        final WeakReference<LazyConfigTracer> tracer = new WeakReference<>(this);
+        final AtomicReference<ScheduledFuture<?>> scheduled = new AtomicReference<>();
+        scheduled.set(SCHEDULER.scheduleWithFixedDelay(() -> runScheduled(tracer, scheduled),
+                interval, interval, TimeUnit.NANOSECONDS));
+        this.scheduledReload = scheduled.get();
+    }
+
+    /**
+     * Checks the configuration and, if it has changed, builds a new engine and swaps it in. This is called
+     * periodically by the scheduler, but can also be called to apply a configuration change immediately. If the
+     * configuration cannot be loaded or the engine cannot be built, the engine in use is kept.
+     */
+    public synchronized void reload() {
+        final TracingConfiguration config = tracingConfigurationSupplier.get();
+        if (config == null || config.equals(configuration)) {
+            logger.trace("Tracing Configuration hasn't changed. Will not change tracer.");
+            return;
+        }
+        if (reconfigure(config)) {
+            return;
+        }
+        final TracingEngine newEngine = engineFactory.apply(config);
+        final TracingEngine replaced = engine;
+        final TracingEngine previouslyDraining = drainingEngine;
+        drainingEngine = replaced;
+        configuration = config;
+        engine = newEngine;
+        logger.debug("Starting tracer with {} engine", config.activeEngine);
+
+        if (previouslyDraining != null) {
+            SCHEDULER.execute(() -> closeEngine(previouslyDraining));
+        }
+        SCHEDULER.schedule(() -> endDrain(replaced), drainNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Applies a new configuration to the engine in use without replacing it, which is possible when both the
+     * previous and the new configuration are for Jaeger and differ only in settings that {@link
+     * JaegerTracingEngine#reconfigure(JaegerConfiguration)} can change.
+     *
+     * @param config The new configuration.
+     * @return true if the engine was reconfigured, false if a new engine must be built.
+     */
+    private boolean reconfigure(final TracingConfiguration config) {
+        final TracingConfiguration previous = configuration;
+        if (!(engine instanceof JaegerTracingEngine) || previous == null
+                || config.activeEngine != Engines.JAEGER || previous.activeEngine != Engines.JAEGER
+                || config.jaegerConfiguration == null || previous.jaegerConfiguration == null) {
+            return false;
+        }
+        final JaegerConfiguration cfg = config.jaegerConfiguration;
+        final JaegerConfiguration previousCfg = previous.jaegerConfiguration;
+        if (!Objects.equals(cfg.ip, previousCfg.ip) || !Objects.equals(cfg.processName, previousCfg.processName)
+                || cfg.agentPort != previousCfg.agentPort
+                || cfg.cacheMaintenanceIntervalInMillis != previousCfg.cacheMaintenanceIntervalInMillis
+                || !Objects.equals(cfg.spillDirectory, previousCfg.spillDirectory)
+                || cfg.spillSegmentSizeInBytes != previousCfg.spillSegmentSizeInBytes
+                || cfg.spillMaxSegments != previousCfg.spillMaxSegments
+                || cfg.reporterQueueSize != previousCfg.reporterQueueSize
+                || cfg.reporterBatchSize != previousCfg.reporterBatchSize
+                || cfg.reporterFlushIntervalInMillis != previousCfg.reporterFlushIntervalInMillis
+                || cfg.overflowPolicy != previousCfg.overflowPolicy
+                || cfg.overflowBlockTimeoutInMillis != previousCfg.overflowBlockTimeoutInMillis
+                || cfg.clockResyncIntervalInMillis != previousCfg.clockResyncIntervalInMillis
+                || cfg.coarseClockTickInMicros != previousCfg.coarseClockTickInMicros
+                || cfg.tailSampling != previousCfg.tailSampling
+                || cfg.tailMaxBufferedSpans != previousCfg.tailMaxBufferedSpans
+                || cfg.tailEvictionPolicy != previousCfg.tailEvictionPolicy) {
+            return false;
+        }
+        try {
+            final OperationRules rules = OperationRules.compile(config.operationRules);
+            final SpanAggregation aggregation = SpanAggregation.compile(config.spanAggregation);
+            ((JaegerTracingEngine) engine).reconfigure(cfg);
+            ((JaegerTracingEngine) engine).setOperationRules(rules);
+            ((JaegerTracingEngine) engine).setSpanAggregation(aggregation);
+        } catch (final RuntimeException e) {
+            logger.warn("Could not reconfigure the tracer with configuration {}, building a new one", config, e);
+            return false;
+        }
+        configuration = config;
+        logger.debug("Reconfigured Jaeger tracer: samplingRate={}, cacheMaxSize={}, cacheDurationInMinutes={}",
+                cfg.sampleRate, cfg.cacheMaxSize, cfg.cacheDurationInMinutes);
+        return true;
+    }
+
+    /**
+     * Ends the drain period of a replaced engine and closes it.
+     *
+     * @param replaced The replaced engine.
+     */
+    private void endDrain(final TracingEngine replaced) {
+        synchronized (this) {
+            if (drainingEngine != replaced) {
+                // A later configuration change already closed it.
+                return;
+            }
+            drainingEngine = null;
+        }
+        closeEngine(replaced);
+    }
 
+    /**
+     * Stops checking the configuration and closes the engine in use and the one that is draining, if any. This
+     * tracer should not be used afterwards.
+     */
+    @Override
+    public void close() {
+        scheduledReload.cancel(false);
+        final TracingEngine draining;
+        synchronized (this) {
+            draining = drainingEngine;
+            drainingEngine = null;
+        }
+        if (draining != null) {
+            closeEngine(draining);
+        }
+        closeEngine(engine);
     }
 
     /**
-     * Creates a callable that will reload the configuration file and return a new engine.
+     * Closes an engine if it holds resources, logging instead of throwing any failure.
      *
-     * @return The callable returning a new engine.
+     * @param toClose The engine.
      */
-    private Callable<? extends TracingEngine> reloadEngine() {
-        return () -> {
-            final TracingConfiguration config = tracingConfigurationSupplier.get();
-            if (config.equals(oldConfiguration)) {
-                logger.info("Tracing Configuration hasn't changed. Will not change tracer.");
-                return oldEngine;
-            } else {
-                TracingEngine engine = null;
-                switch (config.activeEngine) {
-                    case JAEGER:
-                        final JaegerConfiguration cfg = config.jaegerConfiguration;
-                        engine = new JaegerTracingEngine.Builder().fromConfig(cfg).build();
-                        logger.debug("Jaeger Tracer configuration = samplingRate={}, cacheMaxSize={}, cacheDurationInMinutes={}, processName={} and IP={}"
-                                ,cfg.sampleRate, cfg.cacheMaxSize, cfg.cacheDurationInMinutes, cfg.processName, cfg.ip);
-                        break;
-                    case NOOP:
-                        engine = new NoopTracingEngine();
-                        break;
-                    case LOGGER:
-                        engine = new LoggingTracingEngine();
-                        break;
-                    default:
-                        logger.warn("Config is unknow, defaulting to Logging");
-                        engine = new NoopTracingEngine();
-                }
-                oldConfiguration = config;
-                oldEngine = engine;
-                logger.debug("Starting tracer with {} engine", oldConfiguration.activeEngine);
-                return engine;
+    private static void closeEngine(final TracingEngine toClose) {
+        if (toClose instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) toClose).close();
+            } catch (final Exception e) {
+                logger.warn("Could not close the replaced tracer.", e);
             }
-        };
+        }
+    }
+
+    /**
+     * Builds the engine described by a configuration.
+     *
+     * @param config The configuration.
+     * @return The new engine.
+     */
+    private static TracingEngine createEngine(final TracingConfiguration config) {
+        switch (config.activeEngine) {
+            case JAEGER:
+                final JaegerConfiguration cfg = config.jaegerConfiguration;
+                logger.debug("Jaeger Tracer configuration = samplingRate={}, cacheMaxSize={}, cacheDurationInMinutes={}, processName={} and IP={}"
+                        ,cfg.sampleRate, cfg.cacheMaxSize, cfg.cacheDurationInMinutes, cfg.processName, cfg.ip);
+                final OperationRules rules = OperationRules.compile(config.operationRules);
+                final SpanAggregation aggregation = SpanAggregation.compile(config.spanAggregation);
+                final JaegerTracingEngine jaegerEngine = new JaegerTracingEngine.Builder().fromConfig(cfg).build();
+                jaegerEngine.setOperationRules(rules);
+                jaegerEngine.setSpanAggregation(aggregation);
+                return jaegerEngine;
+            case NOOP:
+                return new NoopTracingEngine();
+            case LOGGER:
+                return new LoggingTracingEngine();
+            case METRICS:
+                final MetricsConfiguration metricsCfg = config.metricsConfiguration == null
+                        ? new MetricsConfiguration() : config.metricsConfiguration;
+                return new MetricsTracingEngine.Builder().fromConfig(metricsCfg).build();
+            default:
+                logger.warn("Config is unknow, defaulting to Noop");
+                return new NoopTracingEngine();
+        }
     }
 
     /**
@@ -130,63 +372,181 @@ public class LazyConfigTracer implements TracingEngine {
      * @return the available engine.
      */
     private TracingEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gets the engine that knows the trace of an eventId, which is the engine in use unless the trace was started by
+     * the engine that is draining.
+     *
+     * @param eventId The application specific ID.
+     * @return the engine for the eventId.
+     */
+    private TracingEngine getEngine(final String eventId) {
+        final TracingEngine current = engine;
+        final TracingEngine draining = drainingEngine;
+        if (draining == null || eventId == null || current.traceHasStarted(eventId)
+                || !draining.traceHasStarted(eventId)) {
+            return current;
+        }
+        return draining;
+    }
+
+    /**
+     * Gets the engine that has a span active in the current thread, which is the engine in use unless only the engine
+     * that is draining has one.
+     *
+     * @return the engine for the current thread.
+     */
+    private TracingEngine activeEngine() {
+        final TracingEngine current = engine;
+        final TracingEngine draining = drainingEngine;
+        if (draining == null || current.isActive() || !draining.isActive()) {
+            return current;
+        }
+        return draining;
+    }
+
+    /**
+     * Runs a scheduled configuration check, or cancels it if the tracer that owned it is gone.
+     *
+     * @param tracer    The tracer whose configuration is checked.
+     * @param scheduled The scheduled task.
+     */
+    private static void runScheduled(final WeakReference<LazyConfigTracer> tracer,
+                                     final AtomicReference<ScheduledFuture<?>> scheduled) {
+        final LazyConfigTracer current = tracer.get();
+        if (current == null) {
+            final ScheduledFuture<?> future = scheduled.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+            return;
+        }
         try {
-            return engine.get("", reloadEngine());
-        } catch (final ExecutionException e) {
-            return new NoopTracingEngine();
+            current.reload();
+        } catch (final RuntimeException e) {
+            // Letting the exception through would stop every future check of this tracer.
+            logger.warn("Could not reload the tracing configuration, keeping the current tracer.", e);
         }
     }
 
+    /**
+     * Creates the scheduler shared by the instances of this class.
+     *
+     * @return The scheduler.
+     */
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "tracing-config-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                                 final String description) {
-        return getEngine().addToTraceOpenPromise(toTraceAsync, object, description);
+        return activeEngine().addToTraceOpenPromise(toTraceAsync, object, description);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description) {
+        return activeEngine().addToTraceOpenPromise(toTraceAsync, object, description);
     }
 
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object, final String description) {
-        return getEngine().addToTraceOpenFuture(toTraceAsync, object, description);
+        return activeEngine().addToTraceOpenFuture(toTraceAsync, object, description);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description) {
+        return activeEngine().addToTraceOpenFuture(toTraceAsync, object, description);
     }
 
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description) {
-        getEngine().addToTraceOpen(toTraceAsync, object, description);
+        activeEngine().addToTraceOpen(toTraceAsync, object, description);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description) {
+        activeEngine().addToTraceOpen(toTraceAsync, object, description);
     }
 
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description) {
-        return getEngine().addToTraceOpen(toTraceAsync, value, description);
+        return activeEngine().addToTraceOpen(toTraceAsync, value, description);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description) {
+        return activeEngine().addToTraceOpen(toTraceAsync, value, description);
     }
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                                 final String description, final String eventId) {
-        return getEngine().addToTraceOpenPromise(toTraceAsync, object, description, eventId);
+        return getEngine(eventId).addToTraceOpenPromise(toTraceAsync, object, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description, final String eventId) {
+        return getEngine(eventId).addToTraceOpenPromise(toTraceAsync, object, description, eventId);
     }
 
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object, final String description,
                                                          final String eventId) {
-        return getEngine().addToTraceOpenFuture(toTraceAsync, object, description, eventId);
+        return getEngine(eventId).addToTraceOpenFuture(toTraceAsync, object, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description,
+                                                         final String eventId) {
+        return getEngine(eventId).addToTraceOpenFuture(toTraceAsync, object, description, eventId);
     }
 
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                                final String eventId) {
-        this.getEngine().addToTraceOpen(toTraceAsync, object, description, eventId);
+        getEngine(eventId).addToTraceOpen(toTraceAsync, object, description, eventId);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final String eventId) {
+        getEngine(eventId).addToTraceOpen(toTraceAsync, object, description, eventId);
     }
 
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                                 final String eventId) {
-        return this.getEngine().addToTraceOpen(toTraceAsync, value, description, eventId);
+        return getEngine(eventId).addToTraceOpen(toTraceAsync, value, description, eventId);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final String eventId) {
+        return getEngine(eventId).addToTraceOpen(toTraceAsync, value, description, eventId);
     }
 
     @Override
     public void closeOpen(final Object object) {
         this.getEngine().closeOpen(object);
+        final TracingEngine draining = drainingEngine;
+        if (draining != null) {
+            draining.closeOpen(object);
+        }
     }
 
     @Override
@@ -195,6 +555,12 @@ public class LazyConfigTracer implements TracingEngine {
         return this.getEngine().addToTraceOpenPromise(toTraceAsync, object, description, context);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description, final TraceContext context) {
+        return this.getEngine().addToTraceOpenPromise(toTraceAsync, object, description, context);
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object, final String description,
@@ -202,65 +568,128 @@ public class LazyConfigTracer implements TracingEngine {
         return this.getEngine().addToTraceOpenFuture(toTraceAsync, object, description, context);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description,
+                                                         final TraceContext context) {
+        return this.getEngine().addToTraceOpenFuture(toTraceAsync, object, description, context);
+    }
+
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                                final TraceContext context) {
         this.getEngine().addToTraceOpen(toTraceAsync, object, description, context);
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final TraceContext context) {
+        this.getEngine().addToTraceOpen(toTraceAsync, object, description, context);
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                                 final TraceContext context) {
         return this.getEngine().addToTraceOpen(toTraceAsync, value, description, context);
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final TraceContext context) {
+        return this.getEngine().addToTraceOpen(toTraceAsync, value, description, context);
+    }
+
     @Override
     public <R> R newProcess(final Supplier<R> toTrace, final String description, final TraceContext context) {
         return this.getEngine().newProcess(toTrace, description, context);
     }
 
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        return this.getEngine().newProcess(toTrace, description, context);
+    }
+
     @Override
     public void newProcess(final Runnable toTrace, final String description, final TraceContext context) {
         this.getEngine().newProcess(toTrace, description, context);
     }
 
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        this.getEngine().newProcess(toTrace, description, context);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                             final TraceContext context) {
         return this.getEngine().newProcessPromise(toTrace, description, context);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                            final TraceContext context) {
+        return this.getEngine().newProcessPromise(toTrace, description, context);
+    }
+
     @Override
     public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
                                                      final String description, final TraceContext context) {
         return this.getEngine().newProcessFuture(toTrace, description, context);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                     final Supplier<String> description, final TraceContext context) {
+        return this.getEngine().newProcessFuture(toTrace, description, context);
+    }
+
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description, final TraceContext context) {
         return this.getEngine().addToTrace(toTrace, description, context);
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        return this.getEngine().addToTrace(toTrace, description, context);
+    }
+
     @Override
     public void addToTrace(final Runnable toTrace, final String description, final TraceContext context) {
         this.getEngine().addToTrace(toTrace, description, context);
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        this.getEngine().addToTrace(toTrace, description, context);
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final String description,
                                                     final TraceContext context) {
         return this.getEngine().addToTraceAsync(toTraceAsync, description, context);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final Supplier<String> description,
+                                                    final TraceContext context) {
+        return this.getEngine().addToTraceAsync(toTraceAsync, description, context);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
                                             final TraceContext context) {
         return this.getEngine().addToTracePromise(toTraceAsync, description, context);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                            final TraceContext context) {
+        return this.getEngine().addToTracePromise(toTraceAsync, description, context);
+    }
+
     @Override
     public Map<String, String> serializeContext() {
-        return this.getEngine().serializeContext();
+        return activeEngine().serializeContext();
     }
 
     @Override
@@ -268,14 +697,26 @@ public class LazyConfigTracer implements TracingEngine {
         return this.getEngine().deserializeContext(headers);
     }
 
+    @Override
+    public int serializeContext(final ByteBuffer buffer) {
+        return activeEngine().serializeContext(buffer);
+    }
+
+    @Override
+    public TraceContext deserializeContext(final ByteBuffer buffer) {
+        return this.getEngine().deserializeContext(buffer);
+    }
+
     @Override
     public TraceContext currentContext() {
-        return this.getEngine().currentContext();
+        return activeEngine().currentContext();
     }
 
     @Override
     public TraceContext currentContextforObject(final Object obj) {
-        return this.getEngine().currentContextforObject(obj);
+        final TraceContext context = this.getEngine().currentContextforObject(obj);
+        final TracingEngine draining = drainingEngine;
+        return context != null || draining == null ? context : draining.currentContextforObject(obj);
     }
 
     @Override
@@ -283,44 +724,84 @@ public class LazyConfigTracer implements TracingEngine {
         return this.getEngine().newTrace(toTrace, description);
     }
 
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        return this.getEngine().newTrace(toTrace, description);
+    }
+
     @Override
     public void newTrace(final Runnable toTrace, final String description) {
         this.getEngine().newTrace(toTrace, description);
     }
 
+    @Override
+    public void newTrace(final Runnable toTrace, final Supplier<String> description) {
+        this.getEngine().newTrace(toTrace, description);
+    }
+
     @Override
     public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final String description) {
         return this.getEngine().newTraceAsync(toTraceAsync, description);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final Supplier<String> description) {
+        return this.getEngine().newTraceAsync(toTraceAsync, description);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description) {
         return this.getEngine().newTracePromise(toTraceAsync, description);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        return this.getEngine().newTracePromise(toTraceAsync, description);
+    }
+
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description) {
-        return this.getEngine().addToTrace(toTrace, description);
+        return activeEngine().addToTrace(toTrace, description);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        return activeEngine().addToTrace(toTrace, description);
     }
 
     @Override
     public void addToTrace(final Runnable toTrace, final String description) {
-        this.getEngine().addToTrace(toTrace, description);
+        activeEngine().addToTrace(toTrace, description);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description) {
+        activeEngine().addToTrace(toTrace, description);
     }
 
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final String description) {
-        return this.getEngine().addToTraceAsync(toTraceAsync, description);
+        return activeEngine().addToTraceAsync(toTraceAsync, description);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final Supplier<String> description) {
+        return activeEngine().addToTraceAsync(toTraceAsync, description);
     }
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description) {
-        return this.getEngine().addToTracePromise(toTraceAsync, description);
+        return activeEngine().addToTracePromise(toTraceAsync, description);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        return activeEngine().addToTracePromise(toTraceAsync, description);
     }
 
     @Override
     public boolean isActive() {
-        return getEngine().isActive();
+        return activeEngine().isActive();
     }
 
     @Override
@@ -328,73 +809,137 @@ public class LazyConfigTracer implements TracingEngine {
         return this.getEngine().newTrace(toTrace, description, eventId);
     }
 
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return this.getEngine().newTrace(toTrace, description, eventId);
+    }
+
     @Override
     public void newTrace(final Runnable toTrace, final String description, final String eventId) {
         this.getEngine().newTrace(toTrace, description, eventId);
     }
 
+    @Override
+    public void newTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        this.getEngine().newTrace(toTrace, description, eventId);
+    }
+
     @Override
     public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final String description,
                                                   final String eventId) {
         return this.getEngine().newTraceAsync(toTraceAsync, description, eventId);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final Supplier<String> description,
+                                                  final String eventId) {
+        return this.getEngine().newTraceAsync(toTraceAsync, description, eventId);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description, final String eventId) {
         return this.getEngine().newTracePromise(toTraceAsync, description, eventId);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description, final String eventId) {
+        return this.getEngine().newTracePromise(toTraceAsync, description, eventId);
+    }
+
     @Override
     public <R> R newProcess(final Supplier<R> toTrace, final String description, final String eventId) {
-        return this.getEngine().newProcess(toTrace, description, eventId);
+        return getEngine(eventId).newProcess(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return getEngine(eventId).newProcess(toTrace, description, eventId);
     }
 
     @Override
     public void newProcess(final Runnable toTrace, final String description, final String eventId) {
-        this.getEngine().newProcess(toTrace, description, eventId);
+        getEngine(eventId).newProcess(toTrace, description, eventId);
+    }
+
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        getEngine(eventId).newProcess(toTrace, description, eventId);
     }
 
     @Override
     public <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
                                                   final String description, final String eventId) {
-        return this.getEngine().newProcessFuture(toTrace, description, eventId);
+        return getEngine(eventId).newProcessFuture(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                  final Supplier<String> description, final String eventId) {
+        return getEngine(eventId).newProcessFuture(toTrace, description, eventId);
     }
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                             final String eventId) {
-        return this.getEngine().newProcessPromise(toTrace, description, eventId);
+        return getEngine(eventId).newProcessPromise(toTrace, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                            final String eventId) {
+        return getEngine(eventId).newProcessPromise(toTrace, description, eventId);
     }
 
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description, final String eventId) {
-        return this.getEngine().addToTrace(toTrace, description, eventId);
+        return getEngine(eventId).addToTrace(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return getEngine(eventId).addToTrace(toTrace, description, eventId);
     }
 
     @Override
     public void addToTrace(final Runnable toTrace, final String description, final String eventId) {
-        this.getEngine().addToTrace(toTrace, description, eventId);
+        getEngine(eventId).addToTrace(toTrace, description, eventId);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        getEngine(eventId).addToTrace(toTrace, description, eventId);
     }
 
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final String description,
                                                     final String eventId) {
-        return this.getEngine().addToTraceAsync(toTraceAsync, description, eventId);
+        return getEngine(eventId).addToTraceAsync(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync, final Supplier<String> description,
+                                                    final String eventId) {
+        return getEngine(eventId).addToTraceAsync(toTraceAsync, description, eventId);
     }
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description, final String eventId) {
-        return this.getEngine().addToTracePromise(toTraceAsync, description, eventId);
+        return getEngine(eventId).addToTracePromise(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description, final String eventId) {
+        return getEngine(eventId).addToTracePromise(toTraceAsync, description, eventId);
     }
 
     @Override
     public TraceContext currentContextforId(final String eventId) {
-        return this.getEngine().currentContextforId(eventId);
+        return getEngine(eventId).currentContextforId(eventId);
     }
 
     @Override
     public boolean traceHasStarted(final String eventId) {
-        return this.getEngine().traceHasStarted(eventId);
+        return getEngine(eventId).traceHasStarted(eventId);
     }
 
     @Override
@@ -404,6 +949,6 @@ public class LazyConfigTracer implements TracingEngine {
 
     @Override
     public Span currentSpan() {
-        return this.getEngine().currentSpan();
+        return activeEngine().currentSpan();
     }
 }
@@ -18,18 +18,35 @@ package com.feedzai.commons.tracing.util;
 import com.feedzai.commons.tracing.engine.NoopTracingEngine;
 import com.feedzai.commons.tracing.engine.TracingEngine;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+
 /**
  * Singleton that holds an engine of the tracing engine to be shared.
  *
+ * <p>The engine is held by a {@link MutableCallSite} whose target returns it as a constant. The JIT compiler treats
+ * the engine returned by {@link #instance()} as a constant in the code it compiles, so calls on it are devirtualized
+ * and can be inlined no matter how many engine implementations were loaded, and the calls on a {@link
+ * NoopTracingEngine} reduce to calling the traced operation. {@link #init(TracingEngine)} replaces the target, which
+ * deoptimizes the code that depended on the previous engine, so it should only be called when the engine actually
+ * changes.
+ *
  * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
  */
 public class TraceUtil {
 
 
     /**
-     * The tracer engine.
+     * The call site whose target returns the tracer engine.
+     */
+    private static final MutableCallSite ENGINE = new MutableCallSite(constant(new NoopTracingEngine()));
+
+    /**
+     * Invokes the target of {@link #ENGINE}. Being a static final method handle, the JIT compiler inlines its
+     * invocations.
      */
-    private static volatile TracingEngine engine = new NoopTracingEngine();
+    private static final MethodHandle ENGINE_INVOKER = ENGINE.dynamicInvoker();
 
     private TraceUtil(){}
 
@@ -38,8 +55,9 @@ public class TraceUtil {
      *
      * @param engine The engine.
      */
-    public static void init(final TracingEngine engine) {
-        TraceUtil.engine = engine;
+    public static synchronized void init(final TracingEngine engine) {
+        ENGINE.setTarget(constant(engine));
+        MutableCallSite.syncAll(new MutableCallSite[]{ENGINE});
     }
 
     /**
@@ -48,7 +66,22 @@ public class TraceUtil {
      * @return the engine.
      */
     public static TracingEngine instance() {
-        return engine;
+        try {
+            return (TracingEngine) ENGINE_INVOKER.invokeExact();
+        } catch (final Throwable e) {
+            // The target is a constant method handle, which cannot throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Builds a method handle that returns an engine.
+     *
+     * @param engine The engine.
+     * @return The method handle.
+     */
+    private static MethodHandle constant(final TracingEngine engine) {
+        return MethodHandles.constant(TracingEngine.class, engine);
     }
 
 }
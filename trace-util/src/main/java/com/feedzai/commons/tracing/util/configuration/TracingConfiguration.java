@@ -17,8 +17,14 @@
 package com.feedzai.commons.tracing.util.configuration;
 
 import com.feedzai.commons.tracing.engine.configuration.JaegerConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MetricsConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.OperationRule;
+import com.feedzai.commons.tracing.engine.configuration.SpanAggregationConfiguration;
 import com.feedzai.commons.tracing.util.Engines;
 
+import java.util.List;
+import java.util.Objects;
+
 /**
  * Class that holds the configuration for for tracing.
  *
@@ -36,11 +42,51 @@ public class TracingConfiguration {
      */
     public JaegerConfiguration jaegerConfiguration;
 
+    /**
+     * The configuration parameters for {@link com.feedzai.commons.tracing.engine.MetricsTracingEngine}, which uses
+     * the defaults if {@code null}.
+     */
+    public MetricsConfiguration metricsConfiguration;
+
+    /**
+     * The rules that decide, by description, which operations are traced and at which rate. Operations that no rule
+     * matches are always traced.
+     */
+    public List<OperationRule> operationRules;
+
+    /**
+     * The aggregation of repeated child spans, which is disabled if {@code null}.
+     */
+    public SpanAggregationConfiguration spanAggregation;
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final TracingConfiguration that = (TracingConfiguration) o;
+        return activeEngine == that.activeEngine && Objects.equals(jaegerConfiguration, that.jaegerConfiguration)
+                && Objects.equals(metricsConfiguration, that.metricsConfiguration)
+                && Objects.equals(operationRules, that.operationRules)
+                && Objects.equals(spanAggregation, that.spanAggregation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(activeEngine, jaegerConfiguration, metricsConfiguration, operationRules, spanAggregation);
+    }
+
     @Override
     public String toString() {
         return "TracingConfiguration{" +
                 "activeEngine=" + activeEngine +
                 ", jaegerConfiguration=" + jaegerConfiguration +
+                ", metricsConfiguration=" + metricsConfiguration +
+                ", operationRules=" + operationRules +
+                ", spanAggregation=" + spanAggregation +
                 '}';
     }
 }
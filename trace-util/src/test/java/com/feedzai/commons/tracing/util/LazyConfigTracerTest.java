@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.util;
+
+import com.feedzai.commons.tracing.api.TraceContext;
+import com.feedzai.commons.tracing.engine.NoopTracingEngine;
+import com.feedzai.commons.tracing.engine.TracingEngine;
+import com.feedzai.commons.tracing.engine.configuration.JaegerConfiguration;
+import com.feedzai.commons.tracing.util.configuration.TracingConfiguration;
+import io.jaegertracing.internal.JaegerSpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class LazyConfigTracerTest {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private final AtomicReference<TracingConfiguration> current = new AtomicReference<>(config(Engines.NOOP));
+
+    private final List<String> supplierThreads = new CopyOnWriteArrayList<>();
+
+    private final List<RecordingEngine> engines = new CopyOnWriteArrayList<>();
+
+    private final Function<TracingConfiguration, TracingEngine> factory = config -> {
+        final RecordingEngine engine = new RecordingEngine();
+        engines.add(engine);
+        return engine;
+    };
+
+    @Test
+    public void testScheduledReloadSwapsTheEngineOffTheCallerThread() throws InterruptedException {
+        final LazyConfigTracer tracer = new LazyConfigTracer(this::load, Duration.ofMillis(10), Duration.ZERO,
+                factory);
+        assertEquals(1, supplierThreads.size());
+        assertEquals(Thread.currentThread().getName(), supplierThreads.get(0));
+
+        current.set(config(Engines.LOGGER));
+        awaitTrue(() -> engines.size() == 2 && engines.get(0).closed);
+
+        tracer.addToTraceOpen(() -> { }, this, "Do Stuff", "event");
+        assertTrue(engines.get(0).traced.isEmpty());
+        assertEquals(1, engines.get(1).traced.size());
+        assertEquals(Thread.currentThread().getName(), supplierThreads.get(0));
+        for (final String thread : supplierThreads.subList(1, supplierThreads.size())) {
+            assertEquals("tracing-config-reload", thread);
+        }
+        tracer.close();
+    }
+
+    @Test
+    public void testEventIdsResolveToTheReplacedEngineWhileItDrains() throws InterruptedException {
+        final LazyConfigTracer tracer = new LazyConfigTracer(this::load, NEVER, Duration.ofMillis(500), factory);
+        final RecordingEngine replaced = engines.get(0);
+        replaced.started.add("old event");
+
+        current.set(config(Engines.LOGGER));
+        tracer.reload();
+        final RecordingEngine engine = engines.get(1);
+
+        assertTrue(tracer.traceHasStarted("old event"));
+        tracer.addToTraceOpen(() -> { }, this, "Do Stuff", "old event");
+        tracer.addToTraceOpen(() -> { }, this, "Do Stuff", "new event");
+        assertEquals(1, replaced.traced.size());
+        assertTrue(replaced.traced.contains("old event"));
+        assertEquals(1, engine.traced.size());
+        assertTrue(engine.traced.contains("new event"));
+        assertFalse(replaced.closed);
+
+        awaitTrue(() -> replaced.closed);
+        assertFalse(tracer.traceHasStarted("old event"));
+        tracer.addToTraceOpen(() -> { }, this, "Do Stuff", "old event");
+        assertEquals(1, replaced.traced.size());
+        assertFalse(engine.closed);
+
+        tracer.close();
+        assertTrue(engine.closed);
+    }
+
+    @Test
+    public void testSecondChangeClosesTheDrainingEngine() throws InterruptedException {
+        final LazyConfigTracer tracer = new LazyConfigTracer(this::load, NEVER, NEVER, factory);
+
+        current.set(config(Engines.LOGGER));
+        tracer.reload();
+        assertFalse(engines.get(0).closed);
+
+        current.set(config(Engines.METRICS));
+        tracer.reload();
+        awaitTrue(() -> engines.get(0).closed);
+        assertFalse(engines.get(1).closed);
+
+        tracer.close();
+        assertTrue(engines.get(1).closed);
+        assertTrue(engines.get(2).closed);
+    }
+
+    @Test
+    public void testUnchangedConfigurationKeepsTheEngine() {
+        final LazyConfigTracer tracer = new LazyConfigTracer(this::load, NEVER, NEVER, factory);
+
+        current.set(config(Engines.NOOP));
+        tracer.reload();
+
+        assertEquals(2, supplierThreads.size());
+        assertEquals(1, engines.size());
+        tracer.close();
+    }
+
+    @Test
+    public void testSampleRateChangeReconfiguresInPlace() {
+        current.set(jaeger("localhost", 0));
+        final LazyConfigTracer tracer = new LazyConfigTracer(this::load, NEVER, NEVER);
+        final Tracer initial = tracer.getTracer();
+
+        current.set(jaeger("localhost", 1));
+        tracer.reload();
+        assertSame(initial, tracer.getTracer());
+
+        current.set(jaeger("127.0.0.1", 1));
+        tracer.reload();
+        assertNotSame(initial, tracer.getTracer());
+        tracer.close();
+    }
+
+    @Test
+    public void testContextsAreExtractedByTheRebuiltEngine() {
+        current.set(jaeger("localhost", 1));
+        final LazyConfigTracer tracer = new LazyConfigTracer(this::load, NEVER, Duration.ZERO);
+        current.set(jaeger("127.0.0.1", 1));
+        tracer.reload();
+
+        final AtomicReference<Map<String, String>> headers = new AtomicReference<>();
+        tracer.newTrace(() -> headers.set(tracer.serializeContext()), "Do Stuff");
+        final JaegerSpanContext sent = (JaegerSpanContext) tracer.getTracer().extract(Format.Builtin.TEXT_MAP,
+                new TextMapExtractAdapter(headers.get()));
+
+        final TraceContext<?> received = tracer.deserializeContext(headers.get());
+        assertEquals(sent.getTraceIdLow(), ((JaegerSpanContext) received.get()).getTraceIdLow());
+        assertEquals(sent.getSpanId(), ((JaegerSpanContext) received.get()).getSpanId());
+        tracer.close();
+    }
+
+    private TracingConfiguration load() {
+        supplierThreads.add(Thread.currentThread().getName());
+        return current.get();
+    }
+
+    private static TracingConfiguration config(final Engines engine) {
+        final TracingConfiguration configuration = new TracingConfiguration();
+        configuration.activeEngine = engine;
+        return configuration;
+    }
+
+    private static TracingConfiguration jaeger(final String ip, final double sampleRate) {
+        final JaegerConfiguration jaegerConfiguration = new JaegerConfiguration();
+        jaegerConfiguration.ip = ip;
+        jaegerConfiguration.processName = "test";
+        jaegerConfiguration.sampleRate = sampleRate;
+        jaegerConfiguration.cacheMaxSize = 100;
+        jaegerConfiguration.cacheDurationInMinutes = 5;
+        final TracingConfiguration configuration = config(Engines.JAEGER);
+        configuration.jaegerConfiguration = jaegerConfiguration;
+        return configuration;
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the condition", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static class RecordingEngine extends NoopTracingEngine implements AutoCloseable {
+
+        private final Set<String> started = new CopyOnWriteArraySet<>();
+
+        private final List<String> traced = new CopyOnWriteArrayList<>();
+
+        private volatile boolean closed;
+
+        @Override
+        public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
+                                   final String eventId) {
+            traced.add(eventId);
+            toTraceAsync.run();
+        }
+
+        @Override
+        public boolean traceHasStarted(final String eventId) {
+            return started.contains(eventId);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.util;
+
+import com.feedzai.commons.tracing.engine.LoggingTracingEngine;
+import com.feedzai.commons.tracing.engine.NoopTracingEngine;
+import com.feedzai.commons.tracing.engine.TracingEngine;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TraceUtilTest {
+
+    @After
+    public void tearDown() {
+        TraceUtil.init(new NoopTracingEngine());
+    }
+
+    @Test
+    public void testInstanceReturnsTheLastInitializedEngine() {
+        final TracingEngine first = new NoopTracingEngine();
+        TraceUtil.init(first);
+        assertSame(first, TraceUtil.instance());
+
+        final TracingEngine second = new LoggingTracingEngine();
+        TraceUtil.init(second);
+        assertSame(second, TraceUtil.instance());
+    }
+
+    @Test
+    public void testInitInvalidatesCodeCompiledAgainstThePreviousEngine() throws Exception {
+        final TracingEngine first = new NoopTracingEngine();
+        TraceUtil.init(first);
+
+        // Spins long enough for the loop to be compiled with the first engine as a constant.
+        final CompletableFuture<TracingEngine> observed = CompletableFuture.supplyAsync(() -> {
+            TracingEngine engine;
+            do {
+                engine = TraceUtil.instance();
+            } while (engine == first);
+            return engine;
+        });
+        Thread.sleep(500);
+        assertFalse(observed.isDone());
+
+        final TracingEngine second = new LoggingTracingEngine();
+        TraceUtil.init(second);
+
+        assertSame(second, observed.get(10, TimeUnit.SECONDS));
+        assertSame(second, TraceUtil.instance());
+    }
+}
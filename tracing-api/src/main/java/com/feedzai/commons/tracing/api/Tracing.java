@@ -45,6 +45,19 @@ public interface Tracing {
      */
     <R> R newTrace(Supplier<R> toTrace, String description);
 
+    /**
+     * Same as {@link Tracing#newTrace(Supplier, String)}, but takes a supplier of the description so that engines can
+     * skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param <R>         The Return type of the traced code.
+     * @return Returns whatever the traced code would have returned.
+     */
+    default <R> R newTrace(Supplier<R> toTrace, Supplier<String> description) {
+        return newTrace(toTrace, description.get());
+    }
+
     /**
      * Traces operations that do not return any values.
      *
@@ -56,6 +69,17 @@ public interface Tracing {
      */
     void newTrace(Runnable toTrace, String description);
 
+    /**
+     * Same as {@link Tracing#newTrace(Runnable, String)}, but takes a supplier of the description so that engines can
+     * skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     */
+    default void newTrace(Runnable toTrace, Supplier<String> description) {
+        newTrace(toTrace, description.get());
+    }
+
     /**
      * Traces operations that are performed in the background and return a {@link CompletableFuture}, where tracing the
      * call does not trace the full execution.
@@ -70,6 +94,19 @@ public interface Tracing {
      */
     <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description);
 
+    /**
+     * Same as {@link Tracing#newTraceAsync(Supplier, String)}, but takes a supplier of the description so that engines
+     * can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param <R>          The Return type of the traced code.
+     * @return Returns the {@link CompletableFuture} the traced code would have returned.
+     */
+    default <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description) {
+        return newTraceAsync(toTraceAsync, description.get());
+    }
+
     /**
      * Traces operations that are performed in the background and return a {@link Promise}, where tracing the call does
      * not trace the full execution.
@@ -85,6 +122,20 @@ public interface Tracing {
      */
     <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, String description);
 
+    /**
+     * Same as {@link Tracing#newTracePromise(Supplier, String)}, but takes a supplier of the description so that
+     * engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param <R>          The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return Returns the {@link Promise} the traced code would've returned.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, Supplier<String> description) {
+        return newTracePromise(toTraceAsync, description.get());
+    }
+
     /**
      * Traces operations that return a value of any type. This method will add a Span to an existing trace which will
      * become a child of the currently active trace context.
@@ -99,6 +150,19 @@ public interface Tracing {
      */
     <R> R addToTrace(Supplier<R> toTrace, String description);
 
+    /**
+     * Same as {@link Tracing#addToTrace(Supplier, String)}, but takes a supplier of the description so that engines can
+     * skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param <R>         The Return type of the traced code.
+     * @return Returns whatever the traced code would have returned.
+     */
+    default <R> R addToTrace(Supplier<R> toTrace, Supplier<String> description) {
+        return addToTrace(toTrace, description.get());
+    }
+
     /**
      * Traces operations that do not return any values.
      *
@@ -110,6 +174,17 @@ public interface Tracing {
      */
     void addToTrace(Runnable toTrace, String description);
 
+    /**
+     * Same as {@link Tracing#addToTrace(Runnable, String)}, but takes a supplier of the description so that engines can
+     * skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     */
+    default void addToTrace(Runnable toTrace, Supplier<String> description) {
+        addToTrace(toTrace, description.get());
+    }
+
     /**
      * Traces operations that are performed in the background and return a {@link CompletableFuture}, where tracing the
      * call does not trace the full execution.
@@ -124,6 +199,19 @@ public interface Tracing {
      */
     <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description);
 
+    /**
+     * Same as {@link Tracing#addToTraceAsync(Supplier, String)}, but takes a supplier of the description so that
+     * engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param <R>          The Return type of the traced code.
+     * @return Returns the {@link CompletableFuture} the traced code would have returned.
+     */
+    default <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description) {
+        return addToTraceAsync(toTraceAsync, description.get());
+    }
+
     /**
      * Traces operations that are performed in the background and return a {@link Promise}, where tracing the call does
      * not trace the full execution.
@@ -139,6 +227,20 @@ public interface Tracing {
      */
     <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, String description);
 
+    /**
+     * Same as {@link Tracing#addToTracePromise(Supplier, String)}, but takes a supplier of the description so that
+     * engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param <R>          The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return Returns the {@link Promise} the traced code would've returned.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, Supplier<String> description) {
+        return addToTracePromise(toTraceAsync, description.get());
+    }
+
     /**
      * Returns whether or not there is a currently active span.
      *
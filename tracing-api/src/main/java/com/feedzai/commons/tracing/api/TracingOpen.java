@@ -46,6 +46,23 @@ public interface TracingOpen extends Tracing {
     <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                       final String description);
 
+    /**
+     * Same as {@link TracingOpen#addToTraceOpenPromise(Supplier, Object, String)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param <P>          The class implementing {@link Promise}
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @return What was to be returned by the traced code.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                              final Supplier<String> description) {
+        return addToTraceOpenPromise(toTraceAsync, object, description.get());
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -64,6 +81,23 @@ public interface TracingOpen extends Tracing {
                                                   final Object object,
                                                   final String description);
 
+    /**
+     * Same as {@link TracingOpen#addToTraceOpenFuture(Supplier, Object, String)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                          final Object object,
+                                                          final Supplier<String> description) {
+        return addToTraceOpenFuture(toTraceAsync, object, description.get());
+    }
+
 
     /**
      * Begins a new span that must be finished manually in the future.
@@ -79,6 +113,19 @@ public interface TracingOpen extends Tracing {
      */
     void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description);
 
+    /**
+     * Same as {@link TracingOpen#addToTraceOpen(Runnable, Object, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync The code that should be traced.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param description  Supplies the description/name of the new context.
+     */
+    default void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description) {
+        addToTraceOpen(toTraceAsync, object, description.get());
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -94,6 +141,20 @@ public interface TracingOpen extends Tracing {
      */
     <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description);
 
+    /**
+     * Same as {@link TracingOpen#addToTraceOpen(Supplier, Object, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param value        The value.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description) {
+        return addToTraceOpen(toTraceAsync, value, description.get());
+    }
+
     /**
      * Closes a span that has been left open.
      *
@@ -53,6 +53,25 @@ public interface TracingOpenWithContext extends TracingWithContext {
                                       final String description,
                                       final TraceContext context);
 
+    /**
+     * Same as {@link TracingOpenWithContext#addToTraceOpenPromise(Supplier, Object, String, TraceContext)}, but takes a
+     * supplier of the description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param <P>          The class implementing {@link Promise}
+     * @param context      Represents the context of the current execution.
+     * @return What was to be returned by the traced code.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                              final Supplier<String> description,
+                                              final TraceContext context) {
+        return addToTraceOpenPromise(toTraceAsync, object, description.get(), context);
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -74,6 +93,25 @@ public interface TracingOpenWithContext extends TracingWithContext {
                                                   final String description,
                                                   final TraceContext context);
 
+    /**
+     * Same as {@link TracingOpenWithContext#addToTraceOpenFuture(Supplier, Object, String, TraceContext)}, but takes a
+     * supplier of the description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param context      Represents the context of the current execution.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                          final Object object,
+                                                          final Supplier<String> description,
+                                                          final TraceContext context) {
+        return addToTraceOpenFuture(toTraceAsync, object, description.get(), context);
+    }
+
 
     /**
      * Begins a new span that must be finished manually in the future.
@@ -91,6 +129,21 @@ public interface TracingOpenWithContext extends TracingWithContext {
     void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                         final TraceContext context);
 
+    /**
+     * Same as {@link TracingOpenWithContext#addToTraceOpen(Runnable, Object, String, TraceContext)}, but takes a
+     * supplier of the description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync The code that should be traced.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param description  Supplies the description/name of the new context.
+     * @param context      Represents the context of the current execution.
+     */
+    default void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                                final TraceContext context) {
+        addToTraceOpen(toTraceAsync, object, description.get(), context);
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -107,4 +160,20 @@ public interface TracingOpenWithContext extends TracingWithContext {
      */
     <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                          final TraceContext context);
+
+    /**
+     * Same as {@link TracingOpenWithContext#addToTraceOpen(Supplier, Object, String, TraceContext)}, but takes a
+     * supplier of the description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param value        The value.
+     * @param context      Represents the context of the current execution.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                 final TraceContext context) {
+        return addToTraceOpen(toTraceAsync, value, description.get(), context);
+    }
 }
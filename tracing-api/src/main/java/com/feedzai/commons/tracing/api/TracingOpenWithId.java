@@ -51,6 +51,25 @@ public interface TracingOpenWithId extends TracingWithId {
                                       final String description,
                                       final String eventId);
 
+    /**
+     * Same as {@link TracingOpenWithId#addToTraceOpenPromise(Supplier, Object, String, String)}, but takes a supplier
+     * of the description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @param <P>          The class implementing {@link Promise}
+     * @return What was to be returned by the traced code.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                              final Supplier<String> description,
+                                              final String eventId) {
+        return addToTraceOpenPromise(toTraceAsync, object, description.get(), eventId);
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -72,6 +91,25 @@ public interface TracingOpenWithId extends TracingWithId {
                                                   final String description,
                                                   final String eventId);
 
+    /**
+     * Same as {@link TracingOpenWithId#addToTraceOpenFuture(Supplier, Object, String, String)}, but takes a supplier of
+     * the description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                          final Object object,
+                                                          final Supplier<String> description,
+                                                          final String eventId) {
+        return addToTraceOpenFuture(toTraceAsync, object, description.get(), eventId);
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -88,6 +126,21 @@ public interface TracingOpenWithId extends TracingWithId {
     void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                         final String eventId);
 
+    /**
+     * Same as {@link TracingOpenWithId#addToTraceOpen(Runnable, Object, String, String)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync The code that should be traced.
+     * @param object       A uniquely identifying object that can be matched to this span and used to retrieve it when
+     *                     it is time to finish it.
+     * @param description  Supplies the description/name of the new context.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     */
+    default void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                                final String eventId) {
+        addToTraceOpen(toTraceAsync, object, description.get(), eventId);
+    }
+
     /**
      * Begins a new span that must be finished manually in the future.
      *
@@ -105,6 +158,22 @@ public interface TracingOpenWithId extends TracingWithId {
     <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                          final String eventId);
 
+    /**
+     * Same as {@link TracingOpenWithId#addToTraceOpen(Supplier, Object, String, String)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param <R>          The return type.
+     * @param toTraceAsync The code that should be traced.
+     * @param description  Supplies the description/name of the new context.
+     * @param value        The value.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                 final String eventId) {
+        return addToTraceOpen(toTraceAsync, value, description.get(), eventId);
+    }
+
     /**
      * Closes a span that has been left open.
      *
@@ -17,6 +17,10 @@
 package com.feedzai.commons.tracing.api;
 
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
@@ -49,6 +53,20 @@ public interface TracingWithContext extends Tracing {
      */
     <R> R newProcess(final Supplier<R> toTrace, final String description, final TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#newProcess(Supplier, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param context     The context that should be this span's parent
+     * @param <R>         The return type.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        return newProcess(toTrace, description.get(), context);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace.
      *
@@ -62,6 +80,18 @@ public interface TracingWithContext extends Tracing {
      */
     void newProcess(final Runnable toTrace, final String description, final TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#newProcess(Runnable, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param context     The context that should be this span's parent
+     */
+    default void newProcess(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        newProcess(toTrace, description.get(), context);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace.
      *
@@ -79,6 +109,22 @@ public interface TracingWithContext extends Tracing {
     <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                      final TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#newProcessPromise(Supplier, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param context     The context that should be this span's parent
+     * @param <R>         The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return The instrumented Promise.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                             final TraceContext context) {
+        return newProcessPromise(toTrace, description.get(), context);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace.
      *
@@ -95,6 +141,21 @@ public interface TracingWithContext extends Tracing {
     <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace, final String description,
                                               final TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#newProcessFuture(Supplier, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param context     The context that should be this span's parent
+     * @param <R>         The type returned by the future.
+     * @return The instrumented future.
+     */
+    default <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace, final Supplier<String> description,
+                                                      final TraceContext context) {
+        return newProcessFuture(toTrace, description.get(), context);
+    }
+
     /**
      * Traces operations that return a value of any type. This method will add a Span to an existing trace which will
      * become a child of passed {@link TraceContext}
@@ -113,6 +174,22 @@ public interface TracingWithContext extends Tracing {
      */
     <R> R addToTrace(Supplier<R> toTrace, String description, TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#addToTrace(Supplier, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param context     Represents the context of the current execution. Receiving this context as TraceContext, as
+     *                    opposed to a tracing specific object decouples this API from any lower level tracing API
+     *                    constructs (i.e., OpenTracing's Span or SpanContext).
+     * @param <R>         The Return type of the traced code.
+     * @return Returns whatever the traced code would have returned.
+     */
+    default <R> R addToTrace(Supplier<R> toTrace, Supplier<String> description, TraceContext context) {
+        return addToTrace(toTrace, description.get(), context);
+    }
+
     /**
      * Traces operations that do not return any values.
      *
@@ -125,6 +202,18 @@ public interface TracingWithContext extends Tracing {
      */
     void addToTrace(Runnable toTrace, String description, TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#addToTrace(Runnable, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param context     Represents the context of the current execution.
+     */
+    default void addToTrace(Runnable toTrace, Supplier<String> description, TraceContext context) {
+        addToTrace(toTrace, description.get(), context);
+    }
+
 
     /**
      * Traces operations that are performed in the background and return a {@link CompletableFuture}, where tracing the
@@ -143,6 +232,21 @@ public interface TracingWithContext extends Tracing {
     <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description,
                                              TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#addToTraceAsync(Supplier, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param context      Represents the context of the current execution.
+     * @param <R>          The Return type of the traced code.
+     * @return Returns the {@link CompletableFuture} the traced code would have returned.
+     */
+    default <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description,
+                                                     TraceContext context) {
+        return addToTraceAsync(toTraceAsync, description.get(), context);
+    }
+
     /**
      * Traces operations that are performed in the background and return a {@link Promise}, where tracing the call does
      * not trace the full execution.
@@ -161,6 +265,21 @@ public interface TracingWithContext extends Tracing {
      */
     <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, String description, TraceContext context);
 
+    /**
+     * Same as {@link TracingWithContext#addToTracePromise(Supplier, String, TraceContext)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param context      Represents the context of the current execution.
+     * @param <R>         The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return Returns the {@link Promise} the traced code would've returned.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, Supplier<String> description, TraceContext context) {
+        return addToTracePromise(toTraceAsync, description.get(), context);
+    }
+
 
     /**
      * Serializes the current context so that it can be deserialized by another service with implementation specific
@@ -178,6 +297,74 @@ public interface TracingWithContext extends Tracing {
      */
     TraceContext deserializeContext(final Map<String, String> headers);
 
+    /**
+     * Serializes the current context into a buffer, for transports that carry binary headers. The context is written
+     * at the buffer's position, which is advanced past it, and can be read back with {@link
+     * #deserializeContext(ByteBuffer)} by a process using the same engine.
+     *
+     * <p>The default implementation writes the entries of {@link #serializeContext()} as an unsigned short count
+     * followed by each key and value as an unsigned short length and its UTF-8 bytes. Engines override it with a
+     * layout that avoids the intermediate map, so the layout depends on the engine and both ends of a transport must
+     * use the same one: the Jaeger engine writes a fixed layout that this default implementation cannot read, while
+     * the engines that propagate no context write nothing and skip a context in the Jaeger layout.
+     *
+     * @param buffer The buffer the context is written to.
+     * @return The number of bytes written, 0 if there is no context to propagate.
+     * @throws BufferOverflowException If the context does not fit in the buffer's remaining bytes, in which case
+     *                                 nothing is written.
+     */
+    default int serializeContext(final ByteBuffer buffer) {
+        final Map<String, String> headers = serializeContext();
+        if (headers.isEmpty()) {
+            return 0;
+        }
+        final byte[][] encoded = new byte[headers.size() * 2][];
+        int length = Short.BYTES;
+        int i = 0;
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            encoded[i++] = header.getKey().getBytes(StandardCharsets.UTF_8);
+            encoded[i++] = header.getValue().getBytes(StandardCharsets.UTF_8);
+        }
+        for (final byte[] bytes : encoded) {
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Serialized context entries can't exceed 65535 bytes.");
+            }
+            length += Short.BYTES + bytes.length;
+        }
+        if (buffer.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        buffer.putShort((short) headers.size());
+        for (final byte[] bytes : encoded) {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+        return length;
+    }
+
+    /**
+     * Deserializes the context received from another service in a buffer written by {@link
+     * #serializeContext(ByteBuffer)} of the same engine. The context is read from the buffer's position, which is
+     * advanced past it.
+     *
+     * @param buffer The buffer holding the serialized context. A buffer without remaining bytes holds no context.
+     * @return The deserialized version of the context.
+     */
+    default TraceContext deserializeContext(final ByteBuffer buffer) {
+        final Map<String, String> headers = new HashMap<>();
+        if (buffer.hasRemaining()) {
+            final int count = buffer.getShort() & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                final byte[] key = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(key);
+                final byte[] value = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(value);
+                headers.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+            }
+        }
+        return deserializeContext(headers);
+    }
+
     /**
      * Returns the current active content.
      *
@@ -44,6 +44,20 @@ public interface TracingWithId {
      */
     <R> R newTrace(Supplier<R> toTrace, String description, String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newTrace(Supplier, String, String)}, but takes a supplier of the description so that
+     * engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     * @param <R>         The Return type of the traced code.
+     * @return Returns whatever the traced code would have returned.
+     */
+    default <R> R newTrace(Supplier<R> toTrace, Supplier<String> description, String eventId) {
+        return newTrace(toTrace, description.get(), eventId);
+    }
+
     /**
      * Traces operations that do not return any values.
      *
@@ -57,6 +71,18 @@ public interface TracingWithId {
      */
     void newTrace(Runnable toTrace, String description, String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newTrace(Runnable, String, String)}, but takes a supplier of the description so that
+     * engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     * @param description Supplies the description or name that best describes this operation.
+     */
+    default void newTrace(Runnable toTrace, Supplier<String> description, String eventId) {
+        newTrace(toTrace, description.get(), eventId);
+    }
+
 
     /**
      * Traces operations that are performed in the background and return a {@link CompletableFuture}, where tracing the
@@ -75,6 +101,21 @@ public interface TracingWithId {
     <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description,
                                            String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newTraceAsync(Supplier, String, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @param <R>          The Return type of the traced code.
+     * @return Returns the {@link CompletableFuture} the traced code would have returned.
+     */
+    default <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description,
+                                                   String eventId) {
+        return newTraceAsync(toTraceAsync, description.get(), eventId);
+    }
+
     /**
      * Traces operations that are performed in the background and return a {@link Promise}, where tracing the call does
      * not trace the full execution.
@@ -92,6 +133,21 @@ public interface TracingWithId {
      */
     <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, String description, String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newTracePromise(Supplier, String, String)}, but takes a supplier of the description
+     * so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @param <R>         The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return Returns the {@link Promise} the traced code would've returned.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, Supplier<String> description, String eventId) {
+        return newTracePromise(toTraceAsync, description.get(), eventId);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace. Similarly to {@link
      * TracingWithId#newTrace(Supplier, String, String)} this method creates a "root dependency",  meaning future spans
@@ -110,6 +166,20 @@ public interface TracingWithId {
      */
     <R> R newProcess(final Supplier<R> toTrace, final String description, final String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newProcess(Supplier, String, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     * @param <R>         The return type.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return newProcess(toTrace, description.get(), eventId);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace.
      *
@@ -123,6 +193,18 @@ public interface TracingWithId {
      */
     void newProcess(final Runnable toTrace, final String description, final String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newProcess(Runnable, String, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     */
+    default void newProcess(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        newProcess(toTrace, description.get(), eventId);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace.
      *
@@ -139,6 +221,21 @@ public interface TracingWithId {
     <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace, final String description,
                                        final String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newProcessFuture(Supplier, String, String)}, but takes a supplier of the description
+     * so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     * @param <R>         The Return type of the traced code.
+     * @return What was to be returned by the traced code.
+     */
+    default <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace, final Supplier<String> description,
+                                               final String eventId) {
+        return newProcessFuture(toTrace, description.get(), eventId);
+    }
+
     /**
      * Creates a new Span that is the root of this process's portion of the trace.
      *
@@ -155,6 +252,21 @@ public interface TracingWithId {
      */
     <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description, final String eventId);
 
+    /**
+     * Same as {@link TracingWithId#newProcessPromise(Supplier, String, String)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     The code that should be traced.
+     * @param description Supplies the description/name of the new context.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     * @param <R>         The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return What was to be returned by the traced code.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description, final String eventId) {
+        return newProcessPromise(toTrace, description.get(), eventId);
+    }
+
     /**
      * Traces operations that return a value of any type. This method will add a Span to an existing trace which will
      * become a child of the currently active trace context.
@@ -170,6 +282,20 @@ public interface TracingWithId {
      */
     <R> R addToTrace(Supplier<R> toTrace, String description, String eventId);
 
+    /**
+     * Same as {@link TracingWithId#addToTrace(Supplier, String, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     * @param <R>         The Return type of the traced code.
+     * @return Returns whatever the traced code would have returned.
+     */
+    default <R> R addToTrace(Supplier<R> toTrace, Supplier<String> description, String eventId) {
+        return addToTrace(toTrace, description.get(), eventId);
+    }
+
     /**
      * Traces operations that do not return any values.
      *
@@ -182,6 +308,18 @@ public interface TracingWithId {
      */
     void addToTrace(Runnable toTrace, String description, String eventId);
 
+    /**
+     * Same as {@link TracingWithId#addToTrace(Runnable, String, String)}, but takes a supplier of the description so
+     * that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTrace     Lambda containing the code that should be wrapped in a trace.
+     * @param description Supplies the description or name that best describes this operation.
+     * @param eventId     The ID that represents a request throughout the whole execution.
+     */
+    default void addToTrace(Runnable toTrace, Supplier<String> description, String eventId) {
+        addToTrace(toTrace, description.get(), eventId);
+    }
+
 
     /**
      * Traces operations that are performed in the background and return a {@link CompletableFuture}, where tracing the
@@ -199,6 +337,21 @@ public interface TracingWithId {
     <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description,
                                              String eventId);
 
+    /**
+     * Same as {@link TracingWithId#addToTraceAsync(Supplier, String, String)}, but takes a supplier of the description
+     * so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @param <R>          The Return type of the traced code.
+     * @return Returns the {@link CompletableFuture} the traced code would have returned.
+     */
+    default <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description,
+                                                     String eventId) {
+        return addToTraceAsync(toTraceAsync, description.get(), eventId);
+    }
+
 
     /**
      * Traces operations that are performed in the background and return a {@link Promise}, where tracing the call does
@@ -217,6 +370,21 @@ public interface TracingWithId {
      */
     <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, String description, String eventId);
 
+    /**
+     * Same as {@link TracingWithId#addToTracePromise(Supplier, String, String)}, but takes a supplier of the
+     * description so that engines can skip computing it when the span is not going to be recorded.
+     *
+     * @param toTraceAsync Lambda containing the code that should be wrapped in a trace.
+     * @param description  Supplies the description or name that best describes this operation.
+     * @param eventId      The ID that represents a request throughout the whole execution.
+     * @param <R>         The Return type of the traced code.
+     * @param <P>          The class implementing {@link Promise}
+     * @return Returns the {@link Promise} the traced code would've returned.
+     */
+    default <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, Supplier<String> description, String eventId) {
+        return addToTracePromise(toTraceAsync, description.get(), eventId);
+    }
+
 
 
     /**
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.clock.Clock;
+import io.jaegertracing.internal.clock.SystemClock;
+
+import java.time.Duration;
+
+/**
+ * The clocks compared by {@link ClockBenchmark} and {@link ClockSkew}.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public enum BenchmarkClock {
+
+    /**
+     * Jaeger's default clock, with millisecond timestamps and nanosecond durations.
+     */
+    SYSTEM {
+        @Override
+        Clock create() {
+            return new SystemClock();
+        }
+    },
+
+    /**
+     * A clock that adds to {@code nanoTime()} the offset to the wall clock measured once, when it was created, like
+     * {@link MicroClock} did before it started resyncing.
+     */
+    FIXED_OFFSET {
+        @Override
+        Clock create() {
+            return new FixedOffsetClock();
+        }
+    },
+
+    /**
+     * The {@link MicroClock}, which resyncs its offset every {@link MicroClock#DEFAULT_RESYNC_INTERVAL}.
+     */
+    MICRO {
+        @Override
+        Clock create() {
+            return new MicroClock();
+        }
+    },
+
+    /**
+     * A {@link CoarseMicroClock} ticking every {@link #COARSE_TICK}.
+     */
+    COARSE {
+        @Override
+        Clock create() {
+            return new CoarseMicroClock(new MicroClock(), COARSE_TICK);
+        }
+    };
+
+    /**
+     * The tick of the coarse clock.
+     */
+    private static final Duration COARSE_TICK = Duration.ofNanos(100_000);
+
+    /**
+     * Creates a clock of this type.
+     *
+     * @return The clock.
+     */
+    abstract Clock create();
+
+    /**
+     * Closes a clock created by {@link #create()}, stopping its threads.
+     *
+     * @param clock The clock.
+     */
+    static void close(final Clock clock) {
+        if (clock instanceof CoarseMicroClock) {
+            ((CoarseMicroClock) clock).close();
+        }
+    }
+
+    /**
+     * Clock whose offset to the wall clock is measured once, when it is created.
+     */
+    private static final class FixedOffsetClock implements Clock {
+
+        /**
+         * The offset between the wall clock and {@code nanoTime()}, in nanoseconds.
+         */
+        private final long offset = 1_000_000 * System.currentTimeMillis() - System.nanoTime();
+
+        @Override
+        public long currentTimeMicros() {
+            return (System.nanoTime() + offset) / 1000;
+        }
+
+        @Override
+        public boolean isMicrosAccurate() {
+            return false;
+        }
+
+        @Override
+        public long currentNanoTicks() {
+            return System.nanoTime();
+        }
+    }
+}
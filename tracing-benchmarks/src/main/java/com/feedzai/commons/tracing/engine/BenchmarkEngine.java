@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.util.Engines;
+import com.feedzai.commons.tracing.util.LazyConfigTracer;
+import com.feedzai.commons.tracing.util.configuration.TracingConfiguration;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.jaegertracing.spi.Reporter;
+import io.jaegertracing.spi.Sampler;
+import io.opentracing.ScopeManager;
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+import java.time.Duration;
+
+/**
+ * The tracing engines that are benchmarked.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public enum BenchmarkEngine {
+
+    /**
+     * {@link JaegerTracingEngine} sampling every trace and reporting the spans to memory.
+     */
+    JAEGER {
+        @Override
+        TracingEngine create(final ScopeManager scopeManager, final Reporter reporter) {
+            return jaeger(new ConstSampler(true), scopeManager, reporter);
+        }
+    },
+
+    /**
+     * {@link JaegerTracingEngine} sampling out every trace.
+     */
+    JAEGER_SAMPLED_OUT {
+        @Override
+        TracingEngine create(final ScopeManager scopeManager, final Reporter reporter) {
+            return jaeger(new ConstSampler(false), scopeManager, reporter);
+        }
+    },
+
+    /**
+     * {@link LoggingTracingEngine}.
+     */
+    LOGGING {
+        @Override
+        TracingEngine create(final ScopeManager scopeManager, final Reporter reporter) {
+            return new LoggingTracingEngine();
+        }
+    },
+
+    /**
+     * {@link MetricsTracingEngine} with the default configuration.
+     */
+    METRICS {
+        @Override
+        TracingEngine create(final ScopeManager scopeManager, final Reporter reporter) {
+            return new MetricsTracingEngine.Builder().build();
+        }
+    },
+
+    /**
+     * {@link NoopTracingEngine}.
+     */
+    NOOP {
+        @Override
+        TracingEngine create(final ScopeManager scopeManager, final Reporter reporter) {
+            return new NoopTracingEngine();
+        }
+    },
+
+    /**
+     * {@link LazyConfigTracer} configured with the {@link NoopTracingEngine}, so that the difference to {@link #NOOP}
+     * is the cost of the decorator itself.
+     */
+    LAZY {
+        @Override
+        TracingEngine create(final ScopeManager scopeManager, final Reporter reporter) {
+            final TracingConfiguration configuration = new TracingConfiguration();
+            configuration.activeEngine = Engines.NOOP;
+            return new LazyConfigTracer(() -> configuration);
+        }
+    };
+
+    /**
+     * The configuration of the caches of the Jaeger engine. Entries must not expire while a benchmark is running.
+     */
+    private static final CacheConfiguration CACHE_CONFIGURATION = new CacheConfiguration(Duration.ofHours(1), 10000);
+
+    /**
+     * Creates the engine.
+     *
+     * @param scopeManager The scope manager used by engines based on OpenTracing.
+     * @param reporter     The reporter that receives the spans finished by engines based on Jaeger.
+     * @return The engine.
+     */
+    abstract TracingEngine create(ScopeManager scopeManager, Reporter reporter);
+
+    /**
+     * Creates a {@link JaegerTracingEngine} and registers its tracer as the global tracer, which is used to deserialize
+     * contexts.
+     *
+     * @param sampler      The sampler.
+     * @param scopeManager The scope manager.
+     * @param reporter     The reporter.
+     * @return The engine.
+     */
+    private static TracingEngine jaeger(final Sampler sampler, final ScopeManager scopeManager,
+                                        final Reporter reporter) {
+        final Tracer tracer = new JaegerTracer.Builder("benchmark")
+                .withClock(new MicroClock())
+                .withSampler(sampler)
+                .withReporter(reporter)
+                .withScopeManager(scopeManager)
+                .build();
+        if (!GlobalTracer.isRegistered()) {
+            GlobalTracer.register(tracer);
+        }
+        return new JaegerTracingEngine(tracer, CACHE_CONFIGURATION);
+    }
+}
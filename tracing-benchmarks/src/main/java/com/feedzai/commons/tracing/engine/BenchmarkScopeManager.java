@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+
+/**
+ * Thread local {@link ScopeManager} with the same semantics as {@link io.opentracing.util.ThreadLocalScopeManager},
+ * that can also drop the scope left active on a thread without finishing its span.
+ *
+ * <p>{@code newTrace} leaves the scope of the root span active, so without {@link #reset()} every invocation of a
+ * benchmark that starts a trace would be stacked on top of the previous one.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class BenchmarkScopeManager implements ScopeManager {
+
+    /**
+     * The scope that is active on each thread.
+     */
+    private final ThreadLocal<BenchmarkScope> active = new ThreadLocal<>();
+
+    @Override
+    public Scope activate(final Span span, final boolean finishSpanOnClose) {
+        final BenchmarkScope scope = new BenchmarkScope(span, finishSpanOnClose, active.get());
+        active.set(scope);
+        return scope;
+    }
+
+    @Override
+    public Scope active() {
+        return active.get();
+    }
+
+    /**
+     * Drops every scope that is active on the calling thread, without finishing their spans.
+     */
+    void reset() {
+        active.set(null);
+    }
+
+    /**
+     * A scope that restores the previously active scope when it is closed.
+     */
+    private final class BenchmarkScope implements Scope {
+
+        /**
+         * The span of this scope.
+         */
+        private final Span span;
+
+        /**
+         * Whether the span should be finished when the scope is closed.
+         */
+        private final boolean finishSpanOnClose;
+
+        /**
+         * The scope that was active when this one was activated.
+         */
+        private final BenchmarkScope toRestore;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param span              The span of this scope.
+         * @param finishSpanOnClose Whether the span should be finished when the scope is closed.
+         * @param toRestore         The scope that was active when this one was activated.
+         */
+        BenchmarkScope(final Span span, final boolean finishSpanOnClose, final BenchmarkScope toRestore) {
+            this.span = span;
+            this.finishSpanOnClose = finishSpanOnClose;
+            this.toRestore = toRestore;
+        }
+
+        @Override
+        public void close() {
+            if (active.get() != this) {
+                return;
+            }
+            if (finishSpanOnClose) {
+                span.finish();
+            }
+            active.set(toRestore);
+        }
+
+        @Override
+        public Span span() {
+            return span;
+        }
+    }
+}
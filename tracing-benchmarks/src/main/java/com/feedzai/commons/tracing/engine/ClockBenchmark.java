@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.clock.Clock;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cost of the timestamps of a span for each {@link BenchmarkClock}: a single reading, the readings
+ * Jaeger takes for a span, which depend on {@link Clock#isMicrosAccurate()}, and a whole span built and finished by a
+ * tracer using the clock.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClockBenchmark {
+
+    /**
+     * The clock under test.
+     */
+    @Param({"SYSTEM", "FIXED_OFFSET", "MICRO", "COARSE"})
+    public BenchmarkClock type;
+
+    /**
+     * The clock built for {@link #type}.
+     */
+    private Clock clock;
+
+    /**
+     * A tracer that samples every span and reads the time from {@link #clock}.
+     */
+    private JaegerTracer tracer;
+
+    /**
+     * Builds the clock and the tracer.
+     */
+    @Setup
+    public void setUp() {
+        clock = type.create();
+        tracer = new JaegerTracer.Builder("benchmark")
+                .withClock(clock)
+                .withSampler(new ConstSampler(true))
+                .withReporter(new DiscardingReporter())
+                .build();
+    }
+
+    /**
+     * Closes the tracer and the clock.
+     */
+    @TearDown
+    public void tearDown() {
+        tracer.close();
+        BenchmarkClock.close(clock);
+    }
+
+    @Benchmark
+    public long timestamp() {
+        return clock.currentTimeMicros();
+    }
+
+    @Benchmark
+    public long spanTimestamps() {
+        if (clock.isMicrosAccurate()) {
+            final long start = clock.currentTimeMicros();
+            return clock.currentTimeMicros() - start;
+        }
+        final long start = clock.currentTimeMicros();
+        final long startTicks = clock.currentNanoTicks();
+        return start + (clock.currentNanoTicks() - startTicks) / 1000;
+    }
+
+    @Benchmark
+    public JaegerSpan span() {
+        final JaegerSpan span = tracer.buildSpan("Span").ignoreActiveSpan().start();
+        span.finish();
+        return span;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the skew of each {@link BenchmarkClock} to the wall clock of this node over a period of time, and whether any
+ * of them went backwards.
+ *
+ * <p>The skew between the spans of two nodes is the skew of each tracer clock to its wall clock plus the offset between
+ * the two wall clocks, which NTP reports (for instance {@code chronyc tracking}). Running this on every node bounds the
+ * first part: a clock that does not follow the NTP corrections of the wall clock drifts away from it over time, by up
+ * to the frequency error of the hardware clock.
+ *
+ * <p>Arguments: the duration of the run in seconds (60 by default) and the interval between two samples in
+ * milliseconds (1000 by default). The samples are logged at info level.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class ClockSkew {
+
+    /**
+     * Logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ClockSkew.class.getName());
+
+    /**
+     * How many ticks of the wall clock each sample reads the clocks at.
+     */
+    private static final int TICKS_PER_SAMPLE = 5;
+
+    /**
+     * Private constructor for this utility class.
+     */
+    private ClockSkew() {
+    }
+
+    /**
+     * Samples the skew of every clock and logs it.
+     *
+     * @param args The duration of the run in seconds and the interval between two samples in milliseconds.
+     * @throws InterruptedException If interrupted while waiting for the next sample.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final long durationNanos = TimeUnit.SECONDS.toNanos(args.length > 0 ? Long.parseLong(args[0]) : 60);
+        final long intervalMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        final Map<BenchmarkClock, Clock> clocks = new EnumMap<>(BenchmarkClock.class);
+        final Map<BenchmarkClock, Stats> stats = new EnumMap<>(BenchmarkClock.class);
+        for (final BenchmarkClock type : BenchmarkClock.values()) {
+            clocks.put(type, type.create());
+            stats.put(type, new Stats());
+        }
+
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < durationNanos) {
+            for (final BenchmarkClock type : BenchmarkClock.values()) {
+                stats.get(type).sample(clocks.get(type));
+            }
+            logger.info("Clock skew after {}s", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+            for (final BenchmarkClock type : BenchmarkClock.values()) {
+                logger.info("  {}: {}", type, stats.get(type));
+            }
+            Thread.sleep(intervalMillis);
+        }
+        clocks.values().forEach(BenchmarkClock::close);
+    }
+
+    /**
+     * The skew of a clock to the wall clock, in microseconds.
+     */
+    private static final class Stats {
+
+        /**
+         * The number of samples.
+         */
+        private long samples;
+
+        /**
+         * The skew of the last sample.
+         */
+        private long last;
+
+        /**
+         * The largest skew behind the wall clock.
+         */
+        private long min = Long.MAX_VALUE;
+
+        /**
+         * The largest skew ahead of the wall clock.
+         */
+        private long max = Long.MIN_VALUE;
+
+        /**
+         * The last timestamp of the clock.
+         */
+        private long previous = Long.MIN_VALUE;
+
+        /**
+         * How many times the clock went backwards between two samples.
+         */
+        private long backwards;
+
+        /**
+         * Reads a clock right after the wall clock ticks, and compares both. A reading taken late makes the clock look
+         * ahead, so the smallest skew of a few ticks is kept.
+         *
+         * @param clock The clock.
+         */
+        void sample(final Clock clock) {
+            long skew = Long.MAX_VALUE;
+            long micros = 0;
+            for (int i = 0; i < TICKS_PER_SAMPLE; i++) {
+                final long millis = System.currentTimeMillis();
+                long tick;
+                do {
+                    tick = System.currentTimeMillis();
+                } while (tick == millis);
+                micros = clock.currentTimeMicros();
+                skew = Math.min(skew, micros - TimeUnit.MILLISECONDS.toMicros(tick));
+            }
+
+            last = skew;
+            min = Math.min(min, last);
+            max = Math.max(max, last);
+            if (micros < previous) {
+                backwards++;
+            }
+            previous = micros;
+            samples++;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("skew=%dus min=%dus max=%dus backwards=%d samples=%d", last, min, max, backwards,
+                    samples);
+        }
+    }
+}
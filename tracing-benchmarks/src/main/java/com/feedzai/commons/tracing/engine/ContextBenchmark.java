@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.api.TraceContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the propagation of contexts across process boundaries.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextBenchmark {
+
+    @Benchmark
+    public Map<String, String> serializeContext(final EngineState state, final TraceState trace) {
+        return state.engine.serializeContext();
+    }
+
+    @Benchmark
+    public TraceContext deserializeContext(final EngineState state, final TraceState trace) {
+        return state.engine.deserializeContext(trace.headers);
+    }
+
+    @Benchmark
+    public int serializeContextBinary(final EngineState state, final TraceState trace) {
+        trace.buffer.clear();
+        return state.engine.serializeContext(trace.buffer);
+    }
+
+    @Benchmark
+    public TraceContext deserializeContextBinary(final EngineState state, final TraceState trace) {
+        trace.binaryHeaders.rewind();
+        return state.engine.deserializeContext(trace.binaryHeaders);
+    }
+}
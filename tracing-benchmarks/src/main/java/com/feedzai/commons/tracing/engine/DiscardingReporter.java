@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.spi.Reporter;
+
+/**
+ * In-memory {@link Reporter} that drops the spans it receives.
+ *
+ * <p>Unlike {@link io.jaegertracing.internal.reporters.InMemoryReporter}, it neither keeps the spans, which would fill
+ * the heap during a measurement iteration, nor synchronizes on every report, which would dominate the contended
+ * benchmarks.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class DiscardingReporter implements Reporter {
+
+    @Override
+    public void report(final JaegerSpan span) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.util.TraceUtil;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark state holding the engine under test and the operations that are traced.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@State(Scope.Benchmark)
+public class EngineState {
+
+    /**
+     * The value returned by the traced operations.
+     */
+    private static final String RESULT = "result";
+
+    /**
+     * The engine under test.
+     */
+    @Param({"JAEGER", "JAEGER_SAMPLED_OUT", "LOGGING", "METRICS", "NOOP", "LAZY"})
+    public BenchmarkEngine type;
+
+    /**
+     * The scope manager of the engines based on OpenTracing.
+     */
+    private final BenchmarkScopeManager scopeManager = new BenchmarkScopeManager();
+
+    /**
+     * The engine built for {@link #type}.
+     */
+    TracingEngine engine;
+
+    /**
+     * A synchronous operation.
+     */
+    final Supplier<String> operation = () -> RESULT;
+
+    /**
+     * A synchronous operation that returns nothing.
+     */
+    final Runnable task = () -> { };
+
+    /**
+     * An asynchronous operation that is already completed.
+     */
+    final Supplier<CompletableFuture<String>> futureOperation;
+
+    /**
+     * An asynchronous operation based on {@link com.feedzai.commons.tracing.api.Promise} that is already completed.
+     */
+    final Supplier<ImmediatePromise> promiseOperation;
+
+    /**
+     * Constructor for this class.
+     */
+    public EngineState() {
+        final CompletableFuture<String> future = CompletableFuture.completedFuture(RESULT);
+        final ImmediatePromise promise = new ImmediatePromise(RESULT);
+        futureOperation = () -> future;
+        promiseOperation = () -> promise;
+    }
+
+    /**
+     * Builds the engine under test.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = type.create(scopeManager, new DiscardingReporter());
+        TraceUtil.init(engine);
+    }
+
+    /**
+     * Leaves the trace that the calling thread is in, dropping the root scope that {@code newTrace} leaves active.
+     */
+    void leaveTrace() {
+        scopeManager.reset();
+    }
+}
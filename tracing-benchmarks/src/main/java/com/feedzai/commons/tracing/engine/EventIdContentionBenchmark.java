@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link com.feedzai.commons.tracing.api.TracingWithId} API, with every thread adding spans to the same
+ * trace. The number of threads can be changed with the {@code -t} option.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class EventIdContentionBenchmark {
+
+    @Benchmark
+    public String addToTrace(final EngineState state, final SharedTraceState trace) {
+        return state.engine.addToTrace(state.operation, "Child", trace.eventId);
+    }
+
+    @Benchmark
+    public CompletableFuture<String> addToTraceAsync(final EngineState state, final SharedTraceState trace) {
+        return state.engine.addToTraceAsync(state.futureOperation, "Child", trace.eventId);
+    }
+
+    @Benchmark
+    public ImmediatePromise addToTracePromise(final EngineState state, final SharedTraceState trace) {
+        return state.engine.addToTracePromise(state.promiseOperation, "Child", trace.eventId);
+    }
+}
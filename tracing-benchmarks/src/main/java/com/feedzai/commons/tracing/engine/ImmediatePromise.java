@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.api.Promise;
+
+import java.util.function.Consumer;
+
+/**
+ * {@link Promise} that is already completed successfully, so callbacks run as soon as they are registered. It holds no
+ * state of its own and can be shared.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class ImmediatePromise implements Promise<String, ImmediatePromise, Throwable> {
+
+    /**
+     * The value of the promise.
+     */
+    private final String value;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param value The value of the promise.
+     */
+    ImmediatePromise(final String value) {
+        this.value = value;
+    }
+
+    @Override
+    public ImmediatePromise onCompletePromise(final Consumer<String> callOnCompletion) {
+        callOnCompletion.accept(value);
+        return this;
+    }
+
+    @Override
+    public ImmediatePromise onErrorPromise(final Consumer<Throwable> callOnError) {
+        return this;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+
+/**
+ * Benchmark state holding a single trace that every thread adds spans to through its eventId.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@State(Scope.Benchmark)
+public class SharedTraceState {
+
+    /**
+     * The eventId of the trace.
+     */
+    final String eventId = UUID.randomUUID().toString();
+
+    /**
+     * Starts the trace.
+     *
+     * @param state The engine under test.
+     */
+    @Setup(Level.Trial)
+    public void setUp(final EngineState state) {
+        state.engine.newTrace(state.task, "Root", eventId);
+        state.leaveTrace();
+    }
+}
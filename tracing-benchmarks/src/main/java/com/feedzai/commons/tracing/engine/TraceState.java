@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.api.TraceContext;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per thread benchmark state holding a trace started by the thread.
+ *
+ * <p>{@code newTrace} leaves the root span active on the calling thread, so the operations that take neither a context
+ * nor an eventId become its children.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@State(Scope.Thread)
+public class TraceState {
+
+    /**
+     * The eventId of the trace.
+     */
+    final String eventId = UUID.randomUUID().toString();
+
+    /**
+     * The object used as key by the operations left open.
+     */
+    final Object response = new Object();
+
+    /**
+     * The context of the root span.
+     */
+    TraceContext context;
+
+    /**
+     * The serialized context of the root span.
+     */
+    Map<String, String> headers;
+
+    /**
+     * The context of the root span serialized to bytes.
+     */
+    ByteBuffer binaryHeaders;
+
+    /**
+     * The buffer the benchmarks serialize contexts to.
+     */
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    /**
+     * Starts the trace.
+     *
+     * @param state The engine under test.
+     */
+    @Setup(Level.Trial)
+    public void setUp(final EngineState state) {
+        state.leaveTrace();
+        state.engine.newTrace(() -> {
+            context = state.engine.currentContext();
+            headers = state.engine.serializeContext();
+            binaryHeaders = ByteBuffer.allocate(buffer.capacity());
+            state.engine.serializeContext(binaryHeaders);
+            binaryHeaders.flip();
+        }, "Root", eventId);
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.samplers.SamplingStatus;
+import io.jaegertracing.spi.Sampler;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Sampler} that keeps a sampling probability for each root operation and adapts it at the end of every window
+ * from the rates observed during the window.
+ *
+ * <p>Each operation is sampled with its probability, or by a rate limiter that guarantees it at least {@code
+ * minTracesPerSecond} traces, so operations too rare for the probability still show up. When {@code
+ * maxTracesPerSecond} is set, the probabilities of the next window are lowered so that the expected total stays below
+ * it, without going under the probability each operation needs for its guaranteed rate, and a global rate limiter
+ * enforces the maximum during the window. The maximum wins over the guaranteed rates when both cannot be met. The
+ * probabilities never go above the configured sampling rate.
+ *
+ * <p>Sampling only reads and updates the counters and limiters of the operation, without locks. The window is rolled
+ * over by the first call that sees it ended. Once {@code maxOperations} operations are tracked, new ones share the
+ * state of a single catch-all operation.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class AdaptiveSampler implements Sampler {
+
+    /**
+     * The value of the {@code sampler.type} tag of traces sampled by probability.
+     */
+    static final String PROBABILISTIC = "probabilistic";
+
+    /**
+     * The value of the {@code sampler.type} tag of traces sampled to meet the guaranteed rate.
+     */
+    static final String LOWER_BOUND = "lowerbound";
+
+    /**
+     * The maximum number of operations tracked by default.
+     */
+    static final int DEFAULT_MAX_OPERATIONS = 2000;
+
+    /**
+     * The number of iterations of the search for the probability that meets the maximum rate.
+     */
+    private static final int SEARCH_ITERATIONS = 32;
+
+    /**
+     * The status of the traces that are not sampled.
+     */
+    private static final SamplingStatus NOT_SAMPLED = SamplingStatus.of(false, Collections.emptyMap());
+
+    /**
+     * The probability of the operations with no history.
+     */
+    private final double samplingRate;
+
+    /**
+     * The minimum number of traces per second of each operation.
+     */
+    private final double minTracesPerSecond;
+
+    /**
+     * The maximum number of traces per second of all operations, or 0 for no maximum.
+     */
+    private final double maxTracesPerSecond;
+
+    /**
+     * The duration of each window.
+     */
+    private final long windowNanos;
+
+    /**
+     * The maximum number of operations tracked.
+     */
+    private final int maxOperations;
+
+    /**
+     * The state of each operation.
+     */
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * The state shared by the operations that are not tracked.
+     */
+    private final Operation untracked;
+
+    /**
+     * Enforces the maximum number of traces per second, or {@code null} if there is no maximum.
+     */
+    private final RateLimiter totalLimiter;
+
+    /**
+     * When the current window started.
+     */
+    private final AtomicLong windowStart;
+
+    /**
+     * The probability of the operations that were not seen in the last window.
+     */
+    private volatile double baseProbability;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param samplingRate       The maximum probability, which operations with no history start with.
+     * @param minTracesPerSecond The minimum number of traces per second of each operation, 0 for no minimum.
+     * @param maxTracesPerSecond The maximum number of traces per second of all operations, 0 for no maximum.
+     * @param window             The duration of each window.
+     * @param maxOperations      The maximum number of operations tracked.
+     */
+    AdaptiveSampler(final double samplingRate, final double minTracesPerSecond, final double maxTracesPerSecond,
+                    final Duration window, final int maxOperations) {
+        if (samplingRate < 0 || samplingRate > 1) {
+            throw new IllegalArgumentException("The sampling rate must be between 0 and 1: " + samplingRate);
+        }
+        if (minTracesPerSecond < 0 || maxTracesPerSecond < 0) {
+            throw new IllegalArgumentException("The number of traces per second cannot be negative.");
+        }
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("The window must be positive: " + window);
+        }
+        this.samplingRate = samplingRate;
+        this.minTracesPerSecond = minTracesPerSecond;
+        this.maxTracesPerSecond = maxTracesPerSecond;
+        this.windowNanos = window.toNanos();
+        this.maxOperations = maxOperations;
+        this.baseProbability = samplingRate;
+        this.untracked = new Operation(samplingRate, 0);
+        this.totalLimiter = maxTracesPerSecond > 0 ? new RateLimiter(maxTracesPerSecond) : null;
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    @Override
+    public SamplingStatus sample(final String operation, final long id) {
+        final long now = System.nanoTime();
+        final long start = windowStart.get();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            adapt(now - start);
+        }
+
+        final Operation state = operation(operation);
+        state.seen.increment();
+        final Decision decision = state.decision;
+        final SamplingStatus status;
+        if (decision.isSampled(id)) {
+            status = decision.probabilistic;
+        } else if (state.lowerBound != null && state.lowerBound.tryAcquire(now)) {
+            status = decision.lowerBound;
+        } else {
+            return NOT_SAMPLED;
+        }
+        return totalLimiter == null || totalLimiter.tryAcquire(now) ? status : NOT_SAMPLED;
+    }
+
+    /**
+     * Returns the state of an operation, tracking it if there is room.
+     *
+     * @param operation The name of the operation.
+     * @return The state.
+     */
+    private Operation operation(final String operation) {
+        final Operation state = operations.get(operation);
+        if (state != null) {
+            return state;
+        }
+        if (operations.size() >= maxOperations) {
+            return untracked;
+        }
+        return operations.computeIfAbsent(operation, name -> new Operation(baseProbability, minTracesPerSecond));
+    }
+
+    /**
+     * Computes the probabilities of the next window from the rates observed in the window that ended.
+     *
+     * @param elapsedNanos The duration of the window that ended.
+     */
+    private void adapt(final long elapsedNanos) {
+        final double seconds = (double) elapsedNanos / TimeUnit.SECONDS.toNanos(1);
+        final Map<Operation, Double> rates = new HashMap<>();
+        for (Operation state : operations.values()) {
+            rates.put(state, state.seen.sumThenReset() / seconds);
+        }
+        untracked.seen.reset();
+
+        final double base = maxTracesPerSecond > 0 ? searchProbability(rates) : samplingRate;
+        for (Map.Entry<Operation, Double> entry : rates.entrySet()) {
+            entry.getKey().update(Math.max(base, floor(entry.getValue())));
+        }
+        untracked.update(base);
+        baseProbability = base;
+    }
+
+    /**
+     * Finds the highest probability, up to the sampling rate, for which the expected number of traces per second of
+     * all operations stays below the maximum, given that no operation goes under the probability of its guaranteed
+     * rate.
+     *
+     * @param rates The number of traces per second of each operation in the last window.
+     * @return The probability.
+     */
+    private double searchProbability(final Map<Operation, Double> rates) {
+        if (expectedRate(rates, samplingRate) <= maxTracesPerSecond) {
+            return samplingRate;
+        }
+        double low = 0;
+        double high = samplingRate;
+        for (int i = 0; i < SEARCH_ITERATIONS; i++) {
+            final double middle = (low + high) / 2;
+            if (expectedRate(rates, middle) <= maxTracesPerSecond) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Computes the expected number of traces per second when the operations are sampled with a probability.
+     *
+     * @param rates       The number of traces per second of each operation.
+     * @param probability The probability of the operations above their guaranteed rate.
+     * @return The expected number of sampled traces per second.
+     */
+    private double expectedRate(final Map<Operation, Double> rates, final double probability) {
+        double expected = 0;
+        for (double rate : rates.values()) {
+            expected += rate * Math.max(probability, floor(rate));
+        }
+        return expected;
+    }
+
+    /**
+     * Computes the probability an operation needs to meet its guaranteed rate.
+     *
+     * @param rate The number of traces per second of the operation.
+     * @return The probability.
+     */
+    private double floor(final double rate) {
+        if (minTracesPerSecond == 0 || rate == 0) {
+            return 0;
+        }
+        return Math.min(samplingRate, minTracesPerSecond / rate);
+    }
+
+    /**
+     * Returns the probability an operation is sampled with in the current window.
+     *
+     * @param operation The name of the operation.
+     * @return The probability.
+     */
+    double getProbability(final String operation) {
+        final Operation state = operations.get(operation);
+        return state == null ? baseProbability : state.decision.probability;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release.
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final AdaptiveSampler that = (AdaptiveSampler) o;
+        return Double.compare(samplingRate, that.samplingRate) == 0
+                && Double.compare(minTracesPerSecond, that.minTracesPerSecond) == 0
+                && Double.compare(maxTracesPerSecond, that.maxTracesPerSecond) == 0
+                && windowNanos == that.windowNanos
+                && maxOperations == that.maxOperations;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(samplingRate, minTracesPerSecond, maxTracesPerSecond, windowNanos, maxOperations);
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveSampler{" +
+                "samplingRate=" + samplingRate +
+                ", minTracesPerSecond=" + minTracesPerSecond +
+                ", maxTracesPerSecond=" + maxTracesPerSecond +
+                ", window=" + Duration.ofNanos(windowNanos) +
+                ", maxOperations=" + maxOperations +
+                '}';
+    }
+
+    /**
+     * The state of an operation.
+     */
+    private static final class Operation {
+
+        /**
+         * The number of traces of the operation in the current window.
+         */
+        final LongAdder seen = new LongAdder();
+
+        /**
+         * Guarantees the minimum number of traces per second, or {@code null} if there is no minimum.
+         */
+        final RateLimiter lowerBound;
+
+        /**
+         * The probability of the operation in the current window.
+         */
+        volatile Decision decision;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param probability        The initial probability.
+         * @param minTracesPerSecond The minimum number of traces per second, 0 for no minimum.
+         */
+        Operation(final double probability, final double minTracesPerSecond) {
+            this.lowerBound = minTracesPerSecond > 0 ? new RateLimiter(minTracesPerSecond) : null;
+            this.decision = new Decision(probability);
+        }
+
+        /**
+         * Changes the probability of the operation.
+         *
+         * @param probability The new probability.
+         */
+        void update(final double probability) {
+            if (decision.probability != probability) {
+                decision = new Decision(probability);
+            }
+        }
+    }
+
+    /**
+     * A probability, with the boundaries that trace ids are compared to and the statuses reported for it, which are
+     * built once so that sampling does not allocate.
+     */
+    private static final class Decision {
+
+        /**
+         * The probability.
+         */
+        final double probability;
+
+        /**
+         * The highest non-negative trace id that is sampled.
+         */
+        private final long positiveBoundary;
+
+        /**
+         * The lowest negative trace id that is sampled.
+         */
+        private final long negativeBoundary;
+
+        /**
+         * The status of the traces sampled by probability.
+         */
+        final SamplingStatus probabilistic;
+
+        /**
+         * The status of the traces sampled to meet the guaranteed rate.
+         */
+        final SamplingStatus lowerBound;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param probability The probability.
+         */
+        Decision(final double probability) {
+            this.probability = probability;
+            this.positiveBoundary = (long) (Long.MAX_VALUE * probability);
+            this.negativeBoundary = (long) (Long.MIN_VALUE * probability);
+            this.probabilistic = status(PROBABILISTIC, probability);
+            this.lowerBound = status(LOWER_BOUND, probability);
+        }
+
+        /**
+         * Decides whether a trace is sampled by probability, the same way Jaeger's probabilistic sampler does.
+         *
+         * @param id The trace id.
+         * @return true if the trace is sampled.
+         */
+        boolean isSampled(final long id) {
+            return id > 0 ? id <= positiveBoundary : id >= negativeBoundary;
+        }
+
+        /**
+         * Builds the status of sampled traces with the tags Jaeger's samplers set.
+         *
+         * @param type        The type of the sampler.
+         * @param probability The probability.
+         * @return The status.
+         */
+        private static SamplingStatus status(final String type, final double probability) {
+            final Map<String, Object> tags = new HashMap<>();
+            tags.put("sampler.type", type);
+            tags.put("sampler.param", probability);
+            return SamplingStatus.of(true, Collections.unmodifiableMap(tags));
+        }
+    }
+
+    /**
+     * Lock-free rate limiter that tracks the theoretical arrival time of the next permit, allowing a burst of up to
+     * one second of permits.
+     */
+    static final class RateLimiter {
+
+        /**
+         * The time between permits.
+         */
+        private final long intervalNanos;
+
+        /**
+         * How far ahead of the current time the theoretical arrival time may go.
+         */
+        private final long toleranceNanos;
+
+        /**
+         * The theoretical arrival time of the next permit.
+         */
+        private final AtomicLong arrival;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param permitsPerSecond The number of permits per second.
+         */
+        RateLimiter(final double permitsPerSecond) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = Math.max(intervalNanos, TimeUnit.SECONDS.toNanos(1));
+            this.arrival = new AtomicLong(System.nanoTime() - toleranceNanos);
+        }
+
+        /**
+         * Takes a permit if there is one.
+         *
+         * @param now The current value of {@link System#nanoTime()}.
+         * @return true if a permit was taken.
+         */
+        boolean tryAcquire(final long now) {
+            while (true) {
+                final long current = arrival.get();
+                final long next = Math.max(current - now, -toleranceNanos) + now + intervalNanos;
+                if (next - now > intervalNanos) {
+                    return false;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.OverflowPolicy;
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.exceptions.SenderException;
+import io.jaegertracing.spi.Reporter;
+import io.jaegertracing.spi.Sender;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Reporter} that queues the finished spans in a {@link BoundedRingQueue} and hands them to a {@link Sender} in
+ * batches from a background thread, flushing once a batch is full or when the flush interval elapses, whichever comes
+ * first. When the queue is full the {@link OverflowPolicy} decides which span is lost, and the thread that finished the
+ * span only waits with {@link OverflowPolicy#BLOCK}, up to its timeout. Every outcome is counted in the {@link
+ * ReporterMetrics} of the reporter.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class BatchingReporter implements Reporter {
+
+    /**
+     * How long a thread waiting for room in the queue parks between attempts.
+     */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * How many times {@link OverflowPolicy#DROP_OLDEST} drops the head of the queue to make room before dropping the
+     * newest span instead.
+     */
+    private static final int DROP_OLDEST_ATTEMPTS = 8;
+
+    /**
+     * How long {@link #close()} waits for the flush thread to stop.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The queued spans.
+     */
+    private final BoundedRingQueue<JaegerSpan> queue;
+
+    /**
+     * Sends the spans to the agent.
+     */
+    private final Sender sender;
+
+    /**
+     * The number of spans flushed together.
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum time a span waits in the queue for its batch to fill up.
+     */
+    private final long flushIntervalNanos;
+
+    /**
+     * What happens to a span finished when the queue is full.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * How long a thread waits for room in the queue with {@link OverflowPolicy#BLOCK}.
+     */
+    private final long blockTimeoutNanos;
+
+    /**
+     * The fill level above which {@link OverflowPolicy#SAMPLE_DOWN} starts dropping traces.
+     */
+    private final int sampleDownThreshold;
+
+    /**
+     * The counters of this reporter.
+     */
+    private final ReporterMetrics metrics;
+
+    /**
+     * The thread that flushes the batches.
+     */
+    private final Thread flusher;
+
+    /**
+     * Whether the flush thread keeps running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for this class, which starts the flush thread.
+     *
+     * @param sender         Sends the spans to the agent.
+     * @param queueSize      The maximum number of queued spans, rounded up to a power of two.
+     * @param batchSize      The number of spans flushed together.
+     * @param flushInterval  The maximum time a span waits in the queue for its batch to fill up.
+     * @param overflowPolicy What happens to a span finished when the queue is full.
+     * @param blockTimeout   How long a thread waits for room in the queue with {@link OverflowPolicy#BLOCK}.
+     * @param metrics        The counters of this reporter.
+     */
+    BatchingReporter(final Sender sender, final int queueSize, final int batchSize, final Duration flushInterval,
+                     final OverflowPolicy overflowPolicy, final Duration blockTimeout,
+                     final ReporterMetrics metrics) {
+        this.queue = new BoundedRingQueue<>(queueSize);
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.sampleDownThreshold = queue.capacity() / 2;
+        this.metrics = metrics;
+        this.flusher = new Thread(this::flushLoop, "jaeger-batching-reporter");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void report(final JaegerSpan span) {
+        if (!running) {
+            metrics.recordDropped(1);
+            return;
+        }
+        final boolean enqueued;
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                enqueued = offerDroppingOldest(span);
+                break;
+            case BLOCK:
+                enqueued = offerBlocking(span);
+                break;
+            case SAMPLE_DOWN:
+                enqueued = admit(span) && queue.offer(span);
+                break;
+            default:
+                enqueued = queue.offer(span);
+        }
+        if (!enqueued) {
+            metrics.recordDropped(1);
+            return;
+        }
+        metrics.recordEnqueued();
+        if (queue.size() == batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * Adds a span to the queue, dropping the oldest queued spans to make room for it.
+     *
+     * @param span The span.
+     * @return true if the span was added.
+     */
+    private boolean offerDroppingOldest(final JaegerSpan span) {
+        for (int attempt = 0; attempt < DROP_OLDEST_ATTEMPTS; attempt++) {
+            if (queue.offer(span)) {
+                return true;
+            }
+            if (queue.poll() != null) {
+                metrics.recordDropped(1);
+            }
+        }
+        return queue.offer(span);
+    }
+
+    /**
+     * Adds a span to the queue, waiting for room up to the block timeout.
+     *
+     * @param span The span.
+     * @return true if the span was added before the timeout.
+     */
+    private boolean offerBlocking(final JaegerSpan span) {
+        if (queue.offer(span)) {
+            return true;
+        }
+        LockSupport.unpark(flusher);
+        final long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() - deadline < 0 && running) {
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            if (queue.offer(span)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether a span is admitted with {@link OverflowPolicy#SAMPLE_DOWN}. Below half of the capacity every
+     * span is admitted; above it, the probability falls linearly to zero as the queue fills up. The trace id is mixed
+     * into a uniform number that is compared to that probability, so the spans of a trace share the same decision.
+     *
+     * @param span The span.
+     * @return true if the span should be queued.
+     */
+    private boolean admit(final JaegerSpan span) {
+        final int size = queue.size();
+        if (size <= sampleDownThreshold) {
+            return true;
+        }
+        final double probability = (double) (queue.capacity() - size) / (queue.capacity() - sampleDownThreshold);
+        long hash = span.context().getTraceIdLow() * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (hash >>> 11) * 0x1.0p-53 < probability;
+    }
+
+    /**
+     * Flushes a batch whenever one is full or the flush interval elapses, until the reporter is closed.
+     */
+    private void flushLoop() {
+        long nextFlush = System.nanoTime() + flushIntervalNanos;
+        while (running) {
+            final long now = System.nanoTime();
+            if (queue.size() >= batchSize || now - nextFlush >= 0) {
+                drain();
+                nextFlush = System.nanoTime() + flushIntervalNanos;
+            } else {
+                LockSupport.parkNanos(this, nextFlush - now);
+            }
+        }
+    }
+
+    /**
+     * Sends the queued spans in batches.
+     */
+    private void drain() {
+        int appended;
+        do {
+            appended = 0;
+            final long start = System.nanoTime();
+            JaegerSpan span;
+            while (appended < batchSize && (span = queue.poll()) != null) {
+                appended++;
+                try {
+                    metrics.recordFlushed(sender.append(span));
+                } catch (final SenderException e) {
+                    metrics.recordDropped(e.getDroppedSpanCount());
+                }
+            }
+            if (appended > 0) {
+                try {
+                    metrics.recordFlushed(sender.flush());
+                } catch (final SenderException e) {
+                    metrics.recordDropped(e.getDroppedSpanCount());
+                }
+                metrics.recordFlush(System.nanoTime() - start);
+            }
+        } while (appended == batchSize);
+    }
+
+    /**
+     * Returns the counters of this reporter.
+     *
+     * @return The counters.
+     */
+    ReporterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the flush thread, sends the spans still in the queue and closes the sender. Spans reported afterwards are
+     * dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!flusher.isAlive()) {
+            drain();
+        }
+        try {
+            metrics.recordFlushed(sender.close());
+        } catch (final SenderException e) {
+            metrics.recordDropped(e.getDroppedSpanCount());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpanContext;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed layout binary encoding of {@link JaegerSpanContext}, used by {@link JaegerTracingEngine} to propagate contexts
+ * over transports that carry binary headers without going through Jaeger's text map.
+ *
+ * <p>The layout, always big-endian whatever the order of the buffer, is:
+ * <pre>
+ * offset  size  field
+ *      0     1  version, currently {@value #VERSION}
+ *      1     8  high 64 bits of the trace ID
+ *      9     8  low 64 bits of the trace ID
+ *     17     8  span ID
+ *     25     8  parent span ID
+ *     33     1  Jaeger flags (sampled, debug)
+ *     34     2  length of the eventId in UTF-8 bytes, 0 if there is none
+ *     36     n  the eventId
+ * </pre>
+ * Baggage items other than the eventId are not propagated. The version and the length of the context are read by
+ * {@link BinaryContextLayout}, which the engines that propagate no context use to skip it. It is not the layout of
+ * the default {@link com.feedzai.commons.tracing.api.TracingWithContext#serializeContext(ByteBuffer)}, so a context
+ * written by Jaeger can only be read by Jaeger.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class BinarySpanContext {
+
+    /**
+     * The version of the layout.
+     */
+    static final byte VERSION = BinaryContextLayout.VERSION;
+
+    /**
+     * The size of the layout without the eventId.
+     */
+    static final int FIXED_LENGTH = BinaryContextLayout.FIXED_LENGTH;
+
+    /**
+     * The longest eventId that can be encoded, in UTF-8 bytes.
+     */
+    private static final int MAX_EVENT_ID_LENGTH = 0xFFFF;
+
+    /**
+     * Utility class.
+     */
+    private BinarySpanContext() {
+    }
+
+    /**
+     * Writes a context to a buffer, at its position, without allocating.
+     *
+     * @param buffer  The buffer.
+     * @param context The context.
+     * @param eventId The eventId the context belongs to, or {@code null}.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException  If the context does not fit in the buffer, in which case nothing is written.
+     * @throws IllegalArgumentException If the eventId is longer than 65535 bytes in UTF-8.
+     */
+    static int write(final ByteBuffer buffer, final JaegerSpanContext context, final String eventId) {
+        final int eventIdLength = eventId == null ? 0 : utf8Length(eventId);
+        if (eventIdLength > MAX_EVENT_ID_LENGTH) {
+            throw new IllegalArgumentException("The eventId can't exceed " + MAX_EVENT_ID_LENGTH + " bytes in UTF-8.");
+        }
+        final int length = FIXED_LENGTH + eventIdLength;
+        if (buffer.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            buffer.put(VERSION)
+                    .putLong(context.getTraceIdHigh())
+                    .putLong(context.getTraceIdLow())
+                    .putLong(context.getSpanId())
+                    .putLong(context.getParentId())
+                    .put(context.getFlags())
+                    .putShort((short) eventIdLength);
+            if (eventIdLength > 0) {
+                putUtf8(buffer, eventId);
+            }
+        } finally {
+            buffer.order(order);
+        }
+        return length;
+    }
+
+    /**
+     * Reads a context written by {@link #write(ByteBuffer, JaegerSpanContext, String)} from a buffer, at its
+     * position. Only the eventId, when there is one, is allocated besides the context itself.
+     *
+     * @param buffer The buffer.
+     * @return The context, with the eventId as its {@link AbstractOpenTracingEngineWithId#EVENT_ID} baggage item.
+     * @throws IllegalArgumentException If the buffer does not hold a context in a known version.
+     */
+    static JaegerSpanContext read(final ByteBuffer buffer) {
+        if (buffer.remaining() < FIXED_LENGTH) {
+            throw new IllegalArgumentException("Truncated binary context: " + buffer.remaining() + " bytes.");
+        }
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            final byte version = buffer.get(buffer.position());
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown binary context version " + version + ".");
+            }
+            final int eventIdLength = buffer.getShort(buffer.position() + FIXED_LENGTH - Short.BYTES) & 0xFFFF;
+            if (buffer.remaining() < FIXED_LENGTH + eventIdLength) {
+                throw new IllegalArgumentException("Truncated binary context: " + buffer.remaining() + " bytes.");
+            }
+            buffer.get();
+            final JaegerSpanContext context = new JaegerSpanContext(buffer.getLong(), buffer.getLong(),
+                    buffer.getLong(), buffer.getLong(), buffer.get());
+            buffer.getShort();
+            if (eventIdLength == 0) {
+                return context;
+            }
+            return context.withBaggageItem(AbstractOpenTracingEngineWithId.EVENT_ID, getUtf8(buffer, eventIdLength));
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Returns the length of a string in UTF-8.
+     *
+     * @param string The string.
+     * @return The number of bytes.
+     */
+    private static int utf8Length(final String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes a string in UTF-8 without encoding it to an intermediate array. Unpaired surrogates are written as the
+     * replacement character U+FFFD.
+     *
+     * @param buffer The buffer, with room for {@link #utf8Length(String)} bytes.
+     * @param string The string.
+     */
+    private static void putUtf8(final ByteBuffer buffer, final String string) {
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18))
+                        .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                        .put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) 0xEF).put((byte) 0xBF).put((byte) 0xBD);
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12))
+                        .put((byte) (0x80 | c >> 6 & 0x3F))
+                        .put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Reads a string in UTF-8.
+     *
+     * @param buffer The buffer.
+     * @param length The number of bytes of the string.
+     * @return The string.
+     */
+    private static String getUtf8(final ByteBuffer buffer, final int length) {
+        final String string;
+        if (buffer.hasArray()) {
+            string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and many consumers, backed by a ring of slots that each carry a sequence
+ * number telling whether the slot is ready to be written or read. Neither {@link #offer(Object)} nor {@link #poll()}
+ * allocates or blocks; they fail when the queue is full or empty.
+ *
+ * @param <E> The type of the elements.
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class BoundedRingQueue<E> {
+
+    /**
+     * The elements of the ring.
+     */
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * The sequence of each slot: equal to the position of the next write while the slot is free, one past it once the
+     * slot holds the element written at that position.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The mask that maps a position to its slot.
+     */
+    private final int mask;
+
+    /**
+     * The position of the next write.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next read.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Constructor for this class.
+     *
+     * @param capacity The maximum number of elements, rounded up to a power of two.
+     */
+    BoundedRingQueue(final int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity - 1 == 0 ? 1 : (capacity - 1) << 1);
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element to the tail of the queue.
+     *
+     * @param element The element.
+     * @return true if the element was added, false if the queue is full.
+     */
+    boolean offer(final E element) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            position = tail.get();
+        }
+    }
+
+    /**
+     * Removes the element at the head of the queue.
+     *
+     * @return The element, or {@code null} if the queue is empty.
+     */
+    E poll() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+            position = head.get();
+        }
+    }
+
+    /**
+     * Returns the number of elements in the queue, which is only an estimate while it is being used.
+     *
+     * @return The number of elements.
+     */
+    int size() {
+        final long size = tail.get() - head.get();
+        return size < 0 ? 0 : (int) Math.min(size, capacity());
+    }
+
+    /**
+     * Returns the maximum number of elements in the queue.
+     *
+     * @return The capacity.
+     */
+    int capacity() {
+        return mask + 1;
+    }
+}
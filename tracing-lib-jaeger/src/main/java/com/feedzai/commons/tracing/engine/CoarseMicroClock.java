@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.google.common.base.Preconditions;
+import io.jaegertracing.internal.clock.Clock;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock whose timestamps are published by a ticker thread, so that reading the time is a single volatile read instead
+ * of a call to {@link System#nanoTime()}. Meant for tracers with very hot, short spans, at the cost of resolution:
+ * start timestamps are multiples of the tick. The clock does not claim microsecond accuracy, so the tracer measures
+ * durations with {@link #currentNanoTicks()} and spans shorter than a tick keep their duration.
+ *
+ * <p>The ticker copies the time of a {@link MicroClock}, so the timestamps follow the wall clock and never go
+ * backwards. The ticker thread stops when the clock is closed or garbage collected.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class CoarseMicroClock implements Clock, AutoCloseable {
+
+    /**
+     * The timestamp published by the ticker thread.
+     */
+    private final Ticks ticks;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param source The clock the ticker thread reads.
+     * @param tick   The interval between two timestamps.
+     */
+    public CoarseMicroClock(final MicroClock source, final Duration tick) {
+        Preconditions.checkNotNull(source);
+        Preconditions.checkNotNull(tick);
+        Preconditions.checkArgument(!tick.isNegative() && !tick.isZero());
+        this.ticks = new Ticks(source);
+        final Thread ticker = new Thread(new Ticker(this, ticks, tick.toNanos()), "jaeger-coarse-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long currentTimeMicros() {
+        return ticks.micros;
+    }
+
+    @Override
+    public boolean isMicrosAccurate() {
+        // The timestamps are only as accurate as the tick, so durations are measured with the nano ticks.
+        return false;
+    }
+
+    @Override
+    public long currentNanoTicks() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Stops the ticker thread. The clock keeps returning the last timestamp.
+     */
+    @Override
+    public void close() {
+        ticks.closed = true;
+    }
+
+    /**
+     * The timestamp shared by the clock and its ticker thread, kept apart from the clock so that the thread does not
+     * keep the clock alive.
+     */
+    private static final class Ticks {
+
+        /**
+         * The clock read by the ticker thread.
+         */
+        final MicroClock source;
+
+        /**
+         * The last timestamp, in microseconds since the epoch.
+         */
+        volatile long micros;
+
+        /**
+         * Whether the clock was closed.
+         */
+        volatile boolean closed;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param source The clock read by the ticker thread.
+         */
+        Ticks(final MicroClock source) {
+            this.source = source;
+            this.micros = source.currentTimeMicros();
+        }
+    }
+
+    /**
+     * Publishes the time of the source clock every tick, until the clock is closed or collected.
+     */
+    private static final class Ticker implements Runnable {
+
+        /**
+         * The clock, weakly referenced so that the thread does not keep it alive.
+         */
+        private final WeakReference<CoarseMicroClock> clock;
+
+        /**
+         * The timestamp published to the clock.
+         */
+        private final Ticks ticks;
+
+        /**
+         * The interval between two timestamps, in nanoseconds.
+         */
+        private final long tickNanos;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param clock     The clock.
+         * @param ticks     The timestamp published to the clock.
+         * @param tickNanos The interval between two timestamps, in nanoseconds.
+         */
+        Ticker(final CoarseMicroClock clock, final Ticks ticks, final long tickNanos) {
+            this.clock = new WeakReference<>(clock);
+            this.ticks = ticks;
+            this.tickNanos = tickNanos;
+        }
+
+        @Override
+        public void run() {
+            while (!ticks.closed && clock.get() != null) {
+                ticks.micros = ticks.source.currentTimeMicros();
+                LockSupport.parkNanos(tickNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * {@link Tracer} of an asynchronously started {@link JaegerTracingEngine}. It delegates to a tracer that is cheap to
+ * build until the real tracer is ready, and to the real tracer afterwards. Both tracers share the scope manager, so
+ * spans started before the switch stay active and the spans started after it become their children.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class DeferredTracer implements Tracer, Closeable {
+
+    /**
+     * The tracer in use.
+     */
+    private volatile Tracer delegate;
+
+    /**
+     * Whether the real tracer is in use.
+     */
+    private boolean started;
+
+    /**
+     * Whether this tracer was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param preStart The tracer used until the real one is ready.
+     */
+    DeferredTracer(final Tracer preStart) {
+        this.delegate = preStart;
+    }
+
+    /**
+     * Switches to the real tracer, or closes it if this tracer was already closed.
+     *
+     * @param tracer The real tracer.
+     * @return true if the real tracer is now in use, false if it was closed.
+     * @throws IOException if the real tracer could not be closed.
+     */
+    boolean start(final Tracer tracer) throws IOException {
+        synchronized (this) {
+            if (!closed) {
+                delegate = tracer;
+                started = true;
+                return true;
+            }
+        }
+        if (tracer instanceof Closeable) {
+            ((Closeable) tracer).close();
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the real tracer is in use.
+     *
+     * @return true if the real tracer is in use.
+     */
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public ScopeManager scopeManager() {
+        return delegate.scopeManager();
+    }
+
+    @Override
+    public Span activeSpan() {
+        return delegate.activeSpan();
+    }
+
+    @Override
+    public SpanBuilder buildSpan(final String operationName) {
+        return delegate.buildSpan(operationName);
+    }
+
+    @Override
+    public <C> void inject(final SpanContext spanContext, final Format<C> format, final C carrier) {
+        delegate.inject(spanContext, format, carrier);
+    }
+
+    @Override
+    public <C> SpanContext extract(final Format<C> format, final C carrier) {
+        return delegate.extract(format, carrier);
+    }
+
+    /**
+     * Closes the real tracer, which flushes its reporter. If it is not ready yet, it is closed as soon as it is built.
+     */
+    @Override
+    public void close() throws IOException {
+        final Tracer tracer;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            tracer = started ? delegate : null;
+        }
+        if (tracer instanceof Closeable) {
+            ((Closeable) tracer).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeferredTracer{" +
+                "delegate=" + delegate +
+                '}';
+    }
+}
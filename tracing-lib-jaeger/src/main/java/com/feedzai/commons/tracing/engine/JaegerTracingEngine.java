@@ -19,28 +19,50 @@ package com.feedzai.commons.tracing.engine;
 import com.feedzai.commons.tracing.api.TraceContext;
 import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
 import com.feedzai.commons.tracing.engine.configuration.JaegerConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.OverflowPolicy;
+import com.feedzai.commons.tracing.engine.configuration.PreStartPolicy;
+import com.feedzai.commons.tracing.engine.configuration.TailEvictionPolicy;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import io.jaegertracing.Configuration;
+import io.jaegertracing.internal.JaegerSpan;
 import io.jaegertracing.internal.JaegerSpanContext;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.clock.Clock;
 import io.jaegertracing.internal.reporters.RemoteReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
 import io.jaegertracing.internal.samplers.ProbabilisticSampler;
 import io.jaegertracing.spi.Reporter;
+import io.jaegertracing.spi.Sampler;
+import io.jaegertracing.spi.Sender;
+import io.jaegertracing.thrift.internal.senders.ThriftSender;
+import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMap;
 import io.opentracing.util.GlobalTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -49,7 +71,7 @@ import java.util.stream.Collectors;
  *
  * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
  */
-public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
+public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId implements AutoCloseable {
 
 
     /**
@@ -67,6 +89,52 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
      */
     private static final String UBERCTX_ID = "uberctx-id";
 
+    /**
+     * Reads the trace ID straight from the fields of {@link JaegerSpanContext}.
+     */
+    private static final TraceIdResolver TRACE_ID_RESOLVER = new TraceIdResolver() {
+        @Override
+        public long traceIdHigh(final SpanContext context) {
+            return ((JaegerSpanContext) context).getTraceIdHigh();
+        }
+
+        @Override
+        public long traceIdLow(final SpanContext context) {
+            return ((JaegerSpanContext) context).getTraceIdLow();
+        }
+
+        @Override
+        public boolean isSampled(final SpanContext context) {
+            return ((JaegerSpanContext) context).isSampled();
+        }
+    };
+
+    /**
+     * The sampler of the tracer, which can be changed without rebuilding the tracer, or {@code null} if the tracer was
+     * not built by this engine.
+     */
+    private final ReconfigurableSampler sampler;
+
+    /**
+     * Completes when the tracer is ready, which is right away unless the engine was built with an asynchronous start.
+     */
+    private final CompletableFuture<Void> started;
+
+    /**
+     * The counters of the batching reporter of the tracer, or {@code null} if the tracer does not use one.
+     */
+    private final ReporterMetrics reporterMetrics;
+
+    /**
+     * The tail sampling buffer the tracer reports to, or {@code null} if the engine does not use tail sampling.
+     */
+    private final TailSamplingReporter tailSampling;
+
+    /**
+     * The clock of the tracer, or {@code null} if the tracer was not built by this engine. Closed with the engine, so
+     * that a {@link CoarseMicroClock} stops its ticker thread.
+     */
+    private final Clock clock;
 
     /**
      * Constructor for this abstract class to be called by the extension classes to supply the implementation specific
@@ -78,7 +146,143 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
     @VisibleForTesting
     JaegerTracingEngine(final Tracer tracer,
                         final CacheConfiguration configuration) {
-        super(tracer, configuration);
+        this(tracer, configuration, null, CompletableFuture.completedFuture(null), null, null, null);
+    }
+
+    /**
+     * Constructor for this class, called by the {@link Builder} with every part of the tracer it built.
+     *
+     * @param tracer          The Tracer implementation of the underlying tracing Engine.
+     * @param configuration   The configuration parameters for the caches.
+     * @param sampler         The sampler of the tracer, or {@code null} if it cannot be reconfigured.
+     * @param started         Completes when the tracer is ready.
+     * @param reporterMetrics The counters of the batching reporter of the tracer, or {@code null} if it does not use
+     *                        one.
+     * @param tailSampling    The tail sampling buffer the tracer reports to, or {@code null} if it does not use one.
+     * @param clock           The clock of the tracer, closed with this engine, or {@code null} if it is not owned by
+     *                        this engine.
+     */
+    JaegerTracingEngine(final Tracer tracer, final CacheConfiguration configuration,
+                        final ReconfigurableSampler sampler, final CompletableFuture<Void> started,
+                        final ReporterMetrics reporterMetrics, final TailSamplingReporter tailSampling,
+                        final Clock clock) {
+        super(tracer, configuration, TRACE_ID_RESOLVER);
+        this.sampler = sampler;
+        this.started = started;
+        this.reporterMetrics = reporterMetrics;
+        this.tailSampling = tailSampling;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns true if the tracer of this engine is ready. An engine built with an asynchronous start can be used
+     * before, in which case the traces are handled according to its {@link PreStartPolicy}.
+     *
+     * @return true if the tracer is ready.
+     */
+    public boolean isStarted() {
+        return started.isDone() && !started.isCompletedExceptionally();
+    }
+
+    /**
+     * Returns a future that completes when the tracer of this engine is ready, or completes exceptionally if it could
+     * not be built.
+     *
+     * @return The future.
+     */
+    public CompletableFuture<Void> whenStarted() {
+        return started.thenApply(Function.identity());
+    }
+
+    /**
+     * Returns the counters of the batching reporter of the tracer, which are updated as the tracer reports spans.
+     *
+     * @return The counters, or {@code null} if the engine was not built with {@link
+     * Builder#withBatchingReporter(int, int, Duration)}.
+     */
+    public ReporterMetrics getReporterMetrics() {
+        return reporterMetrics;
+    }
+
+    /**
+     * Returns the counters of the tail sampling buffer of the tracer, which are updated as traces finish.
+     *
+     * @return The counters, or {@code null} if the engine was not built with {@link
+     * Builder#withTailSampling(Duration, Collection, int)}.
+     */
+    public TailSamplingMetrics getTailSamplingMetrics() {
+        return tailSampling == null ? null : tailSampling.getMetrics();
+    }
+
+    /**
+     * Returns when a span started, as read from the clock of the tracer.
+     *
+     * @param span The span.
+     * @return The start of the span in microseconds since the epoch, or -1 if it is not a Jaeger span.
+     */
+    @Override
+    protected long startTimestampMicros(final Span span) {
+        return span instanceof JaegerSpan ? ((JaegerSpan) span).getStart() : -1;
+    }
+
+    /**
+     * Hands a finished trace to the tail sampling buffer, which reports or drops all its spans.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param spans       The stack of the finished trace.
+     */
+    @Override
+    protected void traceFinished(final long traceIdHigh, final long traceIdLow, final SpanStack spans) {
+        if (tailSampling != null) {
+            tailSampling.traceFinished(traceIdHigh, traceIdLow, spans.eventId);
+        }
+    }
+
+    /**
+     * Replaces the rules that decide which operations are traced. Besides skipping the operations whose rule is
+     * disabled, the traces whose root operation matches a rule are sampled at the rate of the rule instead of the
+     * configured rate, unless the sampler of this engine cannot be reconfigured. With tail sampling the rates are not
+     * applied, since every root must be sampled for the tail sampling policy to decide on its trace.
+     *
+     * @param operationRules The compiled rules.
+     */
+    @Override
+    public void setOperationRules(final OperationRules operationRules) {
+        super.setOperationRules(operationRules);
+        if (sampler != null && tailSampling == null) {
+            sampler.setRules(getOperationRules());
+        }
+    }
+
+    /**
+     * Applies the sampling settings and the cache settings of a configuration to this engine, keeping the tracer, its
+     * reporter and the traces in flight. The agent address and the process name cannot be changed this way, and the
+     * cache maintenance interval must be the one this engine was built with. The tail sampling policy can be changed,
+     * but tail sampling cannot be turned on or off.
+     *
+     * @param configuration The new configuration.
+     * @throws IllegalStateException    if the sampler of this engine cannot be reconfigured.
+     * @throws IllegalArgumentException if the configuration is not valid, changes the cache maintenance mode or turns
+     *                                  tail sampling on or off.
+     */
+    public void reconfigure(final JaegerConfiguration configuration) {
+        if (sampler == null) {
+            throw new IllegalStateException("The sampler of this engine was not built to be reconfigured.");
+        }
+        final Builder builder = new Builder().fromConfig(configuration);
+        Preconditions.checkArgument((tailSampling != null) == builder.tailSampling,
+                "Tail sampling cannot be turned on or off without rebuilding the engine.");
+        final Sampler updated = builder.initSampler();
+        reconfigureCaches(builder.cacheConfiguration());
+        if (tailSampling != null) {
+            tailSampling.setPolicy(builder.tailSamplingPolicy());
+        }
+        if (updated.equals(sampler.getDelegate())) {
+            updated.close();
+        } else {
+            sampler.update(updated);
+        }
     }
 
 
@@ -93,6 +297,25 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
         return tracer.activeSpan();
     }
 
+    /**
+     * Closes the underlying tracer, which flushes the spans buffered by its reporter and releases its sender, and
+     * stops the ticker thread of its clock if it uses a {@link CoarseMicroClock}. Spans finished afterwards are not
+     * reported.
+     */
+    @Override
+    public void close() {
+        if (tracer instanceof Closeable) {
+            try {
+                ((Closeable) tracer).close();
+            } catch (final IOException e) {
+                logger.warn("Could not close the Jaeger tracer.", e);
+            }
+        }
+        if (clock instanceof CoarseMicroClock) {
+            ((CoarseMicroClock) clock).close();
+        }
+    }
+
     /**
      * Maps an app-specific eventId to the span corresponding to it's correct context.
      *
@@ -100,7 +323,7 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
      * @param span    The span that represents the current context.
      */
     public void mapEventId(final String eventId, final Span span) {
-        traceIdMappings.put(eventId, getTraceIdFromSpan(span));
+        traceIdMappings.put(eventId, span.context());
     }
 
 
@@ -121,14 +344,61 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
      */
     public Map<String, String> serializeContextForId(final String id) {
         final HashMap<String, String> map = new HashMap<>();
-        if (traceIdMappings.getIfPresent(id) != null && spanIdMappings.getIfPresent(traceIdMappings.getIfPresent(id)).peek() != null) {
-            tracer.inject(
-                    spanIdMappings.getIfPresent(traceIdMappings.getIfPresent(id)).peek().context(),
-                    Format.Builtin.TEXT_MAP, implementTextMap(map));
+        final SpanContext context = currentSpanContextForId(id);
+        if (context != null) {
+            tracer.inject(context, Format.Builtin.TEXT_MAP, implementTextMap(map));
         }
         return map;
     }
 
+    /**
+     * Serializes the current context in the fixed layout of {@link BinarySpanContext}: the trace, span and parent IDs,
+     * the flags and the eventId of the trace, if any, without allocating.
+     *
+     * @param buffer The buffer the context is written to.
+     * @return The number of bytes written, 0 if there is no active span.
+     */
+    @Override
+    public int serializeContext(final ByteBuffer buffer) {
+        final Span span = this.currentSpan();
+        if (span == null) {
+            return 0;
+        }
+        return serializeContext(buffer, span.context(), null);
+    }
+
+    /**
+     * Serializes the context associated to a specific eventID in the fixed layout of {@link BinarySpanContext}.
+     *
+     * @param id     The event ID.
+     * @param buffer The buffer the context is written to.
+     * @return The number of bytes written, 0 if there is no context for the event ID.
+     */
+    public int serializeContextForId(final String id, final ByteBuffer buffer) {
+        final SpanContext context = currentSpanContextForId(id);
+        if (context == null) {
+            return 0;
+        }
+        return serializeContext(buffer, context, id);
+    }
+
+    /**
+     * Writes a context to a buffer in the fixed layout of {@link BinarySpanContext}.
+     *
+     * @param buffer  The buffer the context is written to.
+     * @param context The context.
+     * @param eventId The eventId of the trace, or {@code null} to take it from the context's baggage.
+     * @return The number of bytes written, 0 if the context is not Jaeger's.
+     */
+    private static int serializeContext(final ByteBuffer buffer, final SpanContext context, final String eventId) {
+        if (!(context instanceof JaegerSpanContext)) {
+            return 0;
+        }
+        final JaegerSpanContext jaegerContext = (JaegerSpanContext) context;
+        return BinarySpanContext.write(buffer, jaegerContext,
+                eventId == null ? jaegerContext.getBaggageItem(EVENT_ID) : eventId);
+    }
+
     /**
      * Returns an implementation of Jaeger's TextMap.
      *
@@ -156,7 +426,7 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
                         || entry.getKey().equals(UBERCTX_ID))
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
-        final SpanContext context = GlobalTracer.get().extract(Format.Builtin.TEXT_MAP, new TextMap() {
+        final SpanContext context = tracer.extract(Format.Builtin.TEXT_MAP, new TextMap() {
             @Override
             public Iterator<Map.Entry<String, String>> iterator() {
                 return textMap.entrySet().iterator();
@@ -166,23 +436,47 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
             public void put(final String key, final String value) {
             }
         });
-        final String traceId = (textMap.get(UBER_TRACE_ID) != null ? textMap.get(UBER_TRACE_ID) : "").split(":")[0];
         if (context == null) {
             //This is okay because creating a span as child of null creates an orphan span and does not throw an NPE.
             return new SpanTraceContext(null);
-        } else if (((JaegerSpanContext) context).getBaggageItem(EVENT_ID) != null) {
-            traceIdMappings.put(((JaegerSpanContext) context).getBaggageItem(EVENT_ID), traceId);
-            spanIdMappings.put(traceId, new LinkedList<>());
         }
-        return new SpanTraceContext(context);
+        return registerContext((JaegerSpanContext) context);
     }
 
-
+    /**
+     * Deserializes a context written by {@link #serializeContext(ByteBuffer)} in another process, without going
+     * through a map.
+     *
+     * @param buffer The buffer holding the serialized context. A buffer without remaining bytes holds no context.
+     * @return The deserialized version of the context.
+     * @throws IllegalArgumentException If the buffer does not hold a context in the layout of {@link
+     *                                  BinarySpanContext}.
+     */
     @Override
-    protected String getTraceIdFromSpan(final Span span) {
-        final HashMap<String, String> map = new HashMap<>();
-        tracer.inject(span.context(), Format.Builtin.TEXT_MAP, implementTextMap(map));
-        return map.get(UBER_TRACE_ID).split(":")[0];
+    public TraceContext deserializeContext(final ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            //This is okay because creating a span as child of null creates an orphan span and does not throw an NPE.
+            return new SpanTraceContext(null);
+        }
+        return registerContext(BinarySpanContext.read(buffer));
+    }
+
+    /**
+     * Maps the eventId carried by a context received from another process, if any, to that context, so that the
+     * operations of the event in this process join its trace.
+     *
+     * @param context The deserialized context.
+     * @return The context to use as parent.
+     */
+    private TraceContext registerContext(final JaegerSpanContext context) {
+        final String eventId = context.getBaggageItem(EVENT_ID);
+        if (eventId != null) {
+            traceIdMappings.put(eventId, context);
+            if (context.isSampled()) {
+                spanIdMappings.put(context.getTraceIdHigh(), context.getTraceIdLow(), new SpanStack());
+            }
+        }
+        return new SpanTraceContext(context);
     }
 
     /**
@@ -195,6 +489,12 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
          */
         private String ip = "localhost";
 
+        /**
+         * The port where the Jaeger agent receives spans. Default value is 0, for the port set in the environment or
+         * Jaeger's default port.
+         */
+        private int agentPort;
+
         /**
          * The name of this process, for displaying in the UI. Default value is "UnknownProcess" + a random identifier.
          */
@@ -205,6 +505,22 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
          */
         private double sampleRate = 1;
 
+        /**
+         * The duration of the windows after which the adaptive sampler adapts its probabilities. Default value is
+         * null, meaning every trace is sampled with the same probability.
+         */
+        private Duration samplingWindow;
+
+        /**
+         * The minimum number of traces per second of each root operation with adaptive sampling. Default value is 0.
+         */
+        private double minTracesPerSecond;
+
+        /**
+         * The maximum number of traces per second with adaptive sampling. Default value is 0, meaning no maximum.
+         */
+        private double maxTracesPerSecond;
+
         /**
          * The maximum duration of records in the context caches. Default value is 10 seconds.
          */
@@ -215,11 +531,154 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
          */
         private long cacheMaxSize = 10000;
 
+        /**
+         * The interval between runs of the background maintenance of the caches. Default value is null, meaning the
+         * caches are maintained by the threads that use them.
+         */
+        private Duration cacheMaintenanceInterval;
+
+        /**
+         * How long the cache entries of a finished trace are kept. Default value is null, meaning they stay until they
+         * expire.
+         */
+        private Duration purgeGracePeriod;
+
+        /**
+         * Whether the tracer is built in the background. Default value is false.
+         */
+        private boolean asyncStart;
+
+        /**
+         * What happens to the traces that start before the tracer is built in the background. Default value is {@link
+         * PreStartPolicy#BUFFER}.
+         */
+        private PreStartPolicy preStartPolicy = PreStartPolicy.BUFFER;
+
+        /**
+         * The maximum number of spans kept before the tracer is built in the background. Default value is 1000.
+         */
+        private int preStartBufferSize = 1000;
+
+        /**
+         * Runs the build of the tracer when it is built in the background. Default value is null, meaning a new daemon
+         * thread is started.
+         */
+        private Executor startExecutor;
+
+        /**
+         * The interval between two measurements of the offset of the tracer clock to the wall clock. Default value is
+         * one minute.
+         */
+        private Duration clockResyncInterval = MicroClock.DEFAULT_RESYNC_INTERVAL;
+
+        /**
+         * The interval between two timestamps of the coarse clock, or {@code null} to read the time on every span.
+         * Default value is {@code null}.
+         */
+        private Duration coarseClockTick;
+
+        /**
+         * The directory of the log where the spans are kept until they are sent to the agent. Default value is null,
+         * meaning the spans are only queued in memory.
+         */
+        private Path spillDirectory;
+
+        /**
+         * The size of each segment file of the span spill log. Default value is 16 MiB.
+         */
+        private int spillSegmentSize = 16 * 1024 * 1024;
+
+        /**
+         * The maximum number of segment files of the span spill log. Default value is 8.
+         */
+        private int spillMaxSegments = 8;
+
+        /**
+         * The maximum number of spans queued by the batching reporter. Default value is 0, meaning Jaeger's own
+         * reporter is used with its default settings.
+         */
+        private int reporterQueueSize;
+
+        /**
+         * The number of spans the batching reporter flushes together. Default value is 100.
+         */
+        private int reporterBatchSize = 100;
+
+        /**
+         * The maximum time a span waits in the queue of the batching reporter for its batch to fill up. Default value
+         * is 1 second.
+         */
+        private Duration reporterFlushInterval = Duration.ofSeconds(1);
+
+        /**
+         * What the batching reporter does with a span finished when its queue is full. Default value is {@link
+         * OverflowPolicy#DROP_NEWEST}.
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+        /**
+         * How long a thread waits for room in the queue of the batching reporter with {@link OverflowPolicy#BLOCK}.
+         * Default value is 10 milliseconds.
+         */
+        private Duration overflowBlockTimeout = Duration.ofMillis(10);
+
+        /**
+         * The reporter used instead of one that sends the spans to the agent.
+         */
+        private Reporter reporter;
+
+        /**
+         * Whether the spans are held until their trace finishes and only reported if the trace is kept. Default value
+         * is false.
+         */
+        private boolean tailSampling;
+
+        /**
+         * The duration above which a finished trace is always kept by tail sampling. Default value is zero, for no
+         * latency rule.
+         */
+        private Duration tailLatencyThreshold = Duration.ZERO;
+
+        /**
+         * The application specific IDs whose traces are always kept by tail sampling. Default value is none.
+         */
+        private Collection<String> tailWatchedIds = Collections.emptySet();
+
+        /**
+         * The maximum number of spans held by the tail sampling buffer. Default value is 10000.
+         */
+        private int tailMaxBufferedSpans = 10000;
+
+        /**
+         * What the tail sampling buffer does with the traces it evicts. Default value is {@link
+         * TailEvictionPolicy#DROP_OLDEST}.
+         */
+        private TailEvictionPolicy tailEvictionPolicy = TailEvictionPolicy.DROP_OLDEST;
+
         /**
          * Random object for generating random IDs.
          */
         private static final Random RANDOM = new Random();
 
+        /**
+         * The duration of the windows of the adaptive sampler when a configuration does not set it.
+         */
+        private static final Duration DEFAULT_SAMPLING_WINDOW = Duration.ofSeconds(10);
+
+        /**
+         * Starts a daemon thread to build each tracer that is built in the background.
+         */
+        private static final Executor START_EXECUTOR = task -> {
+            final Thread thread = new Thread(task, "jaeger-tracer-start");
+            thread.setDaemon(true);
+            thread.start();
+        };
+
+        /**
+         * How long the spans in the span spill log wait before the agent is tried again after a failed send.
+         */
+        private static final Duration SPILL_RETRY_INTERVAL = Duration.ofMillis(100);
+
 
         /**
          * Sets the value of the {@code ip} parameter for this {@link JaegerTracingEngine} instance.
@@ -234,6 +693,19 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
             return this;
         }
 
+        /**
+         * Sets the UDP port where the Jaeger agent receives spans, instead of the one set in the environment or
+         * Jaeger's default port.
+         *
+         * @param agentPort The Jaeger agent port.
+         * @return this Builder.
+         */
+        public Builder withAgentPort(final int agentPort) {
+            Preconditions.checkArgument(agentPort > 0 && agentPort <= 0xFFFF);
+            this.agentPort = agentPort;
+            return this;
+        }
+
         /**
          * Sets the value of the {@code processName} parameter for this {@link JaegerTracingEngine} instance.
          *
@@ -259,6 +731,29 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
             return this;
         }
 
+        /**
+         * Samples each root operation with its own probability, adapted at the end of every window from the rates
+         * observed during the window. Each operation gets at least {@code minTracesPerSecond} traces, and the
+         * probabilities are lowered so that all operations together stay under {@code maxTracesPerSecond}, which is
+         * also enforced by a rate limiter. The probabilities never go above the sample rate.
+         *
+         * @param minTracesPerSecond The minimum number of traces per second of each operation, 0 for no minimum.
+         * @param maxTracesPerSecond The maximum number of traces per second of all operations, 0 for no maximum.
+         * @param window             The duration of each window.
+         * @return this Builder.
+         */
+        public Builder withAdaptiveSampling(final double minTracesPerSecond, final double maxTracesPerSecond,
+                                            final Duration window) {
+            Preconditions.checkArgument(minTracesPerSecond >= 0);
+            Preconditions.checkArgument(maxTracesPerSecond >= 0);
+            Preconditions.checkNotNull(window);
+            Preconditions.checkArgument(!window.isNegative() && !window.isZero());
+            this.minTracesPerSecond = minTracesPerSecond;
+            this.maxTracesPerSecond = maxTracesPerSecond;
+            this.samplingWindow = window;
+            return this;
+        }
+
         /**
          * Sets the value of the {@code cacheDuration} parameter for this {@link JaegerTracingEngine} instance.
          *
@@ -284,6 +779,204 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
             return this;
         }
 
+        /**
+         * Moves the maintenance of the caches of this {@link JaegerTracingEngine} instance to a background thread that
+         * runs at the supplied interval.
+         *
+         * @param cacheMaintenanceInterval The interval between runs of the maintenance.
+         * @return this Builder.
+         */
+        public Builder withCacheMaintenanceInterval(final Duration cacheMaintenanceInterval) {
+            Preconditions.checkNotNull(cacheMaintenanceInterval);
+            Preconditions.checkArgument(!cacheMaintenanceInterval.isNegative() && !cacheMaintenanceInterval.isZero());
+            this.cacheMaintenanceInterval = cacheMaintenanceInterval;
+            return this;
+        }
+
+        /**
+         * Sets how often the tracer clock measures its offset to the wall clock again, so that it follows the NTP
+         * corrections of the wall clock. Corrections are slewed in, so the clock never goes backwards.
+         *
+         * @param clockResyncInterval The interval between two measurements.
+         * @return this Builder.
+         */
+        public Builder withClockResyncInterval(final Duration clockResyncInterval) {
+            Preconditions.checkNotNull(clockResyncInterval);
+            Preconditions.checkArgument(!clockResyncInterval.isNegative() && !clockResyncInterval.isZero());
+            this.clockResyncInterval = clockResyncInterval;
+            return this;
+        }
+
+        /**
+         * Makes the tracer read the time published by a ticker thread every {@code tick}, instead of reading the time
+         * on every span. This is cheaper for very hot spans, but start timestamps become multiples of the tick.
+         * Durations are still measured with {@link System#nanoTime()}.
+         *
+         * @param tick The interval between two timestamps.
+         * @return this Builder.
+         */
+        public Builder withCoarseClock(final Duration tick) {
+            Preconditions.checkNotNull(tick);
+            Preconditions.checkArgument(!tick.isNegative() && !tick.isZero());
+            this.coarseClockTick = tick;
+            return this;
+        }
+
+        /**
+         * Purges the cache entries of a trace once its root span and all its children have finished, keeping them for
+         * the supplied grace period so that late calls that join the trace by its eventId still find it.
+         *
+         * @param purgeGracePeriod How long the entries of a finished trace are kept, which may be zero.
+         * @return this Builder.
+         */
+        public Builder withFinishedTracePurge(final Duration purgeGracePeriod) {
+            Preconditions.checkNotNull(purgeGracePeriod);
+            Preconditions.checkArgument(!purgeGracePeriod.isNegative());
+            this.purgeGracePeriod = purgeGracePeriod;
+            return this;
+        }
+
+        /**
+         * Builds the tracer of this {@link JaegerTracingEngine} instance in the background, so that {@link #build()}
+         * returns without waiting for the sender to be resolved and opened nor for the host to be looked up. The engine
+         * can be used right away and switches to the tracer once it is ready.
+         *
+         * @param preStartPolicy     What happens to the traces that start before the tracer is ready.
+         * @param preStartBufferSize The maximum number of spans that are kept until the tracer is ready, with {@link
+         *                           PreStartPolicy#BUFFER}.
+         * @return this Builder.
+         */
+        public Builder withAsyncStart(final PreStartPolicy preStartPolicy, final int preStartBufferSize) {
+            Preconditions.checkNotNull(preStartPolicy);
+            Preconditions.checkArgument(preStartBufferSize >= 0);
+            this.asyncStart = true;
+            this.preStartPolicy = preStartPolicy;
+            this.preStartBufferSize = preStartBufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the executor that builds the tracer when it is built in the background.
+         *
+         * @param startExecutor The executor.
+         * @return this Builder.
+         */
+        public Builder withStartExecutor(final Executor startExecutor) {
+            Preconditions.checkNotNull(startExecutor);
+            this.startExecutor = startExecutor;
+            return this;
+        }
+
+        /**
+         * Writes every finished span to a memory-mapped log on disk and sends the log to the agent from a background
+         * thread, so that the spans finished while the agent is unavailable are sent once it is back instead of being
+         * dropped. Spans left in the directory by a previous process are sent as well. The log uses at most {@code
+         * segmentSize * maxSegments} bytes of disk, dropping its oldest spans when it is full.
+         *
+         * @param directory   The directory of the log.
+         * @param segmentSize The size of each segment file of the log.
+         * @param maxSegments The maximum number of segment files of the log.
+         * @return this Builder.
+         */
+        public Builder withSpillLog(final Path directory, final int segmentSize, final int maxSegments) {
+            Preconditions.checkNotNull(directory);
+            Preconditions.checkArgument(segmentSize > 0);
+            Preconditions.checkArgument(maxSegments >= 2);
+            this.spillDirectory = directory;
+            this.spillSegmentSize = segmentSize;
+            this.spillMaxSegments = maxSegments;
+            return this;
+        }
+
+        /**
+         * Reports the spans through a bounded lock-free queue that is flushed to the agent in batches by a background
+         * thread, whenever a batch is full or the flush interval elapses. What happens when the queue is full is set
+         * by {@link #withOverflowPolicy(OverflowPolicy, Duration)}, and the outcome of every span is counted in
+         * {@link JaegerTracingEngine#getReporterMetrics()}. Cannot be combined with the span spill log.
+         *
+         * @param queueSize     The maximum number of queued spans, rounded up to a power of two.
+         * @param batchSize     The number of spans flushed together.
+         * @param flushInterval The maximum time a span waits for its batch to fill up.
+         * @return this Builder.
+         */
+        public Builder withBatchingReporter(final int queueSize, final int batchSize, final Duration flushInterval) {
+            Preconditions.checkArgument(queueSize > 0);
+            Preconditions.checkArgument(batchSize > 0);
+            Preconditions.checkNotNull(flushInterval);
+            Preconditions.checkArgument(!flushInterval.isNegative() && !flushInterval.isZero());
+            this.reporterQueueSize = queueSize;
+            this.reporterBatchSize = batchSize;
+            this.reporterFlushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Sets what the batching reporter does with a span finished when its queue is full.
+         *
+         * @param overflowPolicy The overflow policy.
+         * @param blockTimeout   How long a thread waits for room in the queue with {@link OverflowPolicy#BLOCK}.
+         * @return this Builder.
+         */
+        public Builder withOverflowPolicy(final OverflowPolicy overflowPolicy, final Duration blockTimeout) {
+            Preconditions.checkNotNull(overflowPolicy);
+            Preconditions.checkNotNull(blockTimeout);
+            Preconditions.checkArgument(!blockTimeout.isNegative());
+            this.overflowPolicy = overflowPolicy;
+            this.overflowBlockTimeout = blockTimeout;
+            return this;
+        }
+
+        /**
+         * Holds the finished spans of each trace until the last span of the trace tracked by the engine finishes, and
+         * then reports all of them if the trace took longer than {@code latencyThreshold}, a span is tagged with an
+         * error or the application specific ID of the trace is watched, or otherwise with the sample rate as the
+         * baseline probability. Every trace is sampled when it starts, so that all its spans reach the buffer.
+         * Cannot be combined with the asynchronous start or with adaptive sampling.
+         *
+         * @param latencyThreshold The duration above which a trace is always kept, zero for no latency rule.
+         * @param watchedIds       The application specific IDs whose traces are always kept.
+         * @param maxBufferedSpans The maximum number of spans held by the buffer, above which the oldest traces are
+         *                         evicted.
+         * @return this Builder.
+         */
+        public Builder withTailSampling(final Duration latencyThreshold, final Collection<String> watchedIds,
+                                        final int maxBufferedSpans) {
+            Preconditions.checkNotNull(latencyThreshold);
+            Preconditions.checkArgument(!latencyThreshold.isNegative());
+            Preconditions.checkNotNull(watchedIds);
+            Preconditions.checkArgument(maxBufferedSpans > 0);
+            this.tailSampling = true;
+            this.tailLatencyThreshold = latencyThreshold;
+            this.tailWatchedIds = watchedIds;
+            this.tailMaxBufferedSpans = maxBufferedSpans;
+            return this;
+        }
+
+        /**
+         * Sets what the tail sampling buffer does with the traces it evicts to stay under its cap, and with the traces
+         * that have not finished when the engine is closed.
+         *
+         * @param evictionPolicy The eviction policy.
+         * @return this Builder.
+         */
+        public Builder withTailEvictionPolicy(final TailEvictionPolicy evictionPolicy) {
+            Preconditions.checkNotNull(evictionPolicy);
+            this.tailEvictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the reporter of the tracer, instead of one that sends the spans to the agent.
+         *
+         * @param reporter The reporter.
+         * @return this Builder.
+         */
+        @VisibleForTesting
+        Builder withReporter(final Reporter reporter) {
+            this.reporter = reporter;
+            return this;
+        }
+
         /**
          * Sets the configurable parameters for this builder based on a {@link JaegerConfiguration}
          *
@@ -292,10 +985,73 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
          */
         public Builder fromConfig(final JaegerConfiguration configuration) {
             this.sampleRate = configuration.sampleRate;
+            if (configuration.adaptiveSampling) {
+                this.minTracesPerSecond = configuration.minTracesPerSecond;
+                this.maxTracesPerSecond = configuration.maxTracesPerSecond;
+                this.samplingWindow = configuration.samplingWindowInMillis > 0
+                        ? Duration.ofMillis(configuration.samplingWindowInMillis) : DEFAULT_SAMPLING_WINDOW;
+            }
             this.cacheMaxSize = configuration.cacheMaxSize;
             this.processName = configuration.processName;
             this.ip = configuration.ip;
+            if (configuration.agentPort > 0) {
+                this.agentPort = configuration.agentPort;
+            }
             this.cacheDuration = Duration.of(configuration.cacheDurationInMinutes, ChronoUnit.MINUTES);
+            this.cacheMaintenanceInterval = configuration.cacheMaintenanceIntervalInMillis > 0
+                    ? Duration.ofMillis(configuration.cacheMaintenanceIntervalInMillis) : null;
+            this.purgeGracePeriod = configuration.purgeFinishedTraces
+                    ? Duration.ofMillis(configuration.purgeGracePeriodInMillis) : null;
+            this.asyncStart = configuration.asyncStart;
+            if (configuration.preStartPolicy != null) {
+                this.preStartPolicy = configuration.preStartPolicy;
+            }
+            if (configuration.preStartBufferSize > 0) {
+                this.preStartBufferSize = configuration.preStartBufferSize;
+            }
+            if (configuration.spillDirectory != null && !configuration.spillDirectory.isEmpty()) {
+                this.spillDirectory = Paths.get(configuration.spillDirectory);
+            }
+            if (configuration.spillSegmentSizeInBytes > 0) {
+                this.spillSegmentSize = configuration.spillSegmentSizeInBytes;
+            }
+            if (configuration.spillMaxSegments > 0) {
+                this.spillMaxSegments = configuration.spillMaxSegments;
+            }
+            if (configuration.reporterQueueSize > 0) {
+                this.reporterQueueSize = configuration.reporterQueueSize;
+            }
+            if (configuration.reporterBatchSize > 0) {
+                this.reporterBatchSize = configuration.reporterBatchSize;
+            }
+            if (configuration.reporterFlushIntervalInMillis > 0) {
+                this.reporterFlushInterval = Duration.ofMillis(configuration.reporterFlushIntervalInMillis);
+            }
+            if (configuration.overflowPolicy != null) {
+                this.overflowPolicy = configuration.overflowPolicy;
+            }
+            if (configuration.overflowBlockTimeoutInMillis > 0) {
+                this.overflowBlockTimeout = Duration.ofMillis(configuration.overflowBlockTimeoutInMillis);
+            }
+            this.tailSampling = configuration.tailSampling;
+            if (configuration.tailLatencyThresholdInMillis > 0) {
+                this.tailLatencyThreshold = Duration.ofMillis(configuration.tailLatencyThresholdInMillis);
+            }
+            if (configuration.tailWatchedIds != null) {
+                this.tailWatchedIds = configuration.tailWatchedIds;
+            }
+            if (configuration.clockResyncIntervalInMillis > 0) {
+                this.clockResyncInterval = Duration.ofMillis(configuration.clockResyncIntervalInMillis);
+            }
+            if (configuration.coarseClockTickInMicros > 0) {
+                this.coarseClockTick = Duration.ofNanos(configuration.coarseClockTickInMicros * 1000);
+            }
+            if (configuration.tailMaxBufferedSpans > 0) {
+                this.tailMaxBufferedSpans = configuration.tailMaxBufferedSpans;
+            }
+            if (configuration.tailEvictionPolicy != null) {
+                this.tailEvictionPolicy = configuration.tailEvictionPolicy;
+            }
             return this;
         }
 
@@ -305,33 +1061,193 @@ public class JaegerTracingEngine extends AbstractOpenTracingEngineWithId {
          * @return an instance of {@link JaegerTracingEngine} configured with the parameters supplied to the Builder.
          */
         public JaegerTracingEngine build() {
-            final Tracer tracer = initTracer(ip, processName, sampleRate);
-            final CacheConfiguration configuration = new CacheConfiguration(cacheDuration, cacheMaxSize);
-            return new JaegerTracingEngine(tracer, configuration);
+            Preconditions.checkState(spillDirectory == null || reporterQueueSize == 0,
+                    "The span spill log cannot be combined with the batching reporter.");
+            Preconditions.checkState(!tailSampling || (!asyncStart && samplingWindow == null),
+                    "Tail sampling cannot be combined with the asynchronous start or with adaptive sampling.");
+            final ReconfigurableSampler sampler = new ReconfigurableSampler(initSampler());
+            final ReporterMetrics metrics = reporter == null && reporterQueueSize > 0 ? new ReporterMetrics() : null;
+            if (asyncStart) {
+                return buildAsync(sampler, metrics);
+            }
+            final Reporter reporter = initReporter(ip, metrics);
+            final TailSamplingReporter tail = tailSampling
+                    ? new TailSamplingReporter(reporter, tailSamplingPolicy(), tailMaxBufferedSpans,
+                    tailEvictionPolicy, cacheDuration, EVENT_ID, new TailSamplingMetrics())
+                    : null;
+            final Clock clock = initClock();
+            final Tracer tracer = initTracer(processName, sampler, tail == null ? reporter : tail, clock, null);
+            register(tracer);
+            return new JaegerTracingEngine(tracer, cacheConfiguration(), sampler,
+                    CompletableFuture.completedFuture(null), metrics, tail, clock);
         }
 
+        /**
+         * Builds an instance of {@link JaegerTracingEngine} whose tracer is built in the background.
+         *
+         * @param sampler The sampler.
+         * @param metrics The counters of the batching reporter, or {@code null} if it is not used.
+         * @return an instance of {@link JaegerTracingEngine} that can be used before its tracer is ready.
+         */
+        private JaegerTracingEngine buildAsync(final ReconfigurableSampler sampler, final ReporterMetrics metrics) {
+            final String ip = this.ip;
+            final String processName = this.processName;
+            final ScopeManager scopeManager = new ThreadLocalScopeManager();
+            final Clock clock = initClock();
+            final PreStartReporter buffer = new PreStartReporter(
+                    preStartPolicy == PreStartPolicy.BUFFER ? preStartBufferSize : 0);
+            final PreStartTracer preStart = PreStartTracer.build(processName,
+                    preStartPolicy == PreStartPolicy.BUFFER ? sampler : new ConstSampler(false),
+                    buffer, clock, scopeManager);
+            final DeferredTracer tracer = new DeferredTracer(preStart);
+            register(tracer);
+
+            final CompletableFuture<Void> started = CompletableFuture.runAsync(() -> {
+                final Reporter reporter = initReporter(ip, metrics);
+                final JaegerTracer real = initTracer(processName, sampler, reporter, clock, scopeManager);
+                preStart.started(real);
+                try {
+                    if (tracer.start(real)) {
+                        buffer.drainTo(reporter);
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, startExecutor == null ? START_EXECUTOR : startExecutor);
+            started.whenComplete((result, e) -> {
+                if (e != null) {
+                    logger.warn("Could not start the Jaeger tracer, traces will not be reported.", e);
+                    buffer.discard();
+                }
+            });
+            return new JaegerTracingEngine(tracer, cacheConfiguration(), sampler, started, metrics, null, clock);
+        }
 
         /**
-         * Configures an instance of {@link io.jaegertracing.internal.JaegerTracer} with the supplied agent address,
-         * process name and sampling rate.
+         * Builds the sampler of the root spans from the parameters supplied to the builder.
          *
-         * @param ip          The agent's ip address.
-         * @param processName This process's name.
-         * @param sampleRate  The sampling rate
-         * @return instance of {@link io.jaegertracing.internal.JaegerTracer}
+         * @return A sampler that samples every trace with tail sampling, the adaptive sampler if it was configured,
+         * otherwise a probabilistic sampler.
+         */
+        private Sampler initSampler() {
+            if (tailSampling) {
+                return new ProbabilisticSampler(1);
+            }
+            if (samplingWindow == null) {
+                return new ProbabilisticSampler(sampleRate);
+            }
+            return new AdaptiveSampler(sampleRate, minTracesPerSecond, maxTracesPerSecond, samplingWindow,
+                    AdaptiveSampler.DEFAULT_MAX_OPERATIONS);
+        }
+
+        /**
+         * Builds the tail sampling policy from the parameters supplied to the builder, with the sample rate as the
+         * baseline probability.
+         *
+         * @return The policy.
          */
-        private Tracer initTracer(final String ip, final String processName, final double sampleRate) {
+        private TailSamplingPolicy tailSamplingPolicy() {
+            return new TailSamplingPolicy(tailLatencyThreshold, tailWatchedIds, Math.min(sampleRate, 1));
+        }
+
+        /**
+         * Builds the configuration of the caches from the parameters supplied to the builder.
+         *
+         * @return The configuration of the caches.
+         */
+        private CacheConfiguration cacheConfiguration() {
+            final CacheConfiguration configuration = cacheMaintenanceInterval == null
+                    ? new CacheConfiguration(cacheDuration, cacheMaxSize)
+                    : new CacheConfiguration(cacheDuration, cacheMaxSize, cacheMaintenanceInterval);
+            return purgeGracePeriod == null ? configuration : configuration.withFinishedTracePurge(purgeGracePeriod);
+        }
+
+
+        /**
+         * Builds the reporter that sends the spans to the agent, through the span spill log or the batching reporter
+         * if one was configured, unless another reporter was supplied.
+         *
+         * @param ip      The agent's ip address.
+         * @param metrics The counters of the batching reporter, or {@code null} if it is not used.
+         * @return The reporter.
+         */
+        private Reporter initReporter(final String ip, final ReporterMetrics metrics) {
+            if (reporter != null) {
+                return reporter;
+            }
             final Configuration.SenderConfiguration senderConfig = Configuration.SenderConfiguration.fromEnv().withAgentHost(ip);
-            final Reporter reporter = new RemoteReporter.Builder().withSender(senderConfig.getSender()).build();
+            if (agentPort > 0) {
+                senderConfig.withAgentPort(agentPort);
+            }
+            final Sender sender = senderConfig.getSender();
+            if (metrics != null) {
+                return new BatchingReporter(sender, reporterQueueSize, reporterBatchSize, reporterFlushInterval,
+                        overflowPolicy, overflowBlockTimeout, metrics);
+            }
+            if (spillDirectory == null) {
+                return new RemoteReporter.Builder().withSender(sender).build();
+            }
+            if (!(sender instanceof ThriftSender)) {
+                throw new IllegalStateException("The span spill log needs a Thrift sender, got " + sender);
+            }
+            try {
+                return new SpillingReporter(new SpanSpillLog(spillDirectory, spillSegmentSize, spillMaxSegments),
+                        (ThriftSender) sender, SPILL_RETRY_INTERVAL);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Builds the clock of the tracer from the parameters supplied to the builder.
+         *
+         * @return The coarse clock if it was configured, otherwise a {@link MicroClock}.
+         */
+        private Clock initClock() {
+            final MicroClock clock = new MicroClock(clockResyncInterval);
+            return coarseClockTick == null ? clock : new CoarseMicroClock(clock, coarseClockTick);
+        }
+
+        /**
+         * Configures an instance of {@link io.jaegertracing.internal.JaegerTracer} with the supplied process name,
+         * sampler, reporter and clock.
+         *
+         * @param processName  This process's name.
+         * @param sampler      The sampler.
+         * @param reporter     The reporter.
+         * @param clock        The clock.
+         * @param scopeManager The scope manager, or {@code null} for the default one.
+         * @return instance of {@link io.jaegertracing.internal.JaegerTracer}
+         */
+        private static JaegerTracer initTracer(final String processName, final Sampler sampler,
+                                               final Reporter reporter, final Clock clock,
+                                               final ScopeManager scopeManager) {
             final Configuration config = new Configuration(processName);
-            final Tracer trace = config.getTracerBuilder()
-                    .withClock(new MicroClock())
+            final JaegerTracer.Builder builder = config.getTracerBuilder()
+                    .withClock(clock)
                     .withReporter(reporter)
-                    .withSampler(new ProbabilisticSampler(sampleRate)).build();
+                    .withSampler(sampler);
+            if (scopeManager != null) {
+                builder.withScopeManager(scopeManager);
+            }
+            final JaegerTracer tracer = builder.build();
+            if (reporter instanceof SpillingReporter) {
+                ((SpillingReporter) reporter).attach(tracer);
+            }
+            return tracer;
+        }
+
+        /**
+         * Registers a tracer as the global tracer, unless there already is one, for the applications that read it
+         * from {@link GlobalTracer}. The engine itself only uses its own tracer, so it keeps working when the global
+         * tracer belongs to another engine, including one that was closed after being replaced by a new one.
+         *
+         * @param tracer The tracer.
+         */
+        private static void register(final Tracer tracer) {
             if (!GlobalTracer.isRegistered()) {
-                GlobalTracer.register(trace);
+                GlobalTracer.register(tracer);
             }
-            return trace;
         }
 
 
@@ -16,11 +16,29 @@
 
 package com.feedzai.commons.tracing.engine;
 
+import com.google.common.base.Preconditions;
 import io.jaegertracing.internal.clock.Clock;
 
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Clock implementation with microsecond precision.
  *
+ * <p>Timestamps are {@link System#nanoTime()} plus an offset to the wall clock, which is measured again every resync
+ * interval from a shared background thread so that the clock follows the NTP corrections of the wall clock instead
+ * of drifting away from it. The clock never goes backwards: a correction is slewed in, by making the clock run at most
+ * {@value #MAX_SLEW_PPM} parts per million faster or slower until the error is absorbed, like {@code adjtime} does.
+ * Only when the clock is behind the wall clock by more than {@link #STEP_THRESHOLD_NANOS} is it stepped forward at
+ * once.
+ *
+ * <p>Since the timestamps come from {@code nanoTime()} the clock is micros accurate, so Jaeger takes a single reading
+ * when a span starts and another when it finishes.
+ *
  * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
  */
 public class MicroClock implements Clock {
@@ -31,24 +49,74 @@ public class MicroClock implements Clock {
     private static final int MILLIS_TO_NANOS_MULTIPLIER = 1_000_000;
 
     /**
-     * The offset between currentTimeMillis() and nanoTime(). This is calculated when this class is instantiated in
-     * order to get the nanos elapsed since Epoch.
+     * The default interval between two measurements of the offset to the wall clock.
+     */
+    static final Duration DEFAULT_RESYNC_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * The maximum rate at which a correction is slewed in, in parts per million.
+     */
+    static final long MAX_SLEW_PPM = 500;
+
+    /**
+     * The error above which a clock that is behind the wall clock is stepped forward instead of slewed.
+     */
+    static final long STEP_THRESHOLD_NANOS = 128 * MILLIS_TO_NANOS_MULTIPLIER;
+
+    /**
+     * The longest time spent waiting for the wall clock to tick when measuring the offset.
      */
-    private final long offset;
+    private static final long MAX_EDGE_WAIT_NANOS = 50L * MILLIS_TO_NANOS_MULTIPLIER;
 
+    /**
+     * How many ticks of the wall clock are measured to get the offset.
+     */
+    private static final int EDGE_MEASUREMENTS = 5;
+
+    /**
+     * The thread that measures the offset of every clock.
+     */
+    private static final ScheduledExecutorService RESYNC = Executors.newSingleThreadScheduledExecutor(task -> {
+        final Thread thread = new Thread(task, "jaeger-micro-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The offset between the wall clock and {@code nanoTime()}, and the correction being slewed in.
+     */
+    private volatile Correction correction;
+
+    /**
+     * Constructor for this class, which measures the offset every {@link #DEFAULT_RESYNC_INTERVAL}.
+     */
     public MicroClock() {
-        offset = MILLIS_TO_NANOS_MULTIPLIER * System.currentTimeMillis() - System.nanoTime();
+        this(DEFAULT_RESYNC_INTERVAL);
+    }
+
+    /**
+     * Constructor for this class.
+     *
+     * @param resyncInterval The interval between two measurements of the offset to the wall clock.
+     */
+    public MicroClock(final Duration resyncInterval) {
+        Preconditions.checkNotNull(resyncInterval);
+        Preconditions.checkArgument(!resyncInterval.isNegative() && !resyncInterval.isZero());
+        final long now = System.nanoTime();
+        correction = new Correction(now, measureOffset(), 0, now);
+        Resync.schedule(this, resyncInterval.toNanos());
     }
 
     @Override
     public long currentTimeMicros() {
+        final Correction correction = this.correction;
         final long timestamp = System.nanoTime();
-        return (timestamp + offset) / 1000;
+        return (timestamp + correction.offsetAt(timestamp)) / 1000;
     }
 
     @Override
     public boolean isMicrosAccurate() {
-        return false;
+        return true;
     }
 
     @Override
@@ -56,4 +124,174 @@ public class MicroClock implements Clock {
         return System.nanoTime();
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns the offset between the wall clock and {@code nanoTime()} currently applied by this clock.
+     *
+     * @return The offset in nanoseconds.
+     */
+    long offsetNanos() {
+        return correction.offsetAt(System.nanoTime());
+    }
+
+    /**
+     * Measures the offset to the wall clock again and starts correcting this clock towards it.
+     */
+    void resync() {
+        resync(measureOffset());
+    }
+
+    /**
+     * Starts correcting this clock towards an offset. The correction in progress is replaced, from the offset it had
+     * reached, so the clock stays continuous.
+     *
+     * @param target The offset between the wall clock and {@code nanoTime()}, in nanoseconds.
+     */
+    synchronized void resync(final long target) {
+        final long now = System.nanoTime();
+        final long current = correction.offsetAt(now);
+        final long error = target - current;
+        if (error > STEP_THRESHOLD_NANOS) {
+            correction = new Correction(now, target, 0, now);
+        } else if (error != 0) {
+            final long slewNanos = Math.abs(error) * 1_000_000 / MAX_SLEW_PPM;
+            correction = new Correction(now, current, error > 0 ? MAX_SLEW_PPM : -MAX_SLEW_PPM, now + slewNanos);
+        }
+    }
+
+    /**
+     * Measures the offset between the wall clock and {@code nanoTime()}. Since the wall clock only has millisecond
+     * resolution, this waits for it to tick and takes the offset at the tick, which is precise to a few microseconds
+     * instead of a millisecond. The tick is bracketed by the {@code nanoTime()} read before and after the reading of
+     * the wall clock that saw it; the thread may be descheduled or the code not compiled yet, which widens the bracket,
+     * so a few ticks are measured and the narrowest bracket is kept, like NTP keeps the sample with the lowest delay.
+     *
+     * @return The offset in nanoseconds.
+     */
+    static long measureOffset() {
+        long offset = 0;
+        long narrowest = Long.MAX_VALUE;
+        for (int i = 0; i < EDGE_MEASUREMENTS; i++) {
+            final long millis = System.currentTimeMillis();
+            final long start = System.nanoTime();
+            long before;
+            long after = start;
+            long tick;
+            do {
+                before = after;
+                tick = System.currentTimeMillis();
+                after = System.nanoTime();
+            } while (tick == millis && after - start < MAX_EDGE_WAIT_NANOS);
+            if (after - before < narrowest) {
+                narrowest = after - before;
+                offset = MILLIS_TO_NANOS_MULTIPLIER * tick - (before + (after - before) / 2);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * An offset that changes linearly from an anchor until the end of a correction, and then stays constant.
+     */
+    private static final class Correction {
+
+        /**
+         * The {@code nanoTime()} at which the offset was {@code base}.
+         */
+        final long anchor;
+
+        /**
+         * The offset at the anchor, in nanoseconds.
+         */
+        final long base;
+
+        /**
+         * How much the offset changes per million nanoseconds until the end of the correction.
+         */
+        final long slopePpm;
+
+        /**
+         * The {@code nanoTime()} at which the correction ends.
+         */
+        final long end;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param anchor   The {@code nanoTime()} at which the offset was {@code base}.
+         * @param base     The offset at the anchor, in nanoseconds.
+         * @param slopePpm How much the offset changes per million nanoseconds until the end of the correction.
+         * @param end      The {@code nanoTime()} at which the correction ends.
+         */
+        Correction(final long anchor, final long base, final long slopePpm, final long end) {
+            this.anchor = anchor;
+            this.base = base;
+            this.slopePpm = slopePpm;
+            this.end = end;
+        }
+
+        /**
+         * Returns the offset at a given time. Since the slope is much smaller than one, the offset plus the time never
+         * decreases.
+         *
+         * @param nanoTime The time, as returned by {@code nanoTime()}.
+         * @return The offset in nanoseconds.
+         */
+        long offsetAt(final long nanoTime) {
+            if (slopePpm == 0) {
+                return base;
+            }
+            final long elapsed = Math.min(Math.max(nanoTime - anchor, 0), end - anchor);
+            return base + slopePpm * elapsed / 1_000_000;
+        }
+    }
+
+    /**
+     * The periodic task that resyncs a clock, until the clock is garbage collected.
+     */
+    private static final class Resync implements Runnable {
+
+        /**
+         * The clock, weakly referenced so that the task does not keep it alive.
+         */
+        private final WeakReference<MicroClock> clock;
+
+        /**
+         * The scheduled task, cancelled once the clock is collected.
+         */
+        private volatile ScheduledFuture<?> future;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param clock The clock.
+         */
+        private Resync(final MicroClock clock) {
+            this.clock = new WeakReference<>(clock);
+        }
+
+        /**
+         * Schedules the resync of a clock.
+         *
+         * @param clock          The clock.
+         * @param intervalNanos  The interval between two resyncs.
+         */
+        static void schedule(final MicroClock clock, final long intervalNanos) {
+            final Resync resync = new Resync(clock);
+            resync.future = RESYNC.scheduleWithFixedDelay(resync, intervalNanos, intervalNanos,
+                    TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            final MicroClock clock = this.clock.get();
+            if (clock == null) {
+                final ScheduledFuture<?> future = this.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            clock.resync();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.spi.Reporter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Reporter} of the tracer that is used while the tracer of an asynchronously started {@link
+ * JaegerTracingEngine} is being built. The spans are kept in a bounded buffer until {@link #drainTo(Reporter)} hands
+ * them to the reporter of the tracer that was built, which then also receives the spans finished afterwards. Spans
+ * that do not fit in the buffer are dropped and counted.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class PreStartReporter implements Reporter {
+
+    /**
+     * The spans finished before the tracer was ready, or {@code null} if the buffer has no capacity.
+     */
+    private final BlockingQueue<JaegerSpan> buffer;
+
+    /**
+     * The number of spans that were dropped.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The reporter of the tracer that was built, or {@code null} while it is not ready.
+     */
+    private volatile Reporter target;
+
+    /**
+     * Whether the tracer could not be built, in which case every span is dropped.
+     */
+    private volatile boolean discarding;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param capacity The maximum number of spans that are kept, 0 to drop every span until the tracer is ready.
+     */
+    PreStartReporter(final int capacity) {
+        this.buffer = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+    }
+
+    @Override
+    public void report(final JaegerSpan span) {
+        final Reporter reporter = target;
+        if (reporter != null) {
+            reporter.report(span);
+            return;
+        }
+        if (discarding || buffer == null || !buffer.offer(span)) {
+            dropped.increment();
+            return;
+        }
+        if (target != null) {
+            // The buffer was drained while this span was being added to it.
+            drain();
+        }
+    }
+
+    /**
+     * Hands the buffered spans, and every span reported afterwards, to the reporter of the tracer that was built.
+     *
+     * @param reporter The reporter.
+     */
+    void drainTo(final Reporter reporter) {
+        target = reporter;
+        drain();
+    }
+
+    /**
+     * Drops the buffered spans, and every span reported afterwards, because the tracer could not be built.
+     */
+    void discard() {
+        discarding = true;
+        if (buffer != null) {
+            while (buffer.poll() != null) {
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Reports the buffered spans to the target reporter.
+     */
+    private void drain() {
+        if (buffer == null) {
+            return;
+        }
+        JaegerSpan span;
+        while ((span = buffer.poll()) != null) {
+            target.report(span);
+        }
+    }
+
+    /**
+     * Returns the number of spans that were dropped because the buffer was full or the tracer could not be built.
+     *
+     * @return The number of dropped spans.
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        // The target reporter is closed by the tracer that owns it.
+    }
+}
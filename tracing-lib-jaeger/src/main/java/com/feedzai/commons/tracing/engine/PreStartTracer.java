@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.clock.Clock;
+import io.jaegertracing.spi.Reporter;
+import io.jaegertracing.spi.Sampler;
+import io.opentracing.ScopeManager;
+
+import java.util.Map;
+
+/**
+ * {@link JaegerTracer} used while the tracer of an asynchronously started {@link JaegerTracingEngine} is being built.
+ * It is cheap to build: it does not look up the address of the host and reports to a {@link PreStartReporter}.
+ *
+ * <p>Jaeger senders describe the process from the tracer of the first span they send, which may be a span started by
+ * this tracer. Once the tracer that was built is known, this tracer reports its tags as its own, so that the process
+ * is described with the real host name and address.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class PreStartTracer extends JaegerTracer {
+
+    /**
+     * The tracer that was built, or {@code null} while it is not ready.
+     */
+    private volatile JaegerTracer started;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param builder The builder.
+     */
+    private PreStartTracer(final JaegerTracer.Builder builder) {
+        super(builder);
+    }
+
+    /**
+     * Builds a tracer.
+     *
+     * @param serviceName  The name of the process.
+     * @param sampler      The sampler.
+     * @param reporter     The reporter that buffers the spans.
+     * @param clock        The clock.
+     * @param scopeManager The scope manager, shared with the tracer that is being built.
+     * @return The tracer.
+     */
+    static PreStartTracer build(final String serviceName, final Sampler sampler, final Reporter reporter,
+                                final Clock clock, final ScopeManager scopeManager) {
+        return (PreStartTracer) new JaegerTracer.Builder(serviceName) {
+            @Override
+            protected JaegerTracer createTracer() {
+                return new PreStartTracer(this);
+            }
+        }
+                .withSampler(sampler)
+                .withReporter(reporter)
+                .withClock(clock)
+                .withScopeManager(scopeManager)
+                // Setting the host tags skips their lookup; they are replaced by the ones of the tracer that was built.
+                .withTag("hostname", "")
+                .withTag("ip", "")
+                .withManualShutdown()
+                .build();
+    }
+
+    /**
+     * Sets the tracer that was built.
+     *
+     * @param tracer The tracer.
+     */
+    void started(final JaegerTracer tracer) {
+        this.started = tracer;
+    }
+
+    @Override
+    public Map<String, ?> tags() {
+        final JaegerTracer tracer = started;
+        return tracer == null ? super.tags() : tracer.tags();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.samplers.SamplingStatus;
+import io.jaegertracing.spi.Sampler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link Sampler} that delegates to another sampler which can be replaced at any time, so that the sampling of a
+ * tracer can be changed without rebuilding it. Replacing the sampler only affects the traces that start afterwards.
+ *
+ * <p>The traces whose root operation matches one of the {@link OperationRules} are instead sampled at the rate of the
+ * rule, the same way Jaeger's probabilistic sampler does, so a rule can raise the rate of an operation above the
+ * configured one as well as lower it. The status of the traces sampled by each rule is built when the rules are set,
+ * so sampling does not allocate.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class ReconfigurableSampler implements Sampler {
+
+    /**
+     * The status of the traces that a rule samples out.
+     */
+    private static final SamplingStatus NOT_SAMPLED = SamplingStatus.of(false, Collections.emptyMap());
+
+    /**
+     * The sampler in use.
+     */
+    private volatile Sampler delegate;
+
+    /**
+     * The rules whose rates override the delegate for the root operations they match.
+     */
+    private volatile Rules rules = Rules.NONE;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param delegate The initial sampler.
+     */
+    public ReconfigurableSampler(final Sampler delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Replaces the sampler in use and closes the previous one.
+     *
+     * @param sampler The new sampler.
+     */
+    public synchronized void update(final Sampler sampler) {
+        final Sampler previous = delegate;
+        delegate = sampler;
+        previous.close();
+    }
+
+    /**
+     * Replaces the rules whose rates override the sampler in use.
+     *
+     * @param rules The compiled rules.
+     */
+    public void setRules(final OperationRules rules) {
+        this.rules = rules == null || rules.isEmpty() ? Rules.NONE : new Rules(rules);
+    }
+
+    /**
+     * Getter for {@code delegate}.
+     *
+     * @return The sampler in use.
+     */
+    public Sampler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SamplingStatus sample(final String operation, final long id) {
+        final Rules current = rules;
+        if (current != Rules.NONE) {
+            final int rule = current.rules.rootRule(operation);
+            if (rule >= 0) {
+                return isSampled(id, current.rules.rootSampleRate(rule)) ? current.sampled[rule] : NOT_SAMPLED;
+            }
+        }
+        return delegate.sample(operation, id);
+    }
+
+    /**
+     * Decides whether a trace is sampled at a rate, the same way Jaeger's probabilistic sampler does.
+     *
+     * @param id   The trace id.
+     * @param rate The rate.
+     * @return true if the trace is sampled.
+     */
+    static boolean isSampled(final long id, final double rate) {
+        return id > 0 ? id <= (long) (Long.MAX_VALUE * rate) : id >= (long) (Long.MIN_VALUE * rate);
+    }
+
+    /**
+     * Builds the status of a trace sampled by an operation rule, with the tags Jaeger's probabilistic sampler sets.
+     *
+     * @param rate The rate of the rule.
+     * @return The status.
+     */
+    private static SamplingStatus ruleStatus(final double rate) {
+        final Map<String, Object> tags = new HashMap<>();
+        tags.put("sampler.type", "probabilistic");
+        tags.put("sampler.param", rate);
+        return SamplingStatus.of(true, Collections.unmodifiableMap(tags));
+    }
+
+    /**
+     * Operation rules together with the status of the traces sampled by each of them, so that both are replaced at
+     * once.
+     */
+    private static final class Rules {
+
+        /**
+         * No rules.
+         */
+        static final Rules NONE = new Rules(OperationRules.NONE);
+
+        /**
+         * The rules.
+         */
+        final OperationRules rules;
+
+        /**
+         * The status of the traces sampled by each rule, by index.
+         */
+        final SamplingStatus[] sampled;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param rules The rules.
+         */
+        Rules(final OperationRules rules) {
+            this.rules = rules;
+            this.sampled = new SamplingStatus[rules.size()];
+            for (int i = 0; i < sampled.length; i++) {
+                sampled[i] = ruleStatus(rules.rootSampleRate(i));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return rules.toString();
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public String toString() {
+        return "ReconfigurableSampler{" +
+                "delegate=" + delegate +
+                ", rules=" + rules +
+                '}';
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the batching reporter of a {@link JaegerTracingEngine}, updated while the reporter runs.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class ReporterMetrics {
+
+    /**
+     * The number of spans added to the queue.
+     */
+    private final LongAdder enqueued = new LongAdder();
+
+    /**
+     * The number of spans the sender sent to the agent.
+     */
+    private final LongAdder flushed = new LongAdder();
+
+    /**
+     * The number of spans dropped because of the overflow policy or a failure of the sender.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The number of batches flushed.
+     */
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * The total time spent flushing batches.
+     */
+    private final LongAdder flushNanos = new LongAdder();
+
+    /**
+     * The longest time spent flushing a batch.
+     */
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * Records a span added to the queue.
+     */
+    void recordEnqueued() {
+        enqueued.increment();
+    }
+
+    /**
+     * Records spans sent to the agent.
+     *
+     * @param count The number of spans.
+     */
+    void recordFlushed(final int count) {
+        flushed.add(count);
+    }
+
+    /**
+     * Records spans that were dropped.
+     *
+     * @param count The number of spans.
+     */
+    void recordDropped(final int count) {
+        dropped.add(count);
+    }
+
+    /**
+     * Records the flush of a batch.
+     *
+     * @param nanos How long the flush took.
+     */
+    void recordFlush(final long nanos) {
+        flushes.increment();
+        flushNanos.add(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the number of spans added to the queue of the reporter.
+     *
+     * @return The number of enqueued spans.
+     */
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * Returns the number of spans the sender sent to the agent.
+     *
+     * @return The number of flushed spans.
+     */
+    public long getFlushedCount() {
+        return flushed.sum();
+    }
+
+    /**
+     * Returns the number of spans dropped because of the overflow policy or a failure of the sender.
+     *
+     * @return The number of dropped spans.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of batches flushed.
+     *
+     * @return The number of flushes.
+     */
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the average time spent flushing a batch.
+     *
+     * @return The average flush latency, zero if no batch was flushed.
+     */
+    public Duration getAverageFlushLatency() {
+        final long count = flushes.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(flushNanos.sum() / count);
+    }
+
+    /**
+     * Returns the longest time spent flushing a batch.
+     *
+     * @return The maximum flush latency.
+     */
+    public Duration getMaxFlushLatency() {
+        return Duration.ofNanos(maxFlushNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "ReporterMetrics{" +
+                "enqueued=" + getEnqueuedCount() +
+                ", flushed=" + getFlushedCount() +
+                ", dropped=" + getDroppedCount() +
+                ", flushes=" + getFlushCount() +
+                ", averageFlushLatency=" + getAverageFlushLatency() +
+                ", maxFlushLatency=" + getMaxFlushLatency() +
+                '}';
+    }
+}
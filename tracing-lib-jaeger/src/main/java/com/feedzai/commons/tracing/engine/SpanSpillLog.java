@@ -0,0 +1,830 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerSpanContext;
+import io.jaegertracing.internal.LogData;
+import io.jaegertracing.internal.Reference;
+import io.jaegertracing.thriftjava.Log;
+import io.jaegertracing.thriftjava.Span;
+import io.jaegertracing.thriftjava.SpanRef;
+import io.jaegertracing.thriftjava.SpanRefType;
+import io.jaegertracing.thriftjava.Tag;
+import io.jaegertracing.thriftjava.TagType;
+import io.opentracing.References;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local log of finished Jaeger spans, kept in memory-mapped segment files so that spans survive while the agent is
+ * unavailable and across restarts of the process.
+ *
+ * <p>Spans are encoded straight into the mapped buffer of the active segment, without building the Thrift span nor any
+ * intermediate buffer. Each record is an {@code int} length followed by the encoded span, and the length is written
+ * last, so a record that was being written when the process stopped reads as the end of the segment. When the active
+ * segment is full the log rotates to a new one, and when the log holds more segments than its budget allows the oldest
+ * one is deleted and the spans in it that were not replayed yet are counted as dropped.
+ *
+ * <p>Each log holds a lock on the files of its segments. The segments found in the directory that no other log holds,
+ * such as the ones left by a previous process or by the log of an engine that was replaced and closed, are adopted
+ * when the log is opened, when it rotates and on {@link #adoptOrphans()}, to be replayed before its own segments.
+ *
+ * <p>{@link #append(JaegerSpan)} may be called from any thread. The segments are read by a single reader, which takes
+ * the {@link #oldest()} segment, decodes its records with {@link #decode(ByteBuffer)} and {@link #release(Segment)}s it
+ * once every record was forwarded.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class SpanSpillLog implements Closeable {
+
+    /**
+     * The prefix of the names of the segment files.
+     */
+    private static final String PREFIX = "spans-";
+
+    /**
+     * The suffix of the names of the segment files.
+     */
+    private static final String SUFFIX = ".log";
+
+    /**
+     * The size of the length that precedes each record.
+     */
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    /**
+     * The types of the encoded tag values.
+     */
+    private static final byte STRING = 0;
+    private static final byte BOOL = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+
+    /**
+     * The tag key Jaeger uses for a log that only has a message.
+     */
+    private static final String EVENT = "event";
+
+    /**
+     * The directory of the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * The size of each segment file.
+     */
+    private final int segmentSize;
+
+    /**
+     * The maximum number of segment files, including the active one.
+     */
+    private final int maxSegments;
+
+    /**
+     * The segments of the log that are no longer written to, oldest first.
+     */
+    private final List<Segment> sealed = new ArrayList<>();
+
+    /**
+     * The segment the spans are appended to.
+     */
+    private Segment active;
+
+    /**
+     * The number of spans that were dropped, because they did not fit in a segment or were deleted with the oldest
+     * segment before being replayed.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The sequence number of the next segment file.
+     */
+    private long nextSequence;
+
+    /**
+     * Whether the log was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor for this class. The segments already in the directory are kept, to be replayed before the spans
+     * appended from now on.
+     *
+     * @param directory   The directory of the segment files, which is created if it does not exist.
+     * @param segmentSize The size of each segment file.
+     * @param maxSegments The maximum number of segment files, which bounds the disk used by the log.
+     * @throws IOException if the directory or the segments cannot be opened.
+     */
+    SpanSpillLog(final Path directory, final int segmentSize, final int maxSegments) throws IOException {
+        if (segmentSize <= LENGTH_SIZE * 2) {
+            throw new IllegalArgumentException("The segment size is too small: " + segmentSize);
+        }
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("The log needs at least 2 segments: " + maxSegments);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        adoptOrphans();
+        rotate();
+    }
+
+    /**
+     * Appends a finished span to the log.
+     *
+     * @param span The span.
+     * @return true if the span was appended, false if it was dropped.
+     */
+    synchronized boolean append(final JaegerSpan span) {
+        if (!closed) {
+            try {
+                if (active.write(span)) {
+                    return true;
+                }
+                if (!active.isEmpty()) {
+                    rotate();
+                    if (active.write(span)) {
+                        return true;
+                    }
+                }
+            } catch (final IOException e) {
+                AbstractOpenTracingEngine.logger.warn("Could not rotate the span spill log in {}.", directory, e);
+            }
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Seals the active segment and starts a new one, deleting the oldest segments that do not fit in the budget.
+     *
+     * @throws IOException if the new segment file cannot be created.
+     */
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.sealed = true;
+            sealed.add(active);
+            adoptOrphans();
+        }
+        while (true) {
+            final long sequence = nextSequence++;
+            final Path file = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+            final FileChannel channel;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            } catch (final FileAlreadyExistsException e) {
+                // Taken by another log writing to the same directory.
+                continue;
+            }
+            final Segment segment = Segment.open(file, sequence, channel, segmentSize);
+            if (segment == null) {
+                channel.close();
+                continue;
+            }
+            active = segment;
+            break;
+        }
+        evictOverBudget();
+    }
+
+    /**
+     * Adopts the segments in the directory that are not held by any log, which were left by a previous process or by
+     * a log that was closed, so that they are replayed before the segments of this log.
+     *
+     * @return The number of adopted segments.
+     */
+    synchronized int adoptOrphans() {
+        if (closed) {
+            return 0;
+        }
+        int adopted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                final long sequence;
+                try {
+                    sequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                } catch (final NumberFormatException e) {
+                    // Not a segment of this log.
+                    continue;
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                if (isOwned(file)) {
+                    continue;
+                }
+                final Segment segment = adopt(file, sequence);
+                if (segment != null) {
+                    sealed.add(segment);
+                    adopted++;
+                }
+            }
+        } catch (final IOException e) {
+            AbstractOpenTracingEngine.logger.warn("Could not look for span spill segments in {}.", directory, e);
+        }
+        if (adopted > 0) {
+            sealed.sort(Comparator.comparingLong(segment -> segment.sequence));
+            evictOverBudget();
+        }
+        return adopted;
+    }
+
+    /**
+     * Opens a segment file left by another log.
+     *
+     * @param file     The file.
+     * @param sequence The sequence number of the segment.
+     * @return The segment, or {@code null} if it is held by another log or cannot be opened.
+     */
+    private static Segment adopt(final Path file, final long sequence) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final Segment segment = Segment.open(file, sequence, channel, channel.size());
+            if (segment == null) {
+                channel.close();
+                return null;
+            }
+            segment.recover();
+            return segment;
+        } catch (final IOException e) {
+            // Most likely deleted by the log that held it in the meantime.
+            AbstractOpenTracingEngine.logger.debug("Could not adopt the span spill segment {}.", file, e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if a file is one of the segments of this log.
+     *
+     * @param file The file.
+     * @return true if the segment is held by this log.
+     */
+    private boolean isOwned(final Path file) {
+        if (active != null && active.file.equals(file)) {
+            return true;
+        }
+        for (Segment segment : sealed) {
+            if (segment.file.equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the oldest segments while the log holds more segments than its budget.
+     */
+    private void evictOverBudget() {
+        while (!sealed.isEmpty() && sealed.size() + (active == null ? 0 : 1) > maxSegments) {
+            final Segment oldest = sealed.remove(0);
+            oldest.evicted = true;
+            dropped.add(oldest.records - oldest.replayed);
+            delete(oldest);
+        }
+    }
+
+    /**
+     * Returns the oldest segment of the log, which is the active one when every other segment was released.
+     *
+     * @return The oldest segment, or {@code null} if the log was closed.
+     */
+    synchronized Segment oldest() {
+        if (closed) {
+            return null;
+        }
+        return sealed.isEmpty() ? active : sealed.get(0);
+    }
+
+    /**
+     * Deletes a sealed segment whose records were all replayed.
+     *
+     * @param segment The segment.
+     */
+    synchronized void release(final Segment segment) {
+        if (sealed.remove(segment)) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Returns the number of spans that were dropped, because they did not fit in a segment or their segment was
+     * deleted to keep the log within its budget before they were replayed.
+     *
+     * @return The number of dropped spans.
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of segment files of the log.
+     *
+     * @return The number of segments, including the active one.
+     */
+    synchronized int segmentCount() {
+        return sealed.size() + (active == null ? 0 : 1);
+    }
+
+    /**
+     * Closes the log, releasing its segments. The segments are kept on disk, to be replayed by the next log that
+     * adopts them.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            active.sealed = true;
+            sealed.add(active);
+            active = null;
+        }
+        for (Segment segment : sealed) {
+            segment.unlock();
+        }
+        sealed.clear();
+    }
+
+    /**
+     * Deletes the file of a segment.
+     *
+     * @param segment The segment.
+     */
+    private void delete(final Segment segment) {
+        // The file is deleted before it is unlocked, so that no other log adopts it in between.
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (final IOException e) {
+            AbstractOpenTracingEngine.logger.warn("Could not delete the span spill segment {}.", segment.file, e);
+        }
+        segment.unlock();
+    }
+
+    /**
+     * Encodes a span at the position of a buffer, in the same shape {@link
+     * io.jaegertracing.thrift.internal.reporters.protocols.JaegerThriftSpanConverter} gives the Thrift span.
+     *
+     * @param span   The span.
+     * @param buffer The buffer.
+     * @throws BufferOverflowException if the span does not fit in the buffer.
+     */
+    static void encode(final JaegerSpan span, final ByteBuffer buffer) {
+        final JaegerSpanContext context = span.context();
+        final List<Reference> references = span.getReferences();
+        final boolean childOfParent = references.size() == 1
+                && References.CHILD_OF.equals(references.get(0).getType());
+        buffer.putLong(context.getTraceIdLow());
+        buffer.putLong(context.getTraceIdHigh());
+        buffer.putLong(context.getSpanId());
+        buffer.putLong(childOfParent ? context.getParentId() : 0);
+        buffer.put(context.getFlags());
+        buffer.putLong(span.getStart());
+        buffer.putLong(span.getDuration());
+        putString(buffer, span.getOperationName());
+
+        if (childOfParent) {
+            buffer.putInt(0);
+        } else {
+            buffer.putInt(references.size());
+            for (int i = 0; i < references.size(); i++) {
+                final Reference reference = references.get(i);
+                final JaegerSpanContext referenced = reference.getSpanContext();
+                buffer.put(References.CHILD_OF.equals(reference.getType()) ? (byte) 0 : (byte) 1);
+                buffer.putLong(referenced.getTraceIdLow());
+                buffer.putLong(referenced.getTraceIdHigh());
+                buffer.putLong(referenced.getSpanId());
+            }
+        }
+
+        putTags(buffer, span.getTags());
+
+        final List<LogData> logs = span.getLogs();
+        if (logs == null) {
+            buffer.putInt(0);
+            return;
+        }
+        buffer.putInt(logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            final LogData log = logs.get(i);
+            buffer.putLong(log.getTime());
+            if (log.getFields() != null) {
+                putTags(buffer, log.getFields());
+            } else if (log.getMessage() != null) {
+                buffer.putInt(1);
+                putTag(buffer, EVENT, log.getMessage());
+            } else {
+                buffer.putInt(0);
+            }
+        }
+    }
+
+    /**
+     * Decodes the span at the position of a buffer.
+     *
+     * @param buffer The buffer.
+     * @return The Thrift span to send to the agent.
+     */
+    static Span decode(final ByteBuffer buffer) {
+        final long traceIdLow = buffer.getLong();
+        final long traceIdHigh = buffer.getLong();
+        final long spanId = buffer.getLong();
+        final long parentId = buffer.getLong();
+        final int flags = buffer.get() & 0xFF;
+        final long start = buffer.getLong();
+        final long duration = buffer.getLong();
+        final Span span = new Span(traceIdLow, traceIdHigh, spanId, parentId, getString(buffer), flags, start,
+                duration);
+
+        final int referenceCount = buffer.getInt();
+        final List<SpanRef> references = referenceCount == 0
+                ? Collections.emptyList() : new ArrayList<>(referenceCount);
+        for (int i = 0; i < referenceCount; i++) {
+            final SpanRefType type = buffer.get() == 0 ? SpanRefType.CHILD_OF : SpanRefType.FOLLOWS_FROM;
+            references.add(new SpanRef(type, buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+        span.setReferences(references);
+        span.setTags(getTags(buffer));
+
+        final int logCount = buffer.getInt();
+        final List<Log> logs = new ArrayList<>(logCount);
+        for (int i = 0; i < logCount; i++) {
+            final long time = buffer.getLong();
+            logs.add(new Log(time, getTags(buffer)));
+        }
+        span.setLogs(logs);
+        return span;
+    }
+
+    /**
+     * Encodes a map of tags.
+     *
+     * @param buffer The buffer.
+     * @param tags   The tags.
+     */
+    private static void putTags(final ByteBuffer buffer, final Map<String, ?> tags) {
+        buffer.putInt(tags.size());
+        for (Map.Entry<String, ?> tag : tags.entrySet()) {
+            putTag(buffer, tag.getKey(), tag.getValue());
+        }
+    }
+
+    /**
+     * Encodes a tag, typed the way Jaeger types the tags it sends.
+     *
+     * @param buffer The buffer.
+     * @param key    The key.
+     * @param value  The value.
+     */
+    private static void putTag(final ByteBuffer buffer, final String key, final Object value) {
+        putString(buffer, key);
+        if (value instanceof Boolean) {
+            buffer.put(BOOL);
+            buffer.put((Boolean) value ? (byte) 1 : (byte) 0);
+        } else if (value instanceof Double || value instanceof Float) {
+            buffer.put(DOUBLE);
+            buffer.putDouble(((Number) value).doubleValue());
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            buffer.put(LONG);
+            buffer.putLong(((Number) value).longValue());
+        } else {
+            buffer.put(STRING);
+            putString(buffer, value == null ? null : value.toString());
+        }
+    }
+
+    /**
+     * Decodes a list of tags.
+     *
+     * @param buffer The buffer.
+     * @return The Thrift tags.
+     */
+    private static List<Tag> getTags(final ByteBuffer buffer) {
+        final int count = buffer.getInt();
+        final List<Tag> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String key = getString(buffer);
+            switch (buffer.get()) {
+                case BOOL:
+                    tags.add(new Tag(key, TagType.BOOL).setVBool(buffer.get() != 0));
+                    break;
+                case DOUBLE:
+                    tags.add(new Tag(key, TagType.DOUBLE).setVDouble(buffer.getDouble()));
+                    break;
+                case LONG:
+                    tags.add(new Tag(key, TagType.LONG).setVLong(buffer.getLong()));
+                    break;
+                default:
+                    tags.add(new Tag(key, TagType.STRING).setVStr(getString(buffer)));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Encodes a string as its length followed by its characters, or -1 for {@code null}.
+     *
+     * @param buffer The buffer.
+     * @param value  The string.
+     */
+    private static void putString(final ByteBuffer buffer, final String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        final int length = value.length();
+        if (buffer.remaining() < Integer.BYTES + length * Character.BYTES) {
+            throw new BufferOverflowException();
+        }
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++) {
+            buffer.putChar(value.charAt(i));
+        }
+    }
+
+    /**
+     * Decodes a string.
+     *
+     * @param buffer The buffer.
+     * @return The string.
+     */
+    private static String getString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * A segment file of the log.
+     */
+    static final class Segment {
+
+        /**
+         * The file of the segment.
+         */
+        final Path file;
+
+        /**
+         * The sequence number of the segment, which orders the segments from the oldest.
+         */
+        final long sequence;
+
+        /**
+         * The open channel of the file, which holds its lock.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The lock that keeps other logs from adopting the segment.
+         */
+        private final FileLock lock;
+
+        /**
+         * The mapped content of the file. Written by the appending threads under the lock of the log, read by the
+         * reader through duplicates.
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * The end of the last record that was written. Published after the record, so the reader never sees a
+         * partial record.
+         */
+        private volatile int writePosition;
+
+        /**
+         * The number of records in the segment.
+         */
+        private volatile int records;
+
+        /**
+         * The end of the last record that was replayed. Only used by the reader.
+         */
+        private int readPosition;
+
+        /**
+         * The number of records that were replayed.
+         */
+        private volatile int replayed;
+
+        /**
+         * Whether no more records are written to the segment.
+         */
+        volatile boolean sealed;
+
+        /**
+         * Whether the segment was deleted to keep the log within its budget.
+         */
+        volatile boolean evicted;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param file     The file of the segment.
+         * @param sequence The sequence number of the segment.
+         * @param channel  The open channel of the file.
+         * @param lock     The lock of the file.
+         * @param buffer   The mapped content of the file.
+         */
+        private Segment(final Path file, final long sequence, final FileChannel channel, final FileLock lock,
+                        final MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.channel = channel;
+            this.lock = lock;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Locks and maps a segment file.
+         *
+         * @param file     The file.
+         * @param sequence The sequence number of the segment.
+         * @param channel  The open channel of the file.
+         * @param size     The size of the mapping.
+         * @return The segment, or {@code null} if the file is held by another log.
+         * @throws IOException if the file cannot be locked or mapped.
+         */
+        private static Segment open(final Path file, final long sequence, final FileChannel channel,
+                                    final long size) throws IOException {
+            final FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (final OverlappingFileLockException e) {
+                return null;
+            }
+            if (lock == null) {
+                return null;
+            }
+            return new Segment(file, sequence, channel, lock, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        /**
+         * Releases the lock of the segment and closes its file. The mapped content stays readable.
+         */
+        private void unlock() {
+            try {
+                lock.release();
+                channel.close();
+            } catch (final IOException e) {
+                AbstractOpenTracingEngine.logger.warn("Could not release the span spill segment {}.", file, e);
+            }
+        }
+
+        /**
+         * Finds the end of the records of a segment left by a previous log, and seals it.
+         */
+        private void recover() {
+            int position = 0;
+            int count = 0;
+            while (position + LENGTH_SIZE <= buffer.capacity()) {
+                final int length = buffer.getInt(position);
+                if (length <= 0 || length > buffer.capacity() - position - LENGTH_SIZE) {
+                    break;
+                }
+                position += LENGTH_SIZE + length;
+                count++;
+            }
+            writePosition = position;
+            records = count;
+            sealed = true;
+        }
+
+        /**
+         * Writes a span to the end of the segment. Must be called with the lock of the log held.
+         *
+         * @param span The span.
+         * @return true if the span was written, false if it does not fit.
+         */
+        private boolean write(final JaegerSpan span) {
+            final int start = writePosition;
+            if (buffer.capacity() - start <= LENGTH_SIZE) {
+                return false;
+            }
+            try {
+                buffer.position(start + LENGTH_SIZE);
+                encode(span, buffer);
+            } catch (final BufferOverflowException e) {
+                return false;
+            }
+            final int end = buffer.position();
+            if (end + LENGTH_SIZE <= buffer.capacity()) {
+                // A failed write may have left bytes past the record, which must not read as another record.
+                buffer.putInt(end, 0);
+            }
+            buffer.putInt(start, end - start - LENGTH_SIZE);
+            records++;
+            writePosition = end;
+            return true;
+        }
+
+        /**
+         * Returns true if no record was written to the segment.
+         *
+         * @return true if the segment is empty.
+         */
+        private boolean isEmpty() {
+            return writePosition == 0;
+        }
+
+        /**
+         * Creates the view of the segment used by the reader, positioned at the first record that was not replayed.
+         *
+         * @return The view.
+         */
+        ByteBuffer reader() {
+            final ByteBuffer reader = buffer.duplicate();
+            reader.position(readPosition);
+            return reader;
+        }
+
+        /**
+         * Returns true if the reader is at the end of the records written so far.
+         *
+         * @param reader The view of the reader.
+         * @return true if there is no record to read.
+         */
+        boolean atEnd(final ByteBuffer reader) {
+            return reader.position() >= writePosition;
+        }
+
+        /**
+         * Decodes the record at the position of the reader.
+         *
+         * @param reader The view of the reader.
+         * @return The Thrift span.
+         */
+        Span read(final ByteBuffer reader) {
+            reader.getInt();
+            return decode(reader);
+        }
+
+        /**
+         * Marks the records before a position of the reader as replayed.
+         *
+         * @param position The position after the last replayed record.
+         * @param count    The number of records replayed.
+         */
+        void replayed(final int position, final int count) {
+            readPosition = position;
+            replayed += count;
+        }
+
+        /**
+         * Returns true if the segment is sealed and every record in it was replayed.
+         *
+         * @return true if the segment can be released.
+         */
+        boolean isReplayed() {
+            return sealed && readPosition >= writePosition;
+        }
+    }
+}
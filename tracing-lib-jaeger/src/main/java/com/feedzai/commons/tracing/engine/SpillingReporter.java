@@ -0,0 +1,307 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.exceptions.SenderException;
+import io.jaegertracing.spi.Reporter;
+import io.jaegertracing.thrift.internal.reporters.protocols.JaegerThriftSpanConverter;
+import io.jaegertracing.thrift.internal.senders.ThriftSender;
+import io.jaegertracing.thrift.internal.senders.ThriftSenderBase;
+import io.jaegertracing.thriftjava.Process;
+import io.jaegertracing.thriftjava.Span;
+import io.jaegertracing.vendor.org.apache.thrift.TBase;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Reporter} that writes every finished span to a {@link SpanSpillLog} and forwards the log to the Jaeger agent
+ * from a background thread, so that the spans finished while the agent is down or restarting are kept on disk and sent
+ * once it is back, instead of being dropped when an in-memory queue fills up.
+ *
+ * <p>The request thread only copies the span into the mapped segment of the log. The replay thread reads the log in
+ * order, groups the spans in batches that fit in a packet of the sender, and only moves past a batch once the sender
+ * accepted it. When the sender fails the batch is retried after the retry interval. Since the agent is reached over
+ * UDP, a batch the operating system accepted counts as delivered even if the agent was not listening; the log covers
+ * the time the agent is known to be unreachable and the spans left unsent when the process stops, which are replayed
+ * by the next reporter that opens the same log.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class SpillingReporter implements Reporter {
+
+    /**
+     * The maximum size of a batch sent to the agent, which is the maximum packet size of Jaeger's UDP sender.
+     */
+    private static final int MAX_PACKET_SIZE = 65000;
+
+    /**
+     * How often the replay thread looks for segments left by other logs while it has nothing to send.
+     */
+    private static final long ORPHAN_SCAN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * How long {@link #close()} waits for the replay thread to stop.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The log of the spans.
+     */
+    private final SpanSpillLog log;
+
+    /**
+     * Sends the spans read from the log to the agent.
+     */
+    private final ThriftSender sender;
+
+    /**
+     * How long the replay thread waits when the log has nothing new or the sender failed.
+     */
+    private final long retryIntervalNanos;
+
+    /**
+     * The thread that forwards the log to the agent.
+     */
+    private final Thread replayer;
+
+    /**
+     * The number of spans sent to the agent.
+     */
+    private final LongAdder replayed = new LongAdder();
+
+    /**
+     * The number of spans read from the log that were too large to be sent.
+     */
+    private final LongAdder oversized = new LongAdder();
+
+    /**
+     * The number of batches the sender failed to send.
+     */
+    private final LongAdder failedSends = new LongAdder();
+
+    /**
+     * The process the spans are sent for, or {@code null} until the tracer is known.
+     */
+    private volatile Process process;
+
+    /**
+     * The size of the encoded process, computed by the replay thread.
+     */
+    private int processSize = -1;
+
+    /**
+     * Whether the replay thread keeps running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for this class, which starts the replay thread.
+     *
+     * @param log           The log of the spans.
+     * @param sender        Sends the spans read from the log to the agent.
+     * @param retryInterval How long the replay thread waits when the log has nothing new or the sender failed.
+     */
+    SpillingReporter(final SpanSpillLog log, final ThriftSender sender, final Duration retryInterval) {
+        this.log = log;
+        this.sender = sender;
+        this.retryIntervalNanos = retryInterval.toNanos();
+        this.replayer = new Thread(this::replay, "jaeger-span-replay");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    @Override
+    public void report(final JaegerSpan span) {
+        if (process == null) {
+            attach(span.getTracer());
+        }
+        log.append(span);
+    }
+
+    /**
+     * Sets the tracer whose process the spans are sent for, as Jaeger's own senders take it from the first span.
+     * Spans left in the log by a previous process are only replayed after this is known.
+     *
+     * @param tracer The tracer.
+     */
+    void attach(final JaegerTracer tracer) {
+        if (process == null) {
+            process = new Process(tracer.getServiceName()).setTags(JaegerThriftSpanConverter.buildTags(tracer.tags()));
+        }
+    }
+
+    /**
+     * Forwards the log to the agent until the reporter is closed.
+     */
+    private void replay() {
+        long lastOrphanScan = System.nanoTime();
+        while (running) {
+            boolean progressed = false;
+            try {
+                progressed = replayOnce();
+                if (!progressed && System.nanoTime() - lastOrphanScan > ORPHAN_SCAN_INTERVAL_NANOS) {
+                    lastOrphanScan = System.nanoTime();
+                    progressed = log.adoptOrphans() > 0;
+                }
+            } catch (final RuntimeException e) {
+                AbstractOpenTracingEngine.logger.warn("Could not replay the span spill log.", e);
+            }
+            if (!progressed && running) {
+                LockSupport.parkNanos(this, retryIntervalNanos);
+            }
+        }
+    }
+
+    /**
+     * Sends the next batch of spans of the oldest segment of the log, and releases the segment once it was fully
+     * replayed.
+     *
+     * @return true if there was progress, false if there was nothing to send or the sender failed.
+     */
+    boolean replayOnce() {
+        final Process process = this.process;
+        final SpanSpillLog.Segment segment = log.oldest();
+        if (process == null || segment == null) {
+            return false;
+        }
+        if (segment.isReplayed()) {
+            log.release(segment);
+            return true;
+        }
+        if (processSize < 0) {
+            processSize = sizeOf(process);
+        }
+
+        final ByteBuffer reader = segment.reader();
+        final List<Span> batch = new ArrayList<>();
+        int batchSize = ThriftSenderBase.EMIT_BATCH_OVERHEAD + processSize;
+        int position = reader.position();
+        int skipped = 0;
+        while (!segment.atEnd(reader)) {
+            final Span span = segment.read(reader);
+            final int size = sizeOf(span);
+            if (batchSize + size > MAX_PACKET_SIZE) {
+                if (!batch.isEmpty()) {
+                    break;
+                }
+                skipped++;
+                oversized.increment();
+            } else {
+                batch.add(span);
+                batchSize += size;
+            }
+            position = reader.position();
+        }
+
+        if (!batch.isEmpty()) {
+            try {
+                sender.send(process, batch);
+            } catch (final SenderException e) {
+                failedSends.increment();
+                AbstractOpenTracingEngine.logger.debug("Could not send {} spilled spans, will retry.", batch.size(), e);
+                return false;
+            }
+            replayed.add(batch.size());
+        }
+        segment.replayed(position, batch.size() + skipped);
+        if (segment.isReplayed()) {
+            log.release(segment);
+        }
+        return !batch.isEmpty() || skipped > 0;
+    }
+
+    /**
+     * Computes the size of a Thrift object as the sender encodes it.
+     *
+     * @param object The Thrift object.
+     * @return The size in bytes.
+     */
+    private int sizeOf(final TBase<?, ?> object) {
+        try {
+            return sender.getSize(object);
+        } catch (final Exception e) {
+            throw new IllegalStateException("Could not compute the size of a spilled span.", e);
+        }
+    }
+
+    /**
+     * Returns the number of spans sent to the agent.
+     *
+     * @return The number of replayed spans.
+     */
+    long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    /**
+     * Returns the number of spans that were dropped, because they did not fit in the log, were deleted with the
+     * oldest segment of the log before being replayed, or were too large to be sent.
+     *
+     * @return The number of dropped spans.
+     */
+    long getDroppedCount() {
+        return log.getDroppedCount() + oversized.sum();
+    }
+
+    /**
+     * Returns the number of batches the sender failed to send, each of which was retried.
+     *
+     * @return The number of failed sends.
+     */
+    long getFailedSendCount() {
+        return failedSends.sum();
+    }
+
+    /**
+     * Stops the replay thread, sends what the agent still accepts and closes the sender. The spans that could not be
+     * sent stay in the log.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(replayer);
+        try {
+            replayer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!replayer.isAlive()) {
+            try {
+                while (replayOnce()) {
+                    // Keep sending until the log is empty or the agent stops accepting.
+                }
+            } catch (final RuntimeException e) {
+                AbstractOpenTracingEngine.logger.warn("Could not replay the span spill log.", e);
+            }
+        }
+        log.close();
+        try {
+            sender.close();
+        } catch (final SenderException e) {
+            AbstractOpenTracingEngine.logger.warn("Could not close the sender of the span spill log.", e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the tail sampling buffer of a {@link JaegerTracingEngine}, updated while traces finish.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class TailSamplingMetrics {
+
+    /**
+     * The number of traces decided, indexed by the ordinal of the decision.
+     */
+    private final LongAdder[] decisions = new LongAdder[TailSamplingPolicy.Decision.values().length];
+
+    /**
+     * The number of spans reported because their trace was kept.
+     */
+    private final LongAdder exportedSpans = new LongAdder();
+
+    /**
+     * The number of spans discarded because their trace was dropped.
+     */
+    private final LongAdder droppedSpans = new LongAdder();
+
+    /**
+     * The number of traces evicted from the buffer before they finished.
+     */
+    private final LongAdder evictedTraces = new LongAdder();
+
+    /**
+     * The number of spans evicted from the buffer before their trace finished.
+     */
+    private final LongAdder evictedSpans = new LongAdder();
+
+    /**
+     * The number of spans currently held by the buffer.
+     */
+    private final AtomicLong bufferedSpans = new AtomicLong();
+
+    /**
+     * Constructor for this class.
+     */
+    TailSamplingMetrics() {
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a span added to the buffer.
+     *
+     * @return The number of spans held by the buffer, including this one.
+     */
+    long recordBuffered() {
+        return bufferedSpans.incrementAndGet();
+    }
+
+    /**
+     * Records spans that left the buffer.
+     *
+     * @param count The number of spans.
+     */
+    void recordUnbuffered(final int count) {
+        bufferedSpans.addAndGet(-count);
+    }
+
+    /**
+     * Records the decision taken for a finished trace.
+     *
+     * @param decision The decision.
+     * @param spans    The number of spans of the trace that were in the buffer.
+     */
+    void recordDecision(final TailSamplingPolicy.Decision decision, final int spans) {
+        decisions[decision.ordinal()].increment();
+        recordSpans(decision.isKept(), spans);
+    }
+
+    /**
+     * Records spans of a trace that was already decided.
+     *
+     * @param kept  Whether the trace was kept.
+     * @param spans The number of spans.
+     */
+    void recordSpans(final boolean kept, final int spans) {
+        if (kept) {
+            exportedSpans.add(spans);
+        } else {
+            droppedSpans.add(spans);
+        }
+    }
+
+    /**
+     * Records a trace evicted from the buffer before it finished.
+     *
+     * @param spans The number of spans of the trace.
+     */
+    void recordEvicted(final int spans) {
+        evictedTraces.increment();
+        evictedSpans.add(spans);
+    }
+
+    /**
+     * Returns the number of finished traces that were reported.
+     *
+     * @return The number of kept traces.
+     */
+    public long getKeptCount() {
+        long kept = 0;
+        for (final TailSamplingPolicy.Decision decision : TailSamplingPolicy.Decision.values()) {
+            if (decision.isKept()) {
+                kept += decisions[decision.ordinal()].sum();
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the number of finished traces that were reported or dropped for a given reason.
+     *
+     * @param decision The reason.
+     * @return The number of traces.
+     */
+    public long getDecisionCount(final TailSamplingPolicy.Decision decision) {
+        return decisions[decision.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of finished traces that were dropped.
+     *
+     * @return The number of dropped traces.
+     */
+    public long getDroppedCount() {
+        return decisions[TailSamplingPolicy.Decision.DROP.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of spans reported because their trace was kept.
+     *
+     * @return The number of exported spans.
+     */
+    public long getExportedSpanCount() {
+        return exportedSpans.sum();
+    }
+
+    /**
+     * Returns the number of spans discarded because their trace was dropped.
+     *
+     * @return The number of dropped spans.
+     */
+    public long getDroppedSpanCount() {
+        return droppedSpans.sum();
+    }
+
+    /**
+     * Returns the number of traces evicted from the buffer before they finished, to make room for other spans.
+     *
+     * @return The number of evicted traces.
+     */
+    public long getEvictedCount() {
+        return evictedTraces.sum();
+    }
+
+    /**
+     * Returns the number of spans evicted from the buffer before their trace finished.
+     *
+     * @return The number of evicted spans.
+     */
+    public long getEvictedSpanCount() {
+        return evictedSpans.sum();
+    }
+
+    /**
+     * Returns the number of spans currently held by the buffer.
+     *
+     * @return The number of buffered spans.
+     */
+    public long getBufferedSpanCount() {
+        return bufferedSpans.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TailSamplingMetrics{" +
+                "kept=" + getKeptCount() +
+                ", dropped=" + getDroppedCount() +
+                ", evicted=" + getEvictedCount() +
+                ", exportedSpans=" + getExportedSpanCount() +
+                ", droppedSpans=" + getDroppedSpanCount() +
+                ", evictedSpans=" + getEvictedSpanCount() +
+                ", bufferedSpans=" + getBufferedSpanCount() +
+                '}';
+    }
+}
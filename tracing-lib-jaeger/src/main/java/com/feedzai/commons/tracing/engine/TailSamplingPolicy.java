@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Decides whether a finished trace that was held by the tail sampling buffer is reported. A trace is kept if it took
+ * longer than the latency threshold, if one of its spans is tagged with an error, if its application specific ID is
+ * on the watch list, or otherwise with the baseline probability.
+ *
+ * <p>The baseline decision is taken from the trace id with the same boundaries as Jaeger's {@code
+ * ProbabilisticSampler}, so processes that sample the same trace at the same rate agree on it.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class TailSamplingPolicy {
+
+    /**
+     * The reasons why a trace is kept or dropped, in the order they are checked.
+     */
+    public enum Decision {
+
+        /**
+         * The trace took longer than the latency threshold.
+         */
+        LATENCY,
+
+        /**
+         * A span of the trace is tagged with an error.
+         */
+        ERROR,
+
+        /**
+         * The application specific ID of the trace is on the watch list.
+         */
+        WATCHED_ID,
+
+        /**
+         * The trace was chosen by the baseline probability.
+         */
+        BASELINE,
+
+        /**
+         * The trace was dropped.
+         */
+        DROP;
+
+        /**
+         * Returns true if the trace is reported.
+         *
+         * @return true unless the trace was dropped.
+         */
+        public boolean isKept() {
+            return this != DROP;
+        }
+    }
+
+    /**
+     * The duration above which a trace is always kept, in microseconds.
+     */
+    private final long latencyThresholdMicros;
+
+    /**
+     * The application specific IDs whose traces are always kept.
+     */
+    private final Set<String> watchedIds;
+
+    /**
+     * The probability of keeping a trace that matches no other rule.
+     */
+    private final double baselineRate;
+
+    /**
+     * The trace ids above zero up to this one are kept by the baseline.
+     */
+    private final long positiveBoundary;
+
+    /**
+     * The trace ids below zero down to this one are kept by the baseline.
+     */
+    private final long negativeBoundary;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param latencyThreshold The duration above which a trace is always kept.
+     * @param watchedIds       The application specific IDs whose traces are always kept.
+     * @param baselineRate     The probability of keeping a trace that matches no other rule, between 0 and 1.
+     */
+    public TailSamplingPolicy(final Duration latencyThreshold, final Collection<String> watchedIds,
+                              final double baselineRate) {
+        Preconditions.checkNotNull(latencyThreshold);
+        Preconditions.checkArgument(!latencyThreshold.isNegative());
+        Preconditions.checkNotNull(watchedIds);
+        Preconditions.checkArgument(baselineRate >= 0 && baselineRate <= 1);
+        this.latencyThresholdMicros = latencyThreshold.toNanos() / 1000;
+        this.watchedIds = ImmutableSet.copyOf(watchedIds);
+        this.baselineRate = baselineRate;
+        this.positiveBoundary = (long) (Long.MAX_VALUE * baselineRate);
+        this.negativeBoundary = (long) (Long.MIN_VALUE * baselineRate);
+    }
+
+    /**
+     * Decides whether a finished trace is reported.
+     *
+     * @param traceIdLow     The low bits of the trace id.
+     * @param durationMicros The time between the start of the first span and the end of the last one, in
+     *                       microseconds.
+     * @param error          Whether a span of the trace is tagged with an error.
+     * @param eventId        The application specific ID of the trace, or {@code null} if it has none.
+     * @return The decision.
+     */
+    public Decision decide(final long traceIdLow, final long durationMicros, final boolean error,
+                           final String eventId) {
+        if (latencyThresholdMicros > 0 && durationMicros > latencyThresholdMicros) {
+            return Decision.LATENCY;
+        }
+        if (error) {
+            return Decision.ERROR;
+        }
+        if (eventId != null && watchedIds.contains(eventId)) {
+            return Decision.WATCHED_ID;
+        }
+        if (traceIdLow > 0 ? traceIdLow <= positiveBoundary : traceIdLow >= negativeBoundary) {
+            return baselineRate > 0 ? Decision.BASELINE : Decision.DROP;
+        }
+        return Decision.DROP;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final TailSamplingPolicy that = (TailSamplingPolicy) o;
+        return latencyThresholdMicros == that.latencyThresholdMicros &&
+                Double.compare(that.baselineRate, baselineRate) == 0 &&
+                Objects.equals(watchedIds, that.watchedIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latencyThresholdMicros, watchedIds, baselineRate);
+    }
+
+    @Override
+    public String toString() {
+        return "TailSamplingPolicy{" +
+                "latencyThresholdMicros=" + latencyThresholdMicros +
+                ", watchedIds=" + watchedIds +
+                ", baselineRate=" + baselineRate +
+                '}';
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.TailEvictionPolicy;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerSpanContext;
+import io.jaegertracing.spi.Reporter;
+import io.opentracing.tag.Tags;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Reporter} that holds the finished spans of each trace until the engine signals that the trace has finished,
+ * and then reports all of them or none of them according to a {@link TailSamplingPolicy}. A trace that is kept is
+ * handed to the delegate reporter at once, so it goes out with the same flush, and a trace that is dropped never
+ * reaches the delegate.
+ *
+ * <p>The buffer is capped by the number of spans it holds. When a span would take it over the cap, whole traces are
+ * evicted in the order their first span arrived and handled according to the {@link TailEvictionPolicy}. Traces the
+ * engine does not track never finish, so they are only released this way.
+ *
+ * <p>The decision is remembered for a while after the trace finishes or is evicted, so that spans that join the trace
+ * late are reported or dropped with it instead of being buffered again.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class TailSamplingReporter implements Reporter {
+
+    /**
+     * The reporter that receives the spans of the traces that are kept.
+     */
+    private final Reporter delegate;
+
+    /**
+     * Decides which finished traces are kept.
+     */
+    private volatile TailSamplingPolicy policy;
+
+    /**
+     * The maximum number of spans held by the buffer.
+     */
+    private final int maxBufferedSpans;
+
+    /**
+     * What is done with the traces evicted from the buffer.
+     */
+    private final TailEvictionPolicy evictionPolicy;
+
+    /**
+     * The key of the application specific ID in the baggage of the spans, used when the engine does not know the ID
+     * of a finished trace.
+     */
+    private final String eventIdKey;
+
+    /**
+     * The counters of this reporter.
+     */
+    private final TailSamplingMetrics metrics;
+
+    /**
+     * The buffers of the traces that have not finished.
+     */
+    private final ConcurrentHashMap<TraceKey, TraceBuffer> traces = new ConcurrentHashMap<>();
+
+    /**
+     * The buffers of the traces that have not finished, in the order their first span arrived.
+     */
+    private final ConcurrentLinkedQueue<TraceBuffer> arrivalOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether the recently finished traces were kept.
+     */
+    private final Cache<TraceKey, Boolean> decisions;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param delegate         The reporter that receives the spans of the traces that are kept.
+     * @param policy           Decides which finished traces are kept.
+     * @param maxBufferedSpans The maximum number of spans held by the buffer.
+     * @param evictionPolicy   What is done with the traces evicted from the buffer.
+     * @param decisionTtl      How long the decision on a finished trace is applied to the spans that join it late.
+     * @param eventIdKey       The key of the application specific ID in the baggage of the spans.
+     * @param metrics          The counters of this reporter.
+     */
+    TailSamplingReporter(final Reporter delegate, final TailSamplingPolicy policy, final int maxBufferedSpans,
+                         final TailEvictionPolicy evictionPolicy, final Duration decisionTtl, final String eventIdKey,
+                         final TailSamplingMetrics metrics) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.maxBufferedSpans = maxBufferedSpans;
+        this.evictionPolicy = evictionPolicy;
+        this.eventIdKey = eventIdKey;
+        this.metrics = metrics;
+        this.decisions = CacheBuilder.newBuilder()
+                .maximumSize(maxBufferedSpans)
+                .expireAfterWrite(decisionTtl.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * Replaces the policy applied to the traces that finish from now on.
+     *
+     * @param policy The new policy.
+     */
+    void setPolicy(final TailSamplingPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Returns the policy applied to the traces that finish.
+     *
+     * @return The policy.
+     */
+    TailSamplingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the counters of this reporter.
+     *
+     * @return The counters.
+     */
+    TailSamplingMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void report(final JaegerSpan span) {
+        final JaegerSpanContext context = span.context();
+        final TraceKey key = new TraceKey(context.getTraceIdHigh(), context.getTraceIdLow());
+        TraceBuffer buffer = traces.get(key);
+        while (buffer == null || !buffer.add(span)) {
+            final Boolean kept = decisions.getIfPresent(key);
+            if (kept != null) {
+                release(Collections.singletonList(span), kept);
+                return;
+            }
+            buffer = traces.computeIfAbsent(key, this::newBuffer);
+        }
+        if (metrics.recordBuffered() > maxBufferedSpans) {
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * Decides whether a trace that has finished is kept, and reports or discards its buffered spans accordingly. A
+     * trace that was already decided keeps its decision.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param eventId     The application specific ID of the trace, or {@code null} if the engine does not know it.
+     */
+    void traceFinished(final long traceIdHigh, final long traceIdLow, final String eventId) {
+        final TraceKey key = new TraceKey(traceIdHigh, traceIdLow);
+        final Boolean previous = decisions.getIfPresent(key);
+        final List<JaegerSpan> spans = take(key);
+        if (previous != null) {
+            release(spans, previous);
+            return;
+        }
+
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        boolean error = false;
+        String id = eventId;
+        for (final JaegerSpan span : spans) {
+            start = Math.min(start, span.getStart());
+            end = Math.max(end, span.getStart() + span.getDuration());
+            error = error || Boolean.TRUE.equals(span.getTags().get(Tags.ERROR.getKey()));
+            if (id == null) {
+                id = span.getBaggageItem(eventIdKey);
+            }
+        }
+        final TailSamplingPolicy.Decision decision = policy.decide(traceIdLow, spans.isEmpty() ? 0 : end - start,
+                error, id);
+        decisions.put(key, decision.isKept());
+        metrics.recordDecision(decision, spans.size());
+        if (decision.isKept()) {
+            for (final JaegerSpan span : spans) {
+                delegate.report(span);
+            }
+        }
+        // Spans that arrived after the buffer was taken and before the decision was published.
+        release(take(key), decision.isKept());
+    }
+
+    /**
+     * Releases every buffered trace according to the eviction policy and closes the delegate reporter.
+     */
+    @Override
+    public void close() {
+        TraceBuffer buffer;
+        while ((buffer = arrivalOrder.poll()) != null) {
+            evict(buffer);
+        }
+        delegate.close();
+    }
+
+    /**
+     * Creates the buffer of a trace and queues it for eviction. The buffers of traces that already finished are left
+     * in the queue when they are taken, so the ones at its head are dropped here.
+     *
+     * @param key The trace.
+     * @return The buffer.
+     */
+    private TraceBuffer newBuffer(final TraceKey key) {
+        TraceBuffer head;
+        while ((head = arrivalOrder.peek()) != null && head.isClosed()) {
+            arrivalOrder.remove(head);
+        }
+        final TraceBuffer buffer = new TraceBuffer(key);
+        arrivalOrder.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Removes the buffer of a trace and returns its spans.
+     *
+     * @param key The trace.
+     * @return The buffered spans, empty if the trace was not buffered or was evicted.
+     */
+    private List<JaegerSpan> take(final TraceKey key) {
+        final TraceBuffer buffer = traces.remove(key);
+        if (buffer == null) {
+            return Collections.emptyList();
+        }
+        // The buffer stays queued for eviction until it reaches the head, where it is skipped since it is closed.
+        final List<JaegerSpan> spans = buffer.close();
+        if (spans == null) {
+            return Collections.emptyList();
+        }
+        metrics.recordUnbuffered(spans.size());
+        return spans;
+    }
+
+    /**
+     * Reports or discards the spans of a trace that was already decided.
+     *
+     * @param spans The spans.
+     * @param kept  Whether the trace was kept.
+     */
+    private void release(final List<JaegerSpan> spans, final boolean kept) {
+        if (spans.isEmpty()) {
+            return;
+        }
+        metrics.recordSpans(kept, spans.size());
+        if (kept) {
+            for (final JaegerSpan span : spans) {
+                delegate.report(span);
+            }
+        }
+    }
+
+    /**
+     * Evicts the oldest traces until the buffer is within its cap, skipping the buffers of traces that already
+     * finished.
+     */
+    private void evictOverBudget() {
+        while (metrics.getBufferedSpanCount() > maxBufferedSpans) {
+            final TraceBuffer oldest = arrivalOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            evict(oldest);
+        }
+    }
+
+    /**
+     * Removes a trace from the buffer before it finished and handles its spans according to the eviction policy. The
+     * eviction is recorded as the decision of the trace, so the spans that arrive later are handled the same way
+     * instead of being buffered as a new, truncated trace.
+     *
+     * @param buffer The buffer of the trace.
+     */
+    private void evict(final TraceBuffer buffer) {
+        final List<JaegerSpan> spans = buffer.close();
+        if (spans == null) {
+            return;
+        }
+        final boolean kept = evictionPolicy == TailEvictionPolicy.EXPORT_OLDEST;
+        // Published before the buffer leaves the map, so that spans which find it closed see the decision.
+        decisions.put(buffer.key, kept);
+        traces.remove(buffer.key, buffer);
+        metrics.recordUnbuffered(spans.size());
+        metrics.recordEvicted(spans.size());
+        if (kept) {
+            for (final JaegerSpan span : spans) {
+                delegate.report(span);
+            }
+        }
+    }
+
+    /**
+     * The spans of a trace that has not finished.
+     */
+    private static final class TraceBuffer {
+
+        /**
+         * The trace.
+         */
+        final TraceKey key;
+
+        /**
+         * The spans of the trace, or {@code null} once the buffer was taken or evicted.
+         */
+        private List<JaegerSpan> spans = new ArrayList<>(4);
+
+        /**
+         * Constructor for this class.
+         *
+         * @param key The trace.
+         */
+        TraceBuffer(final TraceKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds a span to the buffer.
+         *
+         * @param span The span.
+         * @return true if the span was added, false if the buffer was already taken or evicted.
+         */
+        synchronized boolean add(final JaegerSpan span) {
+            if (spans == null) {
+                return false;
+            }
+            spans.add(span);
+            return true;
+        }
+
+        /**
+         * Closes the buffer to new spans.
+         *
+         * @return The spans that were buffered, or {@code null} if the buffer was already closed.
+         */
+        synchronized List<JaegerSpan> close() {
+            final List<JaegerSpan> result = spans;
+            spans = null;
+            return result;
+        }
+
+        /**
+         * Checks whether the buffer was taken or evicted.
+         *
+         * @return true if the buffer is closed to new spans.
+         */
+        synchronized boolean isClosed() {
+            return spans == null;
+        }
+    }
+
+    /**
+     * The 128-bit id of a trace.
+     */
+    private static final class TraceKey {
+
+        /**
+         * The high bits of the trace ID.
+         */
+        final long traceIdHigh;
+
+        /**
+         * The low bits of the trace ID.
+         */
+        final long traceIdLow;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param traceIdHigh The high bits of the trace ID.
+         * @param traceIdLow  The low bits of the trace ID.
+         */
+        TraceKey(final long traceIdHigh, final long traceIdLow) {
+            this.traceIdHigh = traceIdHigh;
+            this.traceIdLow = traceIdLow;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TraceKey)) {
+                return false;
+            }
+            final TraceKey that = (TraceKey) o;
+            return traceIdHigh == that.traceIdHigh && traceIdLow == that.traceIdLow;
+        }
+
+        @Override
+        public int hashCode() {
+            return TraceRegistry.hash(traceIdHigh, traceIdLow);
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.feedzai.commons.tracing.engine.configuration;
 
+import java.util.List;
+import java.util.Objects;
+
 /**
  * Class that holds the configuration for {@link com.feedzai.commons.tracing.engine.JaegerTracingEngine}
  *
@@ -33,11 +36,46 @@ public class JaegerConfiguration {
      */
     public long cacheMaxSize;
 
+    /**
+     * The interval between runs of the background maintenance of the caches, or 0 to maintain them inline.
+     */
+    public long cacheMaintenanceIntervalInMillis;
+
+    /**
+     * Whether the cache entries of a trace are purged once all its spans have finished, instead of when they expire.
+     */
+    public boolean purgeFinishedTraces;
+
+    /**
+     * How long the cache entries of a finished trace are kept when {@code purgeFinishedTraces} is set.
+     */
+    public long purgeGracePeriodInMillis;
+
     /**
      * The rate at which requests will be sampled for tracing.
      */
     public double sampleRate;
 
+    /**
+     * Whether each root operation is sampled with its own probability, adapted from the observed rates.
+     */
+    public boolean adaptiveSampling;
+
+    /**
+     * The minimum number of traces per second of each root operation when {@code adaptiveSampling} is set.
+     */
+    public double minTracesPerSecond;
+
+    /**
+     * The maximum number of traces per second when {@code adaptiveSampling} is set, or 0 for no maximum.
+     */
+    public double maxTracesPerSecond;
+
+    /**
+     * How often the probabilities are adapted when {@code adaptiveSampling} is set, or 0 for the default.
+     */
+    public long samplingWindowInMillis;
+
     /**
      * The name of the this process.
      */
@@ -48,14 +86,191 @@ public class JaegerConfiguration {
      */
     public String ip;
 
+    /**
+     * The UDP port of the jaeger agent, or 0 for the port set in the environment or Jaeger's default port.
+     */
+    public int agentPort;
+
+    /**
+     * Whether the tracer is built in the background, so that building the engine does not wait for it.
+     */
+    public boolean asyncStart;
+
+    /**
+     * What happens to the traces that start before the tracer is built when {@code asyncStart} is set.
+     */
+    public PreStartPolicy preStartPolicy;
+
+    /**
+     * The maximum number of spans kept until the tracer is built when {@code asyncStart} is set.
+     */
+    public int preStartBufferSize;
+
+    /**
+     * The directory of the log where the spans are kept until they are sent to the agent, or {@code null} to only
+     * queue them in memory.
+     */
+    public String spillDirectory;
+
+    /**
+     * The size of each segment file of the span spill log, or 0 for the default.
+     */
+    public int spillSegmentSizeInBytes;
+
+    /**
+     * The maximum number of segment files of the span spill log, or 0 for the default.
+     */
+    public int spillMaxSegments;
+
+    /**
+     * The maximum number of spans queued by the batching reporter, or 0 to use Jaeger's own reporter.
+     */
+    public int reporterQueueSize;
+
+    /**
+     * The number of spans the batching reporter flushes together, or 0 for the default.
+     */
+    public int reporterBatchSize;
+
+    /**
+     * The maximum time a span waits for its batch to fill up in the batching reporter, or 0 for the default.
+     */
+    public long reporterFlushIntervalInMillis;
+
+    /**
+     * What the batching reporter does with a span finished when its queue is full, or {@code null} for the default.
+     */
+    public OverflowPolicy overflowPolicy;
+
+    /**
+     * How long a thread waits for room in the queue of the batching reporter with {@link OverflowPolicy#BLOCK}, or 0
+     * for the default.
+     */
+    public long overflowBlockTimeoutInMillis;
+
+    /**
+     * The interval between two measurements of the offset of the tracer clock to the wall clock, or 0 for the default.
+     */
+    public long clockResyncIntervalInMillis;
+
+    /**
+     * The interval between two timestamps of the coarse clock of the tracer, or 0 to read the time on every span.
+     */
+    public long coarseClockTickInMicros;
+
+    /**
+     * Whether the spans are held until their trace finishes and only reported if the trace is kept, with the sample
+     * rate as the baseline probability.
+     */
+    public boolean tailSampling;
+
+    /**
+     * The duration above which a finished trace is always kept by tail sampling, or 0 for no latency rule.
+     */
+    public long tailLatencyThresholdInMillis;
+
+    /**
+     * The application specific IDs whose traces are always kept by tail sampling, or {@code null} for none.
+     */
+    public List<String> tailWatchedIds;
+
+    /**
+     * The maximum number of spans held by the tail sampling buffer, or 0 for the default.
+     */
+    public int tailMaxBufferedSpans;
+
+    /**
+     * What the tail sampling buffer does with the traces it evicts, or {@code null} for the default.
+     */
+    public TailEvictionPolicy tailEvictionPolicy;
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final JaegerConfiguration that = (JaegerConfiguration) o;
+        return cacheDurationInMinutes == that.cacheDurationInMinutes
+                && cacheMaxSize == that.cacheMaxSize
+                && cacheMaintenanceIntervalInMillis == that.cacheMaintenanceIntervalInMillis
+                && purgeFinishedTraces == that.purgeFinishedTraces
+                && purgeGracePeriodInMillis == that.purgeGracePeriodInMillis
+                && Double.compare(sampleRate, that.sampleRate) == 0
+                && adaptiveSampling == that.adaptiveSampling
+                && Double.compare(minTracesPerSecond, that.minTracesPerSecond) == 0
+                && Double.compare(maxTracesPerSecond, that.maxTracesPerSecond) == 0
+                && samplingWindowInMillis == that.samplingWindowInMillis
+                && Objects.equals(processName, that.processName)
+                && Objects.equals(ip, that.ip)
+                && agentPort == that.agentPort
+                && asyncStart == that.asyncStart
+                && preStartPolicy == that.preStartPolicy
+                && preStartBufferSize == that.preStartBufferSize
+                && Objects.equals(spillDirectory, that.spillDirectory)
+                && spillSegmentSizeInBytes == that.spillSegmentSizeInBytes
+                && spillMaxSegments == that.spillMaxSegments
+                && reporterQueueSize == that.reporterQueueSize
+                && reporterBatchSize == that.reporterBatchSize
+                && reporterFlushIntervalInMillis == that.reporterFlushIntervalInMillis
+                && overflowPolicy == that.overflowPolicy
+                && overflowBlockTimeoutInMillis == that.overflowBlockTimeoutInMillis
+                && clockResyncIntervalInMillis == that.clockResyncIntervalInMillis
+                && coarseClockTickInMicros == that.coarseClockTickInMicros
+                && tailSampling == that.tailSampling
+                && tailLatencyThresholdInMillis == that.tailLatencyThresholdInMillis
+                && Objects.equals(tailWatchedIds, that.tailWatchedIds)
+                && tailMaxBufferedSpans == that.tailMaxBufferedSpans
+                && tailEvictionPolicy == that.tailEvictionPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cacheDurationInMinutes, cacheMaxSize, cacheMaintenanceIntervalInMillis,
+                purgeFinishedTraces, purgeGracePeriodInMillis, sampleRate, adaptiveSampling, minTracesPerSecond,
+                maxTracesPerSecond, samplingWindowInMillis, processName, ip, agentPort, asyncStart, preStartPolicy,
+                preStartBufferSize, spillDirectory, spillSegmentSizeInBytes, spillMaxSegments, reporterQueueSize,
+                reporterBatchSize, reporterFlushIntervalInMillis, overflowPolicy, overflowBlockTimeoutInMillis,
+                clockResyncIntervalInMillis, coarseClockTickInMicros, tailSampling, tailLatencyThresholdInMillis,
+                tailWatchedIds, tailMaxBufferedSpans, tailEvictionPolicy);
+    }
+
     @Override
     public String toString() {
         return "JaegerConfiguration{" +
                 "cacheDurationInMinutes=" + cacheDurationInMinutes +
                 ", cacheMaxSize=" + cacheMaxSize +
+                ", cacheMaintenanceIntervalInMillis=" + cacheMaintenanceIntervalInMillis +
+                ", purgeFinishedTraces=" + purgeFinishedTraces +
+                ", purgeGracePeriodInMillis=" + purgeGracePeriodInMillis +
                 ", sampleRate=" + sampleRate +
+                ", adaptiveSampling=" + adaptiveSampling +
+                ", minTracesPerSecond=" + minTracesPerSecond +
+                ", maxTracesPerSecond=" + maxTracesPerSecond +
+                ", samplingWindowInMillis=" + samplingWindowInMillis +
                 ", processName='" + processName + '\'' +
                 ", ip='" + ip + '\'' +
+                ", agentPort=" + agentPort +
+                ", asyncStart=" + asyncStart +
+                ", preStartPolicy=" + preStartPolicy +
+                ", preStartBufferSize=" + preStartBufferSize +
+                ", spillDirectory='" + spillDirectory + '\'' +
+                ", spillSegmentSizeInBytes=" + spillSegmentSizeInBytes +
+                ", spillMaxSegments=" + spillMaxSegments +
+                ", reporterQueueSize=" + reporterQueueSize +
+                ", reporterBatchSize=" + reporterBatchSize +
+                ", reporterFlushIntervalInMillis=" + reporterFlushIntervalInMillis +
+                ", overflowPolicy=" + overflowPolicy +
+                ", overflowBlockTimeoutInMillis=" + overflowBlockTimeoutInMillis +
+                ", clockResyncIntervalInMillis=" + clockResyncIntervalInMillis +
+                ", coarseClockTickInMicros=" + coarseClockTickInMicros +
+                ", tailSampling=" + tailSampling +
+                ", tailLatencyThresholdInMillis=" + tailLatencyThresholdInMillis +
+                ", tailWatchedIds=" + tailWatchedIds +
+                ", tailMaxBufferedSpans=" + tailMaxBufferedSpans +
+                ", tailEvictionPolicy=" + tailEvictionPolicy +
                 '}';
     }
 }
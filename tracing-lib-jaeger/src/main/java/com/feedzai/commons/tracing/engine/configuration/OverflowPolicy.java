@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+/**
+ * What the batching reporter of a {@link com.feedzai.commons.tracing.engine.JaegerTracingEngine} does with a finished
+ * span when its queue is full.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The span that was just finished is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The oldest span in the queue is dropped to make room for the one that was just finished.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The thread that finished the span waits for room in the queue, up to the configured timeout, and then drops the
+     * span.
+     */
+    BLOCK,
+
+    /**
+     * Once the queue is half full, spans are admitted with a probability that decreases as the queue fills up. The
+     * decision is taken from the trace id, so a trace is either kept or dropped as a whole while the fill level holds.
+     * Spans finished when the queue is full are dropped.
+     */
+    SAMPLE_DOWN
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+/**
+ * What a {@link com.feedzai.commons.tracing.engine.JaegerTracingEngine} built with an asynchronous start does with the
+ * traces that start before its tracer is ready.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public enum PreStartPolicy {
+
+    /**
+     * The traces are sampled as usual and their spans are kept in a bounded buffer, which is handed to the reporter of
+     * the tracer once it is ready. Spans finished when the buffer is full are dropped.
+     */
+    BUFFER,
+
+    /**
+     * The traces are sampled out, so they are propagated but none of their spans is reported.
+     */
+    NOOP
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+/**
+ * What the tail sampling buffer of a {@link com.feedzai.commons.tracing.engine.JaegerTracingEngine} does with the
+ * oldest trace it holds when it needs room for new spans, or when the engine is closed.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public enum TailEvictionPolicy {
+
+    /**
+     * The spans of the oldest trace are dropped without being reported.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The spans of the oldest trace are reported as they are, without waiting for the trace to finish.
+     */
+    EXPORT_OLDEST
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.samplers.ProbabilisticSampler;
+import io.jaegertracing.internal.samplers.SamplingStatus;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplerTest {
+
+    private static final Duration LONG_WINDOW = Duration.ofHours(1);
+
+    private final Random random = new Random(42);
+
+    private static int sampled(final AdaptiveSampler sampler, final String operation, final int calls,
+                               final Random random) {
+        int sampled = 0;
+        for (int i = 0; i < calls; i++) {
+            if (sampler.sample(operation, random.nextLong()).isSampled()) {
+                sampled++;
+            }
+        }
+        return sampled;
+    }
+
+    @Test
+    public void testRareOperationsGetTheirGuaranteedRate() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(0, 10, 0, LONG_WINDOW, 100);
+
+        final SamplingStatus status = sampler.sample("Rare Operation", random.nextLong());
+        assertTrue(status.isSampled());
+        assertEquals(AdaptiveSampler.LOWER_BOUND, status.getTags().get("sampler.type"));
+
+        // The rate limiter allows a burst of one second of traces, and nothing more right after it.
+        final int sampled = sampled(sampler, "Rare Operation", 1000, random);
+        assertTrue(sampled >= 9 && sampled <= 11);
+        assertTrue(sampler.sample("Another Operation", random.nextLong()).isSampled());
+    }
+
+    @Test
+    public void testMaxTracesPerSecondCapsTheTotal() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(1, 10, 100, LONG_WINDOW, 100);
+
+        int sampled = 0;
+        for (int i = 0; i < 10; i++) {
+            sampled += sampled(sampler, "Operation " + i, 1000, random);
+        }
+        // One second of burst, plus what the limiter refilled while the loop ran.
+        assertTrue(sampled >= 100 && sampled <= 120);
+    }
+
+    @Test
+    public void testProbabilitiesAdaptToTheObservedRates() throws InterruptedException {
+        final AdaptiveSampler sampler = new AdaptiveSampler(1, 1, 100, Duration.ofMillis(50), 100);
+        sampled(sampler, "Hot Operation", 20000, random);
+        sampled(sampler, "Cold Operation", 5, random);
+        assertEquals(1, sampler.getProbability("Hot Operation"), 0);
+
+        Thread.sleep(60);
+        sampler.sample("Hot Operation", random.nextLong());
+
+        final double hot = sampler.getProbability("Hot Operation");
+        final double cold = sampler.getProbability("Cold Operation");
+        assertTrue(hot < 0.5);
+        assertTrue(cold > hot);
+        assertTrue(cold <= 1);
+    }
+
+    @Test
+    public void testProbabilitiesNeverExceedTheSampleRate() throws InterruptedException {
+        final AdaptiveSampler sampler = new AdaptiveSampler(0.5, 1000, 0, Duration.ofMillis(10), 100);
+        sampled(sampler, "Operation", 10, random);
+
+        Thread.sleep(20);
+        sampler.sample("Operation", random.nextLong());
+        assertEquals(0.5, sampler.getProbability("Operation"), 0);
+    }
+
+    @Test
+    public void testProbabilisticDecisionsMatchJaeger() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(0.3, 0, 0, LONG_WINDOW, 100);
+        final ProbabilisticSampler jaeger = new ProbabilisticSampler(0.3);
+        for (int i = 0; i < 10000; i++) {
+            final long id = random.nextLong();
+            final SamplingStatus expected = jaeger.sample("Operation", id);
+            final SamplingStatus status = sampler.sample("Operation", id);
+            assertEquals(expected.isSampled(), status.isSampled());
+            if (status.isSampled()) {
+                assertEquals(expected.getTags(), status.getTags());
+            }
+        }
+    }
+
+    @Test
+    public void testOperationsBeyondTheLimitShareOneState() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(0, 1, 0, LONG_WINDOW, 2);
+        assertTrue(sampler.sample("First", random.nextLong()).isSampled());
+        assertTrue(sampler.sample("Second", random.nextLong()).isSampled());
+        // Untracked operations have no guaranteed rate.
+        assertFalse(sampler.sample("Third", random.nextLong()).isSampled());
+    }
+
+    @Test
+    public void testSettingsEquality() {
+        assertEquals(new AdaptiveSampler(0.5, 1, 10, LONG_WINDOW, 100),
+                new AdaptiveSampler(0.5, 1, 10, LONG_WINDOW, 100));
+        assertNotEquals(new AdaptiveSampler(0.5, 1, 10, LONG_WINDOW, 100),
+                new AdaptiveSampler(0.5, 2, 10, LONG_WINDOW, 100));
+    }
+
+    @Test
+    public void testConcurrentSamplingRespectsTheMaximum() throws Exception {
+        final AdaptiveSampler sampler = new AdaptiveSampler(1, 0, 1000, LONG_WINDOW, 100);
+        final int threads = 8;
+        final AtomicInteger sampled = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    final Random threadRandom = new Random(thread);
+                    start.await();
+                    sampled.addAndGet(sampled(sampler, "Operation " + thread % 3, 20000, threadRandom));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // One second of burst, plus whatever the limiter refilled while the threads ran.
+        assertTrue(sampled.get() >= 1000);
+        assertTrue(sampled.get() <= 1001 + 1000 * 60);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.agent.thrift.Agent;
+import io.jaegertracing.thrift.internal.senders.UdpSender;
+import io.jaegertracing.thriftjava.Span;
+import io.jaegertracing.vendor.org.apache.thrift.protocol.TCompactProtocol;
+import io.jaegertracing.vendor.org.apache.thrift.protocol.TProtocol;
+import io.jaegertracing.vendor.org.apache.thrift.transport.TMemoryInputTransport;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for a Jaeger agent on the loopback interface: receives the batches sent over UDP in the compact Thrift
+ * protocol, decodes them and keeps their spans, the size of every batch and the delay between the end of every span
+ * and the moment its batch arrived.
+ */
+final class AgentStandIn implements AutoCloseable {
+
+    /**
+     * The receive buffer requested from the operating system, large enough to absorb bursts of full packets.
+     */
+    private static final int RECEIVE_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private final DatagramSocket socket;
+
+    private final Thread receiver;
+
+    private final List<Span> spans = new ArrayList<>();
+
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    private final List<Long> delaysMicros = new ArrayList<>();
+
+    private final AtomicLong undecodable = new AtomicLong();
+
+    private volatile String serviceName;
+
+    AgentStandIn() throws SocketException {
+        socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        receiver = new Thread(this::receive, "agent-stand-in");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void receive() {
+        final byte[] buffer = new byte[65535];
+        while (!socket.isClosed()) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (final Exception e) {
+                // Closed.
+                continue;
+            }
+            final long receivedMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+            final Agent.emitBatch_args args = new Agent.emitBatch_args();
+            try {
+                final TProtocol protocol = new TCompactProtocol(
+                        new TMemoryInputTransport(packet.getData(), 0, packet.getLength()));
+                protocol.readMessageBegin();
+                args.read(protocol);
+            } catch (final Exception e) {
+                undecodable.incrementAndGet();
+                continue;
+            }
+            serviceName = args.batch.getProcess().getServiceName();
+            final List<Span> batch = args.batch.getSpans();
+            synchronized (this) {
+                spans.addAll(batch);
+                batchSizes.add(batch.size());
+                for (final Span span : batch) {
+                    delaysMicros.add(receivedMicros - span.getStartTime() - span.getDuration());
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the port this agent listens on.
+     */
+    int port() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Returns a sender that sends to this agent.
+     */
+    UdpSender sender() {
+        return new UdpSender("127.0.0.1", port(), 0);
+    }
+
+    /**
+     * Returns the service name of the last batch received, or {@code null} if none was.
+     */
+    String serviceName() {
+        return serviceName;
+    }
+
+    /**
+     * Returns a snapshot of the spans received, in the order they arrived.
+     */
+    synchronized List<Span> spans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Returns the number of spans received.
+     */
+    synchronized int spanCount() {
+        return spans.size();
+    }
+
+    /**
+     * Returns a snapshot of the number of spans in each batch received.
+     */
+    synchronized List<Integer> batchSizes() {
+        return new ArrayList<>(batchSizes);
+    }
+
+    /**
+     * Returns a snapshot of the delays between the end of each span received and the arrival of its batch.
+     */
+    synchronized List<Long> delaysMicros() {
+        return new ArrayList<>(delaysMicros);
+    }
+
+    /**
+     * Returns the number of packets that were not a batch of spans.
+     */
+    long undecodableCount() {
+        return undecodable.get();
+    }
+
+    /**
+     * Waits until at least {@code count} spans were received, or until no span arrived for {@code idle}.
+     *
+     * @return true if the spans were received.
+     */
+    synchronized boolean awaitSpans(final int count, final Duration idle) throws InterruptedException {
+        int seen = spans.size();
+        long deadline = System.nanoTime() + idle.toNanos();
+        while (spans.size() < count) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            if (spans.size() != seen) {
+                seen = spans.size();
+                deadline = System.nanoTime() + idle.toNanos();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        socket.close();
+        receiver.join(TimeUnit.SECONDS.toMillis(1));
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.OverflowPolicy;
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.reporters.InMemoryReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.jaegertracing.spi.Sender;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class BatchingReporterTest {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private final RecordingSender sender = new RecordingSender();
+
+    private BatchingReporter reporter;
+
+    /**
+     * Sender that keeps the spans it flushes, and can hold the flush thread until it is released.
+     */
+    private static final class RecordingSender implements Sender {
+
+        private final List<JaegerSpan> sent = new CopyOnWriteArrayList<>();
+
+        private final List<JaegerSpan> pending = new ArrayList<>();
+
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        private volatile boolean holding;
+
+        private volatile boolean held;
+
+        private volatile boolean closed;
+
+        @Override
+        public int append(final JaegerSpan span) {
+            if (holding) {
+                held = true;
+                try {
+                    gate.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            pending.add(span);
+            return 0;
+        }
+
+        @Override
+        public int flush() {
+            final int count = pending.size();
+            sent.addAll(pending);
+            pending.clear();
+            return count;
+        }
+
+        @Override
+        public int close() {
+            closed = true;
+            return flush();
+        }
+
+        void hold() {
+            holding = true;
+        }
+
+        void release() {
+            holding = false;
+            gate.countDown();
+        }
+    }
+
+    @After
+    public void closeReporter() {
+        sender.release();
+        if (reporter != null) {
+            reporter.close();
+        }
+    }
+
+    private BatchingReporter reporter(final int queueSize, final int batchSize, final Duration flushInterval,
+                                      final OverflowPolicy policy, final Duration blockTimeout) {
+        reporter = new BatchingReporter(sender, queueSize, batchSize, flushInterval, policy, blockTimeout,
+                new ReporterMetrics());
+        return reporter;
+    }
+
+    private static List<JaegerSpan> spans(final int count) {
+        final InMemoryReporter inMemory = new InMemoryReporter();
+        final JaegerTracer tracer = new JaegerTracer.Builder("batching-test")
+                .withReporter(inMemory)
+                .withSampler(new ConstSampler(true))
+                .build();
+        for (int i = 0; i < count; i++) {
+            tracer.buildSpan("Span " + i).start().finish();
+        }
+        return inMemory.getSpans();
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Reports a span and waits until the flush thread is held by the sender with it, so the queue is empty.
+     */
+    private void holdFlushThread(final BatchingReporter reporter, final JaegerSpan span) throws InterruptedException {
+        sender.hold();
+        reporter.report(span);
+        await(() -> sender.held);
+    }
+
+    private List<String> sentNames() {
+        final List<String> names = new ArrayList<>();
+        for (JaegerSpan span : sender.sent) {
+            names.add(span.getOperationName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testFlushesWhenTheBatchIsFull() throws InterruptedException {
+        final BatchingReporter reporter = reporter(64, 10, NEVER, OverflowPolicy.DROP_NEWEST, Duration.ZERO);
+        for (JaegerSpan span : spans(10)) {
+            reporter.report(span);
+        }
+
+        await(() -> sender.sent.size() == 10);
+        final ReporterMetrics metrics = reporter.getMetrics();
+        assertEquals(10, metrics.getEnqueuedCount());
+        assertEquals(10, metrics.getFlushedCount());
+        assertEquals(0, metrics.getDroppedCount());
+        assertEquals(1, metrics.getFlushCount());
+    }
+
+    @Test
+    public void testFlushesWhenTheIntervalElapses() throws InterruptedException {
+        final BatchingReporter reporter = reporter(64, 100, Duration.ofMillis(20), OverflowPolicy.DROP_NEWEST,
+                Duration.ZERO);
+        for (JaegerSpan span : spans(3)) {
+            reporter.report(span);
+        }
+
+        await(() -> sender.sent.size() == 3);
+        assertTrue(reporter.getMetrics().getFlushCount() >= 1);
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        final BatchingReporter reporter = reporter(8, 1, Duration.ofMillis(1), OverflowPolicy.DROP_NEWEST,
+                Duration.ZERO);
+        final List<JaegerSpan> spans = spans(21);
+        holdFlushThread(reporter, spans.get(0));
+        for (JaegerSpan span : spans.subList(1, 21)) {
+            reporter.report(span);
+        }
+        sender.release();
+
+        await(() -> sender.sent.size() == 9);
+        assertEquals(Collections.singletonList("Span 8"), sentNames().subList(8, 9));
+        assertEquals(9, reporter.getMetrics().getEnqueuedCount());
+        assertEquals(12, reporter.getMetrics().getDroppedCount());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        final BatchingReporter reporter = reporter(8, 1, Duration.ofMillis(1), OverflowPolicy.DROP_OLDEST,
+                Duration.ZERO);
+        final List<JaegerSpan> spans = spans(21);
+        holdFlushThread(reporter, spans.get(0));
+        for (JaegerSpan span : spans.subList(1, 21)) {
+            reporter.report(span);
+        }
+        sender.release();
+
+        await(() -> sender.sent.size() == 9);
+        final List<String> names = sentNames();
+        assertEquals("Span 0", names.get(0));
+        assertEquals("Span 13", names.get(1));
+        assertEquals("Span 20", names.get(8));
+        assertEquals(21, reporter.getMetrics().getEnqueuedCount());
+        assertEquals(12, reporter.getMetrics().getDroppedCount());
+    }
+
+    @Test
+    public void testBlockWaitsForRoomUntilTheTimeout() throws Exception {
+        final BatchingReporter reporter = reporter(8, 1, Duration.ofMillis(1), OverflowPolicy.BLOCK,
+                Duration.ofMillis(50));
+        final List<JaegerSpan> spans = spans(11);
+        holdFlushThread(reporter, spans.get(0));
+        for (JaegerSpan span : spans.subList(1, 9)) {
+            reporter.report(span);
+        }
+
+        final long start = System.nanoTime();
+        reporter.report(spans.get(9));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, reporter.getMetrics().getDroppedCount());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> release = executor.submit(() -> {
+                Thread.sleep(20);
+                sender.release();
+                return null;
+            });
+            reporter.report(spans.get(10));
+            release.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        await(() -> sender.sent.size() == 10);
+        assertEquals("Span 10", sentNames().get(9));
+        assertEquals(1, reporter.getMetrics().getDroppedCount());
+    }
+
+    @Test
+    public void testSampleDownKeepsTheQueueBounded() throws InterruptedException {
+        final BatchingReporter reporter = reporter(64, 1, Duration.ofMillis(1), OverflowPolicy.SAMPLE_DOWN,
+                Duration.ZERO);
+        final List<JaegerSpan> spans = spans(401);
+        holdFlushThread(reporter, spans.get(0));
+        for (JaegerSpan span : spans.subList(1, 401)) {
+            reporter.report(span);
+        }
+
+        final ReporterMetrics metrics = reporter.getMetrics();
+        assertEquals(401, metrics.getEnqueuedCount() + metrics.getDroppedCount());
+        assertTrue(metrics.getEnqueuedCount() > 32);
+        assertTrue(metrics.getEnqueuedCount() <= 65);
+        sender.release();
+        await(() -> sender.sent.size() == metrics.getEnqueuedCount());
+    }
+
+    @Test
+    public void testCloseFlushesTheQueuedSpans() {
+        final BatchingReporter reporter = reporter(64, 100, NEVER, OverflowPolicy.DROP_NEWEST, Duration.ZERO);
+        for (JaegerSpan span : spans(5)) {
+            reporter.report(span);
+        }
+        reporter.close();
+
+        assertEquals(5, sender.sent.size());
+        assertTrue(sender.closed);
+        assertEquals(5, reporter.getMetrics().getFlushedCount());
+    }
+
+    @Test
+    public void testConcurrentReportsAreNeitherLostNorDuplicated() throws Exception {
+        final int threads = 8;
+        final int perThread = 2000;
+        final BatchingReporter reporter = reporter(256, 64, Duration.ofMillis(1), OverflowPolicy.BLOCK,
+                Duration.ofSeconds(30));
+        final List<JaegerSpan> spans = spans(threads * perThread);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final List<JaegerSpan> slice = spans.subList(t * perThread, (t + 1) * perThread);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (JaegerSpan span : slice) {
+                        reporter.report(span);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        await(() -> sender.sent.size() == threads * perThread);
+        final Set<JaegerSpan> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(sender.sent);
+        assertEquals(threads * perThread, distinct.size());
+        assertEquals(0, reporter.getMetrics().getDroppedCount());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpanContext;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class BinarySpanContextTest {
+
+    private static final JaegerSpanContext CONTEXT = new JaegerSpanContext(0x0102030405060708L, -2L, 42L, 7L,
+            (byte) 1);
+
+    @Test
+    public void testLayoutIsFixedAndBigEndian() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(BinarySpanContext.FIXED_LENGTH, BinarySpanContext.write(buffer, CONTEXT, null));
+        assertEquals(BinarySpanContext.FIXED_LENGTH, buffer.position());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+
+        assertEquals(BinarySpanContext.VERSION, buffer.get(0));
+        assertEquals(0x01, buffer.get(1));
+        assertEquals(0x08, buffer.get(8));
+        assertEquals(1, buffer.get(33));
+        assertEquals(0, buffer.get(34));
+        assertEquals(0, buffer.get(35));
+    }
+
+    @Test
+    public void testContextsSurviveTheRoundTrip() {
+        final String eventId = "évènement-😀-id";
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(128).order(ByteOrder.LITTLE_ENDIAN);
+        final int length = BinarySpanContext.write(buffer, CONTEXT, eventId);
+        assertEquals(BinarySpanContext.FIXED_LENGTH + eventId.getBytes(StandardCharsets.UTF_8).length, length);
+
+        buffer.flip();
+        final JaegerSpanContext read = BinarySpanContext.read(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(CONTEXT.getTraceIdHigh(), read.getTraceIdHigh());
+        assertEquals(CONTEXT.getTraceIdLow(), read.getTraceIdLow());
+        assertEquals(CONTEXT.getSpanId(), read.getSpanId());
+        assertEquals(CONTEXT.getParentId(), read.getParentId());
+        assertEquals(CONTEXT.getFlags(), read.getFlags());
+        assertEquals(eventId, read.getBaggageItem(AbstractOpenTracingEngineWithId.EVENT_ID));
+    }
+
+    @Test
+    public void testContextsAreReadFromTheBufferPosition() {
+        final ByteBuffer buffer = ByteBuffer.allocate(128);
+        buffer.put((byte) 99);
+        BinarySpanContext.write(buffer, CONTEXT, "id");
+        buffer.put((byte) 98);
+        buffer.flip();
+        buffer.get();
+
+        final JaegerSpanContext read = BinarySpanContext.read(buffer.slice());
+        assertEquals("id", read.getBaggageItem(AbstractOpenTracingEngineWithId.EVENT_ID));
+        buffer.position(1 + BinarySpanContext.FIXED_LENGTH + 2);
+        assertEquals(98, buffer.get());
+    }
+
+    @Test
+    public void testOverflowWritesNothing() {
+        final ByteBuffer buffer = ByteBuffer.allocate(BinarySpanContext.FIXED_LENGTH + 1);
+        try {
+            BinarySpanContext.write(buffer, CONTEXT, "too long");
+            fail();
+        } catch (final BufferOverflowException e) {
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    public void testMalformedBuffersAreRejected() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        BinarySpanContext.write(buffer, CONTEXT, "event");
+        buffer.flip();
+
+        final ByteBuffer truncated = buffer.duplicate();
+        truncated.limit(BinarySpanContext.FIXED_LENGTH + 2);
+        try {
+            BinarySpanContext.read(truncated);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertEquals(0, truncated.position());
+        }
+
+        buffer.put(0, (byte) 2);
+        try {
+            BinarySpanContext.read(buffer);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    public void testSharedLayoutSkipsExactlyTheContext() {
+        final ByteBuffer buffer = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+        final int length = BinarySpanContext.write(buffer, CONTEXT, "évènement");
+        buffer.putInt(42);
+        buffer.flip();
+
+        assertEquals(length, BinaryContextLayout.encodedLength(buffer));
+        assertEquals(length, BinaryContextLayout.skip(buffer));
+        assertEquals(42, buffer.getInt());
+    }
+}
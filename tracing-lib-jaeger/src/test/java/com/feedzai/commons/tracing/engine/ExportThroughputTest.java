@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.OverflowPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a {@link JaegerTracingEngine} at a steady rate against an {@link AgentStandIn} and measures what reaches the
+ * agent. The load is set with system properties, so that the export capacity can be measured with, for example:
+ *
+ * <pre>
+ * mvn test -Dtest=ExportThroughputTest -Djaeger.load.spansPerSecond=50000 -Djaeger.load.durationMillis=10000 \
+ *     -Djaeger.load.requireDelivery=false
+ * </pre>
+ *
+ * The defaults are small enough to run with the rest of the tests, where every span is expected to be delivered.
+ * Above the capacity of a reporter spans are dropped, which only fails the tests if delivery is required. The
+ * measurements of each run are logged at debug level.
+ */
+public class ExportThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportThroughputTest.class.getName());
+
+    private static final int SPANS_PER_SECOND = Integer.getInteger("jaeger.load.spansPerSecond", 2000);
+
+    private static final long DURATION_MILLIS = Long.getLong("jaeger.load.durationMillis", 1000);
+
+    private static final int THREADS = Integer.getInteger("jaeger.load.threads", 2);
+
+    private static final int SPANS_PER_TRACE = Integer.getInteger("jaeger.load.spansPerTrace", 5);
+
+    private static final boolean REQUIRE_DELIVERY =
+            Boolean.parseBoolean(System.getProperty("jaeger.load.requireDelivery", "true"));
+
+    /**
+     * How long the agent may go without receiving a span before the spans still missing are counted as dropped.
+     */
+    private static final Duration IDLE = Duration.ofSeconds(5);
+
+    private AgentStandIn agent;
+
+    /**
+     * What one run delivered to the agent.
+     */
+    private static final class LoadReport {
+
+        final long sent;
+        final long delivered;
+        final int batches;
+        final double meanBatchSize;
+        final int maxBatchSize;
+        final long p50DelayMicros;
+        final long p99DelayMicros;
+        final long maxDelayMicros;
+        final double spansPerSecond;
+
+        LoadReport(final long sent, final List<Integer> batchSizes, final List<Long> delaysMicros,
+                   final long elapsedNanos) {
+            this.sent = sent;
+            this.delivered = delaysMicros.size();
+            this.batches = batchSizes.size();
+            this.meanBatchSize = batches == 0 ? 0 : (double) delivered / batches;
+            this.maxBatchSize = batchSizes.isEmpty() ? 0 : Collections.max(batchSizes);
+            Collections.sort(delaysMicros);
+            this.p50DelayMicros = percentile(delaysMicros, 0.5);
+            this.p99DelayMicros = percentile(delaysMicros, 0.99);
+            this.maxDelayMicros = percentile(delaysMicros, 1);
+            this.spansPerSecond = sent * 1e9 / elapsedNanos;
+        }
+
+        private static long percentile(final List<Long> sorted, final double percentile) {
+            if (sorted.isEmpty()) {
+                return 0;
+            }
+            return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+        }
+
+        long dropped() {
+            return sent - delivered;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent=%d (%.0f/s) delivered=%d dropped=%d batches=%d meanBatch=%.1f maxBatch=%d "
+                            + "delay p50=%.1fms p99=%.1fms max=%.1fms",
+                    sent, spansPerSecond, delivered, dropped(), batches, meanBatchSize, maxBatchSize,
+                    p50DelayMicros / 1000.0, p99DelayMicros / 1000.0, maxDelayMicros / 1000.0);
+        }
+    }
+
+    @Before
+    public void startAgent() throws Exception {
+        agent = new AgentStandIn();
+    }
+
+    @After
+    public void stopAgent() throws InterruptedException {
+        agent.close();
+    }
+
+    private JaegerTracingEngine.Builder engine() {
+        return new JaegerTracingEngine.Builder()
+                .withProcessName("export-load")
+                .withIp("127.0.0.1")
+                .withAgentPort(agent.port());
+    }
+
+    /**
+     * Starts traces from {@link #THREADS} threads, paced so that all of them together finish {@link
+     * #SPANS_PER_SECOND} spans per second, then closes the engine to flush its reporter and waits for the agent.
+     */
+    private LoadReport drive(final String name, final JaegerTracingEngine engine) throws Exception {
+        final long traceIntervalNanos = (long) (1e9 * SPANS_PER_TRACE * THREADS / SPANS_PER_SECOND);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Long>> futures = new ArrayList<>();
+        final long startNanos;
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    final long begin = System.nanoTime();
+                    final long end = begin + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+                    long next = begin;
+                    long sent = 0;
+                    while (next < end) {
+                        engine.newTrace(() -> {
+                            for (int i = 1; i < SPANS_PER_TRACE; i++) {
+                                engine.addToTrace(TestUtils::doStuffVoid, "Do More Stuff");
+                            }
+                        }, "Do Stuff");
+                        sent += SPANS_PER_TRACE;
+                        next += traceIntervalNanos;
+                        final long wait = next - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    return sent;
+                }));
+            }
+            startNanos = System.nanoTime();
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        long sent = 0;
+        for (Future<Long> future : futures) {
+            sent += future.get(DURATION_MILLIS + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        engine.close();
+        agent.awaitSpans((int) sent, IDLE);
+
+        final LoadReport report = new LoadReport(sent, agent.batchSizes(), agent.delaysMicros(), elapsedNanos);
+        logger.debug("Export load of the {}: {}", name, report);
+        assertEquals(0, agent.undecodableCount());
+        assertEquals("export-load", agent.serviceName());
+        return report;
+    }
+
+    @Test
+    public void testRemoteReporterDeliversEverySpan() throws Exception {
+        final LoadReport report = drive("remote reporter", engine().build());
+
+        assertTrue(report.sent > 0);
+        assertTrue(report.maxBatchSize > 1);
+        if (REQUIRE_DELIVERY) {
+            assertEquals(report.sent, report.delivered);
+        }
+    }
+
+    @Test
+    public void testBatchingReporterDeliversEverySpan() throws Exception {
+        final JaegerTracingEngine engine = engine()
+                .withBatchingReporter(8192, 100, Duration.ofMillis(100))
+                .withOverflowPolicy(OverflowPolicy.BLOCK, Duration.ofMillis(100))
+                .build();
+        final ReporterMetrics metrics = engine.getReporterMetrics();
+        final LoadReport report = drive("batching reporter", engine);
+
+        assertTrue(report.sent > 0);
+        assertTrue(report.maxBatchSize <= 100);
+        assertEquals(report.sent, metrics.getEnqueuedCount() + metrics.getDroppedCount());
+        if (REQUIRE_DELIVERY) {
+            assertEquals(report.sent, report.delivered);
+            assertEquals(0, metrics.getDroppedCount());
+            assertEquals(report.delivered, metrics.getFlushedCount());
+        }
+    }
+}
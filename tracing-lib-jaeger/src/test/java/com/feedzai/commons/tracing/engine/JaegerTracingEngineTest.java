@@ -17,17 +17,65 @@
 package com.feedzai.commons.tracing.engine;
 
 import com.feedzai.commons.tracing.api.TraceContext;
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.JaegerConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.OperationRule;
+import com.feedzai.commons.tracing.engine.configuration.OverflowPolicy;
+import com.feedzai.commons.tracing.engine.configuration.PreStartPolicy;
+import com.feedzai.commons.tracing.engine.configuration.SpanAggregationConfiguration;
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerSpanContext;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.jaegertracing.internal.samplers.SamplingStatus;
+import io.jaegertracing.spi.Reporter;
 import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class JaegerTracingEngineTest {
 
     private static final String UBER_TRACE_ID = "uber-trace-id";
+
+    private static final Random RANDOM = new Random(42);
+
+    /**
+     * Reporter that keeps the spans it receives.
+     */
+    private static final class RecordingReporter implements Reporter {
+
+        private final List<JaegerSpan> spans = new CopyOnWriteArrayList<>();
+
+        private volatile boolean closed;
+
+        @Override
+        public void report(final JaegerSpan span) {
+            spans.add(span);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
     public static final String EVENT_ID = "498c9cf0-295e-44b1-bed8-73e1e0c3e389";
 
 
@@ -64,6 +112,56 @@ public class JaegerTracingEngineTest {
 
     }
 
+    @Test
+    public void testDeserializeContextUsesTheEngineTracer() {
+        final JaegerSpanContext extracted = new JaegerSpanContext(0, 1, 2, 0, (byte) 1);
+        final JaegerTracer tracer = new JaegerTracer.Builder("test").withSampler(new ConstSampler(true))
+                .registerExtractor(Format.Builtin.TEXT_MAP, carrier -> extracted)
+                .build();
+        final JaegerTracingEngine engine = new JaegerTracingEngine(tracer,
+                new CacheConfiguration(Duration.ofDays(1), 10000));
+
+        assertSame(extracted, engine.deserializeContext(Collections.singletonMap(UBER_TRACE_ID, "1:2:0:1")).get());
+    }
+
+    @Test
+    public void testBinaryContextRoundTrip() {
+        JaegerTracingEngine engine = new JaegerTracingEngine.Builder().build();
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        AtomicReference<TraceContext> originalCtx = new AtomicReference<>();
+        engine.newTrace(() -> {
+            originalCtx.set(engine.currentContext());
+            assertEquals(BinarySpanContext.FIXED_LENGTH, engine.serializeContext(buffer));
+        }, "Do Stuff");
+        buffer.flip();
+
+        TraceContext deserializedCtx = engine.deserializeContext(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(originalCtx.get().get().toString(), deserializedCtx.get().toString());
+    }
+
+    @Test
+    public void testBinaryContextForIdJoinsTheTrace() {
+        JaegerTracingEngine sender = new JaegerTracingEngine.Builder().build();
+        sender.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        JaegerSpanContext root = (JaegerSpanContext) sender.currentContextforId(EVENT_ID).get();
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        assertEquals(BinarySpanContext.FIXED_LENGTH + EVENT_ID.length(), sender.serializeContextForId(EVENT_ID, buffer));
+        assertEquals(0, sender.serializeContextForId("unknown event", buffer));
+        buffer.flip();
+
+        RecordingReporter reporter = new RecordingReporter();
+        JaegerTracingEngine receiver = new JaegerTracingEngine.Builder().withReporter(reporter).build();
+        TraceContext received = receiver.deserializeContext(buffer);
+        assertTrue(receiver.traceHasStarted(EVENT_ID));
+        receiver.newProcess(TestUtils::doStuffVoid, "Do More Stuff", received);
+        assertEquals(1, reporter.spans.size());
+        JaegerSpanContext child = reporter.spans.get(0).context();
+        assertEquals(root.getTraceIdLow(), child.getTraceIdLow());
+        assertEquals(root.getSpanId(), child.getParentId());
+        assertNull(receiver.deserializeContext(ByteBuffer.allocate(0)).get());
+    }
+
     @Test
     public void testGetTraceId() {
         JaegerTracingEngine engine = new JaegerTracingEngine.Builder().build();
@@ -73,4 +171,418 @@ public class JaegerTracingEngineTest {
         assertTrue(ctx.context().toString().contains(traceId));
     }
 
+    @Test
+    public void testGetTraceIdMatchesPropagatedTraceId() {
+        JaegerTracingEngine engine = new JaegerTracingEngine.Builder().build();
+        engine.newTrace(() -> {
+            String propagated = engine.serializeContext().get(UBER_TRACE_ID).split(":")[0];
+            assertEquals(propagated, engine.getTraceIdFromSpan(engine.currentSpan()));
+        }, "Do Stuff");
+    }
+
+    @Test
+    public void testSampledOutTraceIsPropagated() {
+        JaegerTracingEngine engine = new JaegerTracingEngine.Builder().withSampleRate(0).build();
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        String root = engine.serializeContextForId(EVENT_ID).get(UBER_TRACE_ID);
+        assertNotNull(root);
+        assertTrue(root.endsWith(":0"));
+
+        engine.addToTrace(() -> {
+            String propagated = engine.serializeContext().get(UBER_TRACE_ID);
+            assertEquals(root.split(":")[0], propagated.split(":")[0]);
+            assertTrue(propagated.endsWith(":0"));
+        }, "Do More Stuff", EVENT_ID);
+        assertEquals(0, engine.spanIdMappings.size());
+    }
+
+    @Test
+    public void testReconfigureKeepsTracer() {
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder().withSampleRate(0).build();
+        final Tracer tracer = engine.getTracer();
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        assertTrue(engine.serializeContextForId(EVENT_ID).get(UBER_TRACE_ID).endsWith(":0"));
+
+        final JaegerConfiguration configuration = new JaegerConfiguration();
+        configuration.sampleRate = 1;
+        configuration.cacheMaxSize = 100;
+        configuration.cacheDurationInMinutes = 5;
+        engine.reconfigure(configuration);
+
+        assertSame(tracer, engine.getTracer());
+        assertTrue(engine.traceHasStarted(EVENT_ID));
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", "another event");
+        assertTrue(engine.serializeContextForId("another event").get(UBER_TRACE_ID).endsWith(":1"));
+    }
+
+    @Test
+    public void testReconfigureToAdaptiveSampling() {
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder().withSampleRate(0).build();
+        engine.newTrace(TestUtils::doStuffVoid, "Rare Operation", EVENT_ID);
+        assertTrue(engine.serializeContextForId(EVENT_ID).get(UBER_TRACE_ID).endsWith(":0"));
+
+        final JaegerConfiguration configuration = new JaegerConfiguration();
+        configuration.sampleRate = 0;
+        configuration.adaptiveSampling = true;
+        configuration.minTracesPerSecond = 10;
+        configuration.cacheMaxSize = 100;
+        configuration.cacheDurationInMinutes = 5;
+        engine.reconfigure(configuration);
+
+        // The operation is never sampled by probability, but gets its guaranteed rate.
+        engine.newTrace(TestUtils::doStuffVoid, "Rare Operation", "another event");
+        assertTrue(engine.serializeContextForId("another event").get(UBER_TRACE_ID).endsWith(":1"));
+    }
+
+    @Test
+    public void testRuleRateDecidesTheSamplingOfRoots() {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder().withSampleRate(0).withReporter(reporter)
+                .build();
+        engine.setOperationRules(OperationRules.compile(Arrays.asList(rule("model-reload", 1), rule("hot", 0))));
+
+        for (int i = 0; i < 100; i++) {
+            engine.newTrace(TestUtils::doStuffVoid, "model-reload");
+            engine.newTrace(TestUtils::doStuffVoid, "Do Stuff");
+        }
+        assertEquals(100, reporter.spans.size());
+        assertTrue(reporter.spans.stream().allMatch(span -> span.getOperationName().equals("model-reload")));
+
+        final JaegerConfiguration configuration = new JaegerConfiguration();
+        configuration.sampleRate = 1;
+        configuration.cacheMaxSize = 100;
+        configuration.cacheDurationInMinutes = 5;
+        engine.reconfigure(configuration);
+        reporter.spans.clear();
+        engine.newTrace(TestUtils::doStuffVoid, "hot");
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff");
+        assertEquals(1, reporter.spans.size());
+        assertEquals("Do Stuff", reporter.spans.get(0).getOperationName());
+    }
+
+    @Test
+    public void testRuleStatusIsBuiltOnce() {
+        final ReconfigurableSampler sampler = new ReconfigurableSampler(new ConstSampler(false));
+        sampler.setRules(OperationRules.compile(Collections.singletonList(rule("hot", 1))));
+
+        final SamplingStatus first = sampler.sample("hot", 1);
+        assertTrue(first.isSampled());
+        assertEquals(1.0, first.getTags().get("sampler.param"));
+        assertSame(first, sampler.sample("hot", 2));
+        assertFalse(sampler.sample("cold", 1).isSampled());
+    }
+
+    @Test
+    public void testTailSamplingIgnoresRuleRates() {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withTailSampling(Duration.ofHours(1), Collections.singleton(EVENT_ID), 100)
+                .withReporter(reporter)
+                .build();
+        engine.setOperationRules(OperationRules.compile(Collections.singletonList(rule("hot", 0))));
+
+        engine.newTrace(TestUtils::doStuffVoid, "hot", EVENT_ID);
+        assertEquals(1, reporter.spans.size());
+        engine.close();
+    }
+
+    @Test
+    public void testRuleRateSamplesByTraceId() {
+        int sampled = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (ReconfigurableSampler.isSampled(RANDOM.nextLong(), 0.25)) {
+                sampled++;
+            }
+        }
+        assertEquals(25000, sampled, 2500);
+        assertTrue(ReconfigurableSampler.isSampled(Long.MIN_VALUE, 1));
+        assertFalse(ReconfigurableSampler.isSampled(Long.MAX_VALUE, 0));
+    }
+
+    private static OperationRule rule(final String description, final double sampleRate) {
+        final OperationRule rule = new OperationRule();
+        rule.description = description;
+        rule.sampleRate = sampleRate;
+        return rule;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReconfigureRequiresBuiltEngine() {
+        final JaegerTracer tracer = new JaegerTracer.Builder("test").withSampler(new ConstSampler(true)).build();
+        new JaegerTracingEngine(tracer, new CacheConfiguration(Duration.ofDays(1), 10000))
+                .reconfigure(new JaegerConfiguration());
+    }
+
+    @Test
+    public void testAsyncStartBuffersSpansUntilTheTracerIsReady() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withAsyncStart(PreStartPolicy.BUFFER, 1)
+                .withStartExecutor(tasks::add)
+                .withReporter(reporter)
+                .build();
+        assertFalse(engine.isStarted());
+
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        engine.newTrace(TestUtils::doStuffVoid, "Do Other Stuff");
+        assertTrue(engine.serializeContextForId(EVENT_ID).get(UBER_TRACE_ID).endsWith(":1"));
+        assertTrue(reporter.spans.isEmpty());
+
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertTrue(engine.isStarted());
+        assertTrue(engine.whenStarted().isDone());
+        assertEquals(1, reporter.spans.size());
+        assertEquals("Do Stuff", reporter.spans.get(0).getOperationName());
+
+        engine.addToTrace(TestUtils::doStuffVoid, "Do More Stuff", EVENT_ID);
+        assertEquals(2, reporter.spans.size());
+        assertEquals("Do More Stuff", reporter.spans.get(1).getOperationName());
+        assertEquals(reporter.spans.get(0).context().getTraceIdLow(), reporter.spans.get(1).context().getTraceIdLow());
+    }
+
+    @Test
+    public void testAsyncStartWithNoopPolicy() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withAsyncStart(PreStartPolicy.NOOP, 0)
+                .withStartExecutor(tasks::add)
+                .withReporter(reporter)
+                .build();
+
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        assertTrue(engine.serializeContextForId(EVENT_ID).get(UBER_TRACE_ID).endsWith(":0"));
+
+        tasks.get(0).run();
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", "another event");
+        assertTrue(engine.serializeContextForId("another event").get(UBER_TRACE_ID).endsWith(":1"));
+        assertEquals(1, reporter.spans.size());
+    }
+
+    @Test
+    public void testCloseBeforeAsyncStartClosesTheTracerOnceReady() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withAsyncStart(PreStartPolicy.BUFFER, 10)
+                .withStartExecutor(tasks::add)
+                .withReporter(reporter)
+                .build();
+
+        engine.close();
+        tasks.get(0).run();
+        assertTrue(reporter.closed);
+    }
+
+    @Test
+    public void testBatchingReporterMetrics() throws InterruptedException {
+        assertNull(new JaegerTracingEngine.Builder().build().getReporterMetrics());
+
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withBatchingReporter(64, 10, Duration.ofMillis(10))
+                .withOverflowPolicy(OverflowPolicy.DROP_OLDEST, Duration.ZERO)
+                .build();
+        final ReporterMetrics metrics = engine.getReporterMetrics();
+        assertNotNull(metrics);
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff");
+        for (int i = 0; i < 1000 && metrics.getFlushCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, metrics.getEnqueuedCount());
+        assertEquals(1, metrics.getFlushCount());
+        engine.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBatchingReporterCannotBeCombinedWithTheSpillLog() {
+        new JaegerTracingEngine.Builder()
+                .withBatchingReporter(64, 10, Duration.ofMillis(10))
+                .withSpillLog(Paths.get("spill"), 1024, 2)
+                .build();
+    }
+
+    @Test
+    public void testTailSamplingKeepsOnlyTheInterestingTraces() {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withSampleRate(0)
+                .withTailSampling(Duration.ofHours(1), Collections.singleton(EVENT_ID), 100)
+                .withReporter(reporter)
+                .build();
+        final TailSamplingMetrics metrics = engine.getTailSamplingMetrics();
+
+        engine.newTrace(() -> engine.addToTrace(TestUtils::doStuffVoid, "Do More Stuff"), "Do Stuff", "ignored");
+        assertTrue(reporter.spans.isEmpty());
+        assertEquals(1, metrics.getDroppedCount());
+        assertEquals(0, metrics.getBufferedSpanCount());
+
+        engine.newTrace(() -> engine.addToTrace(TestUtils::doStuffVoid, "Do More Stuff"), "Do Stuff", EVENT_ID);
+        assertEquals(2, reporter.spans.size());
+        assertEquals(1, metrics.getDecisionCount(TailSamplingPolicy.Decision.WATCHED_ID));
+
+        try {
+            engine.newTrace(() -> {
+                throw new IllegalStateException("failed");
+            }, "Do Stuff", "failed");
+            fail("The exception should be thrown to the caller");
+        } catch (final IllegalStateException e) {
+            assertEquals(3, reporter.spans.size());
+            assertEquals(1, metrics.getDecisionCount(TailSamplingPolicy.Decision.ERROR));
+        }
+
+        engine.close();
+        assertTrue(reporter.closed);
+    }
+
+    @Test
+    public void testReconfigureTailSamplingPolicy() {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerConfiguration configuration = new JaegerConfiguration();
+        configuration.processName = "test";
+        configuration.ip = "localhost";
+        configuration.cacheMaxSize = 100;
+        configuration.cacheDurationInMinutes = 5;
+        configuration.tailSampling = true;
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .fromConfig(configuration)
+                .withReporter(reporter)
+                .build();
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff");
+        assertTrue(reporter.spans.isEmpty());
+
+        configuration.sampleRate = 1;
+        engine.reconfigure(configuration);
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff");
+        assertEquals(1, reporter.spans.size());
+        assertEquals(1, engine.getTailSamplingMetrics().getDecisionCount(TailSamplingPolicy.Decision.BASELINE));
+
+        configuration.tailSampling = false;
+        try {
+            engine.reconfigure(configuration);
+            fail("Tail sampling cannot be turned off in place");
+        } catch (final IllegalArgumentException e) {
+            assertNotNull(engine.getTailSamplingMetrics());
+        }
+    }
+
+    @Test
+    public void testRepeatedChildrenOfAnEventAreAggregated() {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withSampleRate(1)
+                .withReporter(reporter)
+                .build();
+        final SpanAggregationConfiguration aggregation = new SpanAggregationConfiguration();
+        aggregation.enabled = true;
+        aggregation.threshold = 5;
+        engine.setSpanAggregation(SpanAggregation.compile(aggregation));
+
+        engine.newTrace(() -> {
+            for (int i = 0; i < 1000; i++) {
+                engine.addToTrace(TestUtils::doStuffVoid, "feature:lookup", EVENT_ID);
+            }
+        }, "Do Stuff", EVENT_ID);
+
+        assertEquals(7, reporter.spans.size());
+        final JaegerSpan root = reporter.spans.get(5);
+        final JaegerSpan aggregate = reporter.spans.get(6);
+        assertEquals("Do Stuff", root.getOperationName());
+        assertEquals(root.context().getSpanId(), aggregate.context().getParentId());
+        assertEquals(995L, aggregate.getTags().get(SpanAggregation.COUNT_TAG));
+        assertTrue(aggregate.getStart() >= root.getStart());
+        assertTrue(aggregate.getStart() + aggregate.getDuration() <= root.getStart() + root.getDuration());
+        engine.close();
+    }
+
+    @Test
+    public void testAggregatedChildrenAreKeptByTailSampling() {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder()
+                .withSampleRate(0)
+                .withTailSampling(Duration.ofHours(1), Collections.singleton(EVENT_ID), 100)
+                .withReporter(reporter)
+                .build();
+        final SpanAggregationConfiguration aggregation = new SpanAggregationConfiguration();
+        aggregation.enabled = true;
+        aggregation.threshold = 0;
+        engine.setSpanAggregation(SpanAggregation.compile(aggregation));
+
+        engine.newTrace(() -> {
+            for (int i = 0; i < 100; i++) {
+                engine.addToTrace(TestUtils::doStuffVoid, "feature:lookup");
+            }
+        }, "Do Stuff", EVENT_ID);
+
+        assertEquals(2, reporter.spans.size());
+        assertEquals(0, engine.getTailSamplingMetrics().getBufferedSpanCount());
+        engine.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTailSamplingCannotBeCombinedWithTheAsyncStart() {
+        new JaegerTracingEngine.Builder()
+                .withTailSampling(Duration.ofSeconds(1), Collections.emptySet(), 100)
+                .withAsyncStart(PreStartPolicy.BUFFER, 10)
+                .build();
+    }
+
+    @Test
+    public void testCloseClosesReporter() {
+        final AtomicInteger reported = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Reporter reporter = new Reporter() {
+            @Override
+            public void report(final JaegerSpan span) {
+                reported.incrementAndGet();
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        final JaegerTracer tracer = new JaegerTracer.Builder("test").withReporter(reporter)
+                .withSampler(new ConstSampler(true)).build();
+        final JaegerTracingEngine engine = new JaegerTracingEngine(tracer,
+                new CacheConfiguration(Duration.ofDays(1), 10000));
+
+        engine.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        assertEquals(1, reported.get());
+        assertFalse(closed.get());
+
+        engine.close();
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testCoarseClockMeasuresDurationsFinerThanTheTick() throws InterruptedException {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder().withReporter(reporter)
+                .withCoarseClock(Duration.ofHours(1)).build();
+        final JaegerSpan span = (JaegerSpan) engine.getTracer().buildSpan("Do Stuff").start();
+        Thread.sleep(20);
+        span.finish();
+
+        assertTrue(span.getDuration() >= TimeUnit.MILLISECONDS.toMicros(20));
+        engine.close();
+    }
+
+    @Test
+    public void testCloseStopsTheCoarseClock() throws InterruptedException {
+        final RecordingReporter reporter = new RecordingReporter();
+        final JaegerTracingEngine engine = new JaegerTracingEngine.Builder().withReporter(reporter)
+                .withCoarseClock(Duration.ofMillis(1)).build();
+        final Tracer tracer = engine.getTracer();
+        final long beforeClose = ((JaegerSpan) tracer.buildSpan("Do Stuff").start()).getStart();
+        Thread.sleep(20);
+        assertTrue(((JaegerSpan) tracer.buildSpan("Do Stuff").start()).getStart() > beforeClose);
+
+        engine.close();
+        Thread.sleep(10);
+        final long stopped = ((JaegerSpan) tracer.buildSpan("Do Stuff").start()).getStart();
+        Thread.sleep(20);
+        assertEquals(stopped, ((JaegerSpan) tracer.buildSpan("Do Stuff").start()).getStart());
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MicroClockTest {
+
+    private static final Duration LONG_RESYNC = Duration.ofHours(1);
+
+    private static final long TOLERANCE_MICROS = TimeUnit.MILLISECONDS.toMicros(20);
+
+    @Test
+    public void testTimeFollowsTheWallClock() {
+        final MicroClock clock = new MicroClock(LONG_RESYNC);
+
+        assertTrue(clock.isMicrosAccurate());
+        final long wall = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        assertEquals(wall, clock.currentTimeMicros(), TOLERANCE_MICROS);
+    }
+
+    @Test
+    public void testLargeErrorsAheadAreStepped() {
+        final MicroClock clock = new MicroClock(LONG_RESYNC);
+        final long before = clock.currentTimeMicros();
+        final long step = 10 * MicroClock.STEP_THRESHOLD_NANOS;
+
+        clock.resync(clock.offsetNanos() + step);
+
+        assertTrue(clock.currentTimeMicros() - before >= step / 1000);
+    }
+
+    @Test
+    public void testCorrectionsBackwardsAreSlewedWithoutGoingBackwards() {
+        final MicroClock clock = new MicroClock(LONG_RESYNC);
+        final long offset = clock.offsetNanos();
+        final long error = TimeUnit.MILLISECONDS.toNanos(1);
+
+        clock.resync(offset - error);
+
+        long previous = clock.currentTimeMicros();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        while (System.nanoTime() < deadline) {
+            final long now = clock.currentTimeMicros();
+            assertTrue("The clock went backwards", now >= previous);
+            previous = now;
+        }
+        final long corrected = offset - clock.offsetNanos();
+        assertTrue("The correction was applied at once", corrected < error);
+        assertTrue("The correction was not slewed in", corrected > 0);
+    }
+
+    @Test
+    public void testCorrectionsAreFullyAppliedAfterSlewing() throws InterruptedException {
+        final MicroClock clock = new MicroClock(LONG_RESYNC);
+        final long offset = clock.offsetNanos();
+        final long error = TimeUnit.MICROSECONDS.toNanos(10);
+
+        clock.resync(offset + error);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(error * 1_000_000 / MicroClock.MAX_SLEW_PPM) + 10);
+
+        assertEquals(offset + error, clock.offsetNanos());
+    }
+
+    @Test
+    public void testCoarseClockAdvancesInTicks() throws InterruptedException {
+        final MicroClock source = new MicroClock(LONG_RESYNC);
+        try (CoarseMicroClock clock = new CoarseMicroClock(source, Duration.ofMillis(1))) {
+            assertFalse(clock.isMicrosAccurate());
+            final long first = clock.currentTimeMicros();
+            assertEquals(source.currentTimeMicros(), first, TOLERANCE_MICROS);
+
+            long previous = first;
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+            while (System.nanoTime() < deadline) {
+                final long now = clock.currentTimeMicros();
+                assertTrue("The clock went backwards", now >= previous);
+                previous = now;
+            }
+            assertTrue("The clock did not advance", previous > first);
+
+            clock.close();
+            Thread.sleep(10);
+            final long stopped = clock.currentTimeMicros();
+            Thread.sleep(10);
+            assertEquals(stopped, clock.currentTimeMicros());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.reporters.InMemoryReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.jaegertracing.spi.Reporter;
+import io.jaegertracing.thriftjava.Span;
+import io.jaegertracing.thriftjava.Tag;
+import io.opentracing.Scope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class SpanSpillLogTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AgentStandIn agent;
+
+    private Path directory;
+
+    @Before
+    public void startAgent() throws IOException {
+        agent = new AgentStandIn();
+        directory = folder.newFolder("spill").toPath();
+    }
+
+    @After
+    public void stopAgent() throws InterruptedException {
+        agent.close();
+    }
+
+    private static JaegerTracer tracer(final Reporter reporter) {
+        return new JaegerTracer.Builder("spill-test")
+                .withReporter(reporter)
+                .withSampler(new ConstSampler(true))
+                .build();
+    }
+
+    private static List<JaegerSpan> finishedSpans(final int count) {
+        final InMemoryReporter reporter = new InMemoryReporter();
+        final JaegerTracer tracer = tracer(reporter);
+        for (int i = 0; i < count; i++) {
+            tracer.buildSpan("Span " + i).withTag("index", i).start().finish();
+        }
+        return reporter.getSpans();
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static Map<String, Tag> tags(final List<Tag> tags) {
+        final Map<String, Tag> map = new HashMap<>();
+        for (Tag tag : tags) {
+            map.put(tag.getKey(), tag);
+        }
+        return map;
+    }
+
+    private int segmentFiles() {
+        final File[] files = directory.toFile().listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void testSpansAreReplayedToTheAgent() throws Exception {
+        final SpillingReporter reporter = new SpillingReporter(new SpanSpillLog(directory, SEGMENT_SIZE, 4),
+                agent.sender(), Duration.ofMillis(10));
+        final JaegerTracer tracer = tracer(reporter);
+        reporter.attach(tracer);
+
+        final io.opentracing.Span root = tracer.buildSpan("Root").start();
+        try (Scope scope = tracer.scopeManager().activate(root, false)) {
+            tracer.buildSpan("Child")
+                    .withTag("text", "value")
+                    .withTag("flag", true)
+                    .withTag("count", 42)
+                    .withTag("ratio", 0.5)
+                    .start()
+                    .log("done")
+                    .finish();
+        }
+        root.finish();
+
+        await(() -> agent.spanCount() == 2);
+        final Span child = agent.spans().get(0);
+        final Span replayedRoot = agent.spans().get(1);
+        assertEquals("spill-test", agent.serviceName());
+        assertEquals("Child", child.getOperationName());
+        assertEquals("Root", replayedRoot.getOperationName());
+        assertEquals(replayedRoot.getSpanId(), child.getParentSpanId());
+        assertEquals(replayedRoot.getTraceIdLow(), child.getTraceIdLow());
+
+        final Map<String, Tag> tags = tags(child.getTags());
+        assertEquals("value", tags.get("text").getVStr());
+        assertTrue(tags.get("flag").isVBool());
+        assertEquals(42, tags.get("count").getVLong());
+        assertEquals(0.5, tags.get("ratio").getVDouble(), 0);
+        assertEquals("done", child.getLogs().get(0).getFields().get(0).getVStr());
+        await(() -> reporter.getReplayedCount() == 2);
+
+        reporter.close();
+        assertEquals(0, reporter.getDroppedCount());
+    }
+
+    @Test
+    public void testSpansSurviveARestart() throws Exception {
+        final SpanSpillLog log = new SpanSpillLog(directory, SEGMENT_SIZE, 4);
+        for (JaegerSpan span : finishedSpans(10)) {
+            assertTrue(log.append(span));
+        }
+        log.close();
+        assertEquals(0, agent.spanCount());
+
+        final SpillingReporter reporter = new SpillingReporter(new SpanSpillLog(directory, SEGMENT_SIZE, 4),
+                agent.sender(), Duration.ofMillis(10));
+        reporter.attach(tracer(new InMemoryReporter()));
+
+        await(() -> agent.spanCount() == 10);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Span " + i, agent.spans().get(i).getOperationName());
+        }
+        // Only the active segment of the new log is left once the old one was replayed.
+        await(() -> segmentFiles() == 1);
+        reporter.close();
+    }
+
+    @Test
+    public void testDiskBudgetDropsTheOldestSpans() throws Exception {
+        final SpanSpillLog log = new SpanSpillLog(directory, 1024, 3);
+        for (JaegerSpan span : finishedSpans(100)) {
+            log.append(span);
+        }
+        assertEquals(3, log.segmentCount());
+        assertEquals(3, segmentFiles());
+        assertTrue(log.getDroppedCount() > 0);
+
+        final SpillingReporter reporter = new SpillingReporter(log, agent.sender(), Duration.ofMillis(10));
+        reporter.attach(tracer(new InMemoryReporter()));
+        await(() -> agent.spanCount() + log.getDroppedCount() == 100);
+        assertEquals("Span 99", agent.spans().get(agent.spanCount() - 1).getOperationName());
+        reporter.close();
+    }
+
+    @Test
+    public void testSpansLargerThanASegmentAreDropped() throws Exception {
+        final SpanSpillLog log = new SpanSpillLog(directory, 1024, 3);
+        final InMemoryReporter inMemory = new InMemoryReporter();
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            name.append('x');
+        }
+        tracer(inMemory).buildSpan(name.toString()).start().finish();
+
+        assertFalse(log.append(inMemory.getSpans().get(0)));
+        assertEquals(1, log.getDroppedCount());
+        assertTrue(log.append(finishedSpans(1).get(0)));
+        log.close();
+    }
+
+    @Test
+    public void testLogsSharingADirectoryOnlyAdoptReleasedSegments() throws Exception {
+        final SpanSpillLog first = new SpanSpillLog(directory, SEGMENT_SIZE, 4);
+        for (JaegerSpan span : finishedSpans(5)) {
+            first.append(span);
+        }
+        final SpanSpillLog second = new SpanSpillLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(1, second.segmentCount());
+        assertEquals(0, second.adoptOrphans());
+
+        first.close();
+        assertEquals(1, second.adoptOrphans());
+        assertEquals(2, second.segmentCount());
+
+        final SpillingReporter reporter = new SpillingReporter(second, agent.sender(), Duration.ofMillis(10));
+        reporter.attach(tracer(new InMemoryReporter()));
+        await(() -> agent.spanCount() == 5);
+        reporter.close();
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.TailEvictionPolicy;
+import io.jaegertracing.internal.JaegerSpan;
+import io.jaegertracing.internal.JaegerSpanContext;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.reporters.InMemoryReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.opentracing.tag.Tags;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TailSamplingReporterTest {
+
+    private static final int THREADS = 8;
+    private static final int TRACES = 2000;
+
+    private final InMemoryReporter delegate = new InMemoryReporter();
+    private final TailSamplingMetrics metrics = new TailSamplingMetrics();
+
+    private TailSamplingReporter reporter;
+    private JaegerTracer tracer;
+
+    private void initReporter(final TailSamplingPolicy policy, final int maxBufferedSpans,
+                              final TailEvictionPolicy evictionPolicy) {
+        reporter = new TailSamplingReporter(delegate, policy, maxBufferedSpans, evictionPolicy, Duration.ofMinutes(1),
+                "id", metrics);
+        tracer = new JaegerTracer.Builder("test").withReporter(reporter).withSampler(new ConstSampler(true)).build();
+    }
+
+    private static TailSamplingPolicy dropAll() {
+        return new TailSamplingPolicy(Duration.ofMillis(1), Collections.singleton("watched"), 0);
+    }
+
+    /**
+     * Finishes a root span and a child span that lasted {@code micros} and returns the context of the root.
+     */
+    private JaegerSpanContext finishTrace(final long micros) {
+        final JaegerSpan root = tracer.buildSpan("root").withStartTimestamp(1000).start();
+        tracer.buildSpan("child").asChildOf(root).withStartTimestamp(1000).start().finish(1000 + micros);
+        root.finish(1000 + micros);
+        return root.context();
+    }
+
+    private void traceFinished(final JaegerSpanContext context, final String eventId) {
+        reporter.traceFinished(context.getTraceIdHigh(), context.getTraceIdLow(), eventId);
+    }
+
+    @Test
+    public void testSpansAreHeldUntilTheTraceFinishes() {
+        initReporter(dropAll(), 100, TailEvictionPolicy.DROP_OLDEST);
+        final JaegerSpanContext context = finishTrace(5000);
+
+        assertTrue(delegate.getSpans().isEmpty());
+        assertEquals(2, metrics.getBufferedSpanCount());
+
+        traceFinished(context, null);
+        assertEquals(2, delegate.getSpans().size());
+        assertEquals(0, metrics.getBufferedSpanCount());
+        assertEquals(1, metrics.getDecisionCount(TailSamplingPolicy.Decision.LATENCY));
+        assertEquals(2, metrics.getExportedSpanCount());
+    }
+
+    @Test
+    public void testDroppedTracesAreNeverReported() {
+        initReporter(dropAll(), 100, TailEvictionPolicy.DROP_OLDEST);
+        traceFinished(finishTrace(10), null);
+
+        assertTrue(delegate.getSpans().isEmpty());
+        assertEquals(0, metrics.getBufferedSpanCount());
+        assertEquals(1, metrics.getDroppedCount());
+        assertEquals(2, metrics.getDroppedSpanCount());
+        assertEquals(0, metrics.getKeptCount());
+    }
+
+    @Test
+    public void testErrorsAndWatchedIdsAreKept() {
+        initReporter(dropAll(), 100, TailEvictionPolicy.DROP_OLDEST);
+        final JaegerSpan failed = tracer.buildSpan("root").withStartTimestamp(1000).start();
+        Tags.ERROR.set(failed, true);
+        failed.finish(1000);
+        traceFinished(failed.context(), null);
+        assertEquals(1, delegate.getSpans().size());
+
+        traceFinished(finishTrace(10), "watched");
+        assertEquals(3, delegate.getSpans().size());
+
+        final JaegerSpan baggage = tracer.buildSpan("root").withStartTimestamp(1000).start();
+        baggage.setBaggageItem("id", "watched");
+        baggage.finish(1000);
+        traceFinished(baggage.context(), null);
+        assertEquals(4, delegate.getSpans().size());
+
+        assertEquals(1, metrics.getDecisionCount(TailSamplingPolicy.Decision.ERROR));
+        assertEquals(2, metrics.getDecisionCount(TailSamplingPolicy.Decision.WATCHED_ID));
+        assertEquals(0, metrics.getDroppedCount());
+    }
+
+    @Test
+    public void testLateSpansFollowTheDecision() {
+        initReporter(new TailSamplingPolicy(Duration.ZERO, Collections.emptySet(), 1), 100,
+                TailEvictionPolicy.DROP_OLDEST);
+        final JaegerSpan root = tracer.buildSpan("root").start();
+        root.finish();
+        traceFinished(root.context(), null);
+        assertEquals(1, delegate.getSpans().size());
+
+        tracer.buildSpan("late").asChildOf(root).start().finish();
+        assertEquals(2, delegate.getSpans().size());
+        assertEquals(0, metrics.getBufferedSpanCount());
+
+        traceFinished(root.context(), null);
+        assertEquals(1, metrics.getKeptCount());
+        assertEquals(1, metrics.getDecisionCount(TailSamplingPolicy.Decision.BASELINE));
+        assertEquals(2, metrics.getExportedSpanCount());
+    }
+
+    @Test
+    public void testOldestTracesAreDroppedOverTheCap() {
+        initReporter(dropAll(), 3, TailEvictionPolicy.DROP_OLDEST);
+        final JaegerSpanContext oldest = finishTrace(5000);
+        final JaegerSpanContext newest = finishTrace(5000);
+
+        assertEquals(2, metrics.getBufferedSpanCount());
+        assertEquals(1, metrics.getEvictedCount());
+        assertEquals(2, metrics.getEvictedSpanCount());
+        assertTrue(delegate.getSpans().isEmpty());
+
+        traceFinished(oldest, null);
+        assertTrue(delegate.getSpans().isEmpty());
+        traceFinished(newest, null);
+        assertEquals(2, delegate.getSpans().size());
+        assertEquals(newest.getTraceIdLow(), delegate.getSpans().get(0).context().getTraceIdLow());
+    }
+
+    @Test
+    public void testOldestTracesAreExportedOverTheCap() {
+        initReporter(dropAll(), 3, TailEvictionPolicy.EXPORT_OLDEST);
+        final JaegerSpanContext oldest = finishTrace(10);
+        finishTrace(10);
+
+        assertEquals(2, delegate.getSpans().size());
+        assertEquals(oldest.getTraceIdLow(), delegate.getSpans().get(0).context().getTraceIdLow());
+        assertEquals(1, metrics.getEvictedCount());
+    }
+
+    @Test
+    public void testLateSpansOfDroppedEvictedTracesAreNotBuffered() {
+        initReporter(dropAll(), 2, TailEvictionPolicy.DROP_OLDEST);
+        final JaegerSpan evicted = tracer.buildSpan("root").withStartTimestamp(1000).start();
+        tracer.buildSpan("child").asChildOf(evicted).withStartTimestamp(1000).start().finish(2000);
+        final JaegerSpanContext newest = finishTrace(5000);
+        assertEquals(1, metrics.getEvictedCount());
+
+        tracer.buildSpan("late").asChildOf(evicted).withStartTimestamp(1000).start().finish(9000);
+        evicted.finish(9000);
+        traceFinished(evicted.context(), null);
+
+        assertEquals(2, metrics.getBufferedSpanCount());
+        assertEquals(1, metrics.getEvictedCount());
+        assertEquals(2, metrics.getDroppedSpanCount());
+        assertEquals(0, metrics.getDecisionCount(TailSamplingPolicy.Decision.LATENCY));
+        assertTrue(delegate.getSpans().isEmpty());
+
+        traceFinished(newest, null);
+        assertEquals(2, delegate.getSpans().size());
+    }
+
+    @Test
+    public void testLateSpansOfExportedEvictedTracesAreExported() {
+        initReporter(dropAll(), 2, TailEvictionPolicy.EXPORT_OLDEST);
+        final JaegerSpan evicted = tracer.buildSpan("root").withStartTimestamp(1000).start();
+        tracer.buildSpan("child").asChildOf(evicted).withStartTimestamp(1000).start().finish(2000);
+        finishTrace(10);
+        assertEquals(1, delegate.getSpans().size());
+
+        tracer.buildSpan("late").asChildOf(evicted).withStartTimestamp(1000).start().finish(2000);
+        evicted.finish(2000);
+        traceFinished(evicted.context(), null);
+
+        assertEquals(3, delegate.getSpans().size());
+        for (final JaegerSpan span : delegate.getSpans()) {
+            assertEquals(evicted.context().getTraceIdLow(), span.context().getTraceIdLow());
+        }
+        assertEquals(2, metrics.getBufferedSpanCount());
+        assertEquals(0, metrics.getDroppedCount());
+    }
+
+    @Test
+    public void testEvictionSkipsTracesThatAlreadyFinished() {
+        initReporter(dropAll(), 3, TailEvictionPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            traceFinished(finishTrace(10), null);
+        }
+        final JaegerSpanContext oldest = finishTrace(5000);
+        final JaegerSpanContext newest = finishTrace(5000);
+
+        assertEquals(1, metrics.getEvictedCount());
+        assertEquals(2, metrics.getEvictedSpanCount());
+        assertEquals(2, metrics.getBufferedSpanCount());
+
+        traceFinished(oldest, null);
+        traceFinished(newest, null);
+        assertEquals(2, delegate.getSpans().size());
+        assertEquals(newest.getTraceIdLow(), delegate.getSpans().get(0).context().getTraceIdLow());
+    }
+
+    @Test
+    public void testCloseReleasesTheBufferAndClosesTheDelegate() {
+        initReporter(dropAll(), 100, TailEvictionPolicy.EXPORT_OLDEST);
+        finishTrace(10);
+        tracer.close();
+
+        assertEquals(2, delegate.getSpans().size());
+        assertEquals(0, metrics.getBufferedSpanCount());
+        assertEquals(1, metrics.getEvictedCount());
+    }
+
+    @Test
+    public void testPolicyCanBeReplaced() {
+        initReporter(dropAll(), 100, TailEvictionPolicy.DROP_OLDEST);
+        reporter.setPolicy(new TailSamplingPolicy(Duration.ZERO, Collections.emptySet(), 1));
+        traceFinished(finishTrace(10), null);
+        assertEquals(2, delegate.getSpans().size());
+    }
+
+    @Test
+    public void testBaselineAgreesWithTheProbabilisticSampler() {
+        final TailSamplingPolicy half = new TailSamplingPolicy(Duration.ZERO, Collections.emptySet(), 0.5);
+        assertEquals(TailSamplingPolicy.Decision.BASELINE, half.decide(Long.MAX_VALUE / 4, 0, false, null));
+        assertEquals(TailSamplingPolicy.Decision.DROP, half.decide(Long.MAX_VALUE / 4 * 3, 0, false, null));
+        assertEquals(TailSamplingPolicy.Decision.BASELINE, half.decide(Long.MIN_VALUE / 4, 0, false, null));
+        assertEquals(TailSamplingPolicy.Decision.DROP, half.decide(Long.MIN_VALUE / 4 * 3, 0, false, null));
+
+        final TailSamplingPolicy none = new TailSamplingPolicy(Duration.ZERO, Collections.emptySet(), 0);
+        assertEquals(TailSamplingPolicy.Decision.DROP, none.decide(0, Long.MAX_VALUE, false, null));
+        assertEquals(new TailSamplingPolicy(Duration.ZERO, Collections.emptySet(), 0), none);
+    }
+
+    @Test
+    public void testConcurrentTracesAreAllAccountedFor() throws Exception {
+        initReporter(new TailSamplingPolicy(Duration.ZERO, Collections.emptySet(), 0.5), 500,
+                TailEvictionPolicy.DROP_OLDEST);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < TRACES; i++) {
+                        final JaegerSpanContext context = finishTrace(10);
+                        if (i % 10 != 0) {
+                            traceFinished(context, null);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        tracer.close();
+
+        assertEquals(0, metrics.getBufferedSpanCount());
+        assertEquals(THREADS * TRACES * 2, metrics.getExportedSpanCount() + metrics.getDroppedSpanCount()
+                + metrics.getEvictedSpanCount());
+        assertEquals(metrics.getExportedSpanCount(), delegate.getSpans().size());
+        assertTrue(metrics.getKeptCount() > 0);
+        assertTrue(metrics.getDroppedCount() > 0);
+    }
+}
@@ -23,6 +23,7 @@ import io.opentracing.noop.NoopTracerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -62,15 +63,51 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description) {
+        return logPromise(toTraceAsync, description, Optional.empty());
+
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object, final String description) {
         return logFuture(toTraceAsync, description);
     }
 
-    private <R> CompletableFuture<R> logFuture(Supplier<CompletableFuture<R>> toTraceAsync, String description) {
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description) {
         return logFuture(toTraceAsync, description);
+    }
 
+    /**
+     * Logs the execution of a CompletableFuture.
+     * @param toTraceAsync The code to be executed.
+     * @param description A textual representation of the execution.
+     * @param <R> The return type.
+     * @return Whatever would be returned by the CompletableFuture.
+     */
+    private <R> CompletableFuture<R> logFuture(Supplier<CompletableFuture<R>> toTraceAsync, String description) {
+        final double start = System.nanoTime();
+        final CompletableFuture<R> future = toTraceAsync.get();
+        future.whenComplete((result, throwable) -> logMessage(description, start, Optional.empty()));
+        return future;
+    }
+
+    /**
+     * Logs the execution of a CompletableFuture, computing the description only if the message is logged.
+     * @param toTraceAsync The code to be executed.
+     * @param description Supplies a textual representation of the execution.
+     * @param <R> The return type.
+     * @return Whatever would be returned by the CompletableFuture.
+     */
+    private <R> CompletableFuture<R> logFuture(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description) {
+        final double start = System.nanoTime();
+        final CompletableFuture<R> future = toTraceAsync.get();
+        future.whenComplete((result, throwable) -> logMessage(description, start, Optional.empty()));
+        return future;
     }
 
     @Override
@@ -80,6 +117,13 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.empty());
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description) {
+        final double start = System.nanoTime();
+        toTraceAsync.run();
+        logMessage(description, start, Optional.empty());
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description) {
         final double start = System.nanoTime();
@@ -88,12 +132,26 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description) {
+        final double start = System.nanoTime();
+        final R result = toTraceAsync.get();
+        logMessage(description, start, Optional.empty());
+        return result;
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                                 final String description, final String eventId) {
         return logPromise(toTraceAsync, description, Optional.empty());
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description, final String eventId) {
+        return logPromise(toTraceAsync, description, Optional.empty());
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object, final String description,
@@ -102,6 +160,14 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description,
+                                                         final String eventId) {
+        return logFuture(toTraceAsync, description);
+
+    }
+
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                                final String eventId) {
@@ -110,6 +176,14 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.empty());
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final String eventId) {
+        final double start = System.nanoTime();
+        toTraceAsync.run();
+        logMessage(description, start, Optional.empty());
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                                 final String eventId) {
@@ -119,6 +193,15 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final String eventId) {
+        final double start = System.nanoTime();
+        final R result = toTraceAsync.get();
+        logMessage(description, start, Optional.empty());
+        return result;
+    }
+
     @Override
     public void closeOpen(final Object object) {
         //Empty because it does not make sense to log this
@@ -130,6 +213,12 @@ public class LoggingTracingEngine implements TracingEngine {
         return logPromise(toTraceAsync, description, Optional.empty());
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description, final TraceContext context) {
+        return logPromise(toTraceAsync, description, Optional.empty());
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object, final String description,
@@ -138,6 +227,14 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description,
+                                                         final TraceContext context) {
+        return logFuture(toTraceAsync, description);
+
+    }
+
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                                final TraceContext context) {
@@ -147,6 +244,15 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final TraceContext context) {
+        final double start = System.nanoTime();
+        toTraceAsync.run();
+        logMessage(description, start, Optional.empty());
+
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                                 final TraceContext context) {
@@ -156,6 +262,15 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final TraceContext context) {
+        final double start = System.nanoTime();
+        final R result = toTraceAsync.get();
+        logMessage(description, start, Optional.empty());
+        return result;
+    }
+
     @Override
     public <R> R newProcess(final Supplier<R> toTrace, final String description, final TraceContext context) {
         final double start = System.nanoTime();
@@ -164,6 +279,14 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.empty());
+        return result;
+    }
+
     @Override
     public void newProcess(final Runnable toTrace, final String description, final TraceContext context) {
         final double start = System.nanoTime();
@@ -171,12 +294,25 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.empty());
     }
 
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.empty());
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                             final TraceContext context) {
         return logPromise(toTrace, description, Optional.empty());
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                            final TraceContext context) {
+        return logPromise(toTrace, description, Optional.empty());
+    }
+
 
     @Override
     public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
@@ -185,6 +321,13 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                     final Supplier<String> description, final TraceContext context) {
+        return logFuture(toTrace, description);
+
+    }
+
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description, final TraceContext context) {
         final double start = System.nanoTime();
@@ -194,6 +337,15 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.empty());
+
+        return result;
+    }
+
     @Override
     public void addToTrace(final Runnable toTrace, final String description, final TraceContext context) {
         final double start = System.nanoTime();
@@ -202,6 +354,14 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.empty());
+
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                     final String description,
@@ -209,12 +369,25 @@ public class LoggingTracingEngine implements TracingEngine {
         return logFuture(toTraceAsync, description);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description,
+                                                    final TraceContext context) {
+        return logFuture(toTraceAsync, description);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
                                             final TraceContext context) {
         return logPromise(toTraceAsync, description, Optional.empty());
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                            final TraceContext context) {
+        return logPromise(toTraceAsync, description, Optional.empty());
+    }
+
     @Override
     public Map<String, String> serializeContext() {
         return new HashMap<>();
@@ -225,6 +398,19 @@ public class LoggingTracingEngine implements TracingEngine {
         return TRACE_CONTEXT;
     }
 
+    @Override
+    public int serializeContext(final ByteBuffer buffer) {
+        //There is no context to propagate
+        return 0;
+    }
+
+    @Override
+    public TraceContext deserializeContext(final ByteBuffer buffer) {
+        //Skips the context without reading it, since it is not used, so the headers after it can still be read
+        BinaryContextLayout.skip(buffer);
+        return TRACE_CONTEXT;
+    }
+
     @Override
     public TraceContext currentContext() {
         return TRACE_CONTEXT;
@@ -243,6 +429,14 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.empty());
+        return result;
+    }
+
     @Override
     public void newTrace(final Runnable toTrace, final String description) {
         final double start = System.nanoTime();
@@ -250,17 +444,35 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.empty());
     }
 
+    @Override
+    public void newTrace(final Runnable toTrace, final Supplier<String> description) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.empty());
+    }
+
     @Override
     public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                   final String description) {
         return logFuture(toTraceAsync, description);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                  final Supplier<String> description) {
+        return logFuture(toTraceAsync, description);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description) {
         return logPromise(toTraceAsync, description, Optional.empty());
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        return logPromise(toTraceAsync, description, Optional.empty());
+    }
+
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description) {
         final double start = System.nanoTime();
@@ -269,6 +481,14 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.empty());
+        return result;
+    }
+
     @Override
     public void addToTrace(final Runnable toTrace, final String description) {
         final double start = System.nanoTime();
@@ -276,18 +496,37 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.empty());
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.empty());
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                     final String description) {
         return logFuture(toTraceAsync, description);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description) {
+        return logFuture(toTraceAsync, description);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description) {
         return logPromise(toTraceAsync, description, Optional.empty());
 
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        return logPromise(toTraceAsync, description, Optional.empty());
+
+    }
+
     @Override
     public boolean isActive() {
         return false;
@@ -301,6 +540,14 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.of(eventId));
+        return result;
+    }
+
     @Override
     public void newTrace(final Runnable toTrace, final String description, final String eventId) {
         final double start = System.nanoTime();
@@ -308,6 +555,13 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.of(eventId));
     }
 
+    @Override
+    public void newTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.of(eventId));
+    }
+
     @Override
     public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                   final String description,
@@ -315,6 +569,13 @@ public class LoggingTracingEngine implements TracingEngine {
         return logFuture(toTraceAsync, description);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                  final Supplier<String> description,
+                                                  final String eventId) {
+        return logFuture(toTraceAsync, description);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description,
                                           final String eventId) {
@@ -322,6 +583,13 @@ public class LoggingTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                          final String eventId) {
+        return logPromise(toTraceAsync, description, Optional.of(eventId));
+
+    }
+
     @Override
     public <R> R newProcess(final Supplier<R> toTrace, final String description, final String eventId) {
         final double start = System.nanoTime();
@@ -330,6 +598,14 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.of(eventId));
+        return result;
+    }
+
     @Override
     public void newProcess(final Runnable toTrace, final String description, final String eventId) {
         final double start = System.nanoTime();
@@ -337,6 +613,13 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.of(eventId));
     }
 
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.of(eventId));
+    }
+
     @Override
     public <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
                                                   final String description,
@@ -344,12 +627,25 @@ public class LoggingTracingEngine implements TracingEngine {
         return logFuture(toTrace, description);
     }
 
+    @Override
+    public <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                  final Supplier<String> description,
+                                                  final String eventId) {
+        return logFuture(toTrace, description);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                             final String eventId) {
         return logPromise(toTrace, description, Optional.of(eventId));
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                            final String eventId) {
+        return logPromise(toTrace, description, Optional.of(eventId));
+    }
+
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description, final String eventId) {
         final double start = System.nanoTime();
@@ -358,6 +654,14 @@ public class LoggingTracingEngine implements TracingEngine {
         return result;
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        final double start = System.nanoTime();
+        final R result = toTrace.get();
+        logMessage(description, start, Optional.of(eventId));
+        return result;
+    }
+
     @Override
     public void addToTrace(final Runnable toTrace, final String description, final String eventId) {
         final double start = System.nanoTime();
@@ -365,6 +669,13 @@ public class LoggingTracingEngine implements TracingEngine {
         logMessage(description, start, Optional.of(eventId));
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        final double start = System.nanoTime();
+        toTrace.run();
+        logMessage(description, start, Optional.of(eventId));
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                     final String description,
@@ -378,12 +689,31 @@ public class LoggingTracingEngine implements TracingEngine {
         return future;
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description,
+                                                    final String eventId) {
+        final double start = System.nanoTime();
+        final CompletableFuture<R> future = toTraceAsync.get();
+        future.handle((f, t) -> {
+            logMessage(description, start, Optional.of(eventId));
+            return this;
+        });
+        return future;
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
                                             final String eventId) {
         return logPromise(toTraceAsync, description, Optional.of(eventId));
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                            final String eventId) {
+        return logPromise(toTraceAsync, description, Optional.of(eventId));
+    }
+
     /**
      * Logs the execution of a Promise.
      * @param toTraceAsync The code to be executed.
@@ -396,7 +726,22 @@ public class LoggingTracingEngine implements TracingEngine {
         final P promise = toTraceAsync.get();
         promise.onErrorPromise(throwable -> logMessage(description, start, eventId));
         promise.onCompletePromise(throwable -> logMessage(description, start, eventId));
-        return toTraceAsync.get();
+        return promise;
+    }
+
+    /**
+     * Logs the execution of a Promise, computing the description only if the message is logged.
+     * @param toTraceAsync The code to be executed.
+     * @param description Supplies a textual representation of the execution.
+     * @param <R> The return type.
+     * @return Whatever would be returned by the Promise.
+     */
+    private <E extends Throwable, P extends Promise<R, P, E>, R> P logPromise(Supplier<P> toTraceAsync, Supplier<String> description, Optional<String> eventId) {
+        final double start = System.nanoTime();
+        final P promise = toTraceAsync.get();
+        promise.onErrorPromise(throwable -> logMessage(description, start, eventId));
+        promise.onCompletePromise(throwable -> logMessage(description, start, eventId));
+        return promise;
     }
 
     @Override
@@ -421,6 +766,17 @@ public class LoggingTracingEngine implements TracingEngine {
         logger.trace("{}{},{},{}", start, parsedEventId, latency, description);
     }
 
+    /**
+     * Writes a log message in the required format, computing the description only if trace logging is enabled.
+     * @param description Supplies a textual representation of the execution.
+     * @param start the starting timestamp of the execution.
+     */
+    private void logMessage(Supplier<String> description, double start, Optional<String> eventId) {
+        if (logger.isTraceEnabled()) {
+            logMessage(description.get(), start, eventId);
+        }
+    }
+
     @Override
     public Tracer getTracer() {
         return NoopTracerFactory.create();
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of the durations of the operations with one description, recorded by {@link
+ * MetricsTracingEngine}.
+ *
+ * <p>Buckets are log-linear, like HdrHistogram's: every power of two is split in {@value #SUB_BUCKETS} buckets, so a
+ * duration is known within 12.5%, from 1 nanosecond up to {@code 2^}{@value #MAX_EXPONENT} nanoseconds (about 18
+ * minutes); longer durations share the last bucket. The counters are striped by thread, each thread incrementing the
+ * row of its stripe, so that threads recording the same description do not contend on the same cache lines. Recording
+ * never allocates.
+ *
+ * <p>The histogram can also keep the IDs of the traces of its slowest samples as exemplars. Keeping them takes a lock,
+ * but only for a sample that is slower than all the exemplars already kept.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class LatencyHistogram {
+
+    /**
+     * The log2 of the number of buckets each power of two is split in.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of buckets each power of two is split in.
+     */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The log2 of the shortest duration counted in the last bucket, in nanoseconds.
+     */
+    static final int MAX_EXPONENT = 40;
+
+    /**
+     * The number of buckets.
+     */
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + 1;
+
+    /**
+     * The slot of each stripe that holds the sum of the durations.
+     */
+    private static final int SUM = BUCKETS;
+
+    /**
+     * The slot of each stripe that holds the longest duration.
+     */
+    private static final int MAX = BUCKETS + 1;
+
+    /**
+     * The number of slots of each stripe, rounded up to whole cache lines.
+     */
+    private static final int STRIDE = (MAX + 1 + 7) & ~7;
+
+    /**
+     * The description of the operations.
+     */
+    private final String description;
+
+    /**
+     * The counters of every stripe, one row of {@link #STRIDE} slots after the other.
+     */
+    private final AtomicLongArray counters;
+
+    /**
+     * The mask that maps a thread ID to its stripe.
+     */
+    private final int stripeMask;
+
+    /**
+     * The durations of the exemplars, in nanoseconds.
+     */
+    private final long[] exemplarNanos;
+
+    /**
+     * The trace IDs of the exemplars, {@code null} where there is no exemplar yet.
+     */
+    private final String[] exemplarIds;
+
+    /**
+     * The duration a sample must exceed to become an exemplar, which is -1 until all the exemplars are taken.
+     */
+    private volatile long exemplarFloor = -1;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param description The description of the operations.
+     * @param stripes     The number of stripes, a power of two.
+     * @param exemplars   How many exemplars are kept, 0 to keep none.
+     */
+    LatencyHistogram(final String description, final int stripes, final int exemplars) {
+        this.description = description;
+        this.counters = new AtomicLongArray(stripes * STRIDE);
+        this.stripeMask = stripes - 1;
+        this.exemplarNanos = new long[exemplars];
+        this.exemplarIds = new String[exemplars];
+        if (exemplars == 0) {
+            exemplarFloor = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns the bucket a duration falls in.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The index of the bucket.
+     */
+    static int bucket(final long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the longest duration counted in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The upper bound of the bucket in nanoseconds, inclusive.
+     */
+    static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records the duration of an operation.
+     *
+     * @param nanos   The duration in nanoseconds.
+     * @param traceId The ID of the trace of the operation, kept if it becomes an exemplar, or {@code null}.
+     */
+    void record(final long nanos, final String traceId) {
+        final int row = ((int) Thread.currentThread().getId() & stripeMask) * STRIDE;
+        counters.getAndIncrement(row + bucket(nanos));
+        counters.getAndAdd(row + SUM, nanos);
+        final int max = row + MAX;
+        long current;
+        while (nanos > (current = counters.get(max)) && !counters.compareAndSet(max, current, nanos)) {
+            // another thread of this stripe raised the maximum, check again
+        }
+        if (traceId != null && nanos > exemplarFloor) {
+            offerExemplar(nanos, traceId);
+        }
+    }
+
+    /**
+     * Keeps a sample as an exemplar in place of the fastest exemplar, if it is still slower than it.
+     *
+     * @param nanos   The duration in nanoseconds.
+     * @param traceId The ID of the trace of the sample.
+     */
+    private synchronized void offerExemplar(final long nanos, final String traceId) {
+        int fastest = 0;
+        for (int i = 0; i < exemplarIds.length; i++) {
+            if (exemplarIds[i] == null) {
+                fastest = i;
+                break;
+            }
+            if (exemplarNanos[i] < exemplarNanos[fastest]) {
+                fastest = i;
+            }
+        }
+        if (exemplarIds[fastest] != null && nanos <= exemplarNanos[fastest]) {
+            return;
+        }
+        exemplarNanos[fastest] = nanos;
+        exemplarIds[fastest] = traceId;
+        long floor = Long.MAX_VALUE;
+        for (int i = 0; i < exemplarIds.length; i++) {
+            if (exemplarIds[i] == null) {
+                floor = -1;
+                break;
+            }
+            floor = Math.min(floor, exemplarNanos[i]);
+        }
+        exemplarFloor = floor;
+    }
+
+    /**
+     * Takes a snapshot of the histogram, optionally resetting it so that the next snapshot only has the operations
+     * recorded after this one. Recording goes on while the snapshot is taken, so an operation may be counted in a
+     * bucket of one snapshot and in the sum of the next one.
+     *
+     * @param reset Whether the histogram is reset.
+     * @return The snapshot.
+     */
+    LatencySnapshot snapshot(final boolean reset) {
+        final long[] buckets = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (int row = 0; row < counters.length(); row += STRIDE) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                buckets[bucket] += reset ? counters.getAndSet(row + bucket, 0) : counters.get(row + bucket);
+            }
+            sum += reset ? counters.getAndSet(row + SUM, 0) : counters.get(row + SUM);
+            max = Math.max(max, reset ? counters.getAndSet(row + MAX, 0) : counters.get(row + MAX));
+        }
+        return new LatencySnapshot(description, buckets, sum, max, exemplars(reset));
+    }
+
+    /**
+     * Returns the exemplars, from the slowest to the fastest, optionally removing them.
+     *
+     * @param reset Whether the exemplars are removed.
+     * @return The exemplars.
+     */
+    private synchronized List<LatencySnapshot.Exemplar> exemplars(final boolean reset) {
+        if (exemplarIds.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<LatencySnapshot.Exemplar> exemplars = new ArrayList<>(exemplarIds.length);
+        for (int i = 0; i < exemplarIds.length; i++) {
+            if (exemplarIds[i] != null) {
+                exemplars.add(new LatencySnapshot.Exemplar(exemplarIds[i], exemplarNanos[i]));
+            }
+            if (reset) {
+                exemplarIds[i] = null;
+            }
+        }
+        if (reset) {
+            exemplarFloor = -1;
+        }
+        exemplars.sort((first, second) -> Long.compare(second.getDurationNanos(), first.getDurationNanos()));
+        return exemplars;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable view of the latencies recorded by {@link MetricsTracingEngine} for the operations with one description.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class LatencySnapshot {
+
+    /**
+     * The description of the operations.
+     */
+    private final String description;
+
+    /**
+     * The number of operations in each bucket of {@link LatencyHistogram}.
+     */
+    private final long[] buckets;
+
+    /**
+     * The number of operations.
+     */
+    private final long count;
+
+    /**
+     * The sum of the durations, in nanoseconds.
+     */
+    private final long sumNanos;
+
+    /**
+     * The longest duration, in nanoseconds.
+     */
+    private final long maxNanos;
+
+    /**
+     * The slowest operations, from the slowest to the fastest.
+     */
+    private final List<Exemplar> exemplars;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param description The description of the operations.
+     * @param buckets     The number of operations in each bucket.
+     * @param sumNanos    The sum of the durations, in nanoseconds.
+     * @param maxNanos    The longest duration, in nanoseconds.
+     * @param exemplars   The slowest operations, from the slowest to the fastest.
+     */
+    LatencySnapshot(final String description, final long[] buckets, final long sumNanos, final long maxNanos,
+                    final List<Exemplar> exemplars) {
+        this.description = description;
+        this.buckets = buckets;
+        long count = 0;
+        for (final long bucket : buckets) {
+            count += bucket;
+        }
+        this.count = count;
+        this.sumNanos = sumNanos;
+        this.maxNanos = maxNanos;
+        this.exemplars = Collections.unmodifiableList(exemplars);
+    }
+
+    /**
+     * Returns the description of the operations.
+     *
+     * @return The description.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the number of operations.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the durations.
+     *
+     * @return The sum in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos;
+    }
+
+    /**
+     * Returns the longest duration.
+     *
+     * @return The maximum in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the mean duration.
+     *
+     * @return The mean in nanoseconds, 0 if there are no operations.
+     */
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) sumNanos / count;
+    }
+
+    /**
+     * Returns the duration that a percentage of the operations did not exceed, which overestimates the exact value by
+     * at most 12.5%.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     * @return The upper bound of the bucket of that percentile in nanoseconds, at most the maximum, or 0 if there are
+     * no operations.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBound(bucket), maxNanos);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of operations in each bucket that has any, keyed by the bucket's upper bound.
+     *
+     * @return A map from the upper bound in nanoseconds, inclusive, to the count, in increasing order of bounds.
+     */
+    public SortedMap<Long, Long> getBuckets() {
+        final SortedMap<Long, Long> counts = new TreeMap<>();
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            if (buckets[bucket] != 0) {
+                counts.put(LatencyHistogram.upperBound(bucket), buckets[bucket]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the slowest operations, if exemplars are kept.
+     *
+     * @return The exemplars, from the slowest to the fastest.
+     */
+    public List<Exemplar> getExemplars() {
+        return exemplars;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{" +
+                "description='" + description + '\'' +
+                ", count=" + count +
+                ", meanNanos=" + getMeanNanos() +
+                ", p50Nanos=" + getValueAtPercentile(50) +
+                ", p99Nanos=" + getValueAtPercentile(99) +
+                ", maxNanos=" + maxNanos +
+                ", exemplars=" + exemplars +
+                '}';
+    }
+
+    /**
+     * One of the slowest operations of a description, to look its trace up.
+     */
+    public static final class Exemplar {
+
+        /**
+         * The ID of the trace of the operation.
+         */
+        private final String traceId;
+
+        /**
+         * The duration of the operation, in nanoseconds.
+         */
+        private final long durationNanos;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param traceId       The ID of the trace of the operation.
+         * @param durationNanos The duration of the operation, in nanoseconds.
+         */
+        Exemplar(final String traceId, final long durationNanos) {
+            this.traceId = traceId;
+            this.durationNanos = durationNanos;
+        }
+
+        /**
+         * Returns the ID of the trace of the operation.
+         *
+         * @return The trace ID.
+         */
+        public String getTraceId() {
+            return traceId;
+        }
+
+        /**
+         * Returns the duration of the operation.
+         *
+         * @return The duration in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return traceId + "=" + durationNanos + "ns";
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+
+/**
+ * Receives the latency histograms of {@link MetricsTracingEngine}, to publish them to a monitoring system.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+    /**
+     * Exporter that logs every histogram at info level.
+     */
+    MetricsExporter LOGGING = new MetricsExporter() {
+
+        /**
+         * The logger.
+         */
+        private final Logger logger = LoggerFactory.getLogger(MetricsExporter.class.getName());
+
+        @Override
+        public void export(final Collection<LatencySnapshot> snapshots) {
+            snapshots.forEach(snapshot -> logger.info("{}", snapshot));
+        }
+    };
+
+    /**
+     * Exports the histograms, one per description.
+     *
+     * @param snapshots The histograms.
+     */
+    void export(Collection<LatencySnapshot> snapshots);
+}
@@ -0,0 +1,979 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.api.Promise;
+import com.feedzai.commons.tracing.api.TraceContext;
+import com.feedzai.commons.tracing.engine.configuration.MetricsConfiguration;
+import com.google.common.base.Preconditions;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
+import io.opentracing.noop.NoopTracerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of all Tracing APIs that, instead of building traces, records the latency of every operation in a
+ * {@link LatencyHistogram} per description, for services that need latency percentiles per operation without paying
+ * for the spans.
+ *
+ * <p>Recording is lock-free and, once a description has been seen, does not allocate for synchronous operations; the
+ * asynchronous ones allocate the callback that records them when they complete. The histograms can be read with
+ * {@link #snapshot()} and {@link #snapshotAndReset()} or exported periodically to a {@link MetricsExporter}. When
+ * exemplars are enabled, each histogram keeps the event IDs of its slowest operations, so that their traces can be
+ * looked up in an engine that does build them. Once {@code maxDescriptions} descriptions are recorded, the operations
+ * with new descriptions share a single histogram with the description {@value #OVERFLOW_DESCRIPTION}, so that
+ * descriptions built from unbounded values do not grow the memory of the engine without limit.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public class MetricsTracingEngine implements TracingEngine, AutoCloseable {
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MetricsTracingEngine.class.getName());
+
+    /**
+     * Null trace context to be used wherever is needed, since the histograms don't take into account the causality
+     * between calls.
+     */
+    private static final TraceContext TRACE_CONTEXT = () -> null;
+
+    /**
+     * The maximum number of stripes picked from the number of processors.
+     */
+    private static final int MAX_DEFAULT_STRIPES = 8;
+
+    /**
+     * The maximum number of descriptions recorded in their own histogram by default.
+     */
+    public static final int DEFAULT_MAX_DESCRIPTIONS = 2000;
+
+    /**
+     * The description of the histogram shared by the operations whose description is not recorded on its own.
+     */
+    public static final String OVERFLOW_DESCRIPTION = "overflow";
+
+    /**
+     * The histograms, by description.
+     */
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of descriptions recorded in their own histogram.
+     */
+    private final int maxDescriptions;
+
+    /**
+     * The histogram shared by the operations whose description is not recorded on its own.
+     */
+    private final LatencyHistogram overflow;
+
+    /**
+     * The number of stripes of each histogram, a power of two.
+     */
+    private final int stripes;
+
+    /**
+     * How many exemplars each histogram keeps.
+     */
+    private final int maxExemplars;
+
+    /**
+     * The exporter the histograms are periodically exported to, or {@code null}.
+     */
+    private final MetricsExporter exporter;
+
+    /**
+     * Whether the histograms are reset at each export.
+     */
+    private final boolean resetOnExport;
+
+    /**
+     * The thread that periodically exports the histograms, or {@code null} if they are not exported.
+     */
+    private final ScheduledExecutorService exportScheduler;
+
+    /**
+     * Constructor for this class, to be used by {@link Builder}.
+     *
+     * @param builder The builder with the configuration of the engine.
+     */
+    private MetricsTracingEngine(final Builder builder) {
+        this.stripes = builder.stripes > 0 ? ceilingPowerOfTwo(builder.stripes) : defaultStripes();
+        this.maxExemplars = builder.maxExemplars;
+        this.maxDescriptions = builder.maxDescriptions;
+        this.overflow = new LatencyHistogram(OVERFLOW_DESCRIPTION, stripes, maxExemplars);
+        this.exporter = builder.exporter;
+        this.resetOnExport = builder.resetOnExport;
+        if (exporter != null) {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "tracing-metrics-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long interval = builder.exportInterval.toMillis();
+            scheduler.scheduleAtFixedRate(this::exportNow, interval, interval, TimeUnit.MILLISECONDS);
+            this.exportScheduler = scheduler;
+        } else {
+            this.exportScheduler = null;
+        }
+    }
+
+    /**
+     * Returns the number of stripes used when none is configured: the number of processors, rounded up to a power of
+     * two and capped at {@value #MAX_DEFAULT_STRIPES}.
+     *
+     * @return The number of stripes.
+     */
+    private static int defaultStripes() {
+        return Math.min(MAX_DEFAULT_STRIPES, ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Rounds a positive number up to a power of two.
+     *
+     * @param value The number.
+     * @return The smallest power of two that is not smaller than the number.
+     */
+    private static int ceilingPowerOfTwo(final int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Returns the histogram of a description, creating it the first time the description is seen if there is room.
+     *
+     * @param description The description of the operation.
+     * @return The histogram, or the overflow histogram if the maximum number of descriptions was reached.
+     */
+    private LatencyHistogram histogram(final String description) {
+        final String key = description == null ? "" : description;
+        final LatencyHistogram histogram = histograms.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= maxDescriptions) {
+            return overflow;
+        }
+        return histograms.computeIfAbsent(key, k -> new LatencyHistogram(k, stripes, maxExemplars));
+    }
+
+    /**
+     * Takes a snapshot of the histogram of every description seen so far.
+     *
+     * @return The snapshots, one per description.
+     */
+    public Collection<LatencySnapshot> snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Takes a snapshot of the histogram of every description seen so far and resets them, so that the next snapshot
+     * only has the operations that finish after this one.
+     *
+     * @return The snapshots, one per description.
+     */
+    public Collection<LatencySnapshot> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    /**
+     * Takes a snapshot of the histogram of every description seen so far, and of the overflow histogram if it
+     * recorded any operation.
+     *
+     * @param reset Whether the histograms are reset.
+     * @return The snapshots, one per description.
+     */
+    private Collection<LatencySnapshot> snapshot(final boolean reset) {
+        final List<LatencySnapshot> snapshots = new ArrayList<>(histograms.size() + 1);
+        histograms.values().forEach(histogram -> snapshots.add(histogram.snapshot(reset)));
+        final LatencySnapshot overflowSnapshot = overflow.snapshot(reset);
+        if (overflowSnapshot.getCount() > 0) {
+            snapshots.add(overflowSnapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * Exports the histograms to the configured exporter, logging instead of propagating its failures so that the
+     * periodic export keeps running.
+     */
+    private void exportNow() {
+        try {
+            exporter.export(snapshot(resetOnExport));
+        } catch (final RuntimeException e) {
+            logger.error("Failed to export the latency histograms.", e);
+        }
+    }
+
+    /**
+     * Stops the periodic export of the histograms, if any, after exporting them one last time.
+     */
+    @Override
+    public void close() {
+        if (exportScheduler != null) {
+            exportScheduler.shutdownNow();
+            exportNow();
+        }
+    }
+
+    /**
+     * Times a synchronous operation.
+     *
+     * @param toTrace     The operation.
+     * @param description The description of the operation.
+     * @param eventId     The ID of the trace of the operation, or {@code null}.
+     * @param <R>         The return type.
+     * @return Whatever the operation returned.
+     */
+    private <R> R time(final Supplier<R> toTrace, final String description, final String eventId) {
+        final LatencyHistogram histogram = histogram(description);
+        final long start = System.nanoTime();
+        try {
+            return toTrace.get();
+        } finally {
+            histogram.record(System.nanoTime() - start, eventId);
+        }
+    }
+
+    /**
+     * Times a synchronous operation that returns nothing.
+     *
+     * @param toTrace     The operation.
+     * @param description The description of the operation.
+     * @param eventId     The ID of the trace of the operation, or {@code null}.
+     */
+    private void time(final Runnable toTrace, final String description, final String eventId) {
+        final LatencyHistogram histogram = histogram(description);
+        final long start = System.nanoTime();
+        try {
+            toTrace.run();
+        } finally {
+            histogram.record(System.nanoTime() - start, eventId);
+        }
+    }
+
+    /**
+     * Times an operation that completes a CompletableFuture, until the future completes.
+     *
+     * @param toTraceAsync The operation.
+     * @param description  The description of the operation.
+     * @param eventId      The ID of the trace of the operation, or {@code null}.
+     * @param <R>          The return type.
+     * @return The future returned by the operation.
+     */
+    private <R> CompletableFuture<R> timeFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                final String description, final String eventId) {
+        final LatencyHistogram histogram = histogram(description);
+        final long start = System.nanoTime();
+        final CompletableFuture<R> future = toTraceAsync.get();
+        future.whenComplete((result, throwable) -> histogram.record(System.nanoTime() - start, eventId));
+        return future;
+    }
+
+    /**
+     * Times an operation that completes a Promise, until the promise completes or fails.
+     *
+     * @param toTraceAsync The operation.
+     * @param description  The description of the operation.
+     * @param eventId      The ID of the trace of the operation, or {@code null}.
+     * @param <E>          The error type.
+     * @param <P>          The promise type.
+     * @param <R>          The return type.
+     * @return The promise returned by the operation.
+     */
+    private <E extends Throwable, P extends Promise<R, P, E>, R> P timePromise(final Supplier<P> toTraceAsync,
+                                                                               final String description,
+                                                                               final String eventId) {
+        final LatencyHistogram histogram = histogram(description);
+        final long start = System.nanoTime();
+        final P promise = toTraceAsync.get();
+        promise.onErrorPromise(throwable -> histogram.record(System.nanoTime() - start, eventId));
+        promise.onCompletePromise(result -> histogram.record(System.nanoTime() - start, eventId));
+        return promise;
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final String description) {
+        return timePromise(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description) {
+        return timePromise(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final String description) {
+        return timeFuture(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description) {
+        return timeFuture(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description) {
+        time(toTraceAsync, description, null);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description) {
+        time(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description) {
+        return time(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description) {
+        return time(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final String description, final String eventId) {
+        return timePromise(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description, final String eventId) {
+        return timePromise(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final String description,
+                                                         final String eventId) {
+        return timeFuture(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description,
+                                                         final String eventId) {
+        return timeFuture(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
+                               final String eventId) {
+        time(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final String eventId) {
+        time(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
+                                final String eventId) {
+        return time(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final String eventId) {
+        return time(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public void closeOpen(final Object object) {
+        //Empty because there is no trace to close
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final String description, final TraceContext context) {
+        return timePromise(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                final Supplier<String> description, final TraceContext context) {
+        return timePromise(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final String description,
+                                                         final TraceContext context) {
+        return timeFuture(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object, final Supplier<String> description,
+                                                         final TraceContext context) {
+        return timeFuture(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
+                               final TraceContext context) {
+        time(toTraceAsync, description, null);
+    }
+
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final TraceContext context) {
+        time(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
+                                final TraceContext context) {
+        return time(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final TraceContext context) {
+        return time(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final String description, final TraceContext context) {
+        return time(toTrace, description, null);
+    }
+
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        return time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public void newProcess(final Runnable toTrace, final String description, final TraceContext context) {
+        time(toTrace, description, null);
+    }
+
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
+                                            final TraceContext context) {
+        return timePromise(toTrace, description, null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                            final TraceContext context) {
+        return timePromise(toTrace, description.get(), null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                     final String description, final TraceContext context) {
+        return timeFuture(toTrace, description, null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                     final Supplier<String> description, final TraceContext context) {
+        return timeFuture(toTrace, description.get(), null);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final String description, final TraceContext context) {
+        return time(toTrace, description, null);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        return time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final String description, final TraceContext context) {
+        time(toTrace, description, null);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final String description,
+                                                    final TraceContext context) {
+        return timeFuture(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description,
+                                                    final TraceContext context) {
+        return timeFuture(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
+                                            final TraceContext context) {
+        return timePromise(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                            final TraceContext context) {
+        return timePromise(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public Map<String, String> serializeContext() {
+        return new HashMap<>();
+    }
+
+    @Override
+    public TraceContext deserializeContext(final Map<String, String> headers) {
+        return TRACE_CONTEXT;
+    }
+
+    @Override
+    public int serializeContext(final ByteBuffer buffer) {
+        //There is no context to propagate
+        return 0;
+    }
+
+    @Override
+    public TraceContext deserializeContext(final ByteBuffer buffer) {
+        //Skips the context without reading it, since it is not used, so the headers after it can still be read
+        BinaryContextLayout.skip(buffer);
+        return TRACE_CONTEXT;
+    }
+
+    @Override
+    public TraceContext currentContext() {
+        return TRACE_CONTEXT;
+    }
+
+    @Override
+    public TraceContext currentContextforObject(final Object obj) {
+        return TRACE_CONTEXT;
+    }
+
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final String description) {
+        return time(toTrace, description, null);
+    }
+
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        return time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public void newTrace(final Runnable toTrace, final String description) {
+        time(toTrace, description, null);
+    }
+
+    @Override
+    public void newTrace(final Runnable toTrace, final Supplier<String> description) {
+        time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                  final String description) {
+        return timeFuture(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                  final Supplier<String> description) {
+        return timeFuture(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description) {
+        return timePromise(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        return timePromise(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final String description) {
+        return time(toTrace, description, null);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        return time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final String description) {
+        time(toTrace, description, null);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description) {
+        time(toTrace, description.get(), null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final String description) {
+        return timeFuture(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description) {
+        return timeFuture(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description) {
+        return timePromise(toTraceAsync, description, null);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        return timePromise(toTraceAsync, description.get(), null);
+    }
+
+    @Override
+    public boolean isActive() {
+        return false;
+    }
+
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final String description, final String eventId) {
+        return time(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> R newTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return time(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public void newTrace(final Runnable toTrace, final String description, final String eventId) {
+        time(toTrace, description, eventId);
+    }
+
+    @Override
+    public void newTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        time(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                  final String description,
+                                                  final String eventId) {
+        return timeFuture(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                  final Supplier<String> description,
+                                                  final String eventId) {
+        return timeFuture(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description,
+                                          final String eventId) {
+        return timePromise(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                          final String eventId) {
+        return timePromise(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final String description, final String eventId) {
+        return time(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return time(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public void newProcess(final Runnable toTrace, final String description, final String eventId) {
+        time(toTrace, description, eventId);
+    }
+
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        time(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                  final String description,
+                                                  final String eventId) {
+        return timeFuture(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                  final Supplier<String> description,
+                                                  final String eventId) {
+        return timeFuture(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
+                                            final String eventId) {
+        return timePromise(toTrace, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                            final String eventId) {
+        return timePromise(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final String description, final String eventId) {
+        return time(toTrace, description, eventId);
+    }
+
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        return time(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final String description, final String eventId) {
+        time(toTrace, description, eventId);
+    }
+
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        time(toTrace, description.get(), eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final String description,
+                                                    final String eventId) {
+        return timeFuture(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description,
+                                                    final String eventId) {
+        return timeFuture(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
+                                            final String eventId) {
+        return timePromise(toTraceAsync, description, eventId);
+    }
+
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                            final String eventId) {
+        return timePromise(toTraceAsync, description.get(), eventId);
+    }
+
+    @Override
+    public TraceContext currentContextforId(final String eventId) {
+        return TRACE_CONTEXT;
+    }
+
+    @Override
+    public boolean traceHasStarted(final String eventId) {
+        return true;
+    }
+
+    @Override
+    public Tracer getTracer() {
+        return NoopTracerFactory.create();
+    }
+
+    @Override
+    public Span currentSpan() {
+        return NoopSpan.INSTANCE;
+    }
+
+    /**
+     * Builder for {@link MetricsTracingEngine}.
+     */
+    public static class Builder {
+
+        /**
+         * The number of stripes of each histogram, or 0 to pick one from the number of processors.
+         */
+        private int stripes;
+
+        /**
+         * How many of the slowest operations of each description are kept as exemplars. Default value is 0.
+         */
+        private int maxExemplars;
+
+        /**
+         * The maximum number of descriptions recorded in their own histogram. Default value is {@value
+         * #DEFAULT_MAX_DESCRIPTIONS}.
+         */
+        private int maxDescriptions = DEFAULT_MAX_DESCRIPTIONS;
+
+        /**
+         * The exporter the histograms are periodically exported to, or {@code null} to not export them.
+         */
+        private MetricsExporter exporter;
+
+        /**
+         * The interval between exports.
+         */
+        private Duration exportInterval;
+
+        /**
+         * Whether the histograms are reset at each export. Default value is true.
+         */
+        private boolean resetOnExport = true;
+
+        /**
+         * Sets the number of stripes of each histogram. More stripes mean less contention between threads recording
+         * the same description, at the cost of memory and of slower snapshots.
+         *
+         * @param stripes The number of stripes, rounded up to a power of two.
+         * @return This builder.
+         */
+        public Builder withStripes(final int stripes) {
+            Preconditions.checkArgument(stripes > 0);
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * Sets how many of the slowest operations of each description are kept as exemplars. Only the operations
+         * traced with an event ID can become exemplars.
+         *
+         * @param maxExemplars The number of exemplars, 0 to keep none.
+         * @return This builder.
+         */
+        public Builder withExemplars(final int maxExemplars) {
+            Preconditions.checkArgument(maxExemplars >= 0);
+            this.maxExemplars = maxExemplars;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of descriptions recorded in their own histogram. Operations with a description seen
+         * after the maximum is reached are recorded in the histogram with the description {@value
+         * #OVERFLOW_DESCRIPTION}.
+         *
+         * @param maxDescriptions The maximum number of descriptions.
+         * @return This builder.
+         */
+        public Builder withMaxDescriptions(final int maxDescriptions) {
+            Preconditions.checkArgument(maxDescriptions > 0);
+            this.maxDescriptions = maxDescriptions;
+            return this;
+        }
+
+        /**
+         * Exports the histograms periodically, on a daemon thread that is stopped by {@link #close()}.
+         *
+         * @param exporter The exporter.
+         * @param interval The interval between exports.
+         * @return This builder.
+         */
+        public Builder withExporter(final MetricsExporter exporter, final Duration interval) {
+            Preconditions.checkNotNull(exporter);
+            Preconditions.checkNotNull(interval);
+            Preconditions.checkArgument(interval.toMillis() > 0);
+            this.exporter = exporter;
+            this.exportInterval = interval;
+            return this;
+        }
+
+        /**
+         * Sets whether the histograms are reset at each export, so that each export only has the operations since the
+         * last one.
+         *
+         * @param resetOnExport Whether the histograms are reset.
+         * @return This builder.
+         */
+        public Builder withResetOnExport(final boolean resetOnExport) {
+            this.resetOnExport = resetOnExport;
+            return this;
+        }
+
+        /**
+         * Configures this builder from a configuration object. The histograms are exported to the log if an export
+         * interval is configured.
+         *
+         * @param configuration The configuration.
+         * @return This builder.
+         */
+        public Builder fromConfig(final MetricsConfiguration configuration) {
+            this.stripes = Math.max(0, configuration.stripes);
+            this.maxExemplars = Math.max(0, configuration.maxExemplars);
+            if (configuration.maxDescriptions > 0) {
+                this.maxDescriptions = configuration.maxDescriptions;
+            }
+            this.resetOnExport = configuration.resetOnExport;
+            if (configuration.exportIntervalInMillis > 0) {
+                this.exporter = MetricsExporter.LOGGING;
+                this.exportInterval = Duration.ofMillis(configuration.exportIntervalInMillis);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the engine.
+         *
+         * @return The engine.
+         */
+        public MetricsTracingEngine build() {
+            return new MetricsTracingEngine(this);
+        }
+    }
+}
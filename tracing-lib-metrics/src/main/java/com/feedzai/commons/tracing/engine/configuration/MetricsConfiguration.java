@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+import java.util.Objects;
+
+/**
+ * Class that holds the configuration for {@link com.feedzai.commons.tracing.engine.MetricsTracingEngine}, which
+ * records the latency of every operation in a histogram per description instead of building traces.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public class MetricsConfiguration {
+
+    /**
+     * The number of stripes of each histogram, rounded up to a power of two, or 0 to pick one from the number of
+     * processors.
+     */
+    public int stripes;
+
+    /**
+     * How many of the slowest operations of each description are kept as exemplars.
+     */
+    public int maxExemplars;
+
+    /**
+     * The maximum number of descriptions recorded in their own histogram, or 0 for the default. The operations with
+     * other descriptions share a single overflow histogram.
+     */
+    public int maxDescriptions;
+
+    /**
+     * The interval between exports of the histograms to the log, or 0 to never export them.
+     */
+    public long exportIntervalInMillis;
+
+    /**
+     * Whether the histograms are reset at each export, so that each export only has the operations since the last one.
+     */
+    public boolean resetOnExport = true;
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final MetricsConfiguration that = (MetricsConfiguration) o;
+        return stripes == that.stripes
+                && maxExemplars == that.maxExemplars
+                && maxDescriptions == that.maxDescriptions
+                && exportIntervalInMillis == that.exportIntervalInMillis
+                && resetOnExport == that.resetOnExport;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stripes, maxExemplars, maxDescriptions, exportIntervalInMillis, resetOnExport);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsConfiguration{" +
+                "stripes=" + stripes +
+                ", maxExemplars=" + maxExemplars +
+                ", maxDescriptions=" + maxDescriptions +
+                ", exportIntervalInMillis=" + exportIntervalInMillis +
+                ", resetOnExport=" + resetOnExport +
+                '}';
+    }
+}
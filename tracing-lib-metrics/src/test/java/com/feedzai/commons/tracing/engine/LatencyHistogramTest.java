@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testDurationsFallInBucketsThatBoundThem() {
+        for (long nanos = 0; nanos < 1 << 20; nanos++) {
+            final int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(nanos <= LatencyHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || nanos > LatencyHistogram.upperBound(bucket - 1));
+        }
+        for (int exponent = 20; exponent < 63; exponent++) {
+            final long nanos = (1L << exponent) + 12345;
+            final int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(nanos <= LatencyHistogram.upperBound(bucket));
+            assertTrue(nanos > LatencyHistogram.upperBound(bucket - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.bucket(-5));
+    }
+
+    @Test
+    public void testBucketsAreWithinAnEighthOfTheDuration() {
+        for (int bucket = LatencyHistogram.SUB_BUCKETS; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+            final long lower = LatencyHistogram.upperBound(bucket - 1) + 1;
+            final long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(upper - lower < lower / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void testSnapshotComputesPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram("op", 1, 0);
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000, null);
+        }
+        final LatencySnapshot snapshot = histogram.snapshot(false);
+        assertEquals("op", snapshot.getDescription());
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500_000L, snapshot.getSumNanos());
+        assertEquals(1_000_000L, snapshot.getMaxNanos());
+        assertEquals(500_500, snapshot.getMeanNanos(), 0.001);
+        assertEquals(500_000, snapshot.getValueAtPercentile(50), 500_000 / 8);
+        assertEquals(990_000, snapshot.getValueAtPercentile(99), 990_000 / 8);
+        assertEquals(1_000_000L, snapshot.getValueAtPercentile(100));
+        assertEquals(1000, snapshot.getBuckets().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testSnapshotAndResetStartsOver() {
+        final LatencyHistogram histogram = new LatencyHistogram("op", 2, 1);
+        histogram.record(100, "a");
+        histogram.record(200, "b");
+        assertEquals(2, histogram.snapshot(true).getCount());
+
+        final LatencySnapshot empty = histogram.snapshot(false);
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getSumNanos());
+        assertEquals(0, empty.getMaxNanos());
+        assertEquals(0, empty.getValueAtPercentile(99));
+        assertTrue(empty.getExemplars().isEmpty());
+
+        histogram.record(50, "c");
+        assertEquals("c", histogram.snapshot(false).getExemplars().get(0).getTraceId());
+    }
+
+    @Test
+    public void testKeepsTheSlowestSamplesAsExemplars() {
+        final LatencyHistogram histogram = new LatencyHistogram("op", 1, 3);
+        final long[] durations = {50, 10, 70, 30, 90, 20, 60};
+        for (final long duration : durations) {
+            histogram.record(duration, "trace-" + duration);
+        }
+        histogram.record(1000, null);
+
+        final List<LatencySnapshot.Exemplar> exemplars = histogram.snapshot(false).getExemplars();
+        assertEquals(3, exemplars.size());
+        assertEquals("trace-90", exemplars.get(0).getTraceId());
+        assertEquals(90, exemplars.get(0).getDurationNanos());
+        assertEquals("trace-70", exemplars.get(1).getTraceId());
+        assertEquals("trace-60", exemplars.get(2).getTraceId());
+    }
+
+    @Test
+    public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram("op", 4, 2);
+        final int threads = 8;
+        final int perThread = 100_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            final long base = i;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int j = 0; j < perThread; j++) {
+                    histogram.record(base * perThread + j, "t" + base);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        final LatencySnapshot snapshot = histogram.snapshot(false);
+        final long total = (long) threads * perThread;
+        assertEquals(total, snapshot.getCount());
+        assertEquals(total * (total - 1) / 2, snapshot.getSumNanos());
+        assertEquals(total - 1, snapshot.getMaxNanos());
+        assertEquals("t" + (threads - 1), snapshot.getExemplars().get(0).getTraceId());
+    }
+}
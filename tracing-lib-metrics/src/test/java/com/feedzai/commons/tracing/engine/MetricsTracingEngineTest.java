@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.MetricsConfiguration;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class MetricsTracingEngineTest {
+
+    private static Map<String, LatencySnapshot> byDescription(final Collection<LatencySnapshot> snapshots) {
+        return snapshots.stream().collect(Collectors.toMap(LatencySnapshot::getDescription, Function.identity()));
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testOperationsAreRecordedByDescription() {
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().build();
+        assertEquals(3, (int) engine.newTrace(() -> 3, "root"));
+        engine.addToTrace(() -> sleep(5), "child", engine.currentContext());
+        engine.addToTrace(() -> sleep(5), () -> "child");
+        engine.newProcess(() -> { }, (String) null, "event");
+
+        final Map<String, LatencySnapshot> snapshots = byDescription(engine.snapshot());
+        assertEquals(3, snapshots.size());
+        assertEquals(1, snapshots.get("root").getCount());
+        assertEquals(2, snapshots.get("child").getCount());
+        assertTrue(snapshots.get("child").getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, snapshots.get("").getCount());
+        assertFalse(engine.isActive());
+    }
+
+    @Test
+    public void testFailedOperationsAreRecorded() {
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().build();
+        try {
+            engine.newTrace(() -> {
+                throw new IllegalStateException();
+            }, "failing");
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals(1, byDescription(engine.snapshot()).get("failing").getCount());
+        }
+    }
+
+    @Test
+    public void testFuturesAreRecordedWhenTheyComplete() {
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().build();
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        assertSame(future, engine.newTraceAsync(() -> future, "async", "event-1"));
+        assertTrue(engine.snapshot().isEmpty() || byDescription(engine.snapshot()).get("async").getCount() == 0);
+
+        future.complete("done");
+        assertEquals(1, byDescription(engine.snapshot()).get("async").getCount());
+    }
+
+    @Test
+    public void testEventIdsOfTheSlowestOperationsAreExemplars() {
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().withExemplars(1).build();
+        engine.newTrace(() -> { }, "op", "fast");
+        engine.newTrace(() -> sleep(10), "op", "slow");
+        engine.newTrace(() -> { }, "op", "fast-again");
+
+        final LatencySnapshot snapshot = byDescription(engine.snapshotAndReset()).get("op");
+        assertEquals(3, snapshot.getCount());
+        assertEquals("slow", snapshot.getExemplars().get(0).getTraceId());
+        assertEquals(0, byDescription(engine.snapshot()).get("op").getCount());
+    }
+
+    @Test
+    public void testHistogramsAreExportedPeriodicallyAndOnClose() throws InterruptedException {
+        final LinkedBlockingQueue<Collection<LatencySnapshot>> exports = new LinkedBlockingQueue<>();
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder()
+                .withExporter(exports::add, Duration.ofMillis(20))
+                .build();
+        engine.addToTrace(() -> { }, "op");
+
+        final Collection<LatencySnapshot> first = exports.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals(1, byDescription(first).get("op").getCount());
+
+        engine.close();
+        exports.clear();
+        engine.addToTrace(() -> { }, "op");
+        engine.close();
+        assertEquals(1, byDescription(exports.poll()).get("op").getCount());
+        assertNull(exports.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDescriptionsOverTheMaximumShareTheOverflowHistogram() {
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().withMaxDescriptions(2).build();
+        assertTrue(engine.snapshot().isEmpty());
+        engine.addToTrace(() -> { }, "first");
+        engine.addToTrace(() -> { }, "second");
+        engine.addToTrace(() -> { }, "third");
+        engine.addToTrace(() -> { }, "fourth");
+        engine.addToTrace(() -> { }, "first");
+
+        final Map<String, LatencySnapshot> snapshots = byDescription(engine.snapshotAndReset());
+        assertEquals(3, snapshots.size());
+        assertEquals(2, snapshots.get("first").getCount());
+        assertEquals(1, snapshots.get("second").getCount());
+        assertEquals(2, snapshots.get(MetricsTracingEngine.OVERFLOW_DESCRIPTION).getCount());
+        assertFalse(byDescription(engine.snapshot()).containsKey(MetricsTracingEngine.OVERFLOW_DESCRIPTION));
+    }
+
+    @Test
+    public void testBinaryContextIsSkippedUpToTheNextHeader() {
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().build();
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(0, engine.serializeContext(buffer));
+        assertEquals(0, buffer.position());
+
+        buffer.put(BinaryContextLayout.VERSION).putLong(1).putLong(2).putLong(3).putLong(0).put((byte) 1)
+                .putShort((short) 2).put((byte) 'i').put((byte) 'd').putInt(42);
+        buffer.flip();
+        engine.deserializeContext(buffer);
+        assertEquals(42, buffer.getInt());
+
+        final ByteBuffer unknown = ByteBuffer.wrap(new byte[]{0, 1, 0, 3, 'k', 'e', 'y'});
+        engine.deserializeContext(unknown);
+        assertEquals(0, unknown.position());
+    }
+
+    @Test
+    public void testBuilderIsConfiguredFromConfiguration() {
+        final MetricsConfiguration configuration = new MetricsConfiguration();
+        configuration.stripes = 3;
+        configuration.maxExemplars = 2;
+        final MetricsTracingEngine engine = new MetricsTracingEngine.Builder().fromConfig(configuration).build();
+        engine.addToTrace(() -> { }, "op", "a");
+        engine.addToTrace(() -> { }, "op", "b");
+        engine.addToTrace(() -> { }, "op", "c");
+        assertEquals(2, byDescription(engine.snapshot()).get("op").getExemplars().size());
+        engine.close();
+
+        configuration.maxDescriptions = 1;
+        final MetricsTracingEngine capped = new MetricsTracingEngine.Builder().fromConfig(configuration).build();
+        capped.addToTrace(() -> { }, "op");
+        capped.addToTrace(() -> { }, "other");
+        assertEquals(1, byDescription(capped.snapshot()).get(MetricsTracingEngine.OVERFLOW_DESCRIPTION).getCount());
+        capped.close();
+    }
+}
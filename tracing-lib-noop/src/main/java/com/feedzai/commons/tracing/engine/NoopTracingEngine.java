@@ -22,6 +22,7 @@ import io.opentracing.noop.NoopSpan;
 import io.opentracing.noop.NoopTracerFactory;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -52,28 +53,56 @@ public class NoopTracingEngine implements TracingEngine {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(Supplier<P> toTraceAsync, Object object,
+                                                Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(Supplier<CompletableFuture<R>> toTraceAsync,
                                                          Object object, String description) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         Object object, Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public void addToTraceOpen(Runnable toTraceAsync, Object object, String description) {
         toTraceAsync.run();
     }
 
+    @Override
+    public void addToTraceOpen(Runnable toTraceAsync, Object object, Supplier<String> description) {
+        toTraceAsync.run();
+    }
+
     @Override
     public <R> R addToTraceOpen(Supplier<R> toTraceAsync, Object value, String description) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> R addToTraceOpen(Supplier<R> toTraceAsync, Object value, Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(Supplier<P> toTraceAsync, Object object,
                                                 String description, String eventId) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(Supplier<P> toTraceAsync, Object object,
+                                                Supplier<String> description, String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(Supplier<CompletableFuture<R>> toTraceAsync,
                                                          Object object, String description,
@@ -81,6 +110,13 @@ public class NoopTracingEngine implements TracingEngine {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         Object object, Supplier<String> description,
+                                                         String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public void addToTraceOpen(Runnable toTraceAsync, Object object, String description,
                                String eventId) {
@@ -88,12 +124,25 @@ public class NoopTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public void addToTraceOpen(Runnable toTraceAsync, Object object, Supplier<String> description,
+                               String eventId) {
+        toTraceAsync.run();
+
+    }
+
     @Override
     public <R> R addToTraceOpen(Supplier<R> toTraceAsync, Object value, String description,
                                 String eventId) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> R addToTraceOpen(Supplier<R> toTraceAsync, Object value, Supplier<String> description,
+                                String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public void closeOpen(Object object) {
 
@@ -105,6 +154,12 @@ public class NoopTracingEngine implements TracingEngine {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(Supplier<P> toTraceAsync, Object object,
+                                                Supplier<String> description, TraceContext context) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(Supplier<CompletableFuture<R>> toTraceAsync,
                                                          Object object, String description,
@@ -112,6 +167,13 @@ public class NoopTracingEngine implements TracingEngine {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         Object object, Supplier<String> description,
+                                                         TraceContext context) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public void addToTraceOpen(Runnable toTraceAsync, Object object, String description,
                                TraceContext context) {
@@ -119,58 +181,117 @@ public class NoopTracingEngine implements TracingEngine {
 
     }
 
+    @Override
+    public void addToTraceOpen(Runnable toTraceAsync, Object object, Supplier<String> description,
+                               TraceContext context) {
+        toTraceAsync.run();
+
+    }
+
     @Override
     public <R> R addToTraceOpen(Supplier<R> toTraceAsync, Object value, String description,
                                 TraceContext context) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> R addToTraceOpen(Supplier<R> toTraceAsync, Object value, Supplier<String> description,
+                                TraceContext context) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <R> R newProcess(Supplier<R> toTrace, String description, TraceContext context) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R newProcess(Supplier<R> toTrace, Supplier<String> description, TraceContext context) {
+        return toTrace.get();
+    }
+
     @Override
     public void newProcess(Runnable toTrace, String description, TraceContext context) {
         toTrace.run();
 
     }
 
+    @Override
+    public void newProcess(Runnable toTrace, Supplier<String> description, TraceContext context) {
+        toTrace.run();
+
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(Supplier<P> toTrace, String description,
                                             TraceContext context) {
         return toTrace.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(Supplier<P> toTrace, Supplier<String> description,
+                                            TraceContext context) {
+        return toTrace.get();
+    }
+
     @Override
     public <R> CompletableFuture<R> newProcessFuture(Supplier<CompletableFuture<R>> toTrace,
                                                      String description, TraceContext context) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(Supplier<CompletableFuture<R>> toTrace,
+                                                     Supplier<String> description, TraceContext context) {
+        return toTrace.get();
+    }
+
     @Override
     public <R> R addToTrace(Supplier<R> toTrace, String description, TraceContext context) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R addToTrace(Supplier<R> toTrace, Supplier<String> description, TraceContext context) {
+        return toTrace.get();
+    }
+
     @Override
     public void addToTrace(Runnable toTrace, String description, TraceContext context) {
         toTrace.run();
 
     }
 
+    @Override
+    public void addToTrace(Runnable toTrace, Supplier<String> description, TraceContext context) {
+        toTrace.run();
+
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description,
                                                     TraceContext context) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description,
+                                                    TraceContext context) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, String description,
                                             TraceContext context) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, Supplier<String> description,
+                                            TraceContext context) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public Map<String, String> serializeContext() {
         return new HashMap<>();
@@ -181,6 +302,19 @@ public class NoopTracingEngine implements TracingEngine {
         return TRACE_CONTEXT;
     }
 
+    @Override
+    public int serializeContext(final ByteBuffer buffer) {
+        //There is no context to propagate
+        return 0;
+    }
+
+    @Override
+    public TraceContext deserializeContext(final ByteBuffer buffer) {
+        //Skips the context without reading it, since it is not used, so the headers after it can still be read
+        BinaryContextLayout.skip(buffer);
+        return TRACE_CONTEXT;
+    }
+
     @Override
     public TraceContext currentContext() {
         return TRACE_CONTEXT;
@@ -196,42 +330,83 @@ public class NoopTracingEngine implements TracingEngine {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R newTrace(Supplier<R> toTrace, Supplier<String> description) {
+        return toTrace.get();
+    }
+
     @Override
     public void newTrace(Runnable toTrace, String description) {
         toTrace.run();
     }
 
+    @Override
+    public void newTrace(Runnable toTrace, Supplier<String> description) {
+        toTrace.run();
+    }
+
     @Override
     public <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, String description) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <R> R addToTrace(Supplier<R> toTrace, String description) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R addToTrace(Supplier<R> toTrace, Supplier<String> description) {
+        return toTrace.get();
+    }
+
     @Override
     public void addToTrace(Runnable toTrace, String description) {
         toTrace.run();
 
     }
 
+    @Override
+    public void addToTrace(Runnable toTrace, Supplier<String> description) {
+        toTrace.run();
+
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, String description) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, Supplier<String> description) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public boolean isActive() {
         return false;
@@ -242,67 +417,133 @@ public class NoopTracingEngine implements TracingEngine {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R newTrace(Supplier<R> toTrace, Supplier<String> description, String eventId) {
+        return toTrace.get();
+    }
+
     @Override
     public void newTrace(Runnable toTrace, String description, String eventId) {
         toTrace.run();
 
     }
 
+    @Override
+    public void newTrace(Runnable toTrace, Supplier<String> description, String eventId) {
+        toTrace.run();
+
+    }
+
     @Override
     public <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description,
                                                   String eventId) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> newTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description,
+                                                  String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, String description, String eventId) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(Supplier<P> toTraceAsync, Supplier<String> description, String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <R> R newProcess(Supplier<R> toTrace, String description, String eventId) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R newProcess(Supplier<R> toTrace, Supplier<String> description, String eventId) {
+        return toTrace.get();
+    }
+
     @Override
     public void newProcess(Runnable toTrace, String description, String eventId) {
         toTrace.run();
 
     }
 
+    @Override
+    public void newProcess(Runnable toTrace, Supplier<String> description, String eventId) {
+        toTrace.run();
+
+    }
+
     @Override
     public <R> CompletableFuture<R> newProcessFuture(Supplier<CompletableFuture<R>> toTrace, String description,
                                                      String eventId) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(Supplier<CompletableFuture<R>> toTrace, Supplier<String> description,
+                                                     String eventId) {
+        return toTrace.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(Supplier<P> toTrace, String description, String eventId) {
         return toTrace.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(Supplier<P> toTrace, Supplier<String> description, String eventId) {
+        return toTrace.get();
+    }
+
     @Override
     public <R> R addToTrace(Supplier<R> toTrace, String description, String eventId) {
         return toTrace.get();
     }
 
+    @Override
+    public <R> R addToTrace(Supplier<R> toTrace, Supplier<String> description, String eventId) {
+        return toTrace.get();
+    }
+
     @Override
     public void addToTrace(Runnable toTrace, String description, String eventId) {
         toTrace.run();
 
     }
 
+    @Override
+    public void addToTrace(Runnable toTrace, Supplier<String> description, String eventId) {
+        toTrace.run();
+
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, String description,
                                                     String eventId) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(Supplier<CompletableFuture<R>> toTraceAsync, Supplier<String> description,
+                                                    String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, String description, String eventId) {
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(Supplier<P> toTraceAsync, Supplier<String> description, String eventId) {
+        return toTraceAsync.get();
+    }
+
     @Override
     public TraceContext currentContextforId(String eventId) {
         return TRACE_CONTEXT;
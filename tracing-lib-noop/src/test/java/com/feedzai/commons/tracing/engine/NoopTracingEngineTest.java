@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class NoopTracingEngineTest {
+
+    private final NoopTracingEngine engine = new NoopTracingEngine();
+
+    private static ByteBuffer binaryContext(final String eventId) {
+        final byte[] id = eventId.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryContextLayout.FIXED_LENGTH + id.length + Integer.BYTES);
+        buffer.put(BinaryContextLayout.VERSION).putLong(1).putLong(2).putLong(3).putLong(0).put((byte) 1)
+                .putShort((short) id.length).put(id);
+        return buffer;
+    }
+
+    @Test
+    public void testNoContextIsSerialized() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(0, engine.serializeContext(buffer));
+        assertEquals(0, buffer.position());
+        assertTrue(engine.serializeContext().isEmpty());
+    }
+
+    @Test
+    public void testBinaryContextIsSkippedUpToTheNextHeader() {
+        final ByteBuffer buffer = binaryContext("event");
+        buffer.putInt(42);
+        buffer.flip();
+
+        assertNotNull(engine.deserializeContext(buffer));
+        assertEquals(Integer.BYTES, buffer.remaining());
+        assertEquals(42, buffer.getInt());
+    }
+
+    @Test
+    public void testUnknownOrTruncatedBinaryContextIsLeftUntouched() {
+        final ByteBuffer unknown = ByteBuffer.wrap(new byte[]{0, 1, 0, 3, 'k', 'e', 'y'});
+        assertNotNull(engine.deserializeContext(unknown));
+        assertEquals(0, unknown.position());
+
+        final ByteBuffer truncated = binaryContext("event");
+        truncated.flip();
+        truncated.limit(truncated.limit() - 1);
+        engine.deserializeContext(truncated);
+        assertEquals(0, truncated.position());
+
+        assertNotNull(engine.deserializeContext(ByteBuffer.allocate(0)));
+    }
+}
@@ -19,17 +19,19 @@ package com.feedzai.commons.tracing.engine;
 import com.feedzai.commons.tracing.api.Promise;
 import com.feedzai.commons.tracing.api.TraceContext;
 import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
+import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 
@@ -48,16 +50,67 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
     protected final Tracer tracer;
 
     /**
-     * Maps a traceID to the span that currently represents its point in the execution.
+     * Maps a traceID to the stack of spans that currently represent its point in the execution.
      */
-    protected final Cache<String, LinkedList<Span>> spanIdMappings;
+    protected final TraceRegistry<SpanStack> spanIdMappings;
 
     /**
      * Maps a uniquely identifying object to an open span.
      */
-    protected final Cache<Object, Span> responseMappings;
+    protected final OpenSpanRegistry responseMappings;
+
+    /**
+     * Resolves the trace ID of the spans created by this engine from their native context.
+     */
+    protected final TraceIdResolver traceIdResolver;
+
+    /**
+     * Runs the maintenance of the caches of this engine.
+     */
+    private final CacheMaintenance cacheMaintenance;
+
+    /**
+     * Where the maintenance of the caches of this engine runs.
+     */
+    private final MaintenanceMode maintenanceMode;
+
+    /**
+     * How long the entries of a finished trace are kept, in nanoseconds, or -1 if finished traces are not purged.
+     */
+    private volatile long purgeGraceNanos;
+
+    /**
+     * Whether the finished traces whose grace period is over are purged by the threads that finish traces, rather
+     * than by the background maintenance.
+     */
+    private final boolean purgeInline;
+
+    /**
+     * The finished traces waiting for their grace period to be over, in the order they finished.
+     */
+    private final ConcurrentLinkedQueue<FinishedTrace> finishedTraces = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a thread is purging the finished traces whose grace period is over.
+     */
+    private final AtomicBoolean purging = new AtomicBoolean();
+
+    /**
+     * Decides which operations are traced, by description.
+     */
+    private volatile OperationRules operationRules = OperationRules.NONE;
+
+    /**
+     * The settings of the aggregation of repeated child spans.
+     */
+    private volatile SpanAggregation spanAggregation = SpanAggregation.NONE;
 
 
+    /**
+     * Zeros used to left-pad the low bits of 128 bit trace IDs.
+     */
+    private static final String ZERO_PADDING = "0000000000000000";
+
     /**
      * The logger.
      */
@@ -67,130 +120,415 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * Constructor for this abstract class to be called by the extension classes to supply the implementation specific
      * parameters.
      *
-     * @param tracer        The Tracer implementation of the underlying tracing Engine.
-     * @param configuration The configuration parameters for the caches.
+     * @param tracer          The Tracer implementation of the underlying tracing Engine.
+     * @param configuration   The configuration parameters for the caches.
+     * @param traceIdResolver Resolves the trace ID of a span from the native context of the underlying tracing Engine.
      */
-    AbstractOpenTracingEngine(final Tracer tracer, final CacheConfiguration configuration) {
+    AbstractOpenTracingEngine(final Tracer tracer, final CacheConfiguration configuration,
+                              final TraceIdResolver traceIdResolver) {
+        this(tracer, configuration, traceIdResolver, true);
+    }
+
+    /**
+     * Constructor for this abstract class to be called by the extension classes that register the maintenance of
+     * caches of their own, and start it themselves once they are registered.
+     *
+     * @param tracer           The Tracer implementation of the underlying tracing Engine.
+     * @param configuration    The configuration parameters for the caches.
+     * @param traceIdResolver  Resolves the trace ID of a span from the native context of the underlying tracing
+     *                         Engine.
+     * @param startMaintenance Whether the maintenance of the caches is started by this constructor.
+     */
+    AbstractOpenTracingEngine(final Tracer tracer, final CacheConfiguration configuration,
+                              final TraceIdResolver traceIdResolver, final boolean startMaintenance) {
         this.tracer = tracer;
-        this.spanIdMappings = CacheBuilder.newBuilder().expireAfterWrite(configuration.getExpirationAfterWrite().toNanos(), TimeUnit.NANOSECONDS)
-                .maximumSize(configuration.getMaximumSize()).build();
-        this.responseMappings = CacheBuilder.newBuilder().expireAfterWrite(configuration.getExpirationAfterWrite().toNanos(), TimeUnit.NANOSECONDS)
-                .maximumSize(configuration.getMaximumSize()).weakKeys().build();
+        this.traceIdResolver = traceIdResolver;
+        this.cacheMaintenance = new CacheMaintenance(configuration);
+        this.spanIdMappings = new TraceRegistry<>(configuration);
+        this.responseMappings = new OpenSpanRegistry(this::finishCollectedSpan, configuration.getMaintenanceMode());
+        cacheMaintenance.register(spanIdMappings::maintain);
+        cacheMaintenance.register(responseMappings::maintain);
+        this.maintenanceMode = configuration.getMaintenanceMode();
+        this.purgeGraceNanos = purgeGraceNanos(configuration);
+        this.purgeInline = maintenanceMode == MaintenanceMode.INLINE;
+        cacheMaintenance.register(maintenance -> purgeFinishedTraces());
+        if (startMaintenance) {
+            cacheMaintenance.start();
+        }
+    }
+
+    /**
+     * Applies new expiration, maximum size and purge settings to the caches of this engine without rebuilding them.
+     * Entries above the new maximum size are evicted. The maintenance mode cannot be changed.
+     *
+     * @param configuration The new configuration of the caches.
+     * @throws IllegalArgumentException if the configuration has a different maintenance mode.
+     */
+    public void reconfigureCaches(final CacheConfiguration configuration) {
+        if (configuration.getMaintenanceMode() != maintenanceMode) {
+            throw new IllegalArgumentException("The maintenance mode of the caches cannot be changed from "
+                    + maintenanceMode + " to " + configuration.getMaintenanceMode());
+        }
+        spanIdMappings.reconfigure(configuration, cacheMaintenance);
+        this.purgeGraceNanos = purgeGraceNanos(configuration);
+    }
+
+    /**
+     * Replaces the rules that decide which operations are traced. Operations whose rule is disabled are called
+     * directly, without building a span. Engines whose tracer can sample by operation also apply the sample rates of
+     * the rules to the traces that start afterwards.
+     *
+     * @param operationRules The compiled rules.
+     */
+    public void setOperationRules(final OperationRules operationRules) {
+        this.operationRules = operationRules == null ? OperationRules.NONE : operationRules;
+    }
+
+    /**
+     * Getter for {@code operationRules}.
+     *
+     * @return The rules that decide which operations are traced.
+     */
+    public OperationRules getOperationRules() {
+        return operationRules;
+    }
+
+    /**
+     * Replaces the settings of the aggregation of repeated child spans. Children that were already counted keep the
+     * settings they were counted with until their parent finishes.
+     *
+     * @param spanAggregation The compiled settings.
+     */
+    public void setSpanAggregation(final SpanAggregation spanAggregation) {
+        this.spanAggregation = spanAggregation == null ? SpanAggregation.NONE : spanAggregation;
+    }
+
+    /**
+     * Getter for {@code spanAggregation}.
+     *
+     * @return The settings of the aggregation of repeated child spans.
+     */
+    public SpanAggregation getSpanAggregation() {
+        return spanAggregation;
+    }
+
+    /**
+     * Returns the grace period of finished traces of a configuration.
+     *
+     * @param configuration The configuration of the caches.
+     * @return The grace period in nanoseconds, or -1 if finished traces are not purged.
+     */
+    private static long purgeGraceNanos(final CacheConfiguration configuration) {
+        return configuration.getPurgeGracePeriod() == null ? -1 : configuration.getPurgeGracePeriod().toNanos();
+    }
+
+    /**
+     * Returns the maintenance of the caches of this engine, which counts the entries it removed.
+     *
+     * @return The maintenance of the caches.
+     */
+    public CacheMaintenance getCacheMaintenance() {
+        return cacheMaintenance;
     }
 
     @Override
     public <R> R newProcess(final Supplier<R> toTrace, final String description, final TraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            return traceSkipped(toTrace, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
+        startProcess(span);
 
         final R result;
         result = traceParentSafelyAndReturn(toTrace, span);
         return result;
     }
 
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        return newProcess(toTrace, description.get(), context);
+    }
+
     @Override
     public void newProcess(final Runnable toTrace, final String description, final TraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            traceSkipped(toTrace, context);
+            return;
+        }
+        if (isSampledOut(context)) {
+            traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+            return;
+        }
+        final SpanHandle span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
+        startProcess(span);
 
         traceParentSafely(toTrace, span);
     }
 
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        if (isSampledOut(context)) {
+            traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+            return;
+        }
+        newProcess(toTrace, description.get(), context);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                                             final TraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            return traceSkipped(toTrace, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
+        startProcess(span);
 
         return finishParentPromiseSpan(toTrace, span);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                                            final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        return newProcessPromise(toTrace, description.get(), context);
+    }
+
     @Override
     public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
                                                      final String description,
                                                      final TraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            return traceSkipped(toTrace, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
+        startProcess(span);
         return finishParentFutureSpan(toTrace.get(), span);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                     final Supplier<String> description,
+                                                     final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        return newProcessFuture(toTrace, description.get(), context);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                                                 final String description,
                                                                 final TraceContext context) {
-        final Span span = buildSpanAsChild(description, (SpanTraceContext) context);
+        if (!isTraced(description)) {
+            return traceSkipped(toTraceAsync, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanAsChild(description, (SpanTraceContext) context);
         responseMappings.put(object, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                                final Supplier<String> description,
+                                                                final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        return addToTraceOpenPromise(toTraceAsync, object, description.get(), context);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                                                 final String description) {
-        final Span span = buildSpan(description);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = buildSpan(description);
         responseMappings.put(object, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                                final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        return addToTraceOpenPromise(toTraceAsync, object, description.get());
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object,
                                                          final String description,
                                                          final TraceContext context) {
-        final Span span = buildSpanAsChild(description, (SpanTraceContext) context);
+        if (!isTraced(description)) {
+            return traceSkipped(toTraceAsync, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanAsChild(description, (SpanTraceContext) context);
         responseMappings.put(object, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object,
+                                                         final Supplier<String> description,
+                                                         final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        return addToTraceOpenFuture(toTraceAsync, object, description.get(), context);
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object,
                                                          final String description) {
-        final Span span = buildSpan(description);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = buildSpan(description);
         responseMappings.put(object, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object,
+                                                         final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        return addToTraceOpenFuture(toTraceAsync, object, description.get());
+    }
+
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                                final TraceContext context) {
-        final Span span = buildSpanAsChild(description, (SpanTraceContext) context);
-        final String traceId = getTraceIdFromSpan(span);
-        cacheObject(object, span, traceId);
+        if (!isTraced(description)) {
+            traceSkipped(toTraceAsync, context);
+            return;
+        }
+        if (isSampledOut(context)) {
+            traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+            return;
+        }
+        final SpanHandle span = buildSpanAsChild(description, (SpanTraceContext) context);
+        cacheObject(object, span);
         toTraceAsync.run();
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final TraceContext context) {
+        if (isSampledOut(context)) {
+            traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+            return;
+        }
+        addToTraceOpen(toTraceAsync, object, description.get(), context);
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                                 final TraceContext context) {
-        final Span span = buildSpanAsChild(description, (SpanTraceContext) context);
-        final String traceId = getTraceIdFromSpan(span);
-        cacheObject(value, span, traceId);
+        if (!isTraced(description)) {
+            return traceSkipped(toTraceAsync, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanAsChild(description, (SpanTraceContext) context);
+        cacheObject(value, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        return addToTraceOpen(toTraceAsync, value, description.get(), context);
+    }
+
     @Override
     public void addToTraceOpen(final Runnable toTrace, final Object object, final String description) {
-        final Span span = buildSpan(description);
-        final String traceId = getTraceIdFromSpan(span);
-        cacheObject(object, span, traceId);
+        if (!isTraced(description)) {
+            toTrace.run();
+            return;
+        }
+        if (isActiveSpanSampledOut()) {
+            toTrace.run();
+            return;
+        }
+        final SpanHandle span = buildSpan(description);
+        cacheObject(object, span);
         toTrace.run();
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTrace, final Object object, final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            toTrace.run();
+            return;
+        }
+        addToTraceOpen(toTrace, object, description.get());
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTrace, final Object value, final String description) {
-        final Span span = buildSpan(description);
-        final String traceId = getTraceIdFromSpan(span);
-        cacheObject(value, span, traceId);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        if (isActiveSpanSampledOut()) {
+            return toTrace.get();
+        }
+        final SpanHandle span = buildSpan(description);
+        cacheObject(value, span);
         return toTrace.get();
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTrace, final Object value, final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            return toTrace.get();
+        }
+        return addToTraceOpen(toTrace, value, description.get());
+    }
+
     @Override
     public <R> R newTrace(final Supplier<R> toTrace, final String description) {
-        final Span span = buildActiveParentSpan(description);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        final SpanHandle span = buildActiveParentSpan(description);
         final R result;
         result = traceParentSafelyAndReturn(toTrace, span);
         return result;
@@ -199,94 +537,254 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
 
     @Override
     public void newTrace(final Runnable toTrace, final String description) {
-        final Span span = buildActiveParentSpan(description);
+        if (!isTraced(description)) {
+            toTrace.run();
+            return;
+        }
+        final SpanHandle span = buildActiveParentSpan(description);
         traceParentSafely(toTrace, span);
     }
 
     @Override
     public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                   final String description) {
-        final Span span = buildActiveParentSpan(description);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = buildActiveParentSpan(description);
         return finishParentFutureSpan(toTraceAsync.get(), span);
     }
 
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description) {
-        final Span span = buildActiveParentSpan(description);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = buildActiveParentSpan(description);
         return finishParentPromiseSpan(toTraceAsync, span);
     }
 
 
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description) {
-        final Span span = buildActiveSpan(description);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        if (isActiveSpanSampledOut()) {
+            return toTrace.get();
+        }
+        final SpanAggregate aggregate = aggregateOfActiveSpan(description);
+        if (aggregate != null) {
+            return traceAggregatedAndReturn(toTrace, aggregate);
+        }
+        final SpanHandle span = buildActiveSpan(description);
         return traceSafelyAndReturn(toTrace, span);
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            return toTrace.get();
+        }
+        return addToTrace(toTrace, description.get());
+    }
+
 
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description, final TraceContext context) {
-        final Span span = buildActiveSpanAsChild(description, (SpanTraceContext) context);
+        if (!isTraced(description)) {
+            return traceSkipped(toTrace, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        final SpanAggregate aggregate = aggregateOf(context, description);
+        if (aggregate != null) {
+            return traceAggregatedAndReturn(toTrace, aggregate);
+        }
+        final SpanHandle span = buildActiveSpanAsChild(description, (SpanTraceContext) context);
         return traceSafelyAndReturn(toTrace, span);
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+        }
+        return addToTrace(toTrace, description.get(), context);
+    }
+
     @Override
     public void addToTrace(final Runnable toTrace, final String description) {
-        final Span span = buildActiveSpan(description);
+        if (!isTraced(description)) {
+            toTrace.run();
+            return;
+        }
+        if (isActiveSpanSampledOut()) {
+            toTrace.run();
+            return;
+        }
+        final SpanAggregate aggregate = aggregateOfActiveSpan(description);
+        if (aggregate != null) {
+            traceAggregated(toTrace, aggregate);
+            return;
+        }
+        final SpanHandle span = buildActiveSpan(description);
         traceSafely(toTrace, span);
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            toTrace.run();
+            return;
+        }
+        addToTrace(toTrace, description.get());
+    }
+
 
     @Override
     public void addToTrace(final Runnable toTrace, final String description, final TraceContext context) {
-        final Span span = buildActiveSpanAsChild(description, (SpanTraceContext) context);
+        if (!isTraced(description)) {
+            traceSkipped(toTrace, context);
+            return;
+        }
+        if (isSampledOut(context)) {
+            traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+            return;
+        }
+        final SpanAggregate aggregate = aggregateOf(context, description);
+        if (aggregate != null) {
+            traceAggregated(toTrace, aggregate);
+            return;
+        }
+        final SpanHandle span = buildActiveSpanAsChild(description, (SpanTraceContext) context);
         traceSafely(toTrace, span);
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final TraceContext context) {
+        if (isSampledOut(context)) {
+            traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+            return;
+        }
+        addToTrace(toTrace, description.get(), context);
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                     final String description) {
-        final Span span = buildActiveSpan(description);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = buildActiveSpan(description);
         return finishFutureSpan(toTraceAsync.get(), span);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        return addToTraceAsync(toTraceAsync, description.get());
+    }
+
 
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                     final String description, final TraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
+        if (!isTraced(description)) {
+            return traceSkipped(toTraceAsync, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
         return finishFutureSpan(toTraceAsync.get(), span);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description, final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        return addToTraceAsync(toTraceAsync, description.get(), context);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description) {
-        final Span span = buildActiveSpan(description);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = buildActiveSpan(description);
         return finishPromiseSpan(toTraceAsync, span);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description) {
+        if (isActiveSpanSampledOut()) {
+            return toTraceAsync.get();
+        }
+        return addToTracePromise(toTraceAsync, description.get());
+    }
+
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
                                                             final TraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
+        if (!isTraced(description)) {
+            return traceSkipped(toTraceAsync, context);
+        }
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        final SpanHandle span = buildSpanFromAsyncContext(description, (SpanTraceContext) context, true);
         return finishPromiseSpan(toTraceAsync, span);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                                            final TraceContext context) {
+        if (isSampledOut(context)) {
+            return traceSampledOut(toTraceAsync, ((SpanTraceContext) context).get());
+        }
+        return addToTracePromise(toTraceAsync, description.get(), context);
+    }
+
     @Override
     public void closeOpen(final Object object) {
-        final Span span = responseMappings.getIfPresent(object != null ? object : new Object());
+        final SpanHandle span = responseMappings.remove(object);
         if (span != null) {
-            span.finish();
+            span.getSpan().finish();
             popSpanForTraceId(span);
         }
     }
 
+    /**
+     * Finishes an open span whose object was garbage collected without being passed to {@link #closeOpen(Object)}.
+     *
+     * @param span The open span.
+     */
+    private void finishCollectedSpan(final SpanHandle span) {
+        logger.debug("Finishing open span of a collected object that was never closed");
+        span.getSpan().finish();
+        popSpanForTraceId(span);
+    }
+
 
     /**
      * Finishes span after the {@link CompletableFuture} has completed, either successfully or exceptionally.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#finishPromiseSpan(Supplier, Span)} but for {@link
+     * <p>Similar to {@link AbstractOpenTracingEngine#finishPromiseSpan(Supplier, SpanHandle)} but for {@link
      * CompletableFuture}
      *
      * @param toTraceAsync The {@link CompletableFuture} to which the callback will be attached.
@@ -294,8 +792,11 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param <R>          The return type of the {@link CompletableFuture}
      * @return the same {@link CompletableFuture} that was passed in {@code toTraceAsync}
      */
-    <R> CompletableFuture<R> finishFutureSpan(final CompletableFuture<R> toTraceAsync, final Span span) {
+    <R> CompletableFuture<R> finishFutureSpan(final CompletableFuture<R> toTraceAsync, final SpanHandle span) {
         toTraceAsync.handle((future, exception) -> {
+            if (exception != null) {
+                spanFailed(span);
+            }
             finishActive(span);
             popSpanForTraceId(span);
             return future;
@@ -303,17 +804,267 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
         return toTraceAsync;
     }
 
-    protected void popSpanForTraceId(final Span span) {
-        final LinkedList<Span> cached = spanIdMappings.getIfPresent(getTraceIdFromSpan(span));
-        if (cached != null) {
-            cached.remove(span);
+    /**
+     * Removes a finished span from the stack of spans that represent the current point in the execution of its trace.
+     *
+     * @param span The span that has finished.
+     */
+    protected void popSpanForTraceId(final SpanHandle span) {
+        final SpanStack spans = span.release();
+        if (spans != null) {
+            spans.remove(span);
+            spanFinished(span, spans);
+        }
+    }
+
+    /**
+     * Releases a finished span that started a trace or a process. The span is left on the stack, so that operations
+     * that join the trace late still use it as parent.
+     *
+     * @param span The span that has finished.
+     */
+    void releaseParentSpan(final SpanHandle span) {
+        final SpanStack spans = span.release();
+        if (spans != null) {
+            spanFinished(span, spans);
+        }
+    }
+
+    /**
+     * Counts a finished span in the stack of its trace and, if it was the last open span and finished traces are
+     * purged, purges the trace now or queues it until its grace period is over. The aggregated children of the span,
+     * and those of the whole trace if it finished, are reported first.
+     *
+     * @param span  The span that has finished.
+     * @param spans The stack of the trace the span was registered with.
+     */
+    private void spanFinished(final SpanHandle span, final SpanStack spans) {
+        finishAggregates(spans.removeAggregates(span.getSpan().context()));
+        if (!spans.spanFinished()) {
+            return;
+        }
+        finishAggregates(spans.removeAggregates());
+        traceFinished(span.getTraceIdHigh(), span.getTraceIdLow(), spans);
+        final long purgeGraceNanos = this.purgeGraceNanos;
+        if (purgeGraceNanos < 0) {
+            return;
+        }
+        if (purgeGraceNanos == 0) {
+            purgeTrace(span.getTraceIdHigh(), span.getTraceIdLow(), spans);
+            return;
+        }
+        finishedTraces.add(new FinishedTrace(span.getTraceIdHigh(), span.getTraceIdLow(), spans,
+                System.nanoTime() + purgeGraceNanos));
+        if (purgeInline) {
+            purgeFinishedTraces();
+        }
+    }
+
+    /**
+     * Purges the finished traces whose grace period is over. Only one thread purges at a time, the others return
+     * immediately.
+     */
+    private void purgeFinishedTraces() {
+        if (finishedTraces.isEmpty() || !purging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final long now = System.nanoTime();
+            FinishedTrace trace;
+            while ((trace = finishedTraces.peek()) != null && trace.purgeTime - now <= 0) {
+                finishedTraces.poll();
+                purgeTrace(trace.traceIdHigh, trace.traceIdLow, trace.spans);
+            }
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    /**
+     * Removes the entries of a trace, unless a span joined it after it finished or the trace is already mapped to
+     * another stack.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param spans       The stack of the finished trace.
+     */
+    private void purgeTrace(final long traceIdHigh, final long traceIdLow, final SpanStack spans) {
+        if (spans.isFinished() && spanIdMappings.remove(traceIdHigh, traceIdLow, spans)) {
+            tracePurged(traceIdHigh, traceIdLow, spans);
+            cacheMaintenance.recordPurged();
+        }
+    }
+
+    /**
+     * Called when the last open span of a trace that is tracked by this engine finishes, after that span was finished
+     * in the underlying tracer, so that extensions can act on the whole trace. This is called again if spans join the
+     * trace late and finish.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param spans       The stack of the finished trace.
+     */
+    protected void traceFinished(final long traceIdHigh, final long traceIdLow, final SpanStack spans) {
+    }
+
+    /**
+     * Marks a span whose operation failed with the {@link Tags#ERROR} tag, before it is finished.
+     *
+     * @param span The span of the operation that failed.
+     */
+    void spanFailed(final SpanHandle span) {
+        Tags.ERROR.set(span.getSpan(), true);
+    }
+
+    /**
+     * Returns the aggregate of the children of the active span with a description, if they are aggregated.
+     *
+     * @param description The description of the child.
+     * @return The aggregate if the child should be aggregated, {@code null} if it should be traced as a span.
+     */
+    private SpanAggregate aggregateOfActiveSpan(final String description) {
+        if (!spanAggregation.isEnabled()) {
+            return null;
+        }
+        final Span active = tracer.activeSpan();
+        return active == null ? null : aggregateOf(active.context(), description);
+    }
+
+    /**
+     * Returns the aggregate of the children of a context with a description, if they are aggregated.
+     *
+     * @param context     The context of the parent passed to this engine, which may be {@code null}.
+     * @param description The description of the child.
+     * @return The aggregate if the child should be aggregated, {@code null} if it should be traced as a span.
+     */
+    private SpanAggregate aggregateOf(final TraceContext context, final String description) {
+        if (!spanAggregation.isEnabled() || context == null) {
+            return null;
+        }
+        return aggregateOf(((SpanTraceContext) context).get(), description);
+    }
+
+    /**
+     * Counts a child of a parent span and returns its aggregate if the children with its description reached the
+     * aggregation threshold. The first aggregated child starts the span that represents them all.
+     *
+     * @param parent      The context of the parent span, which may be {@code null}.
+     * @param description The description of the child.
+     * @return The aggregate if the child should be aggregated, {@code null} if it should be traced as a span.
+     */
+    SpanAggregate aggregateOf(final SpanContext parent, final String description) {
+        final SpanAggregation aggregation = this.spanAggregation;
+        if (!aggregation.isEnabled() || parent == null) {
+            return null;
+        }
+        final SpanStack spans = spanIdMappings.get(traceIdResolver.traceIdHigh(parent),
+                traceIdResolver.traceIdLow(parent));
+        if (spans == null) {
+            return null;
+        }
+        final SpanAggregate aggregate = spans.aggregate(parent, description, aggregation);
+        switch (aggregate.callStarted()) {
+            case 0:
+                return null;
+            case 1:
+                aggregate.start(tracer.buildSpan(description).ignoreActiveSpan().asChildOf(parent).start());
+                return aggregate;
+            default:
+                return aggregate;
+        }
+    }
+
+    /**
+     * Calls an aggregated child and records its duration. The child runs under its parent, like an operation that the
+     * operation rules left out, so the operations nested in it are added to the parent.
+     *
+     * @param toTrace   The operation.
+     * @param aggregate The aggregate of the operation.
+     * @param <R>       The return type of the operation.
+     * @return The object that is returned by the operation.
+     */
+    <R> R traceAggregatedAndReturn(final Supplier<R> toTrace, final SpanAggregate aggregate) {
+        final long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            return traceSampledOut(toTrace, aggregate.parent);
+        } catch (final Throwable e) {
+            failed = true;
+            throw e;
+        } finally {
+            aggregate.record(start, System.nanoTime(), failed);
+        }
+    }
+
+    /**
+     * Calls an aggregated child and records its duration.
+     *
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceAggregatedAndReturn(Supplier, SpanAggregate)} but returning
+     * nothing.
+     *
+     * @param toTrace   The operation.
+     * @param aggregate The aggregate of the operation.
+     */
+    void traceAggregated(final Runnable toTrace, final SpanAggregate aggregate) {
+        final long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            traceSampledOut(toTrace, aggregate.parent);
+        } catch (final Throwable e) {
+            failed = true;
+            throw e;
+        } finally {
+            aggregate.record(start, System.nanoTime(), failed);
+        }
+    }
+
+    /**
+     * Tags and finishes the spans that represent aggregated children. Each span ends with the last child it
+     * aggregates, if the underlying tracer exposes when the span started.
+     *
+     * @param aggregates The aggregates, removed from the stack of their trace.
+     */
+    private void finishAggregates(final Collection<SpanAggregate> aggregates) {
+        for (final SpanAggregate aggregate : aggregates) {
+            final Span span = aggregate.getSpan();
+            if (span == null) {
+                continue;
+            }
+            final long elapsedMicros = aggregate.tag();
+            final long startMicros = startTimestampMicros(span);
+            if (startMicros < 0) {
+                span.finish();
+            } else {
+                span.finish(startMicros + elapsedMicros);
+            }
         }
     }
 
+    /**
+     * Returns when a span started, as a timestamp of the clock of the underlying tracer, so that spans finished late
+     * can be given the right duration.
+     *
+     * @param span The span.
+     * @return The start of the span in microseconds since the epoch, or -1 if the tracer does not expose it.
+     */
+    protected long startTimestampMicros(final Span span) {
+        return -1;
+    }
+
+    /**
+     * Called after the stack of a finished trace is purged, so that extensions purge their own entries of the trace.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param spans       The stack of the finished trace.
+     */
+    protected void tracePurged(final long traceIdHigh, final long traceIdLow, final SpanStack spans) {
+    }
+
     /**
      * Finishes span after the {@link CompletableFuture} has completed, either successfully or exceptionally.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#finishPromiseSpan(Supplier, Span)} but for {@link
+     * <p>Similar to {@link AbstractOpenTracingEngine#finishPromiseSpan(Supplier, SpanHandle)} but for {@link
      * CompletableFuture}
      *
      * @param toTraceAsync The {@link CompletableFuture} to which the callback will be attached.
@@ -321,9 +1072,13 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param <R>          The return type of the {@link CompletableFuture}
      * @return the same {@link CompletableFuture} that was passed in {@code toTraceAsync}
      */
-    <R> CompletableFuture<R> finishParentFutureSpan(final CompletableFuture<R> toTraceAsync, final Span span) {
+    <R> CompletableFuture<R> finishParentFutureSpan(final CompletableFuture<R> toTraceAsync, final SpanHandle span) {
         toTraceAsync.handle((future, exception) -> {
+            if (exception != null) {
+                spanFailed(span);
+            }
             finishActive(span);
+            releaseParentSpan(span);
             return future;
         });
         return toTraceAsync;
@@ -332,18 +1087,19 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
     /**
      * Attaches callback to finish span after the {@link Promise} has completed.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#finishFutureSpan(CompletableFuture, Span)} but for {@link
+     * <p>Similar to {@link AbstractOpenTracingEngine#finishFutureSpan(CompletableFuture, SpanHandle)} but for {@link
      * Promise}
      *
      * @param toTraceAsync The {@link Promise} to which the callback will be attached.
      * @param span         The span that is wrapping the execution and should be finished.
      * @return the same {@link Promise} that was passed in {@code toTraceAsync}
      */
-    <E extends Throwable, P extends Promise<R, P, E>, R> P finishPromiseSpan(final Supplier<P> toTraceAsync, final Span span) {
+    <E extends Throwable, P extends Promise<R, P, E>, R> P finishPromiseSpan(final Supplier<P> toTraceAsync, final SpanHandle span) {
         return toTraceAsync.get().onCompletePromise(x -> {
             finishActive(span);
             popSpanForTraceId(span);
         }).onErrorPromise(x -> {
+            spanFailed(span);
             finishActive(span);
             popSpanForTraceId(span);
         });
@@ -352,18 +1108,21 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
     /**
      * Attaches callback to finish span after the {@link Promise} has completed.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#finishFutureSpan(CompletableFuture, Span)} but for {@link
+     * <p>Similar to {@link AbstractOpenTracingEngine#finishFutureSpan(CompletableFuture, SpanHandle)} but for {@link
      * Promise}
      *
      * @param toTraceAsync The {@link Promise} to which the callback will be attached.
      * @param span         The span that is wrapping the execution and should be finished.
      * @return the same {@link Promise} that was passed in {@code toTraceAsync}
      */
-    <E extends Throwable, P extends Promise<R, P, E>, R> P finishParentPromiseSpan(final Supplier<P> toTraceAsync, final Span span) {
+    <E extends Throwable, P extends Promise<R, P, E>, R> P finishParentPromiseSpan(final Supplier<P> toTraceAsync, final SpanHandle span) {
         return toTraceAsync.get().onCompletePromise(x -> {
-            span.finish();
+            span.getSpan().finish();
+            releaseParentSpan(span);
         }).onErrorPromise(x -> {
-            span.finish();
+            spanFailed(span);
+            span.getSpan().finish();
+            releaseParentSpan(span);
         });
     }
 
@@ -371,17 +1130,20 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * Closes the enclosing scope when the supplied is finished, regardless of whether it finished correctly or
      * exceptionally.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafely(Runnable, Span)} but returning a value.
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafely(Runnable, SpanHandle)} but returning a value.
      *
      * @param toTrace The method that should be executed and traced.
      * @param span    The tracing span that encloses this method.
      * @param <R>     The return type of the executed method.
      * @return The object that is returned by the executed method.
      */
-    <R> R traceSafelyAndReturn(final Supplier<R> toTrace, final Span span) {
+    <R> R traceSafelyAndReturn(final Supplier<R> toTrace, final SpanHandle span) {
         R result;
         try {
             result = toTrace.get();
+        } catch (final Throwable e) {
+            spanFailed(span);
+            throw e;
         } finally {
             finishActive(span);
             popSpanForTraceId(span);
@@ -393,19 +1155,23 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * Closes the enclosing scope when the supplied is finished, regardless of whether it finished correctly or
      * exceptionally.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafely(Runnable, Span)} but returning a value.
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafely(Runnable, SpanHandle)} but returning a value.
      *
      * @param toTrace The method that should be executed and traced.
      * @param span    The tracing span that encloses this method.
      * @param <R>     The return type of the executed method.
      * @return The object that is returned by the executed method.
      */
-    <R> R traceParentSafelyAndReturn(final Supplier<R> toTrace, final Span span) {
+    <R> R traceParentSafelyAndReturn(final Supplier<R> toTrace, final SpanHandle span) {
         R result;
         try {
             result = toTrace.get();
+        } catch (final Throwable e) {
+            spanFailed(span);
+            throw e;
         } finally {
-            span.finish();
+            span.getSpan().finish();
+            releaseParentSpan(span);
         }
         return result;
     }
@@ -414,14 +1180,17 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * Closes the enclosing scope when the supplied is finished, regardless of whether it finished correctly or
      * exceptionally.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafelyAndReturn(Supplier, Span)} but returning nothing.
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafelyAndReturn(Supplier, SpanHandle)} but returning nothing.
      *
      * @param toTrace The method that should be executed and traced.
      * @param span    The tracing span that encloses this method.
      */
-    void traceSafely(final Runnable toTrace, final Span span) {
+    void traceSafely(final Runnable toTrace, final SpanHandle span) {
         try {
             toTrace.run();
+        } catch (final Throwable e) {
+            spanFailed(span);
+            throw e;
         } finally {
             finishActive(span);
             popSpanForTraceId(span);
@@ -432,16 +1201,20 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * Closes the enclosing scope when the supplied is finished, regardless of whether it finished correctly or
      * exceptionally.
      *
-     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafelyAndReturn(Supplier, Span)} but returning nothing.
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceSafelyAndReturn(Supplier, SpanHandle)} but returning nothing.
      *
      * @param toTrace The method that should be executed and traced.
      * @param span    The tracing span that encloses this method.
      */
-    void traceParentSafely(final Runnable toTrace, final Span span) {
+    void traceParentSafely(final Runnable toTrace, final SpanHandle span) {
         try {
             toTrace.run();
+        } catch (final Throwable e) {
+            spanFailed(span);
+            throw e;
         } finally {
-            span.finish();
+            span.getSpan().finish();
+            releaseParentSpan(span);
         }
     }
 
@@ -453,12 +1226,11 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param context     Represents the context of the current execution.
      * @return The new active Span.
      */
-    private Span buildSpanFromAsyncContext(final String description, final SpanTraceContext context,
-                                           final boolean activate) {
-        final Span span = this.tracer.buildSpan(description).ignoreActiveSpan().asChildOf(context != null ? context.get() : null).start();
-        span.setBaggageItem("thread-id", Long.toString(Thread.currentThread().getId()));
+    private SpanHandle buildSpanFromAsyncContext(final String description, final SpanTraceContext context,
+                                                 final boolean activate) {
+        final SpanHandle span = newHandle(this.tracer.buildSpan(description).ignoreActiveSpan().asChildOf(context != null ? context.get() : null).start());
         if (activate) {
-            this.tracer.scopeManager().activate(span, true);
+            this.tracer.scopeManager().activate(span.getSpan(), true);
         }
         updateSpanMappings(span);
         return span;
@@ -466,29 +1238,200 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
 
     /**
      * When given a Span that represents a context update this method will update the mapping between the trace ID and
-     * the current context.
+     * the current context. The span is only pushed if the span currently on top of the trace was created in another
+     * thread, since spans created in the same thread will be reached through the active span. The span is registered
+     * with the stack either way, so that the stack knows when the trace has finished.
      *
      * @param span Span that represents the current context.
      */
-    protected void updateSpanMappings(final Span span) {
-        final String traceId = getTraceIdFromSpan(span);
-        final LinkedList<Span> spans = spanIdMappings.getIfPresent(traceId);
-        if (spans != null && (spans.isEmpty() || !Long.toString(Thread.currentThread().getId()).equals(spans.peek().getBaggageItem("thread-id")))) {
-            try {
+    protected void updateSpanMappings(final SpanHandle span) {
+        final SpanStack spans = spanIdMappings.get(span.getTraceIdHigh(), span.getTraceIdLow());
+        if (spans != null) {
+            span.register(spans);
+            final SpanHandle top = spans.peek();
+            if (top == null || top.getThreadId() != Thread.currentThread().getId()) {
                 spans.push(span);
-            } catch (Exception e) {
-                logger.error(e.getLocalizedMessage());
             }
         }
     }
 
     /**
-     * Obtains a TraceID from a Span object.
+     * Maps the trace of a span that starts a new process to a new stack with that span, which takes over the
+     * application specific ID of the previous stack of the trace, if any.
+     *
+     * @param span The span that starts the process.
+     */
+    protected void startProcess(final SpanHandle span) {
+        final SpanStack previous = span.release();
+        final SpanStack spans = new SpanStack();
+        if (previous != null) {
+            spans.eventId = previous.eventId;
+        }
+        spanIdMappings.put(span.getTraceIdHigh(), span.getTraceIdLow(), spans);
+        updateSpanMappings(span);
+        if (previous != null) {
+            previous.remove(span);
+            spanFinished(span, previous);
+        }
+    }
+
+    /**
+     * Returns true if the context belongs to a trace that was sampled out, in which case none of its spans will be
+     * reported.
+     *
+     * @param context The context of a span, which may be {@code null}.
+     * @return true if the trace was sampled out, false if it was sampled or there is no context.
+     */
+    boolean isSampledOut(final SpanContext context) {
+        return context != null && !traceIdResolver.isSampled(context);
+    }
+
+    /**
+     * Returns true if the context belongs to a trace that was sampled out.
+     *
+     * @param context The context passed to this engine, which may be {@code null}.
+     * @return true if the trace was sampled out, false if it was sampled or there is no context.
+     */
+    private boolean isSampledOut(final TraceContext context) {
+        return context != null && isSampledOut(((SpanTraceContext) context).get());
+    }
+
+    /**
+     * Returns true if the active span belongs to a trace that was sampled out. Operations added to such a trace can run
+     * under the active span, which already propagates the trace ID and the sampling decision.
+     *
+     * @return true if there is an active span and its trace was sampled out.
+     */
+    private boolean isActiveSpanSampledOut() {
+        final Span active = tracer.activeSpan();
+        return active != null && isSampledOut(active.context());
+    }
+
+    /**
+     * Returns true if the active span belongs to the same trace as the context.
+     *
+     * @param context The context of a span.
+     * @return true if there is an active span with the same trace ID as the context.
+     */
+    private boolean isActiveSpanInTrace(final SpanContext context) {
+        final Span active = tracer.activeSpan();
+        if (active == null) {
+            return false;
+        }
+        final SpanContext activeContext = active.context();
+        return traceIdResolver.traceIdLow(activeContext) == traceIdResolver.traceIdLow(context)
+                && traceIdResolver.traceIdHigh(activeContext) == traceIdResolver.traceIdHigh(context);
+    }
+
+    /**
+     * Decides, according to the operation rules, whether a span is built for an operation, which is only skipped if
+     * its rule is disabled.
+     *
+     * @param description The description of the operation.
+     * @return true if the operation is traced, false if it should just be called.
+     */
+    boolean isTraced(final String description) {
+        return operationRules.isTraced(description);
+    }
+
+    /**
+     * Executes an operation that the operation rules left out of its trace. Operations nested in it still belong to
+     * the trace of the context, so if the context is not the one of the active span it is activated while the
+     * operation is called, as for a trace that was sampled out.
+     *
+     * @param toTrace The operation.
+     * @param context The context of the parent of the operation, which may be {@code null}.
+     * @param <R>     The return type of the operation.
+     * @return The object that is returned by the operation.
+     */
+    <R> R traceSkipped(final Supplier<R> toTrace, final TraceContext context) {
+        if (context == null || context.get() == null) {
+            return toTrace.get();
+        }
+        return traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+    }
+
+    /**
+     * Executes an operation that the operation rules left out of its trace.
+     *
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceSkipped(Supplier, TraceContext)} but returning nothing.
+     *
+     * @param toTrace The operation.
+     * @param context The context of the parent of the operation, which may be {@code null}.
+     */
+    void traceSkipped(final Runnable toTrace, final TraceContext context) {
+        if (context == null || context.get() == null) {
+            toTrace.run();
+            return;
+        }
+        traceSampledOut(toTrace, ((SpanTraceContext) context).get());
+    }
+
+    /**
+     * Executes an operation that belongs to a trace that was sampled out. The engine does not build spans for such
+     * traces, it only makes sure that the operation runs under a span of the trace so that the context is propagated.
+     * If the active span already belongs to the trace the operation runs under it, otherwise a {@link SampledOutSpan}
+     * is activated only while the operation is called.
+     *
+     * @param toTrace The operation.
+     * @param parent  The context of the trace that was sampled out.
+     * @param <R>     The return type of the operation.
+     * @return The object that is returned by the operation.
+     */
+    <R> R traceSampledOut(final Supplier<R> toTrace, final SpanContext parent) {
+        if (isActiveSpanInTrace(parent)) {
+            return toTrace.get();
+        }
+        try (Scope scope = tracer.scopeManager().activate(new SampledOutSpan(parent), false)) {
+            return toTrace.get();
+        }
+    }
+
+    /**
+     * Executes an operation that belongs to a trace that was sampled out.
+     *
+     * <p>Similar to {@link AbstractOpenTracingEngine#traceSampledOut(Supplier, SpanContext)} but returning nothing.
+     *
+     * @param toTrace The operation.
+     * @param parent  The context of the trace that was sampled out.
+     */
+    void traceSampledOut(final Runnable toTrace, final SpanContext parent) {
+        if (isActiveSpanInTrace(parent)) {
+            toTrace.run();
+            return;
+        }
+        try (Scope scope = tracer.scopeManager().activate(new SampledOutSpan(parent), false)) {
+            toTrace.run();
+        }
+    }
+
+    /**
+     * Obtains a TraceID from a Span object, formatted as a String. The engine itself keys traces by the numeric trace
+     * ID, so this is only meant for logging and debugging.
      *
      * @param span Span from which we want the traceID.
-     * @return A String representing the traceId.
+     * @return A String representing the traceId, in the same hexadecimal format used by the propagation headers.
      */
-    protected abstract String getTraceIdFromSpan(final Span span);
+    protected String getTraceIdFromSpan(final Span span) {
+        final SpanContext context = span.context();
+        final long high = traceIdResolver.traceIdHigh(context);
+        final String low = Long.toHexString(traceIdResolver.traceIdLow(context));
+        if (high == 0) {
+            return low;
+        }
+        return Long.toHexString(high) + ZERO_PADDING.substring(low.length()) + low;
+    }
+
+    /**
+     * Wraps a newly started span in a {@link SpanHandle}, resolving its trace ID.
+     *
+     * @param span The span that was just started.
+     * @return The handle for the span.
+     */
+    private SpanHandle newHandle(final Span span) {
+        final SpanContext context = span.context();
+        return new SpanHandle(span, traceIdResolver.traceIdHigh(context), traceIdResolver.traceIdLow(context));
+    }
 
 
     /**
@@ -497,12 +1440,13 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param description The description or name that best describes this operation.
      * @return The new parent span
      */
-    Span buildActiveParentSpan(final String description) {
-        final Span span = this.tracer.buildSpan(description).ignoreActiveSpan().start();
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        span.setBaggageItem("thread-id", Long.toString(Thread.currentThread().getId()));
-        this.tracer.scopeManager().activate(span, true);
-        updateSpanMappings(span);
+    SpanHandle buildActiveParentSpan(final String description) {
+        final SpanHandle span = newHandle(this.tracer.buildSpan(description).ignoreActiveSpan().start());
+        this.tracer.scopeManager().activate(span.getSpan(), true);
+        if (!isSampledOut(span.getSpan().context())) {
+            spanIdMappings.put(span.getTraceIdHigh(), span.getTraceIdLow(), new SpanStack());
+            updateSpanMappings(span);
+        }
         return span;
     }
 
@@ -514,9 +1458,8 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param context     The parent of this new span.
      * @return the new child Span.
      */
-    Span buildSpanAsChild(final String description, final SpanTraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, context, false);
-        span.setBaggageItem("thread-id", Long.toString(Thread.currentThread().getId()));
+    SpanHandle buildSpanAsChild(final String description, final SpanTraceContext context) {
+        final SpanHandle span = buildSpanFromAsyncContext(description, context, false);
         updateSpanMappings(span);
         return span;
     }
@@ -529,24 +1472,31 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param context     The parent of this new span.
      * @return the new child Span.
      */
-    Span buildActiveSpanAsChild(final String description, final SpanTraceContext context) {
-        final Span span = buildSpanFromAsyncContext(description, context, true);
-        span.setBaggageItem("thread-id", Long.toString(Thread.currentThread().getId()));
-        this.tracer.scopeManager().activate(span, true);
+    SpanHandle buildActiveSpanAsChild(final String description, final SpanTraceContext context) {
+        final SpanHandle span = buildSpanFromAsyncContext(description, context, true);
         updateSpanMappings(span);
         return span;
     }
 
+    /**
+     * Creates a new Span with no relation to any other span, for operations whose parent could not be found.
+     *
+     * @param description The description or name that best describes this operation.
+     * @return the new orphan Span.
+     */
+    SpanHandle buildOrphanSpan(final String description) {
+        return newHandle(this.tracer.buildSpan(description).ignoreActiveSpan().start());
+    }
+
     /**
      * Builds a span and activates it.
      *
      * @param description The description or name that best describes this operation.
      * @return the new active span.
      */
-    private Span buildActiveSpan(final String description) {
-        final Span span = this.tracer.buildSpan(description).start();
-        span.setBaggageItem("thread-id", Long.toString(Thread.currentThread().getId()));
-        this.tracer.scopeManager().activate(span, true);
+    private SpanHandle buildActiveSpan(final String description) {
+        final SpanHandle span = newHandle(this.tracer.buildSpan(description).start());
+        this.tracer.scopeManager().activate(span.getSpan(), true);
         updateSpanMappings(span);
         return span;
     }
@@ -557,25 +1507,25 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      * @param description The description or name that best describes this operation.
      * @return the new active span.
      */
-    private Span buildSpan(final String description) {
-        final Span span = this.tracer.buildSpan(description).start();
-        span.setBaggageItem("thread-id", Long.toString(Thread.currentThread().getId()));
-        this.tracer.scopeManager().activate(span, false);
+    private SpanHandle buildSpan(final String description) {
+        final SpanHandle span = newHandle(this.tracer.buildSpan(description).start());
+        this.tracer.scopeManager().activate(span.getSpan(), false);
         updateSpanMappings(span);
         return span;
     }
 
     /**
-     * Stores this object in the {@code responseMappings} cache and updates {@code spanMappings} since it might span
+     * Stores this object in the {@code responseMappings} registry and updates {@code spanMappings} since it might span
      * multiple threads.
      *
-     * @param object  The object used as key for the cache entry.
-     * @param span    The span associated to the key.
-     * @param traceId The traceId to lookup in {@code spanMappings}
+     * @param object The object used as key for the cache entry.
+     * @param span   The span associated to the key.
      */
-    void cacheObject(final Object object, final Span span, final String traceId) {
-        if (spanIdMappings.getIfPresent(traceId) != null && !spanIdMappings.getIfPresent(traceId).peek().equals(span)) {
-            spanIdMappings.getIfPresent(traceId).push(span);
+    void cacheObject(final Object object, final SpanHandle span) {
+        final SpanStack spans = spanIdMappings.get(span.getTraceIdHigh(), span.getTraceIdLow());
+        if (spans != null) {
+            span.register(spans);
+            spans.push(span);
         }
         responseMappings.put(object, span);
     }
@@ -586,11 +1536,11 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      *
      * @param span The span to be finished.
      */
-    private void finishActive(Span span) {
-        if (tracer.activeSpan() != null && tracer.activeSpan().equals(span)) {
+    private void finishActive(final SpanHandle span) {
+        if (tracer.activeSpan() != null && tracer.activeSpan().equals(span.getSpan())) {
             tracer.scopeManager().active().close();
         } else {
-            span.finish();
+            span.getSpan().finish();
         }
     }
 
@@ -622,13 +1572,52 @@ public abstract class AbstractOpenTracingEngine implements TracingEngine {
      */
     @Override
     public TraceContext<SpanContext> currentContextforObject(final Object obj) {
-        final Span span = responseMappings.getIfPresent(obj);
+        final SpanHandle span = responseMappings.get(obj);
         if (span != null) {
-            return new SpanTraceContext(span.context());
+            return new SpanTraceContext(span.getSpan().context());
         } else {
             return null;
         }
     }
 
-
+    /**
+     * A finished trace waiting for its grace period to be over before being purged.
+     */
+    private static final class FinishedTrace {
+
+        /**
+         * The high bits of the trace ID.
+         */
+        final long traceIdHigh;
+
+        /**
+         * The low bits of the trace ID.
+         */
+        final long traceIdLow;
+
+        /**
+         * The stack of the trace.
+         */
+        final SpanStack spans;
+
+        /**
+         * The value of {@link System#nanoTime()} after which the trace is purged.
+         */
+        final long purgeTime;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param traceIdHigh The high bits of the trace ID.
+         * @param traceIdLow  The low bits of the trace ID.
+         * @param spans       The stack of the trace.
+         * @param purgeTime   The value of {@link System#nanoTime()} after which the trace is purged.
+         */
+        FinishedTrace(final long traceIdHigh, final long traceIdLow, final SpanStack spans, final long purgeTime) {
+            this.traceIdHigh = traceIdHigh;
+            this.traceIdLow = traceIdLow;
+            this.spans = spans;
+            this.purgeTime = purgeTime;
+        }
+    }
 }
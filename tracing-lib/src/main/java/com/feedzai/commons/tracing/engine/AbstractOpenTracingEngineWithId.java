@@ -18,16 +18,15 @@ package com.feedzai.commons.tracing.engine;
 
 import com.feedzai.commons.tracing.api.Promise;
 import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 
-import java.util.LinkedList;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 
 
@@ -40,9 +39,21 @@ import java.util.function.Supplier;
 public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracingEngine {
 
     /**
-     * Maps an application specific ID that identifies a trace to the TraceId.
+     * Maps an application specific ID that identifies a trace to the context that started the trace, from which the
+     * TraceId is resolved.
      */
-    protected final Cache<String, String> traceIdMappings;
+    protected volatile Cache<String, SpanContext> traceIdMappings;
+
+    /**
+     * Removes an entry of {@code traceIdMappings} only if it maps to the given context.
+     */
+    private final BiPredicate<String, SpanContext> traceIdRemover;
+
+    /**
+     * The cache behind {@code traceIdMappings} when it is maintained in the background, which can be reconfigured in
+     * place, or {@code null}.
+     */
+    private final ExpiringCache<String, SpanContext> expiringTraceIdMappings;
 
     /**
      * The key for the baggage item containing the eventID.
@@ -53,145 +64,422 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
      * Constructor for this abstract class to be called by the extension classes to supply the implementation specific
      * parameters.
      *
-     * @param tracer        The Tracer implementation of the underlying tracing Engine.
-     * @param configuration The configuration parameters for the caches.
+     * @param tracer          The Tracer implementation of the underlying tracing Engine.
+     * @param configuration   The configuration parameters for the caches.
+     * @param traceIdResolver Resolves the trace ID of a span from the native context of the underlying tracing Engine.
      */
     protected AbstractOpenTracingEngineWithId(final Tracer tracer,
-                                              final CacheConfiguration configuration) {
-        super(tracer, configuration);
-        this.traceIdMappings = CacheBuilder.newBuilder().expireAfterWrite(configuration.getExpirationAfterWrite().toNanos(), TimeUnit.NANOSECONDS)
+                                              final CacheConfiguration configuration,
+                                              final TraceIdResolver traceIdResolver) {
+        super(tracer, configuration, traceIdResolver, false);
+        if (configuration.getMaintenanceMode() == MaintenanceMode.BACKGROUND) {
+            final ExpiringCache<String, SpanContext> cache = new ExpiringCache<>(configuration);
+            getCacheMaintenance().register(cache::maintain);
+            this.traceIdMappings = cache;
+            this.traceIdRemover = cache::remove;
+            this.expiringTraceIdMappings = cache;
+        } else {
+            this.traceIdMappings = buildTraceIdMappings(configuration);
+            this.traceIdRemover = (eventId, context) -> traceIdMappings.asMap().remove(eventId, context);
+            this.expiringTraceIdMappings = null;
+        }
+        getCacheMaintenance().start();
+    }
+
+    /**
+     * Builds the cache of {@code traceIdMappings} that is maintained inline.
+     *
+     * @param configuration The configuration parameters for the caches.
+     * @return The cache.
+     */
+    private static Cache<String, SpanContext> buildTraceIdMappings(final CacheConfiguration configuration) {
+        return CacheBuilder.newBuilder().expireAfterWrite(configuration.getExpirationAfterWrite().toNanos(), TimeUnit.NANOSECONDS)
                 .maximumSize(configuration.getMaximumSize()).build();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>A cache of {@code traceIdMappings} that is maintained inline cannot change its bounds, so it is replaced by a
+     * new cache holding the same mappings, which restarts their expiration. The mappings are copied before and after
+     * the new cache is published, so that mappings written in the meantime are not lost.
+     */
+    @Override
+    public void reconfigureCaches(final CacheConfiguration configuration) {
+        super.reconfigureCaches(configuration);
+        if (expiringTraceIdMappings != null) {
+            expiringTraceIdMappings.reconfigure(configuration);
+            return;
+        }
+        synchronized (this) {
+            final Cache<String, SpanContext> previous = traceIdMappings;
+            final Cache<String, SpanContext> cache = buildTraceIdMappings(configuration);
+            previous.asMap().forEach(cache.asMap()::putIfAbsent);
+            traceIdMappings = cache;
+            previous.asMap().forEach(cache.asMap()::putIfAbsent);
+        }
+    }
+
     @Override
     public <R> R newTrace(final Supplier<R> toTrace, final String description, final String eventId) {
-        final Span span = newTraceWithId(description, eventId);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        final SpanHandle span = newTraceWithId(description, eventId);
         return traceParentSafelyAndReturn(toTrace, span);
     }
 
     @Override
     public void newTrace(final Runnable toTrace, final String description, final String eventId) {
-        final Span span = newTraceWithId(description, eventId);
+        if (!isTraced(description)) {
+            toTrace.run();
+            return;
+        }
+        final SpanHandle span = newTraceWithId(description, eventId);
         traceParentSafely(toTrace, span);
     }
 
     @Override
     public <R> CompletableFuture<R> newTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                   final String description, final String eventId) {
-        final Span span = newTraceWithId(description, eventId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = newTraceWithId(description, eventId);
         return finishParentFutureSpan(toTraceAsync.get(), span);
     }
 
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newTracePromise(final Supplier<P> toTraceAsync, final String description,
                                                           final String eventId) {
-        final Span span = newTraceWithId(description, eventId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanHandle span = newTraceWithId(description, eventId);
         return finishParentPromiseSpan(toTraceAsync, span);
     }
 
     @Override
     public <R> R addToTrace(final Supplier<R> toTrace, final String description, final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        final SpanContext parent = contextFromId(eventId);
+        final SpanAggregate aggregate = aggregateOf(parent, description);
+        if (aggregate != null) {
+            return traceAggregatedAndReturn(toTrace, aggregate);
+        }
+        final SpanHandle span = buildActiveChild(description, parent);
         return traceSafelyAndReturn(toTrace, span);
     }
 
+    @Override
+    public <R> R addToTrace(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        return addToTrace(toTrace, description.get(), eventId);
+    }
+
     @Override
     public void addToTrace(final Runnable toTrace, final String description, final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
+        if (!isTraced(description)) {
+            toTrace.run();
+            return;
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            traceSampledOut(toTrace, sampledOut);
+            return;
+        }
+        final SpanContext parent = contextFromId(eventId);
+        final SpanAggregate aggregate = aggregateOf(parent, description);
+        if (aggregate != null) {
+            traceAggregated(toTrace, aggregate);
+            return;
+        }
+        final SpanHandle span = buildActiveChild(description, parent);
         traceSafely(toTrace, span);
     }
 
+    @Override
+    public void addToTrace(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            traceSampledOut(toTrace, sampledOut);
+            return;
+        }
+        addToTrace(toTrace, description.get(), eventId);
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                     final String description, final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        final SpanHandle span = buildActiveContextFromId(description, eventId);
         return finishFutureSpan(toTraceAsync.get(), span);
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceAsync(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                    final Supplier<String> description, final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        return addToTraceAsync(toTraceAsync, description.get(), eventId);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final String description,
                                                             final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        final SpanHandle span = buildActiveContextFromId(description, eventId);
 
         return finishPromiseSpan(toTraceAsync, span);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTracePromise(final Supplier<P> toTraceAsync, final Supplier<String> description,
+                                                            final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        return addToTracePromise(toTraceAsync, description.get(), eventId);
+    }
+
     @Override
     public <R> R newProcess(final Supplier<R> toTrace, final String description, final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        final SpanHandle span = buildActiveContextFromId(description, eventId);
+        startProcess(span);
         final R result;
         result = traceParentSafelyAndReturn(toTrace, span);
         return result;
     }
 
+    @Override
+    public <R> R newProcess(final Supplier<R> toTrace, final Supplier<String> description, final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        return newProcess(toTrace, description.get(), eventId);
+    }
+
     @Override
     public void newProcess(final Runnable toTrace, final String description, final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            toTrace.run();
+            return;
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            traceSampledOut(toTrace, sampledOut);
+            return;
+        }
+        final SpanHandle span = buildActiveContextFromId(description, eventId);
+        startProcess(span);
 
         traceParentSafely(toTrace, span);
     }
 
+    @Override
+    public void newProcess(final Runnable toTrace, final Supplier<String> description, final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            traceSampledOut(toTrace, sampledOut);
+            return;
+        }
+        newProcess(toTrace, description.get(), eventId);
+    }
+
     @Override
     public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
                                                      final String description,
                                                      final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        final SpanHandle span = buildActiveContextFromId(description, eventId);
+        startProcess(span);
 
         return finishParentFutureSpan(toTrace.get(), span);
     }
 
+    @Override
+    public <R> CompletableFuture<R> newProcessFuture(final Supplier<CompletableFuture<R>> toTrace,
+                                                     final Supplier<String> description,
+                                                     final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        return newProcessFuture(toTrace, description.get(), eventId);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final String description,
                                                             final String eventId) {
-        final Span span = buildActiveContextFromId(description, eventId);
-        spanIdMappings.put(getTraceIdFromSpan(span), new LinkedList<>());
-        updateSpanMappings(span);
+        if (!isTraced(description)) {
+            return toTrace.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        final SpanHandle span = buildActiveContextFromId(description, eventId);
+        startProcess(span);
         return finishParentPromiseSpan(toTrace, span);
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P newProcessPromise(final Supplier<P> toTrace, final Supplier<String> description,
+                                                            final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTrace, sampledOut);
+        }
+        return newProcessPromise(toTrace, description.get(), eventId);
+    }
+
     @Override
     public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
                                                                 final String description,
                                                                 final String eventId) {
-        final Span span = buildContextFromId(description, eventId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        final SpanHandle span = buildContextFromId(description, eventId);
         responseMappings.put(object, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <E extends Throwable, P extends Promise<R, P, E>, R> P addToTraceOpenPromise(final Supplier<P> toTraceAsync, final Object object,
+                                                                final Supplier<String> description,
+                                                                final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        return addToTraceOpenPromise(toTraceAsync, object, description.get(), eventId);
+    }
+
     @Override
     public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
                                                          final Object object,
                                                          final String description,
                                                          final String eventId) {
-        final Span span = buildContextFromId(description, eventId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        final SpanHandle span = buildContextFromId(description, eventId);
         responseMappings.put(object, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> CompletableFuture<R> addToTraceOpenFuture(final Supplier<CompletableFuture<R>> toTraceAsync,
+                                                         final Object object,
+                                                         final Supplier<String> description,
+                                                         final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        return addToTraceOpenFuture(toTraceAsync, object, description.get(), eventId);
+    }
+
     @Override
     public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final String description,
                                final String eventId) {
-        final Span span = buildContextFromId(description, eventId);
-        final String traceId = getTraceIdFromSpan(span);
-        cacheObject(object, span, traceId);
+        if (!isTraced(description)) {
+            toTraceAsync.run();
+            return;
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            traceSampledOut(toTraceAsync, sampledOut);
+            return;
+        }
+        final SpanHandle span = buildContextFromId(description, eventId);
+        cacheObject(object, span);
         toTraceAsync.run();
     }
 
+    @Override
+    public void addToTraceOpen(final Runnable toTraceAsync, final Object object, final Supplier<String> description,
+                               final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            traceSampledOut(toTraceAsync, sampledOut);
+            return;
+        }
+        addToTraceOpen(toTraceAsync, object, description.get(), eventId);
+    }
+
     @Override
     public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final String description,
                                 final String eventId) {
-        final Span span = buildContextFromId(description, eventId);
-        final String traceId = getTraceIdFromSpan(span);
-        cacheObject(value, span, traceId);
+        if (!isTraced(description)) {
+            return toTraceAsync.get();
+        }
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        final SpanHandle span = buildContextFromId(description, eventId);
+        cacheObject(value, span);
         return toTraceAsync.get();
     }
 
+    @Override
+    public <R> R addToTraceOpen(final Supplier<R> toTraceAsync, final Object value, final Supplier<String> description,
+                                final String eventId) {
+        final SpanContext sampledOut = sampledOutContextForId(eventId);
+        if (sampledOut != null) {
+            return traceSampledOut(toTraceAsync, sampledOut);
+        }
+        return addToTraceOpen(toTraceAsync, value, description.get(), eventId);
+    }
+
 
     /**
      * Creates a new Span as child of the context associated with {@code eventId} and activates it in the current
@@ -201,10 +489,20 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
      * @param eventId     The ID that represents a request throughout the whole execution.
      * @return The new Span.
      */
-    private Span buildActiveContextFromId(final String description, final String eventId) {
-        final SpanContext parent = contextFromId(eventId);
+    private SpanHandle buildActiveContextFromId(final String description, final String eventId) {
+        return buildActiveChild(description, contextFromId(eventId));
+    }
+
+    /**
+     * Creates a new Span as child of a context and activates it in the current thread.
+     *
+     * @param description The description/name of the new context.
+     * @param parent      The context of the parent, or {@code null} if the parent could not be found.
+     * @return The new Span.
+     */
+    private SpanHandle buildActiveChild(final String description, final SpanContext parent) {
         if (parent == null) {
-            return tracer.buildSpan("NoParent " + description).ignoreActiveSpan().start();
+            return buildOrphanSpan("NoParent " + description);
         }
         return buildActiveSpanAsChild(description, new SpanTraceContext(parent));
     }
@@ -217,10 +515,10 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
      * @param eventId     The ID that represents a request throughout the whole execution.
      * @return The new Span.
      */
-    private Span buildContextFromId(final String description, final String eventId) {
+    private SpanHandle buildContextFromId(final String description, final String eventId) {
         final SpanContext parent = contextFromId(eventId);
         if (parent == null) {
-            return tracer.buildSpan("NoParent " + description).ignoreActiveSpan().start();
+            return buildOrphanSpan("NoParent " + description);
         }
         return buildSpanAsChild(description, new SpanTraceContext(parent));
     }
@@ -230,15 +528,23 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
      * @return The span context associated to the current trace.
      */
     private SpanContext contextFromId(final String eventId) {
-        final Optional<String> traceId = getTraceIdForAppSpecificId(eventId);
-        SpanContext parent = null;
-        if (traceId.isPresent()) {
-            final LinkedList<Span> parentStack = super.spanIdMappings.getIfPresent(traceId.get());
-            if (!parentStack.isEmpty()) {
-                parent = parentStack.peek().context();
-            }
+        if (traceIdMappings.getIfPresent(eventId) == null) {
+            logger.warn("No trace ID was found for application specific ID {}", eventId);
+            return null;
         }
-        return parent;
+        return currentSpanContextForId(eventId);
+    }
+
+    /**
+     * Returns the context that started the trace associated to {@code eventId} if that trace was sampled out.
+     *
+     * @param eventId The application specific ID.
+     * @return The context of the root of the trace if it was sampled out, or {@code null} if the trace was sampled or
+     * there is no trace for the ID.
+     */
+    private SpanContext sampledOutContextForId(final String eventId) {
+        final SpanContext root = eventId != null ? traceIdMappings.getIfPresent(eventId) : null;
+        return isSampledOut(root) ? root : null;
     }
 
     /**
@@ -248,25 +554,57 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
      * @param eventId     The ID that represents a request throughout the whole execution.
      * @return The first span of this trace.
      */
-    private Span newTraceWithId(final String description, final String eventId) {
-        final Span span = buildActiveParentSpan(description);
-        span.setBaggageItem(EVENT_ID, eventId);
+    private SpanHandle newTraceWithId(final String description, final String eventId) {
+        final SpanHandle span = buildActiveParentSpan(description);
+        span.getSpan().setBaggageItem(EVENT_ID, eventId);
         updateIdMappings(eventId, span);
+        final SpanStack spans = span.getTrace();
+        if (spans != null) {
+            spans.eventId = eventId;
+        }
         return span;
     }
 
     /**
-     * Gets the trace ID associated to an application specific ID.
+     * Removes the mapping of the application specific ID of a purged trace, unless the ID was since mapped to another
+     * trace.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param spans       The stack of the finished trace.
+     */
+    @Override
+    protected void tracePurged(final long traceIdHigh, final long traceIdLow, final SpanStack spans) {
+        final String eventId = spans.eventId;
+        if (eventId == null) {
+            return;
+        }
+        final SpanContext root = traceIdMappings.getIfPresent(eventId);
+        if (root != null && traceIdResolver.traceIdHigh(root) == traceIdHigh
+                && traceIdResolver.traceIdLow(root) == traceIdLow) {
+            traceIdRemover.test(eventId, root);
+        }
+    }
+
+    /**
+     * Gets the context of the span that currently represents the point in the execution of the trace associated to an
+     * application specific ID. Traces that were sampled out are not tracked, so the context that started them is
+     * returned instead.
      *
      * @param eventId The application specific ID.
-     * @return An Optional containing the value of the trace ID if it is present in the cache.
+     * @return The context of the span on top of the trace's stack, or {@code null} if there is no trace for the ID.
      */
-    private Optional<String> getTraceIdForAppSpecificId(final String eventId) {
-        final String traceId = this.traceIdMappings.getIfPresent(eventId);
-        if (traceId == null) {
-            logger.warn("No trace ID was found for application specific ID {}", eventId);
+    protected SpanContext currentSpanContextForId(final String eventId) {
+        final SpanContext root = this.traceIdMappings.getIfPresent(eventId);
+        if (root == null) {
+            return null;
+        }
+        if (isSampledOut(root)) {
+            return root;
         }
-        return Optional.ofNullable(traceId);
+        final SpanStack spans = spanIdMappings.get(traceIdResolver.traceIdHigh(root), traceIdResolver.traceIdLow(root));
+        final SpanHandle top = spans != null ? spans.peek() : null;
+        return top != null ? top.getSpan().context() : null;
     }
 
     /**
@@ -276,8 +614,8 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
      * @param eventId the application specific ID.
      * @param span    the span associated to the traceID.
      */
-    private void updateIdMappings(final String eventId, final Span span) {
-        this.traceIdMappings.put(eventId, getTraceIdFromSpan(span));
+    private void updateIdMappings(final String eventId, final SpanHandle span) {
+        this.traceIdMappings.put(eventId, span.getSpan().context());
     }
 
     /**
@@ -291,8 +629,9 @@ public abstract class AbstractOpenTracingEngineWithId extends AbstractOpenTracin
         if (eventId == null) {
             id = "";
         }
-        if (spanIdMappings.getIfPresent(traceIdMappings.getIfPresent(id) != null ? traceIdMappings.getIfPresent(id) : "") != null) {
-            return new SpanTraceContext(spanIdMappings.getIfPresent(traceIdMappings.getIfPresent(id)).peek().context());
+        final SpanContext context = currentSpanContextForId(id);
+        if (context != null) {
+            return new SpanTraceContext(context);
         } else {
             return null;
         }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary layout of a propagated context, as written by the engines that override {@link
+ * TracingEngine#serializeContext(ByteBuffer)} to avoid the intermediate map. It starts with a version byte, currently
+ * {@value #VERSION}, and has {@value #FIXED_LENGTH} bytes followed by an eventId whose length in bytes is the
+ * big-endian unsigned short that ends the fixed part.
+ *
+ * <p>Engines that propagate no context use {@link #skip(ByteBuffer)} to step over a context in this layout, so that
+ * the headers that follow it in the buffer can still be read.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class BinaryContextLayout {
+
+    /**
+     * The version of the layout.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * The size of the layout without the eventId.
+     */
+    public static final int FIXED_LENGTH = 36;
+
+    /**
+     * Utility class.
+     */
+    private BinaryContextLayout() {
+    }
+
+    /**
+     * Returns the length of the context at the position of a buffer, without moving it.
+     *
+     * @param buffer The buffer.
+     * @return The number of bytes of the context, or -1 if the buffer does not start with a complete context in a known
+     * version.
+     */
+    public static int encodedLength(final ByteBuffer buffer) {
+        final int position = buffer.position();
+        if (buffer.remaining() < FIXED_LENGTH || buffer.get(position) != VERSION) {
+            return -1;
+        }
+        // Read byte by byte, since the layout is big-endian whatever the order of the buffer.
+        final int eventIdLength = (buffer.get(position + FIXED_LENGTH - 2) & 0xFF) << 8
+                | buffer.get(position + FIXED_LENGTH - 1) & 0xFF;
+        final int length = FIXED_LENGTH + eventIdLength;
+        return buffer.remaining() < length ? -1 : length;
+    }
+
+    /**
+     * Advances the position of a buffer past the context at its position. A buffer that does not start with a
+     * complete context in a known version is left untouched.
+     *
+     * @param buffer The buffer.
+     * @return The number of bytes skipped.
+     */
+    public static int skip(final ByteBuffer buffer) {
+        final int length = encodedLength(buffer);
+        if (length < 0) {
+            return 0;
+        }
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs the maintenance of the caches of an engine and counts the work it does.
+ *
+ * <p>When the caches are configured with {@link MaintenanceMode#BACKGROUND}, maintenance is scheduled on a daemon
+ * thread shared by every engine once {@link #start()} is called, which the engine does after registering the
+ * maintenance of all its caches, so that no run sees only part of them. The scheduled task only holds a weak reference to this object, so it stops by itself
+ * once the engine that owns it is no longer used. With {@link MaintenanceMode#INLINE} nothing is scheduled, and
+ * {@link #cleanUp()} can still be called to run the maintenance explicitly.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class CacheMaintenance {
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(CacheMaintenance.class.getName());
+
+    /**
+     * The scheduler shared by the engines whose caches are maintained in the background.
+     */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    /**
+     * The maintenance of each cache.
+     */
+    private final List<Consumer<CacheMaintenance>> tasks = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of maintenance runs.
+     */
+    private final LongAdder runCount = new LongAdder();
+
+    /**
+     * The number of entries removed because they expired.
+     */
+    private final LongAdder expiredCount = new LongAdder();
+
+    /**
+     * The number of entries evicted because a cache was above its maximum size.
+     */
+    private final LongAdder evictedCount = new LongAdder();
+
+    /**
+     * The number of entries removed because their key was garbage collected.
+     */
+    private final LongAdder collectedCount = new LongAdder();
+
+    /**
+     * The number of traces purged because all their spans finished.
+     */
+    private final LongAdder purgedCount = new LongAdder();
+
+    /**
+     * The time spent in maintenance runs, in nanoseconds.
+     */
+    private final LongAdder maintenanceNanos = new LongAdder();
+
+    /**
+     * The interval between scheduled runs in nanoseconds, or 0 if the maintenance is not scheduled.
+     */
+    private final long intervalNanos;
+
+    /**
+     * Whether the maintenance was scheduled by {@link #start()}.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * Constructor for this class. Nothing is scheduled until {@link #start()} is called.
+     *
+     * @param configuration The configuration of the caches.
+     */
+    CacheMaintenance(final CacheConfiguration configuration) {
+        this.intervalNanos = configuration.getMaintenanceMode() == MaintenanceMode.BACKGROUND
+                ? configuration.getMaintenanceInterval().toNanos() : 0;
+    }
+
+    /**
+     * Schedules the maintenance if the caches are maintained in the background. Should be called once the
+     * maintenance of every cache is registered; later calls have no effect.
+     */
+    void start() {
+        if (intervalNanos == 0 || !started.compareAndSet(false, true)) {
+            return;
+        }
+        final WeakReference<CacheMaintenance> maintenance = new WeakReference<>(this);
+        final AtomicReference<ScheduledFuture<?>> scheduled = new AtomicReference<>();
+        scheduled.set(SCHEDULER.scheduleWithFixedDelay(() -> runScheduled(maintenance, scheduled),
+                intervalNanos, intervalNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Registers the maintenance of a cache.
+     *
+     * @param task Maintains a cache and records the work done in the supplied {@link CacheMaintenance}.
+     */
+    void register(final Consumer<CacheMaintenance> task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Runs the maintenance of every cache on the calling thread.
+     */
+    public void cleanUp() {
+        final long start = System.nanoTime();
+        for (final Consumer<CacheMaintenance> task : tasks) {
+            task.accept(this);
+        }
+        maintenanceNanos.add(System.nanoTime() - start);
+        runCount.increment();
+    }
+
+    /**
+     * Records entries removed because they expired.
+     *
+     * @param count The number of entries.
+     */
+    void recordExpired(final long count) {
+        expiredCount.add(count);
+    }
+
+    /**
+     * Records entries evicted because a cache was above its maximum size.
+     *
+     * @param count The number of entries.
+     */
+    void recordEvicted(final long count) {
+        evictedCount.add(count);
+    }
+
+    /**
+     * Records entries removed because their key was garbage collected.
+     *
+     * @param count The number of entries.
+     */
+    void recordCollected(final long count) {
+        collectedCount.add(count);
+    }
+
+    /**
+     * Records a trace purged because all its spans finished.
+     */
+    void recordPurged() {
+        purgedCount.increment();
+    }
+
+    /**
+     * Returns the number of maintenance runs.
+     *
+     * @return The number of runs since the engine was created.
+     */
+    public long getRunCount() {
+        return runCount.sum();
+    }
+
+    /**
+     * Returns the number of entries removed by maintenance because they expired.
+     *
+     * @return The number of entries since the engine was created.
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted by maintenance because a cache was above its maximum size.
+     *
+     * @return The number of entries since the engine was created.
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Returns the number of entries removed by maintenance because their key was garbage collected.
+     *
+     * @return The number of entries since the engine was created.
+     */
+    public long getCollectedCount() {
+        return collectedCount.sum();
+    }
+
+    /**
+     * Returns the number of traces purged because all their spans finished, which happens whether or not maintenance
+     * is scheduled.
+     *
+     * @return The number of traces since the engine was created.
+     */
+    public long getPurgedCount() {
+        return purgedCount.sum();
+    }
+
+    /**
+     * Returns the time spent in maintenance runs.
+     *
+     * @return The total time since the engine was created.
+     */
+    public Duration getMaintenanceTime() {
+        return Duration.ofNanos(maintenanceNanos.sum());
+    }
+
+    /**
+     * Runs a scheduled maintenance, or cancels it if the engine that owned it is gone.
+     *
+     * @param maintenance The maintenance to run.
+     * @param scheduled   The scheduled task.
+     */
+    private static void runScheduled(final WeakReference<CacheMaintenance> maintenance,
+                                     final AtomicReference<ScheduledFuture<?>> scheduled) {
+        final CacheMaintenance current = maintenance.get();
+        if (current == null) {
+            final ScheduledFuture<?> future = scheduled.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+            return;
+        }
+        try {
+            current.cleanUp();
+        } catch (final RuntimeException e) {
+            // Letting the exception through would stop every future run of this task.
+            logger.warn("Cache maintenance failed.", e);
+        }
+    }
+
+    /**
+     * Creates the scheduler shared by the engines whose caches are maintained in the background.
+     *
+     * @return The scheduler.
+     */
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "tracing-cache-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
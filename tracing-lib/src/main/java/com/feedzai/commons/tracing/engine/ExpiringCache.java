@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link com.google.common.cache.Cache} for {@link MaintenanceMode#BACKGROUND}, where reads and writes are a single
+ * operation on a {@link ConcurrentHashMap}. Entries expire a fixed time after being written, but expired entries are
+ * only removed, and the entries above the maximum size only evicted, by {@link #maintain(CacheMaintenance)}. Expired
+ * entries are never returned.
+ *
+ * <p>Only the operations used by the engines are supported.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class ExpiringCache<K, V> extends AbstractCache<K, V> {
+
+    /**
+     * The entries of the cache.
+     */
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The duration after which the entries expire, in nanoseconds.
+     */
+    private volatile long expireAfterWriteNanos;
+
+    /**
+     * The maximum number of entries that is kept after maintenance.
+     */
+    private volatile long maximumSize;
+
+    /**
+     * The source of time used to expire entries.
+     */
+    private final Ticker ticker;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param configuration The expiration and maximum size of this cache.
+     */
+    ExpiringCache(final CacheConfiguration configuration) {
+        this(configuration, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructor for this class.
+     *
+     * @param configuration The expiration and maximum size of this cache.
+     * @param ticker        The source of time used to expire entries.
+     */
+    ExpiringCache(final CacheConfiguration configuration, final Ticker ticker) {
+        this.expireAfterWriteNanos = configuration.getExpirationAfterWrite().toNanos();
+        this.maximumSize = configuration.getMaximumSize();
+        this.ticker = ticker;
+    }
+
+    @Override
+    public V getIfPresent(final Object key) {
+        final Entry<V> entry = entries.get(key);
+        return entry != null && ticker.read() - entry.writeTime < expireAfterWriteNanos ? entry.value : null;
+    }
+
+    @Override
+    public void put(final K key, final V value) {
+        if (maximumSize > 0) {
+            entries.put(key, new Entry<>(value, ticker.read()));
+        }
+    }
+
+    @Override
+    public void invalidate(final Object key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes the entry of a key only if its value is the given one, compared by identity.
+     *
+     * @param key   The key.
+     * @param value The value expected to be associated to the key.
+     * @return true if the entry was removed, false otherwise.
+     */
+    boolean remove(final K key, final V value) {
+        final Entry<V> entry = entries.get(key);
+        return entry != null && entry.value == value && entries.remove(key, entry);
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    /**
+     * Changes the expiration and the maximum size of this cache, which are applied by the next maintenance.
+     *
+     * @param configuration The new expiration and maximum size.
+     */
+    void reconfigure(final CacheConfiguration configuration) {
+        this.expireAfterWriteNanos = configuration.getExpirationAfterWrite().toNanos();
+        this.maximumSize = configuration.getMaximumSize();
+    }
+
+    /**
+     * Removes the expired entries and then evicts the oldest entries until the cache is within its maximum size.
+     *
+     * @param maintenance Records the number of entries removed.
+     */
+    void maintain(final CacheMaintenance maintenance) {
+        final long now = ticker.read();
+        int expired = 0;
+        for (final Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (now - entry.getValue().writeTime >= expireAfterWriteNanos
+                    && entries.remove(entry.getKey(), entry.getValue())) {
+                expired++;
+            }
+        }
+
+        int evicted = 0;
+        final long excess = entries.size() - maximumSize;
+        if (excess > 0) {
+            // Ages rather than timestamps are sorted, so that the order is right even if the ticker overflows.
+            final long[] ages = entries.values().stream().mapToLong(entry -> now - entry.writeTime).toArray();
+            Arrays.sort(ages);
+            final int youngestEvicted = (int) Math.max(ages.length - excess, 0);
+            for (final Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                if (evicted >= excess || youngestEvicted >= ages.length) {
+                    break;
+                }
+                if (now - entry.getValue().writeTime >= ages[youngestEvicted]
+                        && entries.remove(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                }
+            }
+        }
+
+        maintenance.recordExpired(expired);
+        maintenance.recordEvicted(evicted);
+    }
+
+    /**
+     * A value and the time at which it was written.
+     *
+     * @param <V> The type of the value.
+     */
+    private static final class Entry<V> {
+
+        /**
+         * The value.
+         */
+        final V value;
+
+        /**
+         * The time at which the value was written.
+         */
+        final long writeTime;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param value     The value.
+         * @param writeTime The time at which the value was written.
+         */
+        Entry(final V value, final long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+}
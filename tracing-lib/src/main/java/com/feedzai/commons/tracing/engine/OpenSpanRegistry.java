@@ -0,0 +1,400 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the spans left open by the {@code addToTraceOpen} family of methods, keyed by the object that is later
+ * passed to {@code closeOpen}.
+ *
+ * <p>Keys are compared by identity and are only weakly referenced, so the registry never keeps a response object
+ * alive. The registry is split into segments, each one a chained hash table guarded by its own lock. When the key of
+ * an entry is garbage collected before the span is closed, the entry is unlinked the next time the registry is
+ * written to, or by {@link #maintain(CacheMaintenance)} with {@link MaintenanceMode#BACKGROUND}. The span is then
+ * handed to the listener given at construction so that it can be finished, and the entry is counted in {@link
+ * #collectedCount()}.
+ *
+ * <p>Lookups and removals with a {@code null} key or a key that is not in the registry do not allocate.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class OpenSpanRegistry {
+
+    /**
+     * The initial number of buckets in the table of each segment.
+     */
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    /**
+     * The maximum number of buckets in the table of each segment.
+     */
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+    /**
+     * The segments of this registry.
+     */
+    private final Segment[] segments;
+
+    /**
+     * The shift applied to the hash of a key to choose its segment.
+     */
+    private final int segmentShift;
+
+    /**
+     * The queue where the entries whose key was garbage collected are enqueued.
+     */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    /**
+     * Receives the spans of the entries whose key was garbage collected.
+     */
+    private final Consumer<SpanHandle> collectedListener;
+
+    /**
+     * The number of entries whose key was garbage collected before the span was closed.
+     */
+    private final LongAdder collectedCount = new LongAdder();
+
+    /**
+     * Whether writers unlink the entries whose key was garbage collected.
+     */
+    private final boolean expungeOnWrite;
+
+    /**
+     * Constructor for this class, for a registry that is maintained inline.
+     *
+     * @param collectedListener Receives the spans of the entries whose key was garbage collected before the span was
+     *                          closed.
+     */
+    public OpenSpanRegistry(final Consumer<SpanHandle> collectedListener) {
+        this(collectedListener, MaintenanceMode.INLINE);
+    }
+
+    /**
+     * Constructor for this class.
+     *
+     * @param collectedListener Receives the spans of the entries whose key was garbage collected before the span was
+     *                          closed.
+     * @param maintenanceMode   Where the entries whose key was garbage collected are unlinked.
+     */
+    public OpenSpanRegistry(final Consumer<SpanHandle> collectedListener, final MaintenanceMode maintenanceMode) {
+        this.collectedListener = collectedListener;
+        this.expungeOnWrite = maintenanceMode == MaintenanceMode.INLINE;
+
+        int segmentCount = 1;
+        final int concurrencyLevel = Runtime.getRuntime().availableProcessors() * 4;
+        while (segmentCount < concurrencyLevel) {
+            segmentCount <<= 1;
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Associates an open span to an object, replacing any previous span.
+     *
+     * @param key  The object that identifies the span.
+     * @param span The open span.
+     */
+    public void put(final Object key, final SpanHandle span) {
+        Objects.requireNonNull(key, "key");
+        if (expungeOnWrite) {
+            expungeCollected();
+        }
+        final int hash = hash(key);
+        segmentFor(hash).put(key, hash, span, collected);
+    }
+
+    /**
+     * Returns the open span associated to an object.
+     *
+     * @param key The object that identifies the span.
+     * @return The span or {@code null} if there is no span associated to the object.
+     */
+    public SpanHandle get(final Object key) {
+        if (key == null) {
+            return null;
+        }
+        final int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Removes the open span associated to an object.
+     *
+     * @param key The object that identifies the span.
+     * @return The span that was removed or {@code null} if there was no span associated to the object.
+     */
+    public SpanHandle remove(final Object key) {
+        if (key == null) {
+            return null;
+        }
+        final int hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Unlinks the entries whose key was garbage collected and hands their spans to the listener. This is called on
+     * every write when the registry is maintained inline, but can also be called periodically to release spans when
+     * the registry is idle.
+     *
+     * @return The number of entries unlinked.
+     */
+    public int expungeCollected() {
+        int expunged = 0;
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            if (segmentFor(entry.hash).unlink(entry)) {
+                collectedCount.increment();
+                collectedListener.accept(entry.span);
+                expunged++;
+            }
+        }
+        return expunged;
+    }
+
+    /**
+     * Unlinks the entries whose key was garbage collected.
+     *
+     * @param maintenance Records the number of entries unlinked.
+     */
+    public void maintain(final CacheMaintenance maintenance) {
+        maintenance.recordCollected(expungeCollected());
+    }
+
+    /**
+     * Counts the entries in the registry. Entries whose key was collected are counted until they are expunged.
+     *
+     * @return The number of entries.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of entries whose key was garbage collected before the span was closed.
+     *
+     * @return The number of collected entries since the registry was created.
+     */
+    public long collectedCount() {
+        return collectedCount.sum();
+    }
+
+    /**
+     * Returns the segment responsible for a hash.
+     *
+     * @param hash The hash of the key.
+     * @return The segment.
+     */
+    private Segment segmentFor(final int hash) {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * Computes the hash of a key from its identity hash code, spreading it so that both the segment and the bucket
+     * bits are well distributed.
+     *
+     * @param key The key.
+     * @return The hash.
+     */
+    static int hash(final Object key) {
+        final int hash = System.identityHashCode(key) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * An entry of the registry, which is also the weak reference to its key.
+     */
+    private static final class Entry extends WeakReference<Object> {
+
+        /**
+         * The hash of the key.
+         */
+        final int hash;
+
+        /**
+         * The open span.
+         */
+        SpanHandle span;
+
+        /**
+         * The next entry in the same bucket.
+         */
+        Entry next;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param key   The key.
+         * @param hash  The hash of the key.
+         * @param span  The open span.
+         * @param queue The queue where the entry is enqueued when the key is collected.
+         * @param next  The next entry in the same bucket.
+         */
+        Entry(final Object key, final int hash, final SpanHandle span, final ReferenceQueue<Object> queue,
+              final Entry next) {
+            super(key, queue);
+            this.hash = hash;
+            this.span = span;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A segment of the registry: a chained hash table guarded by the monitor of the segment.
+     */
+    private static final class Segment {
+
+        /**
+         * The buckets of the table.
+         */
+        private Entry[] table = new Entry[INITIAL_TABLE_SIZE];
+
+        /**
+         * The number of entries in the segment. Written under the lock, read without it by {@link #size()}.
+         */
+        volatile int count;
+
+        /**
+         * Returns the span associated to a key.
+         *
+         * @param key  The key.
+         * @param hash The hash of the key.
+         * @return The span or {@code null}.
+         */
+        synchronized SpanHandle get(final Object key, final int hash) {
+            for (Entry entry = table[hash & (table.length - 1)]; entry != null; entry = entry.next) {
+                if (entry.hash == hash && entry.get() == key) {
+                    return entry.span;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Associates a span to a key.
+         *
+         * @param key   The key.
+         * @param hash  The hash of the key.
+         * @param span  The span.
+         * @param queue The queue where the entry is enqueued when the key is collected.
+         */
+        synchronized void put(final Object key, final int hash, final SpanHandle span,
+                              final ReferenceQueue<Object> queue) {
+            final int index = hash & (table.length - 1);
+            for (Entry entry = table[index]; entry != null; entry = entry.next) {
+                if (entry.hash == hash && entry.get() == key) {
+                    entry.span = span;
+                    return;
+                }
+            }
+            table[index] = new Entry(key, hash, span, queue, table[index]);
+            count++;
+            if (count > table.length * 3 / 4 && table.length < MAXIMUM_TABLE_SIZE) {
+                resize();
+            }
+        }
+
+        /**
+         * Removes the entry of a key.
+         *
+         * @param key  The key.
+         * @param hash The hash of the key.
+         * @return The span of the removed entry or {@code null}.
+         */
+        synchronized SpanHandle remove(final Object key, final int hash) {
+            final int index = hash & (table.length - 1);
+            Entry previous = null;
+            for (Entry entry = table[index]; entry != null; previous = entry, entry = entry.next) {
+                if (entry.hash == hash && entry.get() == key) {
+                    unlink(index, previous, entry);
+                    // A cleared reference is not enqueued, so the entry never reaches the collected queue.
+                    entry.clear();
+                    return entry.span;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Unlinks an entry whose key was collected.
+         *
+         * @param target The entry.
+         * @return true if the entry was still in the segment, false if it had already been removed.
+         */
+        synchronized boolean unlink(final Entry target) {
+            final int index = target.hash & (table.length - 1);
+            Entry previous = null;
+            for (Entry entry = table[index]; entry != null; previous = entry, entry = entry.next) {
+                if (entry == target) {
+                    unlink(index, previous, entry);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Unlinks an entry from its bucket. Must be called with the lock held.
+         *
+         * @param index    The bucket.
+         * @param previous The entry before the one to unlink, or {@code null} if it is the first in the bucket.
+         * @param entry    The entry to unlink.
+         */
+        private void unlink(final int index, final Entry previous, final Entry entry) {
+            if (previous == null) {
+                table[index] = entry.next;
+            } else {
+                previous.next = entry.next;
+            }
+            count--;
+        }
+
+        /**
+         * Doubles the number of buckets. Must be called with the lock held.
+         */
+        private void resize() {
+            final Entry[] newTable = new Entry[table.length * 2];
+            final int mask = newTable.length - 1;
+            for (Entry head : table) {
+                Entry entry = head;
+                while (entry != null) {
+                    final Entry next = entry.next;
+                    final int index = entry.hash & mask;
+                    entry.next = newTable[index];
+                    newTable[index] = entry;
+                    entry = next;
+                }
+            }
+            table = newTable;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.OperationRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup table compiled from a list of {@link OperationRule}. {@link AbstractOpenTracingEngine} consults it
+ * before building any span to skip the operations whose rule is disabled, and the sampler of the tracer consults it
+ * when a trace starts to sample the trace at the rate of the rule of its root operation instead of the configured
+ * rate. The rate is only applied to roots, so that a rule never leaves gaps in a trace that was already sampled.
+ *
+ * <p>A rule for the exact description takes precedence over the prefix rules, and among the prefix rules the longest
+ * matching prefix wins. Operations that no rule matches are always traced, leaving the sampling to the underlying
+ * tracer. Lookups do not allocate: exact rules are kept in a hash map and prefix rules in an array sorted from the
+ * longest to the shortest prefix. Each rule has an index, returned by {@link #rootRule(String)}, so that callers can
+ * keep state per rule in an array.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class OperationRules {
+
+    /**
+     * The rules that trace every operation.
+     */
+    public static final OperationRules NONE = new OperationRules(new HashMap<>(), new String[0], new double[0]);
+
+    /**
+     * The rate compiled for a disabled rule.
+     */
+    private static final double DISABLED = -1;
+
+    /**
+     * The index of the rule of each exact description.
+     */
+    private final Map<String, Integer> exact;
+
+    /**
+     * The prefixes, from the longest to the shortest. The index of the rule of a prefix is the number of exact rules
+     * plus its position.
+     */
+    private final String[] prefixes;
+
+    /**
+     * The rate of each rule, by index, {@link #DISABLED} for disabled rules.
+     */
+    private final double[] rates;
+
+    /**
+     * Whether there are no rules, in which case the lookup is skipped.
+     */
+    private final boolean empty;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param exact    The index of the rule of each exact description.
+     * @param prefixes The prefixes, from the longest to the shortest.
+     * @param rates    The rate of each rule, the exact ones first and then the prefixes in order.
+     */
+    private OperationRules(final Map<String, Integer> exact, final String[] prefixes, final double[] rates) {
+        this.exact = exact;
+        this.prefixes = prefixes;
+        this.rates = rates;
+        this.empty = rates.length == 0;
+    }
+
+    /**
+     * Compiles a list of rules into a lookup table.
+     *
+     * @param rules The rules, which may be {@code null} or empty.
+     * @return The lookup table.
+     * @throws IllegalArgumentException if a rule has no description or an invalid rate, or if two rules have the same
+     *                                  description and kind.
+     */
+    public static OperationRules compile(final Collection<OperationRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return NONE;
+        }
+        final Map<String, Double> exact = new HashMap<>();
+        final Map<String, Double> prefix = new HashMap<>();
+        for (final OperationRule rule : rules) {
+            if (rule == null || rule.description == null) {
+                throw new IllegalArgumentException("Operation rules must have a description: " + rule);
+            }
+            if (!(rule.sampleRate >= 0 && rule.sampleRate <= 1)) {
+                throw new IllegalArgumentException("The sample rate must be between 0 and 1: " + rule);
+            }
+            final double rate = rule.enabled ? rule.sampleRate : DISABLED;
+            if ((rule.prefix ? prefix : exact).put(rule.description, rate) != null) {
+                throw new IllegalArgumentException("There is more than one operation rule for " + rule);
+            }
+        }
+        final List<String> sorted = new ArrayList<>(prefix.keySet());
+        sorted.sort(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()));
+        final String[] prefixes = sorted.toArray(new String[0]);
+        final Map<String, Integer> indexes = new HashMap<>();
+        final double[] rates = new double[exact.size() + prefixes.length];
+        for (final Map.Entry<String, Double> rule : exact.entrySet()) {
+            rates[indexes.size()] = rule.getValue();
+            indexes.put(rule.getKey(), indexes.size());
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            rates[exact.size() + i] = prefix.get(prefixes[i]);
+        }
+        return new OperationRules(indexes, prefixes, rates);
+    }
+
+    /**
+     * Returns the index of the rule that matches the root operation of a trace.
+     *
+     * @param description The description of the operation.
+     * @return The index of the rule, between 0 and {@link #size()}, or -1 if no rule matches, in which case the
+     * configured sampling applies.
+     */
+    public int rootRule(final String description) {
+        if (empty || description == null) {
+            return -1;
+        }
+        final Integer rule = exact.get(description);
+        if (rule != null) {
+            return rule;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (description.startsWith(prefixes[i])) {
+                return exact.size() + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the rate at which a rule samples the traces that start with the operations it matches.
+     *
+     * @param rule The index of the rule, as returned by {@link #rootRule(String)}.
+     * @return The rate, 0 if the rule is disabled.
+     */
+    public double rootSampleRate(final int rule) {
+        return Math.max(rates[rule], 0);
+    }
+
+    /**
+     * Returns the rate at which the traces that start with an operation are sampled, if a rule matches it.
+     *
+     * @param description The description of the root operation.
+     * @return The rate, 0 if the rule of the operation is disabled, or {@link Double#NaN} if no rule matches, in which
+     * case the configured sampling applies.
+     */
+    public double rootSampleRate(final String description) {
+        final int rule = rootRule(description);
+        return rule < 0 ? Double.NaN : rootSampleRate(rule);
+    }
+
+    /**
+     * Decides whether an operation is traced, which it is unless its rule is disabled. The sample rate of a rule is
+     * not applied here but when a trace starts, see {@link #rootSampleRate(String)}.
+     *
+     * @param description The description of the operation.
+     * @return true if a span should be built for the operation, false if it should just be called.
+     */
+    public boolean isTraced(final String description) {
+        if (empty) {
+            return true;
+        }
+        final int rule = rootRule(description);
+        return rule < 0 || rates[rule] != DISABLED;
+    }
+
+    /**
+     * Returns the number of rules, which bounds the indexes returned by {@link #rootRule(String)}.
+     *
+     * @return The number of rules.
+     */
+    public int size() {
+        return rates.length;
+    }
+
+    /**
+     * Returns true if there are no rules, so that every operation is traced.
+     *
+     * @return true if there are no rules.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("OperationRules{exact={");
+        int i = 0;
+        for (final Map.Entry<String, Integer> rule : exact.entrySet()) {
+            builder.append(i++ == 0 ? "" : ", ").append(rule.getKey()).append('=').append(rates[rule.getValue()]);
+        }
+        builder.append("}, prefixes={");
+        for (i = 0; i < prefixes.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(prefixes[i]).append('=').append(rates[exact.size() + i]);
+        }
+        return builder.append("}}").toString();
+    }
+}
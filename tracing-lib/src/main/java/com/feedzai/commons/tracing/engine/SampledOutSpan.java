@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+import java.util.Map;
+
+/**
+ * Span that only carries the context of a trace that was sampled out. It is activated by {@link
+ * AbstractOpenTracingEngine} so that the context of such traces is propagated without building a span in the
+ * underlying tracing engine, since that span would never be reported. Every operation on it is ignored.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class SampledOutSpan implements Span {
+
+    /**
+     * The context of the trace that was sampled out.
+     */
+    private final SpanContext context;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param context The context of the trace that was sampled out.
+     */
+    SampledOutSpan(final SpanContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public SpanContext context() {
+        return context;
+    }
+
+    @Override
+    public Span setTag(final String key, final String value) {
+        return this;
+    }
+
+    @Override
+    public Span setTag(final String key, final boolean value) {
+        return this;
+    }
+
+    @Override
+    public Span setTag(final String key, final Number value) {
+        return this;
+    }
+
+    @Override
+    public Span log(final Map<String, ?> fields) {
+        return this;
+    }
+
+    @Override
+    public Span log(final long timestampMicroseconds, final Map<String, ?> fields) {
+        return this;
+    }
+
+    @Override
+    public Span log(final String event) {
+        return this;
+    }
+
+    @Override
+    public Span log(final long timestampMicroseconds, final String event) {
+        return this;
+    }
+
+    @Override
+    public Span setBaggageItem(final String key, final String value) {
+        return this;
+    }
+
+    @Override
+    public String getBaggageItem(final String key) {
+        for (Map.Entry<String, String> item : context.baggageItems()) {
+            if (item.getKey().equals(key)) {
+                return item.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Span setOperationName(final String operationName) {
+        return this;
+    }
+
+    @Override
+    public void finish() {
+    }
+
+    @Override
+    public void finish(final long finishMicros) {
+    }
+}
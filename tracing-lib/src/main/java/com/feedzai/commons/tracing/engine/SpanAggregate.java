@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.tag.Tags;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The children with the same description under the same parent span, which are counted so that, past the threshold of
+ * a {@link SpanAggregation}, they are timed and collapsed into a single span instead of being traced individually.
+ * Aggregates are kept in the {@link SpanStack} of their trace.
+ *
+ * <p>The statistics are only allocated when the threshold is reached, so that children that are not repeated only cost
+ * a counter. They are updated without locks, since the children of a parent may run in parallel.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+final class SpanAggregate {
+
+    /**
+     * Atomic updater for {@code calls}.
+     */
+    private static final AtomicIntegerFieldUpdater<SpanAggregate> CALLS =
+            AtomicIntegerFieldUpdater.newUpdater(SpanAggregate.class, "calls");
+
+    /**
+     * The context of the parent span.
+     */
+    final SpanContext parent;
+
+    /**
+     * The description of the children.
+     */
+    final String description;
+
+    /**
+     * The settings the aggregate was created with.
+     */
+    private final SpanAggregation aggregation;
+
+    /**
+     * The number of children that started, which stops being counted once it is past the threshold.
+     */
+    private volatile int calls;
+
+    /**
+     * The span that represents the aggregated children, started by the first of them.
+     */
+    private volatile Span span;
+
+    /**
+     * The {@link System#nanoTime()} at which {@code span} started.
+     */
+    private long spanStartNanos;
+
+    /**
+     * The number of aggregated children.
+     */
+    private volatile LongAdder count;
+
+    /**
+     * The number of aggregated children that failed.
+     */
+    private LongAdder errors;
+
+    /**
+     * The sum of the durations of the aggregated children, in nanoseconds.
+     */
+    private LongAdder totalNanos;
+
+    /**
+     * The shortest duration of the aggregated children, in nanoseconds.
+     */
+    private LongAccumulator minNanos;
+
+    /**
+     * The longest duration of the aggregated children, in nanoseconds.
+     */
+    private LongAccumulator maxNanos;
+
+    /**
+     * The {@link System#nanoTime()} at which the last aggregated child finished.
+     */
+    private LongAccumulator lastEndNanos;
+
+    /**
+     * The number of aggregated children in each bucket of the histogram.
+     */
+    private LongAdder[] histogram;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param parent      The context of the parent span.
+     * @param description The description of the children.
+     * @param aggregation The settings of the aggregation.
+     */
+    SpanAggregate(final SpanContext parent, final String description, final SpanAggregation aggregation) {
+        this.parent = parent;
+        this.description = description;
+        this.aggregation = aggregation;
+    }
+
+    /**
+     * Counts a child that is starting.
+     *
+     * @return 0 if the child should be traced individually, 1 if it is the first aggregated child, which should start
+     * the span with {@link #start(Span)}, or 2 if it is aggregated.
+     */
+    int callStarted() {
+        final int threshold = aggregation.getThreshold();
+        if (calls > threshold) {
+            return 2;
+        }
+        final int call = CALLS.incrementAndGet(this);
+        if (call <= threshold) {
+            return 0;
+        }
+        return call == threshold + 1 ? 1 : 2;
+    }
+
+    /**
+     * Starts aggregating the children, with the span that will represent them.
+     *
+     * @param span The span, already started.
+     */
+    void start(final Span span) {
+        final LongAdder[] histogram = new LongAdder[aggregation.buckets()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+        this.histogram = histogram;
+        this.errors = new LongAdder();
+        this.totalNanos = new LongAdder();
+        this.minNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        this.maxNanos = new LongAccumulator(Math::max, 0);
+        this.spanStartNanos = System.nanoTime();
+        this.lastEndNanos = new LongAccumulator(Math::max, spanStartNanos);
+        this.span = span;
+        this.count = new LongAdder();
+    }
+
+    /**
+     * Records an aggregated child that finished. Children that finish before the first aggregated child started the
+     * span are not counted.
+     *
+     * @param startNanos The {@link System#nanoTime()} at which the child started.
+     * @param endNanos   The {@link System#nanoTime()} at which the child finished.
+     * @param failed     Whether the child failed.
+     */
+    void record(final long startNanos, final long endNanos, final boolean failed) {
+        final LongAdder count = this.count;
+        if (count == null) {
+            return;
+        }
+        final long duration = endNanos - startNanos;
+        count.increment();
+        totalNanos.add(duration);
+        minNanos.accumulate(duration);
+        maxNanos.accumulate(duration);
+        lastEndNanos.accumulate(endNanos);
+        histogram[aggregation.bucket(TimeUnit.NANOSECONDS.toMicros(duration))].increment();
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Returns the span that represents the aggregated children.
+     *
+     * @return The span, or {@code null} if no child was aggregated.
+     */
+    Span getSpan() {
+        return count == null ? null : span;
+    }
+
+    /**
+     * Sets the statistics of the aggregated children as tags of their span, and marks it with {@link Tags#ERROR} if
+     * any of them failed.
+     *
+     * @return The time between the start of the span and the end of the last aggregated child, in microseconds.
+     */
+    long tag() {
+        final Span span = getSpan();
+        final long count = this.count.sum();
+        span.setTag(SpanAggregation.COUNT_TAG, count);
+        span.setTag(SpanAggregation.TOTAL_TAG, TimeUnit.NANOSECONDS.toMicros(totalNanos.sum()));
+        span.setTag(SpanAggregation.MIN_TAG, count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(minNanos.get()));
+        span.setTag(SpanAggregation.MAX_TAG, TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        final long errors = this.errors.sum();
+        span.setTag(SpanAggregation.ERRORS_TAG, errors);
+        if (errors > 0) {
+            Tags.ERROR.set(span, true);
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            span.setTag(aggregation.bucketTag(i), histogram[i].sum());
+        }
+        return TimeUnit.NANOSECONDS.toMicros(lastEndNanos.get() - spanStartNanos);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.SpanAggregationConfiguration;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable settings compiled from a {@link SpanAggregationConfiguration}, which {@link AbstractOpenTracingEngine}
+ * consults before building a synchronous child span to decide whether it is aggregated.
+ *
+ * <p>Children are aggregated per parent span and description: the first {@link #getThreshold()} are traced as
+ * individual spans, and the following ones are only timed. When the parent finishes, or the trace if the parent is not
+ * tracked by the engine, a single span with the description of the children is reported as a child of the parent. It
+ * starts with the first aggregated child, ends with the last one, and carries the tags below. Durations are in
+ * microseconds.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class SpanAggregation {
+
+    /**
+     * The tag with the number of aggregated children.
+     */
+    public static final String COUNT_TAG = "aggregation.count";
+
+    /**
+     * The tag with the number of aggregated children that failed.
+     */
+    public static final String ERRORS_TAG = "aggregation.errors";
+
+    /**
+     * The tag with the sum of the durations of the aggregated children.
+     */
+    public static final String TOTAL_TAG = "aggregation.total_us";
+
+    /**
+     * The tag with the shortest duration of the aggregated children.
+     */
+    public static final String MIN_TAG = "aggregation.min_us";
+
+    /**
+     * The tag with the longest duration of the aggregated children.
+     */
+    public static final String MAX_TAG = "aggregation.max_us";
+
+    /**
+     * The prefix of the tags with the number of aggregated children in each bucket of the histogram, which is followed
+     * by {@code le_<bound>us}, or by {@code gt_<bound>us} for the last bucket.
+     */
+    public static final String HISTOGRAM_TAG_PREFIX = "aggregation.";
+
+    /**
+     * The default upper bounds of the buckets of the histogram, in microseconds.
+     */
+    static final long[] DEFAULT_HISTOGRAM_BOUNDS_MICROS = {10, 100, 1_000, 10_000, 100_000};
+
+    /**
+     * The settings that aggregate nothing.
+     */
+    public static final SpanAggregation NONE = new SpanAggregation(false, 0, DEFAULT_HISTOGRAM_BOUNDS_MICROS);
+
+    /**
+     * Whether repeated children are aggregated.
+     */
+    private final boolean enabled;
+
+    /**
+     * How many children are traced as individual spans before the following ones are aggregated.
+     */
+    private final int threshold;
+
+    /**
+     * The upper bounds of the buckets of the histogram, in microseconds.
+     */
+    private final long[] boundsMicros;
+
+    /**
+     * The tag of each bucket of the histogram, including the one above the last bound.
+     */
+    private final String[] bucketTags;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param enabled      Whether repeated children are aggregated.
+     * @param threshold    How many children are traced as individual spans before the following ones are aggregated.
+     * @param boundsMicros The upper bounds of the buckets of the histogram, in microseconds.
+     */
+    private SpanAggregation(final boolean enabled, final int threshold, final long[] boundsMicros) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.boundsMicros = boundsMicros;
+        this.bucketTags = new String[boundsMicros.length + 1];
+        for (int i = 0; i < boundsMicros.length; i++) {
+            bucketTags[i] = HISTOGRAM_TAG_PREFIX + "le_" + boundsMicros[i] + "us";
+        }
+        bucketTags[boundsMicros.length] = boundsMicros.length == 0 ? HISTOGRAM_TAG_PREFIX + "all"
+                : HISTOGRAM_TAG_PREFIX + "gt_" + boundsMicros[boundsMicros.length - 1] + "us";
+    }
+
+    /**
+     * Compiles a configuration into the settings used by the engine.
+     *
+     * @param configuration The configuration, which may be {@code null}.
+     * @return The settings, or {@link #NONE} if the configuration is missing or disabled.
+     * @throws IllegalArgumentException if the threshold is negative or the bounds of the histogram are not positive
+     *                                  and increasing.
+     */
+    public static SpanAggregation compile(final SpanAggregationConfiguration configuration) {
+        if (configuration == null || !configuration.enabled) {
+            return NONE;
+        }
+        if (configuration.threshold < 0) {
+            throw new IllegalArgumentException("The aggregation threshold must not be negative: " + configuration);
+        }
+        final List<Long> bounds = configuration.histogramBoundsInMicros;
+        if (bounds == null) {
+            return new SpanAggregation(true, configuration.threshold, DEFAULT_HISTOGRAM_BOUNDS_MICROS);
+        }
+        final long[] boundsMicros = new long[bounds.size()];
+        for (int i = 0; i < boundsMicros.length; i++) {
+            final Long bound = bounds.get(i);
+            if (bound == null || bound <= 0 || (i > 0 && bound <= boundsMicros[i - 1])) {
+                throw new IllegalArgumentException("The histogram bounds must be positive and increasing: "
+                        + configuration);
+            }
+            boundsMicros[i] = bound;
+        }
+        return new SpanAggregation(true, configuration.threshold, boundsMicros);
+    }
+
+    /**
+     * Getter for {@code enabled}.
+     *
+     * @return Whether repeated children are aggregated.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Getter for {@code threshold}.
+     *
+     * @return How many children are traced as individual spans before the following ones are aggregated.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the number of buckets of the histogram, including the one above the last bound.
+     *
+     * @return The number of buckets.
+     */
+    int buckets() {
+        return bucketTags.length;
+    }
+
+    /**
+     * Returns the bucket of the histogram a duration falls in.
+     *
+     * @param micros The duration in microseconds.
+     * @return The index of the bucket.
+     */
+    int bucket(final long micros) {
+        int bucket = 0;
+        while (bucket < boundsMicros.length && micros > boundsMicros[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the tag of a bucket of the histogram.
+     *
+     * @param bucket The index of the bucket.
+     * @return The tag.
+     */
+    String bucketTag(final int bucket) {
+        return bucketTags[bucket];
+    }
+
+    @Override
+    public String toString() {
+        return "SpanAggregation{" +
+                "enabled=" + enabled +
+                ", threshold=" + threshold +
+                ", boundsMicros=" + Arrays.toString(boundsMicros) +
+                '}';
+    }
+}
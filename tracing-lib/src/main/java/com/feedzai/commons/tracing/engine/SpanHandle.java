@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.Span;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Engine-side view of a {@link Span} created by {@link AbstractOpenTracingEngine}. The trace ID is resolved once when
+ * the span is created and kept here so that the engine never has to resolve it again while the span is alive. The
+ * handle also keeps the ID of the thread that created the span, which the engine uses instead of propagating it as
+ * baggage, and the {@link SpanStack} of the trace the span was registered with, so that the trace knows when all its
+ * spans have finished.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class SpanHandle {
+
+    /**
+     * Atomic updater for {@code trace}.
+     */
+    private static final AtomicReferenceFieldUpdater<SpanHandle, SpanStack> TRACE =
+            AtomicReferenceFieldUpdater.newUpdater(SpanHandle.class, SpanStack.class, "trace");
+
+    /**
+     * The span represented by this handle.
+     */
+    private final Span span;
+
+    /**
+     * The high bits of the ID of the trace this span belongs to.
+     */
+    private final long traceIdHigh;
+
+    /**
+     * The low bits of the ID of the trace this span belongs to.
+     */
+    private final long traceIdLow;
+
+    /**
+     * The ID of the thread that created the span.
+     */
+    private final long threadId;
+
+    /**
+     * The node of the {@link SpanStack} this span was last pushed to, kept so that it can be removed in O(1).
+     */
+    volatile SpanStack.Node node;
+
+    /**
+     * The stack of the trace this span was registered with, until the span is released.
+     */
+    private volatile SpanStack trace;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param span        The span represented by this handle.
+     * @param traceIdHigh The high bits of the ID of the trace this span belongs to.
+     * @param traceIdLow  The low bits of the ID of the trace this span belongs to.
+     */
+    SpanHandle(final Span span, final long traceIdHigh, final long traceIdLow) {
+        this.span = span;
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.threadId = Thread.currentThread().getId();
+    }
+
+    /**
+     * Getter for {@code span}.
+     *
+     * @return The value of {@code span}.
+     */
+    public Span getSpan() {
+        return span;
+    }
+
+    /**
+     * Getter for {@code traceIdHigh}.
+     *
+     * @return The value of {@code traceIdHigh}.
+     */
+    public long getTraceIdHigh() {
+        return traceIdHigh;
+    }
+
+    /**
+     * Getter for {@code traceIdLow}.
+     *
+     * @return The value of {@code traceIdLow}.
+     */
+    public long getTraceIdLow() {
+        return traceIdLow;
+    }
+
+    /**
+     * Getter for {@code threadId}.
+     *
+     * @return The value of {@code threadId}.
+     */
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /**
+     * Returns the stack of the trace this span is registered with.
+     *
+     * @return The stack or {@code null} if the span is not registered.
+     */
+    SpanStack getTrace() {
+        return trace;
+    }
+
+    /**
+     * Registers this span with the stack of its trace, which counts it as open. A span is registered at most once.
+     *
+     * @param spans The stack of the trace.
+     */
+    void register(final SpanStack spans) {
+        if (trace == null && TRACE.compareAndSet(this, null, spans)) {
+            spans.spanStarted();
+        }
+    }
+
+    /**
+     * Releases this span from the stack of its trace. Only the first call returns the stack, so that a span that is
+     * finished twice is only counted once.
+     *
+     * @return The stack the span was registered with, or {@code null} if it was not registered or was already released.
+     */
+    SpanStack release() {
+        return trace == null ? null : TRACE.getAndSet(this, null);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free stack of the spans that represent the current point in the execution of a trace. The span on top of the
+ * stack is the one that should be used as parent by operations that join the trace out-of-band.
+ *
+ * <p>This is a Treiber stack with logical deletion: removing a span only marks its node as removed, which is O(1)
+ * since each {@link SpanHandle} keeps a reference to its node. Removed nodes are unlinked once they reach the top of
+ * the stack, by whichever thread happens to look at it. Nodes are never reused, so there is no ABA problem.
+ *
+ * <p>The stack also counts the spans of the trace that were registered with it and have not finished yet, including
+ * the ones that were never pushed. Once that count drops to zero the trace has finished and can be purged.
+ *
+ * <p>When repeated children are aggregated, the stack also keeps the {@link SpanAggregate} of each parent span and
+ * description, until the parent or the trace finishes.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class SpanStack {
+
+    /**
+     * Atomic updater for {@code head}.
+     */
+    private static final AtomicReferenceFieldUpdater<SpanStack, Node> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(SpanStack.class, Node.class, "head");
+
+    /**
+     * Atomic updater for {@code openSpans}.
+     */
+    private static final AtomicIntegerFieldUpdater<SpanStack> OPEN_SPANS =
+            AtomicIntegerFieldUpdater.newUpdater(SpanStack.class, "openSpans");
+
+    /**
+     * Atomic updater for {@code aggregates}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SpanStack, ConcurrentHashMap> AGGREGATES =
+            AtomicReferenceFieldUpdater.newUpdater(SpanStack.class, ConcurrentHashMap.class, "aggregates");
+
+    /**
+     * The top of the stack.
+     */
+    private volatile Node head;
+
+    /**
+     * The number of registered spans that have not finished.
+     */
+    private volatile int openSpans;
+
+    /**
+     * The application specific ID mapped to the trace, if any, so that the mapping is purged with the trace.
+     */
+    volatile String eventId;
+
+    /**
+     * The aggregates of the children of each parent span, by description, created when the first one is needed.
+     */
+    private volatile ConcurrentHashMap<SpanContext, ConcurrentHashMap<String, SpanAggregate>> aggregates;
+
+    /**
+     * Pushes a span to the top of the stack. Pushing a span that is already in this stack does nothing.
+     *
+     * @param span The span to push.
+     */
+    public void push(final SpanHandle span) {
+        final Node current = span.node;
+        if (current != null && current.stack == this && !current.removed) {
+            return;
+        }
+        final Node node = new Node(span, this);
+        span.node = node;
+        Node top;
+        do {
+            top = head;
+            node.next = top;
+        } while (!HEAD.compareAndSet(this, top, node));
+    }
+
+    /**
+     * Returns the span on top of the stack, without removing it.
+     *
+     * @return The span on top of the stack or {@code null} if the stack is empty.
+     */
+    public SpanHandle peek() {
+        final Node top = liveHead();
+        return top == null ? null : top.span;
+    }
+
+    /**
+     * Removes a span from the stack, wherever it is.
+     *
+     * @param span The span to remove.
+     */
+    public void remove(final SpanHandle span) {
+        final Node node = span.node;
+        if (node != null && node.stack == this) {
+            node.removed = true;
+            liveHead();
+        }
+    }
+
+    /**
+     * Returns true if there are no spans in the stack.
+     *
+     * @return true if there are no spans in the stack, false otherwise.
+     */
+    public boolean isEmpty() {
+        return liveHead() == null;
+    }
+
+    /**
+     * Counts the spans in the stack. This walks the whole stack so it should not be used in the hot path.
+     *
+     * @return The number of spans in the stack.
+     */
+    public int size() {
+        int size = 0;
+        for (Node node = head; node != null; node = node.next) {
+            if (!node.removed) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns a snapshot of the spans in the stack, from top to bottom. This walks the whole stack so it should not be
+     * used in the hot path.
+     *
+     * @return The spans in the stack.
+     */
+    public List<Span> spans() {
+        final List<Span> spans = new ArrayList<>();
+        for (Node node = head; node != null; node = node.next) {
+            if (!node.removed) {
+                spans.add(node.span.getSpan());
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Counts a span of the trace that has started.
+     */
+    void spanStarted() {
+        OPEN_SPANS.incrementAndGet(this);
+    }
+
+    /**
+     * Counts a span of the trace that has finished.
+     *
+     * @return true if no registered span of the trace is still open, false otherwise.
+     */
+    boolean spanFinished() {
+        return OPEN_SPANS.decrementAndGet(this) == 0;
+    }
+
+    /**
+     * Returns true if no registered span of the trace is open. Spans may still be registered afterwards, by
+     * operations that join the trace late.
+     *
+     * @return true if all the registered spans have finished, false otherwise.
+     */
+    public boolean isFinished() {
+        return openSpans == 0;
+    }
+
+    /**
+     * Returns the aggregate of the children of a parent span with a description, creating it if needed.
+     *
+     * @param parent      The context of the parent span.
+     * @param description The description of the children.
+     * @param aggregation The settings a new aggregate is created with.
+     * @return The aggregate.
+     */
+    SpanAggregate aggregate(final SpanContext parent, final String description, final SpanAggregation aggregation) {
+        ConcurrentHashMap<SpanContext, ConcurrentHashMap<String, SpanAggregate>> all = aggregates;
+        if (all == null) {
+            AGGREGATES.compareAndSet(this, null, new ConcurrentHashMap<>());
+            all = aggregates;
+        }
+        ConcurrentHashMap<String, SpanAggregate> children = all.get(parent);
+        if (children == null) {
+            children = all.computeIfAbsent(parent, key -> new ConcurrentHashMap<>());
+        }
+        final SpanAggregate aggregate = children.get(description);
+        if (aggregate != null) {
+            return aggregate;
+        }
+        return children.computeIfAbsent(description, key -> new SpanAggregate(parent, key, aggregation));
+    }
+
+    /**
+     * Removes the aggregates of the children of a parent span.
+     *
+     * @param parent The context of the parent span.
+     * @return The aggregates that were removed.
+     */
+    Collection<SpanAggregate> removeAggregates(final SpanContext parent) {
+        final ConcurrentHashMap<SpanContext, ConcurrentHashMap<String, SpanAggregate>> all = aggregates;
+        final ConcurrentHashMap<String, SpanAggregate> children = all == null ? null : all.remove(parent);
+        return children == null ? Collections.emptyList() : children.values();
+    }
+
+    /**
+     * Removes the aggregates of the children of every parent span.
+     *
+     * @return The aggregates that were removed.
+     */
+    Collection<SpanAggregate> removeAggregates() {
+        final ConcurrentHashMap<SpanContext, ConcurrentHashMap<String, SpanAggregate>> all = aggregates;
+        if (all == null || all.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<SpanAggregate> removed = new ArrayList<>();
+        for (final SpanContext parent : all.keySet()) {
+            removed.addAll(removeAggregates(parent));
+        }
+        return removed;
+    }
+
+    /**
+     * Unlinks removed nodes from the top of the stack and returns the first node that was not removed.
+     *
+     * @return The first live node or {@code null} if the stack is empty.
+     */
+    private Node liveHead() {
+        Node top = head;
+        while (top != null && top.removed) {
+            final Node next = top.next;
+            if (HEAD.compareAndSet(this, top, next)) {
+                top = next;
+            } else {
+                top = head;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * A node of the stack.
+     */
+    static final class Node {
+
+        /**
+         * The span held by this node.
+         */
+        final SpanHandle span;
+
+        /**
+         * The stack this node was pushed to.
+         */
+        final SpanStack stack;
+
+        /**
+         * The node below this one. Only written before the node is published by the CAS on {@code head}.
+         */
+        Node next;
+
+        /**
+         * Whether the span has been removed from the stack.
+         */
+        volatile boolean removed;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param span  The span held by this node.
+         * @param stack The stack this node is pushed to.
+         */
+        Node(final SpanHandle span, final SpanStack stack) {
+            this.span = span;
+            this.stack = stack;
+        }
+    }
+}
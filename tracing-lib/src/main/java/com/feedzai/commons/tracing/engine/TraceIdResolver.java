@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Service provider interface used by {@link AbstractOpenTracingEngine} to obtain the ID of the trace a span belongs to.
+ *
+ * <p>Implementations should read the ID straight from the native context of the underlying tracing engine instead of
+ * going through a propagation codec, since this is called for every span that is created. Trace IDs are represented as
+ * up to 128 bits split into two {@code long} values; engines that only support 64 bit IDs should return 0 in {@link
+ * TraceIdResolver#traceIdHigh(SpanContext)}.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public interface TraceIdResolver {
+
+    /**
+     * Returns the most significant 64 bits of the trace ID.
+     *
+     * @param context The context of the span.
+     * @return The high bits of the trace ID, or 0 for 64 bit trace IDs.
+     */
+    long traceIdHigh(SpanContext context);
+
+    /**
+     * Returns the least significant 64 bits of the trace ID.
+     *
+     * @param context The context of the span.
+     * @return The low bits of the trace ID.
+     */
+    long traceIdLow(SpanContext context);
+
+    /**
+     * Returns whether the trace was sampled, i.e., whether its spans will be reported. Spans of traces that were not
+     * sampled only need to exist as far as needed to propagate the context, so the engine skips most of its work for
+     * them.
+     *
+     * @param context The context of the span.
+     * @return true if the trace was sampled, false otherwise. Engines without sampling should always return true.
+     */
+    default boolean isSampled(final SpanContext context) {
+        return true;
+    }
+
+}
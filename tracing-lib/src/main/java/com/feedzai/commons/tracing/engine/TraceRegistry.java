@@ -0,0 +1,539 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent map from trace IDs to values, keyed by the two {@code long} values that make up a 128 bit trace ID (64 bit
+ * trace IDs simply use 0 as the high bits). It has the same bounds as a cache built from a {@link CacheConfiguration}:
+ * entries expire a fixed time after being written and the number of entries is capped.
+ *
+ * <p>The registry is split into segments, each one an open-addressing hash table with linear probing that stores keys
+ * and write timestamps in primitive arrays, so an entry costs a few array slots instead of a String key, its char array
+ * and a cache entry object. Reads are lock-free in the common case, using the optimistic mode of {@link StampedLock};
+ * writes lock a single segment.
+ *
+ * <p>Expired entries are never returned, and are removed when they are found while looking for room for new entries.
+ * When a segment is full, a small sample of its entries is inspected and the oldest one is evicted, which approximates
+ * the eviction order of {@code expireAfterWrite} without keeping a queue of entries.
+ *
+ * <p>With {@link MaintenanceMode#BACKGROUND}, writers never evict: segments grow past their share of the maximum size
+ * and {@link #maintain(CacheMaintenance)} removes the expired entries and evicts the excess.
+ *
+ * @param <V> The type of the values.
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public final class TraceRegistry<V> {
+
+    /**
+     * The initial number of slots in the table of each segment.
+     */
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    /**
+     * The maximum number of slots in the table of each segment.
+     */
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+    /**
+     * The number of entries inspected when choosing an entry to evict.
+     */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    /**
+     * The segments of this registry.
+     */
+    private final Segment<V>[] segments;
+
+    /**
+     * The shift applied to the hash of a key to choose its segment.
+     */
+    private final int segmentShift;
+
+    /**
+     * The duration after which the entries expire, in nanoseconds.
+     */
+    private volatile long expireAfterWriteNanos;
+
+    /**
+     * The source of time used to expire entries.
+     */
+    private final Ticker ticker;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param configuration The expiration and maximum size of this registry.
+     */
+    public TraceRegistry(final CacheConfiguration configuration) {
+        this(configuration, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructor for this class.
+     *
+     * @param configuration The expiration and maximum size of this registry.
+     * @param ticker        The source of time used to expire entries.
+     */
+    @SuppressWarnings("unchecked")
+    TraceRegistry(final CacheConfiguration configuration, final Ticker ticker) {
+        this.expireAfterWriteNanos = configuration.getExpirationAfterWrite().toNanos();
+        this.ticker = ticker;
+
+        final long maximumSize = configuration.getMaximumSize();
+        int segmentCount = 1;
+        final int concurrencyLevel = Runtime.getRuntime().availableProcessors() * 4;
+        while (segmentCount < concurrencyLevel && segmentCount * 2L <= maximumSize) {
+            segmentCount <<= 1;
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = new Segment[segmentCount];
+
+        final int maximumPerSegment = maximumPerSegment(maximumSize, segmentCount);
+        final boolean evictOnWrite = configuration.getMaintenanceMode() == MaintenanceMode.INLINE;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(maximumPerSegment, evictOnWrite);
+        }
+    }
+
+    /**
+     * Changes the expiration and the maximum size of this registry. The number of segments is kept, so growing a
+     * registry that was created very small increases contention, and entries above the new maximum size are evicted
+     * right away.
+     *
+     * @param configuration The new expiration and maximum size.
+     * @param maintenance   Records the number of entries removed.
+     */
+    public void reconfigure(final CacheConfiguration configuration, final CacheMaintenance maintenance) {
+        this.expireAfterWriteNanos = configuration.getExpirationAfterWrite().toNanos();
+        final int maximumPerSegment = maximumPerSegment(configuration.getMaximumSize(), segments.length);
+        for (final Segment<V> segment : segments) {
+            segment.maximumSize = maximumPerSegment;
+        }
+        maintain(maintenance);
+    }
+
+    /**
+     * Splits the maximum size of the registry among its segments.
+     *
+     * @param maximumSize  The maximum size of the registry.
+     * @param segmentCount The number of segments.
+     * @return The maximum size of each segment.
+     */
+    private static int maximumPerSegment(final long maximumSize, final int segmentCount) {
+        return (int) Math.min((maximumSize + segmentCount - 1) / segmentCount, MAXIMUM_TABLE_SIZE / 2);
+    }
+
+    /**
+     * Returns the value associated to a trace ID.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @return The value or {@code null} if there is no value for the trace ID or it has expired.
+     */
+    public V get(final long traceIdHigh, final long traceIdLow) {
+        final int hash = hash(traceIdHigh, traceIdLow);
+        return segmentFor(hash).get(traceIdHigh, traceIdLow, hash, ticker.read() - expireAfterWriteNanos);
+    }
+
+    /**
+     * Associates a value to a trace ID, replacing any previous value.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param value       The value.
+     */
+    public void put(final long traceIdHigh, final long traceIdLow, final V value) {
+        final int hash = hash(traceIdHigh, traceIdLow);
+        final long now = ticker.read();
+        segmentFor(hash).put(traceIdHigh, traceIdLow, hash, value, now, now - expireAfterWriteNanos);
+    }
+
+    /**
+     * Removes the value associated to a trace ID.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @return The value that was removed or {@code null} if there was none.
+     */
+    public V remove(final long traceIdHigh, final long traceIdLow) {
+        final int hash = hash(traceIdHigh, traceIdLow);
+        return segmentFor(hash).remove(traceIdHigh, traceIdLow, hash, null);
+    }
+
+    /**
+     * Removes the value associated to a trace ID only if it is the given value, compared by identity.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @param value       The value expected to be associated to the trace ID.
+     * @return true if the value was removed, false if the trace ID was associated to another value or to none.
+     */
+    public boolean remove(final long traceIdHigh, final long traceIdLow, final V value) {
+        final int hash = hash(traceIdHigh, traceIdLow);
+        return segmentFor(hash).remove(traceIdHigh, traceIdLow, hash, value) != null;
+    }
+
+    /**
+     * Removes the expired entries and evicts the oldest entries of the segments that are above their maximum size.
+     *
+     * @param maintenance Records the number of entries removed.
+     */
+    public void maintain(final CacheMaintenance maintenance) {
+        final long expiredBefore = ticker.read() - expireAfterWriteNanos;
+        for (final Segment<V> segment : segments) {
+            segment.maintain(expiredBefore, maintenance);
+        }
+    }
+
+    /**
+     * Returns the number of entries in this registry, including the ones that have expired but were not removed yet.
+     *
+     * @return The number of entries.
+     */
+    public long size() {
+        long size = 0;
+        for (final Segment<V> segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     * Chooses the segment of a key.
+     *
+     * @param hash The hash of the key.
+     * @return The segment.
+     */
+    private Segment<V> segmentFor(final int hash) {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * Spreads the bits of a trace ID into a hash code.
+     *
+     * @param traceIdHigh The high bits of the trace ID.
+     * @param traceIdLow  The low bits of the trace ID.
+     * @return The hash code.
+     */
+    static int hash(final long traceIdHigh, final long traceIdLow) {
+        long hash = traceIdHigh * 0x9E3779B97F4A7C15L ^ traceIdLow;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (hash ^ (hash >>> 33));
+    }
+
+    /**
+     * The slots of a segment. A slot is empty when its value is {@code null}. The arrays are never resized, a new
+     * table is created instead, so readers always see arrays of consistent length.
+     */
+    private static final class Table {
+
+        /**
+         * The high bits of the keys.
+         */
+        final long[] traceIdHigh;
+
+        /**
+         * The low bits of the keys.
+         */
+        final long[] traceIdLow;
+
+        /**
+         * The time at which each entry was written.
+         */
+        final long[] writeTime;
+
+        /**
+         * The values.
+         */
+        final Object[] values;
+
+        /**
+         * The mask used to map a hash code to a slot.
+         */
+        final int mask;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param size The number of slots, must be a power of two.
+         */
+        Table(final int size) {
+            this.traceIdHigh = new long[size];
+            this.traceIdLow = new long[size];
+            this.writeTime = new long[size];
+            this.values = new Object[size];
+            this.mask = size - 1;
+        }
+    }
+
+    /**
+     * A segment of the registry, guarded by its own lock.
+     *
+     * @param <V> The type of the values.
+     */
+    private static final class Segment<V> extends StampedLock {
+
+        /**
+         * The maximum number of entries in this segment.
+         */
+        private volatile int maximumSize;
+
+        /**
+         * Whether writers evict an entry when the segment is full.
+         */
+        private final boolean evictOnWrite;
+
+        /**
+         * The current table.
+         */
+        private volatile Table table;
+
+        /**
+         * The number of entries in this segment.
+         */
+        private volatile int count;
+
+        /**
+         * The slot where the next eviction sample starts.
+         */
+        private int evictionCursor;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param maximumSize  The maximum number of entries in this segment.
+         * @param evictOnWrite Whether writers evict an entry when the segment is full.
+         */
+        Segment(final int maximumSize, final boolean evictOnWrite) {
+            this.maximumSize = maximumSize;
+            this.evictOnWrite = evictOnWrite;
+            this.table = new Table(INITIAL_TABLE_SIZE);
+        }
+
+        /**
+         * Looks up a value, optimistically without locking.
+         */
+        V get(final long traceIdHigh, final long traceIdLow, final int hash, final long expiredBefore) {
+            final long stamp = tryOptimisticRead();
+            V value = find(table, traceIdHigh, traceIdLow, hash, expiredBefore);
+            if (!validate(stamp)) {
+                final long readStamp = readLock();
+                try {
+                    value = find(table, traceIdHigh, traceIdLow, hash, expiredBefore);
+                } finally {
+                    unlockRead(readStamp);
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Finds the value of a key that has not expired. This is bounded by the size of the table so that inconsistent
+         * optimistic reads always terminate.
+         */
+        @SuppressWarnings("unchecked")
+        private V find(final Table table, final long traceIdHigh, final long traceIdLow, final int hash,
+                       final long expiredBefore) {
+            int index = hash & table.mask;
+            for (int probes = 0; probes <= table.mask; probes++) {
+                final Object value = table.values[index];
+                if (value == null) {
+                    return null;
+                }
+                if (table.traceIdLow[index] == traceIdLow && table.traceIdHigh[index] == traceIdHigh) {
+                    return table.writeTime[index] - expiredBefore > 0 ? (V) value : null;
+                }
+                index = (index + 1) & table.mask;
+            }
+            return null;
+        }
+
+        /**
+         * Inserts or replaces a value.
+         */
+        void put(final long traceIdHigh, final long traceIdLow, final int hash, final V value, final long now,
+                 final long expiredBefore) {
+            if (maximumSize == 0) {
+                return;
+            }
+            final long stamp = writeLock();
+            try {
+                Table current = table;
+                int index = indexOf(current, traceIdHigh, traceIdLow, hash);
+                if (current.values[index] == null) {
+                    if (evictOnWrite && count >= maximumSize) {
+                        evict(current, expiredBefore);
+                    } else if (count >= current.values.length / 2 && current.values.length < MAXIMUM_TABLE_SIZE) {
+                        current = resize(current);
+                    }
+                    index = indexOf(current, traceIdHigh, traceIdLow, hash);
+                    current.traceIdHigh[index] = traceIdHigh;
+                    current.traceIdLow[index] = traceIdLow;
+                    count++;
+                }
+                current.writeTime[index] = now;
+                current.values[index] = value;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Removes a value, if it is the expected one or if no value is expected.
+         */
+        @SuppressWarnings("unchecked")
+        V remove(final long traceIdHigh, final long traceIdLow, final int hash, final Object expected) {
+            final long stamp = writeLock();
+            try {
+                final Table current = table;
+                final int index = indexOf(current, traceIdHigh, traceIdLow, hash);
+                final V value = (V) current.values[index];
+                if (value == null || expected != null && value != expected) {
+                    return null;
+                }
+                delete(current, index);
+                return value;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Removes the expired entries and then evicts entries until the segment is within its maximum size.
+         */
+        void maintain(final long expiredBefore, final CacheMaintenance maintenance) {
+            if (count == 0) {
+                return;
+            }
+            int expired = 0;
+            int evicted = 0;
+            final long stamp = writeLock();
+            try {
+                final Table current = table;
+                int index = 0;
+                while (index < current.values.length) {
+                    if (current.values[index] != null && current.writeTime[index] - expiredBefore <= 0) {
+                        // The slot is not skipped, since an entry that follows may have been shifted into it.
+                        delete(current, index);
+                        expired++;
+                    } else {
+                        index++;
+                    }
+                }
+                while (count > maximumSize) {
+                    evict(current, expiredBefore);
+                    evicted++;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+            maintenance.recordExpired(expired);
+            maintenance.recordEvicted(evicted);
+        }
+
+        /**
+         * Returns the slot that holds a key, or the empty slot where it should be inserted. Must hold the lock.
+         */
+        private int indexOf(final Table table, final long traceIdHigh, final long traceIdLow, final int hash) {
+            int index = hash & table.mask;
+            while (table.values[index] != null
+                    && (table.traceIdLow[index] != traceIdLow || table.traceIdHigh[index] != traceIdHigh)) {
+                index = (index + 1) & table.mask;
+            }
+            return index;
+        }
+
+        /**
+         * Makes room for a new entry by removing an expired entry or, if none is found in the sample, the oldest
+         * entry in the sample. Must hold the lock.
+         */
+        private void evict(final Table table, final long expiredBefore) {
+            int oldest = -1;
+            int sampled = 0;
+            int index = evictionCursor & table.mask;
+            for (int probes = 0; probes <= table.mask && sampled < EVICTION_SAMPLE_SIZE; probes++) {
+                if (table.values[index] != null) {
+                    if (table.writeTime[index] - expiredBefore <= 0) {
+                        oldest = index;
+                        break;
+                    }
+                    if (oldest < 0 || table.writeTime[index] - table.writeTime[oldest] < 0) {
+                        oldest = index;
+                    }
+                    sampled++;
+                }
+                index = (index + 1) & table.mask;
+            }
+            evictionCursor = index;
+            if (oldest >= 0) {
+                delete(table, oldest);
+            }
+        }
+
+        /**
+         * Removes the entry in a slot, shifting back the entries that follow it so that no tombstones are needed. Must
+         * hold the lock.
+         */
+        private void delete(final Table table, final int index) {
+            int hole = index;
+            int next = index;
+            while (true) {
+                next = (next + 1) & table.mask;
+                if (table.values[next] == null) {
+                    break;
+                }
+                final int home = hash(table.traceIdHigh[next], table.traceIdLow[next]) & table.mask;
+                final boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!stays) {
+                    table.traceIdHigh[hole] = table.traceIdHigh[next];
+                    table.traceIdLow[hole] = table.traceIdLow[next];
+                    table.writeTime[hole] = table.writeTime[next];
+                    table.values[hole] = table.values[next];
+                    hole = next;
+                }
+            }
+            table.values[hole] = null;
+            count--;
+        }
+
+        /**
+         * Doubles the number of slots. Must hold the lock.
+         */
+        private Table resize(final Table old) {
+            final Table resized = new Table(old.values.length * 2);
+            for (int i = 0; i < old.values.length; i++) {
+                if (old.values[i] != null) {
+                    final int index = indexOf(resized, old.traceIdHigh[i], old.traceIdLow[i],
+                            hash(old.traceIdHigh[i], old.traceIdLow[i]));
+                    resized.traceIdHigh[index] = old.traceIdHigh[i];
+                    resized.traceIdLow[index] = old.traceIdLow[i];
+                    resized.writeTime[index] = old.writeTime[i];
+                    resized.values[index] = old.values[i];
+                }
+            }
+            table = resized;
+            return resized;
+        }
+    }
+}
@@ -37,6 +37,21 @@ public class CacheConfiguration {
      */
     private final long maximumSize;
 
+    /**
+     * Where the maintenance of the caches runs.
+     */
+    private final MaintenanceMode maintenanceMode;
+
+    /**
+     * The interval between runs of the background maintenance.
+     */
+    private final Duration maintenanceInterval;
+
+    /**
+     * How long the entries of a trace are kept after all its spans finished, or {@code null} if they are only removed
+     * when they expire.
+     */
+    private final Duration purgeGracePeriod;
 
     /**
      * The constructor for this {@link CacheConfiguration}.
@@ -44,10 +59,55 @@ public class CacheConfiguration {
      * @param maximumSize The maximum number of elements.
      */
     public CacheConfiguration(final Duration expirationAfterWrite, final long maximumSize) {
+        this(expirationAfterWrite, maximumSize, MaintenanceMode.INLINE, null, null);
+    }
+
+    /**
+     * The constructor for a {@link CacheConfiguration} whose caches are maintained in the background.
+     * @param expirationAfterWrite The duration after which the entries will expire.
+     * @param maximumSize The maximum number of elements.
+     * @param maintenanceInterval The interval between runs of the background maintenance.
+     */
+    public CacheConfiguration(final Duration expirationAfterWrite, final long maximumSize,
+                              final Duration maintenanceInterval) {
+        this(expirationAfterWrite, maximumSize, MaintenanceMode.BACKGROUND, maintenanceInterval, null);
+        if (maintenanceInterval.isNegative() || maintenanceInterval.isZero()) {
+            throw new IllegalArgumentException("The maintenance interval must be positive: " + maintenanceInterval);
+        }
+    }
+
+    /**
+     * The constructor with every parameter of a {@link CacheConfiguration}.
+     * @param expirationAfterWrite The duration after which the entries will expire.
+     * @param maximumSize The maximum number of elements.
+     * @param maintenanceMode Where the maintenance of the caches runs.
+     * @param maintenanceInterval The interval between runs of the background maintenance.
+     * @param purgeGracePeriod How long the entries of a finished trace are kept, or {@code null}.
+     */
+    private CacheConfiguration(final Duration expirationAfterWrite, final long maximumSize,
+                               final MaintenanceMode maintenanceMode, final Duration maintenanceInterval,
+                               final Duration purgeGracePeriod) {
         this.expirationAfterWrite = expirationAfterWrite;
         this.maximumSize = maximumSize;
+        this.maintenanceMode = maintenanceMode;
+        this.maintenanceInterval = maintenanceInterval;
+        this.purgeGracePeriod = purgeGracePeriod;
     }
 
+    /**
+     * Returns a copy of this configuration where the entries of a trace are purged once its root span and every span
+     * registered with it have finished, instead of staying until they expire. The grace period keeps the entries
+     * around for operations that join the trace by its application specific ID after it finished.
+     * @param gracePeriod How long the entries of a finished trace are kept, which may be zero.
+     * @return The new configuration.
+     */
+    public CacheConfiguration withFinishedTracePurge(final Duration gracePeriod) {
+        if (gracePeriod.isNegative()) {
+            throw new IllegalArgumentException("The grace period must not be negative: " + gracePeriod);
+        }
+        return new CacheConfiguration(expirationAfterWrite, maximumSize, maintenanceMode, maintenanceInterval,
+                gracePeriod);
+    }
 
     /**
      * Getter for {@code expirationAfterWrite}.
@@ -64,4 +124,28 @@ public class CacheConfiguration {
     public long getMaximumSize() {
         return maximumSize;
     }
+
+    /**
+     * Getter for {@code maintenanceMode}.
+     * @return The value of {@code maintenanceMode}.
+     */
+    public MaintenanceMode getMaintenanceMode() {
+        return maintenanceMode;
+    }
+
+    /**
+     * Getter for {@code maintenanceInterval}.
+     * @return The value of {@code maintenanceInterval}, or {@code null} if the caches are maintained inline.
+     */
+    public Duration getMaintenanceInterval() {
+        return maintenanceInterval;
+    }
+
+    /**
+     * Getter for {@code purgeGracePeriod}.
+     * @return The value of {@code purgeGracePeriod}, or {@code null} if finished traces are not purged.
+     */
+    public Duration getPurgeGracePeriod() {
+        return purgeGracePeriod;
+    }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+/**
+ * Where the maintenance of the caches configured by a {@link CacheConfiguration} runs. Maintenance is the removal of
+ * expired entries, the eviction of entries above the maximum size and the cleanup of entries whose weakly referenced
+ * keys were garbage collected.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public enum MaintenanceMode {
+
+    /**
+     * Maintenance is amortized over the threads that read and write the caches.
+     */
+    INLINE,
+
+    /**
+     * Maintenance runs periodically on a background thread, and the threads that read and write the caches only do
+     * the lookup or the update itself. The caches may hold expired entries, which are never returned, or go above
+     * their maximum size between two runs.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+import java.util.Objects;
+
+/**
+ * Class that holds a rule that decides whether the operations with a given description are traced, and at which rate.
+ * A rule matches either the exact description or every description that starts with it.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public class OperationRule {
+
+    /**
+     * The description of the operations, or the prefix of their descriptions if {@code prefix} is set.
+     */
+    public String description;
+
+    /**
+     * Whether {@code description} is matched as a prefix instead of exactly.
+     */
+    public boolean prefix;
+
+    /**
+     * Whether the operations are traced at all. Disabled operations are skipped wherever they occur in a trace.
+     */
+    public boolean enabled = true;
+
+    /**
+     * The rate at which the traces that start with the operations are sampled, between 0 and 1, which replaces the
+     * configured sample rate for them. It does not apply to the operations that are not the root of their trace.
+     */
+    public double sampleRate = 1;
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final OperationRule that = (OperationRule) o;
+        return prefix == that.prefix
+                && enabled == that.enabled
+                && Double.compare(sampleRate, that.sampleRate) == 0
+                && Objects.equals(description, that.description);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(description, prefix, enabled, sampleRate);
+    }
+
+    @Override
+    public String toString() {
+        return "OperationRule{" +
+                "description='" + description + '\'' +
+                ", prefix=" + prefix +
+                ", enabled=" + enabled +
+                ", sampleRate=" + sampleRate +
+                '}';
+    }
+}
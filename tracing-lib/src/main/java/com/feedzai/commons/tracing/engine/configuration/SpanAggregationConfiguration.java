@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine.configuration;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class that holds the configuration of the aggregation of repeated child spans: once the children with the same
+ * description under the same parent reach a threshold, the following ones are collapsed into a single span that
+ * carries their count, total, minimum and maximum duration and a latency histogram as tags.
+ *
+ * @author Gonçalo Garcia (goncalo.garcia@feedzai.com)
+ */
+public class SpanAggregationConfiguration {
+
+    /**
+     * Whether repeated child spans are aggregated.
+     */
+    public boolean enabled;
+
+    /**
+     * How many children with the same description under the same parent are traced as individual spans before the
+     * following ones are aggregated.
+     */
+    public int threshold = 10;
+
+    /**
+     * The upper bounds of the buckets of the latency histogram, in microseconds and in increasing order, or {@code
+     * null} for the default buckets. Durations above the last bound are counted in an extra bucket.
+     */
+    public List<Long> histogramBoundsInMicros;
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final SpanAggregationConfiguration that = (SpanAggregationConfiguration) o;
+        return enabled == that.enabled
+                && threshold == that.threshold
+                && Objects.equals(histogramBoundsInMicros, that.histogramBoundsInMicros);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(enabled, threshold, histogramBoundsInMicros);
+    }
+
+    @Override
+    public String toString() {
+        return "SpanAggregationConfiguration{" +
+                "enabled=" + enabled +
+                ", threshold=" + threshold +
+                ", histogramBoundsInMicros=" + histogramBoundsInMicros +
+                '}';
+    }
+}
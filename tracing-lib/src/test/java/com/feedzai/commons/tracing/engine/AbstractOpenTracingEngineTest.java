@@ -16,16 +16,26 @@
 
 package com.feedzai.commons.tracing.engine;
 
+import com.feedzai.commons.tracing.api.TraceContext;
 import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.OperationRule;
+import com.feedzai.commons.tracing.engine.configuration.SpanAggregationConfiguration;
+import io.opentracing.Span;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public class AbstractOpenTracingEngineTest {
 
@@ -250,6 +260,30 @@ public class AbstractOpenTracingEngineTest {
         assertParentRelationshipOpen(mockTracer, tracing, obj);
     }
 
+    @Test
+    public void testCloseOpenOnlyFinishesOnce() {
+        final Object obj = new Object();
+        tracing.newTrace(() -> {
+            tracing.addToTraceOpen(TestUtils::doStuffVoid, obj, "Do More Stuff");
+        }, "Do Stuff");
+        tracing.closeOpen(null);
+        tracing.closeOpen(new Object());
+        assertParentRelationshipOpen(mockTracer, tracing, obj);
+
+        tracing.closeOpen(obj);
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertNull(tracing.currentContextforObject(obj));
+    }
+
+    @Test
+    public void testAddToTraceWithContextRestoresActiveSpan() {
+        final SpanTraceContext ctx = buildNewTraceSupplierContext();
+        final Span active = mockTracer.activeSpan();
+
+        tracing.addToTrace(TestUtils::doStuffVoid, "Do Stuff in new Process", ctx);
+        assertSame(active, mockTracer.activeSpan());
+    }
+
     private void assertParentRelationshipOpen(final MockTracer mockTracer, final MockTracingEngine tracing, final Object obj) {
         MockSpan parent = assertHasNoChildren(mockTracer);
 
@@ -294,6 +328,313 @@ public class AbstractOpenTracingEngineTest {
         assertParentRelationshipOpen(mockTracer, tracing, obj);
     }
 
+    @Test
+    public void testNoBaggageIsAdded() {
+        final SpanTraceContext ctx = buildNewTraceSupplierContext();
+        tracing.addToTrace(TestUtils::doStuffVoid, "Do Stuff in new Process", ctx);
+        tracing.newTrace(() -> {
+            tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff");
+        }, "Do Stuff");
+
+        assertEquals(4, mockTracer.finishedSpans().size());
+        for (MockSpan span : mockTracer.finishedSpans()) {
+            assertFalse(span.context().baggageItems().iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void testSampledOutTraceIsNotTracked() {
+        final MockTracingEngine sampledOut = new MockTracingEngine(mockTracer, new CacheConfiguration(Duration.ofDays(1), 10000),
+                TestUtils.SAMPLED_OUT_TRACE_ID_RESOLVER);
+        final Object obj = new Object();
+        sampledOut.newTrace(() -> {
+            sampledOut.addToTrace(TestUtils::doStuffVoid, "Do More Stuff");
+            sampledOut.addToTraceOpen(TestUtils::doStuffVoid, obj, "Do Open Stuff");
+            assertEquals(mockTracer.activeSpan(), sampledOut.addToTrace(mockTracer::activeSpan, "Do More Stuff"));
+        }, "Do Stuff");
+
+        assertEquals(1, mockTracer.finishedSpans().size());
+        assertEquals(0, sampledOut.spanIdMappings.size());
+        assertEquals(0, sampledOut.responseMappings.size());
+    }
+
+    @Test
+    public void testSampledOutContextIsPropagated() {
+        final MockTracingEngine sampledOut = new MockTracingEngine(mockTracer, new CacheConfiguration(Duration.ofDays(1), 10000),
+                TestUtils.SAMPLED_OUT_TRACE_ID_RESOLVER);
+        final MockSpan root = mockTracer.buildSpan("Do Stuff").start();
+        root.finish();
+
+        sampledOut.addToTrace(() -> {
+            sampledOut.addToTrace(TestUtils::doStuffVoid, "Do More Stuff");
+            assertNotNull(mockTracer.activeSpan());
+            assertEquals(root.context(), mockTracer.activeSpan().context());
+        }, "Do Stuff in new Process", new SpanTraceContext(root.context()));
+
+        assertNull(mockTracer.activeSpan());
+        assertEquals(1, mockTracer.finishedSpans().size());
+        assertEquals(0, sampledOut.spanIdMappings.size());
+    }
+
+    @Test
+    public void testLazyDescriptionIsUsedWhenRecorded() {
+        tracing.newTrace(() -> {
+            tracing.addToTrace(TestUtils::doStuffVoid, () -> "Do More " + "Stuff");
+        }, () -> "Do " + "Stuff");
+
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertEquals("Do More Stuff", mockTracer.finishedSpans().get(0).operationName());
+        assertEquals("Do Stuff", mockTracer.finishedSpans().get(1).operationName());
+    }
+
+    @Test
+    public void testLazyDescriptionIsNotComputedWhenSampledOut() {
+        final MockTracingEngine sampledOut = new MockTracingEngine(mockTracer, new CacheConfiguration(Duration.ofDays(1), 10000),
+                TestUtils.SAMPLED_OUT_TRACE_ID_RESOLVER);
+        final Supplier<String> unexpected = () -> {
+            throw new AssertionError("Description of a sampled out span should not be computed");
+        };
+        final Object obj = new Object();
+        sampledOut.newTrace(() -> {
+            sampledOut.addToTrace(TestUtils::doStuffVoid, unexpected);
+            sampledOut.addToTraceOpen(TestUtils::doStuffVoid, obj, unexpected);
+            sampledOut.addToTrace(TestUtils::doStuffVoid, unexpected, sampledOut.currentContext());
+        }, "Do Stuff");
+
+        assertEquals(1, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testDisabledOperationsAreNotTraced() {
+        tracing.setOperationRules(OperationRules.compile(Arrays.asList(
+                rule("compute.", true, true, 1), rule("compute.score", false, false, 1))));
+        final Object obj = new Object();
+
+        tracing.newTrace(() -> {
+            tracing.addToTrace(TestUtils::doStuffVoid, "compute.feature");
+            assertEquals(Integer.valueOf(1), tracing.addToTrace(() -> 1, "compute.score"));
+            tracing.addToTraceOpen(TestUtils::doStuffVoid, obj, "compute.score");
+            tracing.addToTrace(() -> tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff"), "compute.score");
+        }, "Do Stuff");
+        tracing.closeOpen(obj);
+
+        assertEquals(3, mockTracer.finishedSpans().size());
+        final MockSpan root = mockTracer.finishedSpans().get(2);
+        assertEquals("Do Stuff", root.operationName());
+        for (MockSpan span : mockTracer.finishedSpans().subList(0, 2)) {
+            assertEquals(root.context().spanId(), span.parentId());
+        }
+        assertEquals("compute.feature", mockTracer.finishedSpans().get(0).operationName());
+        assertEquals("Do More Stuff", mockTracer.finishedSpans().get(1).operationName());
+    }
+
+    @Test
+    public void testSampleRatesDoNotDropChildrenOfSampledTraces() {
+        tracing.setOperationRules(OperationRules.compile(Collections.singletonList(rule("compute.", true, true, 0))));
+
+        tracing.newTrace(() -> {
+            for (int i = 0; i < 10; i++) {
+                tracing.addToTrace(TestUtils::doStuffVoid, "compute.feature");
+            }
+        }, "Do Stuff");
+
+        assertEquals(11, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testDisabledProcessKeepsTheContext() {
+        final SpanTraceContext ctx = buildNewTraceSupplierContext();
+        tracing.setOperationRules(OperationRules.compile(Collections.singletonList(rule("Do Stuff in new Process", false, false, 1))));
+
+        tracing.newProcess(() -> tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff"), "Do Stuff in new Process", ctx);
+
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertEquals("Do More Stuff", mockTracer.finishedSpans().get(1).operationName());
+        assertEquals(mockTracer.finishedSpans().get(0).context().spanId(), mockTracer.finishedSpans().get(1).parentId());
+    }
+
+    @Test
+    public void testFailedOperationsAreTaggedWithError() {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            tracing.newTrace(() -> {
+                tracing.addToTraceAsync(() -> future, "Do Long Running Stuff");
+                tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff");
+                throw new IllegalStateException("failed");
+            }, "Do Stuff");
+            fail("The exception should be thrown to the caller");
+        } catch (final IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        future.completeExceptionally(new IllegalStateException("failed"));
+
+        assertEquals(3, mockTracer.finishedSpans().size());
+        for (final MockSpan span : mockTracer.finishedSpans()) {
+            assertEquals(span.operationName(), !"Do More Stuff".equals(span.operationName()),
+                    Boolean.TRUE.equals(span.tags().get(Tags.ERROR.getKey())));
+        }
+    }
+
+    @Test
+    public void testTraceFinishedIsCalledWhenTheLastSpanFinishes() {
+        final List<SpanStack> finished = new ArrayList<>();
+        tracing = new MockTracingEngine(mockTracer, new CacheConfiguration(Duration.ofDays(1), 10000)) {
+            @Override
+            protected void traceFinished(final long traceIdHigh, final long traceIdLow, final SpanStack spans) {
+                assertTrue(spans.isFinished());
+                finished.add(spans);
+            }
+        };
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        tracing.newTrace(() -> {
+            tracing.addToTraceAsync(() -> future, "Do Long Running Stuff");
+        }, "Do Stuff");
+        assertTrue(finished.isEmpty());
+
+        future.complete("done");
+        assertEquals(1, finished.size());
+        assertEquals(2, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testRepeatedChildrenAreNotAggregatedByDefault() {
+        tracing.newTrace(() -> {
+            for (int i = 0; i < 50; i++) {
+                tracing.addToTrace(TestUtils::doStuffVoid, "feature:lookup");
+            }
+        }, "Do Stuff");
+
+        assertEquals(51, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testRepeatedChildrenAreAggregatedPastTheThreshold() {
+        tracing.setSpanAggregation(SpanAggregation.compile(aggregation(3)));
+
+        tracing.newTrace(() -> {
+            for (int i = 0; i < 100; i++) {
+                tracing.addToTrace(TestUtils::doStuffVoid, "feature:lookup");
+            }
+        }, "Do Stuff");
+
+        final List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(5, spans.size());
+        final MockSpan root = spans.get(3);
+        assertEquals("Do Stuff", root.operationName());
+        final MockSpan aggregate = spans.get(4);
+        assertEquals("feature:lookup", aggregate.operationName());
+        assertEquals(root.context().spanId(), aggregate.parentId());
+        assertEquals(97L, aggregate.tags().get(SpanAggregation.COUNT_TAG));
+        assertEquals(0L, aggregate.tags().get(SpanAggregation.ERRORS_TAG));
+        final long min = (Long) aggregate.tags().get(SpanAggregation.MIN_TAG);
+        final long max = (Long) aggregate.tags().get(SpanAggregation.MAX_TAG);
+        final long total = (Long) aggregate.tags().get(SpanAggregation.TOTAL_TAG);
+        assertTrue(min <= max && max <= total);
+        long histogram = 0;
+        for (final long bound : SpanAggregation.DEFAULT_HISTOGRAM_BOUNDS_MICROS) {
+            histogram += (Long) aggregate.tags().get(SpanAggregation.HISTOGRAM_TAG_PREFIX + "le_" + bound + "us");
+        }
+        histogram += (Long) aggregate.tags().get(SpanAggregation.HISTOGRAM_TAG_PREFIX + "gt_100000us");
+        assertEquals(97, histogram);
+        assertTrue(aggregate.finishMicros() <= root.finishMicros());
+    }
+
+    @Test
+    public void testChildrenAreAggregatedPerParentAndDescription() {
+        tracing.setSpanAggregation(SpanAggregation.compile(aggregation(1)));
+
+        tracing.newTrace(() -> {
+            for (int i = 0; i < 2; i++) {
+                tracing.addToTrace(() -> {
+                    for (int j = 0; j < 5; j++) {
+                        tracing.addToTrace(TestUtils::doStuffVoid, "feature:lookup");
+                        tracing.addToTrace(TestUtils::doStuffVoid, "feature:score");
+                    }
+                }, "Do Child Stuff " + i);
+            }
+        }, "Do Stuff");
+
+        int aggregates = 0;
+        for (final MockSpan span : mockTracer.finishedSpans()) {
+            if (span.tags().containsKey(SpanAggregation.COUNT_TAG)) {
+                assertEquals(4L, span.tags().get(SpanAggregation.COUNT_TAG));
+                aggregates++;
+            }
+        }
+        assertEquals(4, aggregates);
+        // root, 2 parents, and per parent and description 1 individual child plus 1 aggregate
+        assertEquals(11, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testFailedAggregatedChildrenAreCounted() {
+        tracing.setSpanAggregation(SpanAggregation.compile(aggregation(0)));
+
+        tracing.newTrace(() -> {
+            for (int i = 0; i < 10; i++) {
+                final int call = i;
+                try {
+                    tracing.addToTrace(() -> {
+                        if (call % 2 == 0) {
+                            throw new IllegalStateException("Failed lookup");
+                        }
+                    }, "feature:lookup");
+                } catch (final IllegalStateException e) {
+                    // expected
+                }
+            }
+        }, "Do Stuff");
+
+        final List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(2, spans.size());
+        final MockSpan aggregate = spans.get(1);
+        assertEquals(10L, aggregate.tags().get(SpanAggregation.COUNT_TAG));
+        assertEquals(5L, aggregate.tags().get(SpanAggregation.ERRORS_TAG));
+        assertEquals(true, aggregate.tags().get(Tags.ERROR.getKey()));
+    }
+
+    @Test
+    public void testChildrenOfAContextAreAggregated() {
+        tracing.setSpanAggregation(SpanAggregation.compile(aggregation(2)));
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final List<TraceContext> context = new ArrayList<>();
+
+        tracing.newTrace(() -> {
+            tracing.addToTraceAsync(() -> {
+                context.add(tracing.currentContext());
+                return future;
+            }, "Do Long Running Stuff");
+        }, "Do Stuff");
+        for (int i = 0; i < 20; i++) {
+            tracing.addToTrace(TestUtils::doStuffVoid, "feature:lookup", context.get(0));
+        }
+        assertEquals(3, mockTracer.finishedSpans().size());
+
+        future.complete("done");
+        final List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(5, spans.size());
+        assertEquals("Do Long Running Stuff", spans.get(3).operationName());
+        assertEquals(18L, spans.get(4).tags().get(SpanAggregation.COUNT_TAG));
+        assertEquals(spans.get(3).context().spanId(), spans.get(4).parentId());
+    }
+
+    private static SpanAggregationConfiguration aggregation(final int threshold) {
+        final SpanAggregationConfiguration configuration = new SpanAggregationConfiguration();
+        configuration.enabled = true;
+        configuration.threshold = threshold;
+        return configuration;
+    }
+
+    private static OperationRule rule(final String description, final boolean prefix, final boolean enabled,
+                                      final double sampleRate) {
+        final OperationRule rule = new OperationRule();
+        rule.description = description;
+        rule.prefix = prefix;
+        rule.enabled = enabled;
+        rule.sampleRate = sampleRate;
+        return rule;
+    }
+
     private SpanTraceContext buildNewTraceSupplierContext() {
         tracing.newTrace(TestUtils::doStuffVoid, "Do Stuff");
         return new SpanTraceContext(mockTracer.finishedSpans().get(0).context());
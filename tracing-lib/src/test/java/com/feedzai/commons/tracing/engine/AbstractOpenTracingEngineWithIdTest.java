@@ -21,14 +21,19 @@ import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
 import io.opentracing.Span;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static junit.framework.TestCase.assertNotNull;
 import static org.junit.Assert.*;
@@ -36,9 +41,16 @@ import static org.junit.Assert.*;
 public class AbstractOpenTracingEngineWithIdTest {
 
     private static final String EVENT_ID = "498c9cf0-295e-44b1-bed8-73e1e0c3e389";
-    private static final String TRACE_ID_STRING = "1:1:1";
+    private static final long TRACE_ID_HIGH = 0;
+    private static final long TRACE_ID_LOW = 1;
     private MockTracer mockTracer;
     private TracingEngineWithId tracing;
+    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
 
     @Before
     public void initializeTracer() {
@@ -59,9 +71,9 @@ public class AbstractOpenTracingEngineWithIdTest {
 
     private MockSpan assertCachesUpdated(final MockTracer mockTracer, final TracingEngineWithId tracing) {
         assertNotNull(tracing.traceIdMappings.getIfPresent(EVENT_ID));
-        assertEquals(tracing.traceIdMappings.getIfPresent(EVENT_ID), TRACE_ID_STRING);
-        Assert.assertNotNull(tracing.spanIdMappings.getIfPresent(tracing.traceIdMappings.getIfPresent(EVENT_ID)));
-        assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING), Collections.singletonList(mockTracer.finishedSpans().get(0)));
+        assertEquals(mockTracer.finishedSpans().get(0).context(), tracing.traceIdMappings.getIfPresent(EVENT_ID));
+        Assert.assertNotNull(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW));
+        assertEquals(Collections.singletonList(mockTracer.finishedSpans().get(0)), tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).spans());
 
         final MockSpan span = mockTracer.finishedSpans().get(0);
         return span;
@@ -111,7 +123,7 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         addToTrace();
         CompletableFuture.runAsync(() -> tracing.addToTrace(() -> {
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 2);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 2);
             return TestUtils.doStuffWithResult();
         }, "Do More Stuff Async", EVENT_ID)).get();
 
@@ -125,7 +137,7 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         CompletableFuture.runAsync(() -> tracing.addToTrace(() -> {
             TestUtils.doStuffWithResult();
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 2);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 2);
         }, "Do More Stuff Async", EVENT_ID)).get();
 
 
@@ -137,14 +149,14 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         tracing.addToTrace(() -> {
             TestUtils.doStuffWithResult();
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 1);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 1);
         }, "Do More Stuff", EVENT_ID);
-        assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING), Collections.singletonList(mockTracer.finishedSpans().get(0)));
+        assertEquals(Collections.singletonList(mockTracer.finishedSpans().get(0)), tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).spans());
         assertEquals(2, mockTracer.finishedSpans().size());
     }
 
     private void assertRelationshipAfterFuture() {
-        assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING), Collections.singletonList(mockTracer.finishedSpans().get(0)));
+        assertEquals(Collections.singletonList(mockTracer.finishedSpans().get(0)), tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).spans());
 
         final MockSpan parent = mockTracer.finishedSpans().get(0);
         assertTrue(parent.references().isEmpty());
@@ -162,10 +174,10 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         final CompletableFuture future = new CompletableFuture();
         tracing.addToTraceAsync(() -> {
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 1);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 1);
             return future;
         }, "Do More Stuff", EVENT_ID);
-        assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING), Collections.singletonList(mockTracer.finishedSpans().get(0)));
+        assertEquals(Collections.singletonList(mockTracer.finishedSpans().get(0)), tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).spans());
         assertEquals(1, mockTracer.finishedSpans().size());
 
         future.complete(null);
@@ -173,7 +185,7 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         final CompletableFuture future2 = new CompletableFuture();
         final CompletableFuture otherThread = CompletableFuture.supplyAsync(() -> tracing.addToTraceAsync(() -> {
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 2);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 2);
             return future2;
         }, "Do More Stuff Async", EVENT_ID));
         assertEquals(2, mockTracer.finishedSpans().size());
@@ -192,10 +204,10 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         final MockPromise promise = new MockPromise();
         tracing.addToTracePromise(() -> {
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 1);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 1);
             return promise;
         }, "Do More Stuff", EVENT_ID);
-        assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING), Collections.singletonList(mockTracer.finishedSpans().get(0)));
+        assertEquals(Collections.singletonList(mockTracer.finishedSpans().get(0)), tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).spans());
         assertEquals(1, mockTracer.finishedSpans().size());
 
         promise.complete();
@@ -203,7 +215,7 @@ public class AbstractOpenTracingEngineWithIdTest {
 
         final MockPromise promise2 = new MockPromise();
         final CompletableFuture otherThread = CompletableFuture.supplyAsync(() -> tracing.addToTracePromise(() -> {
-            assertEquals(tracing.spanIdMappings.getIfPresent(TRACE_ID_STRING).size(), 2);
+            assertEquals(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).size(), 2);
             return promise2;
         }, "Do More Stuff Async", EVENT_ID));
         assertEquals(2, mockTracer.finishedSpans().size());
@@ -294,5 +306,110 @@ public class AbstractOpenTracingEngineWithIdTest {
         assertTrue(tracing.traceHasStarted(EVENT_ID));
     }
 
+    @Test
+    public void testConcurrentAddToTraceWithId() throws ExecutionException, InterruptedException {
+        tracing.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        final MockSpan parent = assertCachesUpdated(mockTracer, tracing);
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 100; j++) {
+                    tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff Async", EVENT_ID);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        assertEquals(1 + 32 * 100, mockTracer.finishedSpans().size());
+        assertEquals(Collections.singletonList(parent), tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW).spans());
+    }
+
+    @Test
+    public void testFinishedTraceIsPurged() {
+        tracing = new TracingEngineWithId(mockTracer,
+                new CacheConfiguration(Duration.ofDays(1), 10000).withFinishedTracePurge(Duration.ZERO));
+
+        tracing.newTrace(() -> {
+            assertTrue(tracing.traceHasStarted(EVENT_ID));
+            tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff", EVENT_ID);
+            assertTrue(tracing.traceHasStarted(EVENT_ID));
+        }, "Do Stuff", EVENT_ID);
+
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertFalse(tracing.traceHasStarted(EVENT_ID));
+        assertEquals(0, tracing.spanIdMappings.size());
+        assertEquals(1, tracing.getCacheMaintenance().getPurgedCount());
+    }
+
+    @Test
+    public void testReconfigureCachesKeepsTraces() {
+        tracing.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        assertTrue(tracing.traceHasStarted(EVENT_ID));
+
+        tracing.reconfigureCaches(new CacheConfiguration(Duration.ofMinutes(5), 100));
+        assertTrue(tracing.traceHasStarted(EVENT_ID));
+        assertNotNull(tracing.spanIdMappings.get(TRACE_ID_HIGH, TRACE_ID_LOW));
+
+        tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff", EVENT_ID);
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertEquals(mockTracer.finishedSpans().get(1).context().traceId(),
+                mockTracer.finishedSpans().get(0).context().traceId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReconfigureCachesCannotChangeMaintenanceMode() {
+        tracing.reconfigureCaches(new CacheConfiguration(Duration.ofDays(1), 10000, Duration.ofSeconds(1)));
+    }
+
+    @Test
+    public void testTraceIsNotPurgedWhileChildrenAreOpen() {
+        tracing = new TracingEngineWithId(mockTracer,
+                new CacheConfiguration(Duration.ofDays(1), 10000).withFinishedTracePurge(Duration.ZERO));
+        final Object response = new Object();
+
+        tracing.newTrace(() -> tracing.addToTraceOpen(TestUtils::doStuffVoid, response, "Do More Stuff", EVENT_ID),
+                "Do Stuff", EVENT_ID);
+        assertTrue(tracing.traceHasStarted(EVENT_ID));
+        assertEquals(1, tracing.spanIdMappings.size());
+
+        tracing.closeOpen(response);
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertFalse(tracing.traceHasStarted(EVENT_ID));
+        assertEquals(0, tracing.spanIdMappings.size());
+    }
+
+    @Test
+    public void testLateAddToTraceWithinGracePeriod() throws InterruptedException {
+        tracing = new TracingEngineWithId(mockTracer,
+                new CacheConfiguration(Duration.ofDays(1), 10000).withFinishedTracePurge(Duration.ofMillis(100)));
+
+        tracing.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        final MockSpan parent = assertCachesUpdated(mockTracer, tracing);
+        tracing.getCacheMaintenance().cleanUp();
+        assertTrue(tracing.traceHasStarted(EVENT_ID));
+
+        tracing.addToTrace(TestUtils::doStuffVoid, "Do More Stuff", EVENT_ID);
+        assertEquals(parent.context().spanId(), mockTracer.finishedSpans().get(1).parentId());
+
+        Thread.sleep(200);
+        tracing.getCacheMaintenance().cleanUp();
+        assertFalse(tracing.traceHasStarted(EVENT_ID));
+        assertEquals(0, tracing.spanIdMappings.size());
+        assertEquals(1, tracing.getCacheMaintenance().getPurgedCount());
+    }
+
+    @Test
+    public void testFinishedTraceIsPurgedInTheBackground() throws InterruptedException {
+        tracing = new TracingEngineWithId(mockTracer,
+                new CacheConfiguration(Duration.ofDays(1), 10000, Duration.ofMillis(10))
+                        .withFinishedTracePurge(Duration.ofMillis(10)));
 
+        tracing.newTrace(TestUtils::doStuffVoid, "Do Stuff", EVENT_ID);
+        for (int i = 0; i < 100 && tracing.traceHasStarted(EVENT_ID); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(tracing.traceHasStarted(EVENT_ID));
+        assertEquals(0, tracing.spanIdMappings.size());
+    }
 }
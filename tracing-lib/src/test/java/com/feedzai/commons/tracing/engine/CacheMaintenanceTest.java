@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import io.opentracing.mock.MockTracer;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class CacheMaintenanceTest {
+
+    @Test
+    public void testInlineMaintenanceIsNotScheduled() throws InterruptedException {
+        final CacheMaintenance maintenance = new CacheMaintenance(new CacheConfiguration(Duration.ofDays(1), 10000));
+        maintenance.register(m -> m.recordExpired(1));
+        maintenance.start();
+
+        Thread.sleep(50);
+        assertEquals(0, maintenance.getRunCount());
+
+        maintenance.cleanUp();
+        assertEquals(1, maintenance.getRunCount());
+        assertEquals(1, maintenance.getExpiredCount());
+    }
+
+    @Test
+    public void testBackgroundMaintenanceIsScheduled() throws InterruptedException {
+        final CacheMaintenance maintenance = new CacheMaintenance(
+                new CacheConfiguration(Duration.ofDays(1), 10000, Duration.ofMillis(10)));
+        maintenance.register(m -> m.recordEvicted(1));
+        Thread.sleep(50);
+        assertEquals(0, maintenance.getRunCount());
+
+        maintenance.start();
+        for (int i = 0; i < 500 && maintenance.getEvictedCount() < 3; i++) {
+            Thread.sleep(10);
+        }
+        // Every run happened after the task was registered, so each one recorded it.
+        assertTrue(maintenance.getEvictedCount() >= 3);
+        assertTrue(maintenance.getRunCount() >= 3);
+        assertTrue(maintenance.getEvictedCount() >= maintenance.getRunCount() - 1);
+    }
+
+    @Test
+    public void testBackgroundMaintenanceOfEngineCaches() throws InterruptedException {
+        final MockTracer mockTracer = new MockTracer();
+        final TracingEngineWithId tracing = new TracingEngineWithId(mockTracer,
+                new CacheConfiguration(Duration.ofMillis(1), 10000, Duration.ofMillis(10)));
+
+        tracing.newTrace(TestUtils::doStuffVoid, "Do Stuff", "event");
+        assertEquals(1, tracing.spanIdMappings.size());
+        assertEquals(1, tracing.traceIdMappings.size());
+
+        final CacheMaintenance maintenance = tracing.getCacheMaintenance();
+        for (int i = 0; i < 100 && maintenance.getExpiredCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tracing.spanIdMappings.size());
+        assertEquals(0, tracing.traceIdMappings.size());
+        assertEquals(2, maintenance.getExpiredCount());
+    }
+}
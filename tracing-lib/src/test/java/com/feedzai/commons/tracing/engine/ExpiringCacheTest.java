@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ExpiringCacheTest {
+
+    private AtomicLong now;
+    private CacheConfiguration configuration;
+    private ExpiringCache<String, Long> cache;
+    private CacheMaintenance maintenance;
+
+    @Before
+    public void initializeCache() {
+        now = new AtomicLong();
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        };
+        configuration = new CacheConfiguration(Duration.ofSeconds(1), 10, Duration.ofDays(1));
+        cache = new ExpiringCache<>(configuration, ticker);
+        maintenance = new CacheMaintenance(configuration);
+    }
+
+    @Test
+    public void testPutGetInvalidate() {
+        assertNull(cache.getIfPresent("first"));
+        cache.put("first", 1L);
+        assertEquals(Long.valueOf(1), cache.getIfPresent("first"));
+        assertEquals(1, cache.size());
+
+        cache.invalidate("first");
+        assertNull(cache.getIfPresent("first"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotReturned() {
+        cache.put("first", 1L);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        cache.put("second", 2L);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertNull(cache.getIfPresent("first"));
+        assertEquals(Long.valueOf(2), cache.getIfPresent("second"));
+        assertEquals(2, cache.size());
+
+        cache.maintain(maintenance);
+        assertEquals(1, cache.size());
+        assertEquals(1, maintenance.getExpiredCount());
+    }
+
+    @Test
+    public void testMaintenanceEvictsOldestEntries() {
+        for (long i = 0; i < 100; i++) {
+            now.incrementAndGet();
+            cache.put("key" + i, i);
+        }
+        assertEquals(100, cache.size());
+
+        cache.maintain(maintenance);
+        assertEquals(10, cache.size());
+        assertEquals(90, maintenance.getEvictedCount());
+        for (long i = 0; i < 100; i++) {
+            assertEquals(i < 90 ? null : Long.valueOf(i), cache.getIfPresent("key" + i));
+        }
+    }
+}
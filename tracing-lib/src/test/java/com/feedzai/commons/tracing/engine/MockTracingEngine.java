@@ -21,6 +21,7 @@ import com.feedzai.commons.tracing.api.TraceContext;
 import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
+import io.opentracing.mock.MockSpan;
 
 import java.io.Serializable;
 import java.util.Map;
@@ -38,12 +39,19 @@ public class MockTracingEngine extends AbstractOpenTracingEngine {
      */
     MockTracingEngine(Tracer tracer,
                       CacheConfiguration configuration) {
-        super(tracer, configuration);
+        this(tracer, configuration, TestUtils.FIXED_TRACE_ID_RESOLVER);
     }
 
+    MockTracingEngine(Tracer tracer,
+                      CacheConfiguration configuration,
+                      TraceIdResolver traceIdResolver) {
+        super(tracer, configuration, traceIdResolver);
+    }
+
+
     @Override
-    protected String getTraceIdFromSpan(Span span) {
-        return "1:1:1";
+    protected long startTimestampMicros(final Span span) {
+        return span instanceof MockSpan ? ((MockSpan) span).startMicros() : -1;
     }
 
     @Override
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.feedzai.commons.tracing.engine.configuration.MaintenanceMode;
+import io.opentracing.mock.MockTracer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OpenSpanRegistryTest {
+
+    private static final int THREADS = 32;
+    private static final int ITERATIONS = 10000;
+
+    private MockTracer mockTracer;
+    private List<SpanHandle> collected;
+    private OpenSpanRegistry registry;
+
+    @Before
+    public void initializeRegistry() {
+        mockTracer = new MockTracer();
+        collected = new CopyOnWriteArrayList<>();
+        registry = new OpenSpanRegistry(collected::add);
+    }
+
+    private SpanHandle newHandle() {
+        return new SpanHandle(mockTracer.buildSpan("Do Stuff").start(), 0, 1);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        final Object obj = new Object();
+        final SpanHandle span = newHandle();
+
+        assertNull(registry.get(obj));
+        registry.put(obj, span);
+        assertSame(span, registry.get(obj));
+        assertEquals(1, registry.size());
+
+        assertSame(span, registry.remove(obj));
+        assertNull(registry.get(obj));
+        assertNull(registry.remove(obj));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testNullKey() {
+        assertNull(registry.get(null));
+        assertNull(registry.remove(null));
+    }
+
+    @Test
+    public void testIdentityKeys() {
+        final String first = new String("response");
+        final String second = new String("response");
+        final SpanHandle firstSpan = newHandle();
+        final SpanHandle secondSpan = newHandle();
+
+        registry.put(first, firstSpan);
+        registry.put(second, secondSpan);
+        assertSame(firstSpan, registry.get(first));
+        assertSame(secondSpan, registry.get(second));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testCollectedKeysAreExpunged() throws InterruptedException {
+        final Object kept = new Object();
+        registry.put(kept, newHandle());
+        for (int i = 0; i < 100; i++) {
+            registry.put(new Object(), newHandle());
+        }
+
+        for (int i = 0; i < 100 && registry.collectedCount() < 100; i++) {
+            System.gc();
+            Thread.sleep(10);
+            registry.expungeCollected();
+        }
+
+        assertEquals(100, registry.collectedCount());
+        assertEquals(100, collected.size());
+        assertEquals(1, registry.size());
+        assertNotNull(registry.get(kept));
+    }
+
+    @Test
+    public void testCollectedKeysAreExpungedByMaintenance() throws InterruptedException {
+        final OpenSpanRegistry registry = new OpenSpanRegistry(collected::add, MaintenanceMode.BACKGROUND);
+        final CacheMaintenance maintenance = new CacheMaintenance(new CacheConfiguration(Duration.ofDays(1), 10000));
+        final Object kept = new Object();
+        for (int i = 0; i < 100; i++) {
+            registry.put(new Object(), newHandle());
+        }
+
+        System.gc();
+        Thread.sleep(10);
+        registry.put(kept, newHandle());
+        assertTrue(collected.isEmpty());
+
+        for (int i = 0; i < 100 && collected.size() < 100; i++) {
+            registry.maintain(maintenance);
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(100, collected.size());
+        assertEquals(100, maintenance.getCollectedCount());
+        assertNotNull(registry.get(kept));
+    }
+
+    @Test
+    public void testRemovedKeysAreNotCollected() throws InterruptedException {
+        Object obj = new Object();
+        registry.put(obj, newHandle());
+        registry.remove(obj);
+        obj = null;
+
+        System.gc();
+        Thread.sleep(10);
+        registry.expungeCollected();
+        assertEquals(0, registry.collectedCount());
+        assertTrue(collected.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    final SpanHandle span = new SpanHandle(null, 0, 1);
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        final Object obj = new Object();
+                        registry.put(obj, span);
+                        assertSame(span, registry.get(obj));
+                        assertSame(span, registry.remove(obj));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.OperationRule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class OperationRulesTest {
+
+    private static OperationRule rule(final String description, final boolean prefix, final boolean enabled,
+                                      final double sampleRate) {
+        final OperationRule rule = new OperationRule();
+        rule.description = description;
+        rule.prefix = prefix;
+        rule.enabled = enabled;
+        rule.sampleRate = sampleRate;
+        return rule;
+    }
+
+    @Test
+    public void testNoRulesTraceEverything() {
+        assertTrue(OperationRules.NONE.isEmpty());
+        assertTrue(OperationRules.NONE.isTraced("Do Stuff"));
+        assertSame(OperationRules.NONE, OperationRules.compile(null));
+        assertSame(OperationRules.NONE, OperationRules.compile(Collections.emptyList()));
+    }
+
+    @Test
+    public void testExactRuleTakesPrecedenceOverPrefixes() {
+        final OperationRules rules = OperationRules.compile(Arrays.asList(
+                rule("compute", true, true, 0.5),
+                rule("compute.feature", true, true, 0.1),
+                rule("compute.feature.amount", false, true, 1),
+                rule("model.reload", false, false, 1)));
+
+        assertEquals(1, rules.rootSampleRate("compute.feature.amount"), 0);
+        assertEquals(0.1, rules.rootSampleRate("compute.feature.count"), 0);
+        assertEquals(0.5, rules.rootSampleRate("compute.score"), 0);
+        assertEquals(0, rules.rootSampleRate("model.reload"), 0);
+        assertTrue(Double.isNaN(rules.rootSampleRate("model.reload.partial")));
+        assertTrue(Double.isNaN(rules.rootSampleRate(null)));
+        assertFalse(rules.isTraced("model.reload"));
+        assertTrue(rules.isTraced("model.reload.partial"));
+        assertTrue(rules.isTraced("compute.feature.count"));
+        assertTrue(rules.isTraced("Do Stuff"));
+        assertTrue(rules.isTraced(null));
+    }
+
+    @Test
+    public void testSampleRatesOnlyApplyToRoots() {
+        final OperationRules rules = OperationRules.compile(Arrays.asList(
+                rule("hot", false, true, 0.25), rule("off", false, false, 1)));
+
+        assertTrue(rules.isTraced("hot"));
+        assertEquals(0.25, rules.rootSampleRate("hot"), 0);
+        assertFalse(rules.isTraced("off"));
+        assertEquals(0, rules.rootSampleRate("off"), 0);
+        assertTrue(Double.isNaN(rules.rootSampleRate("cold")));
+        assertTrue(Double.isNaN(rules.rootSampleRate(null)));
+        assertTrue(Double.isNaN(OperationRules.NONE.rootSampleRate("hot")));
+    }
+
+    @Test
+    public void testEachRuleHasItsOwnIndex() {
+        final OperationRules rules = OperationRules.compile(Arrays.asList(
+                rule("compute", true, true, 0.5), rule("compute.score", false, true, 0.25),
+                rule("model", true, false, 1)));
+
+        assertEquals(3, rules.size());
+        assertEquals(-1, rules.rootRule("Do Stuff"));
+        final int exact = rules.rootRule("compute.score");
+        final int prefix = rules.rootRule("compute.feature");
+        final int disabled = rules.rootRule("model.reload");
+        assertEquals(3, new HashSet<>(Arrays.asList(exact, prefix, disabled)).size());
+        assertEquals(0.25, rules.rootSampleRate(exact), 0);
+        assertEquals(0.5, rules.rootSampleRate(prefix), 0);
+        assertEquals(0, rules.rootSampleRate(disabled), 0);
+        assertEquals(0, OperationRules.NONE.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSampleRate() {
+        OperationRules.compile(Collections.singletonList(rule("hot", false, true, 1.5)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRules() {
+        OperationRules.compile(Arrays.asList(rule("hot", true, true, 1), rule("hot", true, false, 1)));
+    }
+}
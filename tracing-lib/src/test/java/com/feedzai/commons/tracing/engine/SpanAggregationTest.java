@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.SpanAggregationConfiguration;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SpanAggregationTest {
+
+    private static SpanAggregationConfiguration configuration(final int threshold, final Long... bounds) {
+        final SpanAggregationConfiguration configuration = new SpanAggregationConfiguration();
+        configuration.enabled = true;
+        configuration.threshold = threshold;
+        configuration.histogramBoundsInMicros = bounds.length == 0 ? null : Arrays.asList(bounds);
+        return configuration;
+    }
+
+    @Test
+    public void testMissingOrDisabledConfigurationAggregatesNothing() {
+        assertFalse(SpanAggregation.NONE.isEnabled());
+        assertSame(SpanAggregation.NONE, SpanAggregation.compile(null));
+        assertSame(SpanAggregation.NONE, SpanAggregation.compile(new SpanAggregationConfiguration()));
+    }
+
+    @Test
+    public void testDurationsFallInTheirBuckets() {
+        final SpanAggregation aggregation = SpanAggregation.compile(configuration(5, 10L, 100L));
+        assertTrue(aggregation.isEnabled());
+        assertEquals(5, aggregation.getThreshold());
+        assertEquals(3, aggregation.buckets());
+
+        assertEquals(0, aggregation.bucket(0));
+        assertEquals(0, aggregation.bucket(10));
+        assertEquals(1, aggregation.bucket(11));
+        assertEquals(1, aggregation.bucket(100));
+        assertEquals(2, aggregation.bucket(101));
+        assertEquals("aggregation.le_10us", aggregation.bucketTag(0));
+        assertEquals("aggregation.le_100us", aggregation.bucketTag(1));
+        assertEquals("aggregation.gt_100us", aggregation.bucketTag(2));
+    }
+
+    @Test
+    public void testDefaultBuckets() {
+        final SpanAggregation aggregation = SpanAggregation.compile(configuration(5));
+        assertEquals(SpanAggregation.DEFAULT_HISTOGRAM_BOUNDS_MICROS.length + 1, aggregation.buckets());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeThresholdIsRejected() {
+        SpanAggregation.compile(configuration(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBoundsMustIncrease() {
+        SpanAggregation.compile(configuration(5, 100L, 10L));
+    }
+}
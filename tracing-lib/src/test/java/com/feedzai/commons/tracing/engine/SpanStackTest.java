@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import io.opentracing.mock.MockTracer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SpanStackTest {
+
+    private static final int THREADS = 32;
+    private static final int ITERATIONS = 10000;
+
+    private MockTracer mockTracer;
+    private SpanStack stack;
+
+    @Before
+    public void initializeStack() {
+        mockTracer = new MockTracer();
+        stack = new SpanStack();
+    }
+
+    private SpanHandle newHandle() {
+        return new SpanHandle(mockTracer.buildSpan("Do Stuff").start(), 0, 1);
+    }
+
+    @Test
+    public void testPeekReturnsLastPushed() {
+        assertTrue(stack.isEmpty());
+        assertNull(stack.peek());
+
+        final SpanHandle first = newHandle();
+        final SpanHandle second = newHandle();
+        stack.push(first);
+        stack.push(second);
+
+        assertSame(second, stack.peek());
+        assertEquals(2, stack.size());
+    }
+
+    @Test
+    public void testPushIsIdempotent() {
+        final SpanHandle span = newHandle();
+        stack.push(span);
+        stack.push(span);
+
+        assertEquals(1, stack.size());
+        stack.remove(span);
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testRemoveFromMiddle() {
+        final SpanHandle first = newHandle();
+        final SpanHandle second = newHandle();
+        final SpanHandle third = newHandle();
+        stack.push(first);
+        stack.push(second);
+        stack.push(third);
+
+        stack.remove(second);
+        assertSame(third, stack.peek());
+        assertEquals(2, stack.size());
+
+        stack.remove(third);
+        assertSame(first, stack.peek());
+        assertEquals(1, stack.spans().size());
+    }
+
+    @Test
+    public void testRemoveFromOtherStackIsIgnored() {
+        final SpanHandle span = newHandle();
+        stack.push(span);
+
+        new SpanStack().remove(span);
+        assertSame(span, stack.peek());
+    }
+
+    @Test
+    public void testRegisteredSpansAreCountedOnce() {
+        final SpanHandle first = newHandle();
+        final SpanHandle second = newHandle();
+        assertTrue(stack.isFinished());
+
+        first.register(stack);
+        first.register(stack);
+        second.register(stack);
+        assertFalse(stack.isFinished());
+
+        assertSame(stack, first.release());
+        assertNull(first.release());
+        assertFalse(stack.spanFinished());
+        assertFalse(stack.isFinished());
+
+        assertSame(stack, second.release());
+        assertTrue(stack.spanFinished());
+        assertTrue(stack.isFinished());
+    }
+
+    @Test
+    public void testConcurrentPushAndRemove() throws Exception {
+        final SpanHandle root = newHandle();
+        stack.push(root);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < ITERATIONS; j++) {
+                    final SpanHandle span = new SpanHandle(null, 0, 1);
+                    stack.push(span);
+                    assertNotNull(stack.peek());
+                    stack.remove(span);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertSame(root, stack.peek());
+        assertEquals(1, stack.size());
+    }
+}
@@ -16,8 +16,45 @@
 
 package com.feedzai.commons.tracing.engine;
 
+import io.opentracing.SpanContext;
+
 public class TestUtils {
 
+    /**
+     * Resolves every span to the same trace, so that tests can look up the caches with a well known trace ID.
+     */
+    public static final TraceIdResolver FIXED_TRACE_ID_RESOLVER = new TraceIdResolver() {
+        @Override
+        public long traceIdHigh(final SpanContext context) {
+            return 0;
+        }
+
+        @Override
+        public long traceIdLow(final SpanContext context) {
+            return 1;
+        }
+    };
+
+    /**
+     * Same as {@link TestUtils#FIXED_TRACE_ID_RESOLVER}, but reports every trace as sampled out.
+     */
+    public static final TraceIdResolver SAMPLED_OUT_TRACE_ID_RESOLVER = new TraceIdResolver() {
+        @Override
+        public long traceIdHigh(final SpanContext context) {
+            return 0;
+        }
+
+        @Override
+        public long traceIdLow(final SpanContext context) {
+            return 1;
+        }
+
+        @Override
+        public boolean isSampled(final SpanContext context) {
+            return false;
+        }
+    };
+
     public static int doStuffWithResult() {
         int result = 0;
         for (int i = 0; i < 1000; i++) {
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.feedzai.commons.tracing.engine;
+
+import com.feedzai.commons.tracing.engine.configuration.CacheConfiguration;
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TraceRegistryTest {
+
+    private static final int THREADS = 32;
+    private static final int ITERATIONS = 10000;
+
+    @Test
+    public void testPutGetRemove() {
+        final TraceRegistry<String> registry = new TraceRegistry<>(new CacheConfiguration(Duration.ofDays(1), 10000));
+
+        assertNull(registry.get(0, 1));
+        registry.put(0, 1, "first");
+        registry.put(0, 2, "second");
+        assertEquals("first", registry.get(0, 1));
+        assertEquals("second", registry.get(0, 2));
+        assertEquals(2, registry.size());
+
+        registry.put(0, 1, "replaced");
+        assertEquals("replaced", registry.get(0, 1));
+        assertEquals(2, registry.size());
+
+        assertEquals("replaced", registry.remove(0, 1));
+        assertNull(registry.get(0, 1));
+        assertNull(registry.remove(0, 1));
+        assertEquals("second", registry.get(0, 2));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testHighBitsAreKeyed() {
+        final TraceRegistry<String> registry = new TraceRegistry<>(new CacheConfiguration(Duration.ofDays(1), 10000));
+
+        registry.put(0, 1, "64 bit");
+        registry.put(1, 1, "128 bit");
+        assertEquals("64 bit", registry.get(0, 1));
+        assertEquals("128 bit", registry.get(1, 1));
+    }
+
+    @Test
+    public void testExpiresAfterWrite() {
+        final AtomicLong now = new AtomicLong();
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        };
+        final TraceRegistry<String> registry = new TraceRegistry<>(new CacheConfiguration(Duration.ofSeconds(1), 10000), ticker);
+
+        registry.put(0, 1, "first");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        registry.put(0, 2, "second");
+        assertEquals("first", registry.get(0, 1));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertNull(registry.get(0, 1));
+        assertEquals("second", registry.get(0, 2));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertNull(registry.get(0, 2));
+    }
+
+    @Test
+    public void testBoundedSize() {
+        final TraceRegistry<Long> registry = new TraceRegistry<>(new CacheConfiguration(Duration.ofDays(1), 100));
+
+        for (long i = 0; i < 10000; i++) {
+            registry.put(0, i, i);
+        }
+        assertTrue(registry.size() <= 100);
+        assertEquals(Long.valueOf(9999), registry.get(0, 9999));
+    }
+
+    @Test
+    public void testReconfigure() {
+        final AtomicLong now = new AtomicLong();
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        };
+        final CacheConfiguration configuration = new CacheConfiguration(Duration.ofDays(1), 10000, Duration.ofDays(1));
+        final TraceRegistry<Long> registry = new TraceRegistry<>(configuration, ticker);
+        final CacheMaintenance maintenance = new CacheMaintenance(configuration);
+
+        for (long i = 0; i < 1000; i++) {
+            registry.put(0, i, i);
+        }
+        assertEquals(1000, registry.size());
+
+        registry.reconfigure(new CacheConfiguration(Duration.ofSeconds(1), 100, Duration.ofDays(1)), maintenance);
+        assertTrue(registry.size() <= 100);
+        assertEquals(1000 - registry.size(), maintenance.getEvictedCount());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertNull(registry.get(0, 999));
+    }
+
+    @Test
+    public void testBackgroundMaintenance() {
+        final AtomicLong now = new AtomicLong();
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        };
+        final CacheConfiguration configuration = new CacheConfiguration(Duration.ofSeconds(1), 100, Duration.ofDays(1));
+        final TraceRegistry<Long> registry = new TraceRegistry<>(configuration, ticker);
+        final CacheMaintenance maintenance = new CacheMaintenance(configuration);
+
+        for (long i = 0; i < 1000; i++) {
+            registry.put(0, i, i);
+        }
+        assertEquals(1000, registry.size());
+
+        registry.maintain(maintenance);
+        assertTrue(registry.size() <= 100);
+        assertEquals(0, maintenance.getExpiredCount());
+        assertEquals(1000 - registry.size(), maintenance.getEvictedCount());
+
+        final long remaining = registry.size();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        registry.maintain(maintenance);
+        assertEquals(0, registry.size());
+        assertEquals(remaining, maintenance.getExpiredCount());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final TraceRegistry<Long> registry = new TraceRegistry<>(new CacheConfiguration(Duration.ofDays(1), THREADS * ITERATIONS));
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final long high = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (long i = 0; i < ITERATIONS; i++) {
+                        registry.put(high, i, i);
+                        assertEquals(Long.valueOf(i), registry.get(high, i));
+                        if (i % 2 == 0) {
+                            assertEquals(Long.valueOf(i), registry.remove(high, i));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(THREADS * ITERATIONS / 2, registry.size());
+        for (long high = 0; high < THREADS; high++) {
+            for (long i = 0; i < ITERATIONS; i++) {
+                assertEquals(i % 2 == 0 ? null : Long.valueOf(i), registry.get(high, i));
+            }
+        }
+    }
+}
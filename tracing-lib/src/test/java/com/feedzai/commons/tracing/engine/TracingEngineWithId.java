@@ -34,13 +34,9 @@ public class TracingEngineWithId extends AbstractOpenTracingEngineWithId {
      */
     protected TracingEngineWithId(Tracer tracer,
                                   CacheConfiguration configuration) {
-        super(tracer, configuration);
+        super(tracer, configuration, TestUtils.FIXED_TRACE_ID_RESOLVER);
     }
 
-    @Override
-    protected String getTraceIdFromSpan(Span span) {
-        return "1:1:1";
-    }
 
     @Override
     public Map<String, String> serializeContext() {